@@ -10,6 +10,7 @@ import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.RemoteException;
+import android.os.Trace;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -55,114 +56,139 @@ public class DeviceHelper extends AndroidHelper {
     }
 
     public void executeShell(final String cmdLine){
-        Log.d(TAG, "executeShell: " + cmdLine);
+        Trace.beginSection("DeviceHelper.executeShell");
+        try {
+            Log.d(TAG, "executeShell: " + cmdLine);
 
-        StringBuilder output = new StringBuilder();
+            StringBuilder output = new StringBuilder();
 
-        try{
-            Process process = Runtime.getRuntime().exec(cmdLine);
+            try{
+                Process process = Runtime.getRuntime().exec(cmdLine);
 
-            InputStreamReader inputStreamReader = new InputStreamReader(process.getInputStream());
-            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
+                InputStreamReader inputStreamReader = new InputStreamReader(process.getInputStream());
+                BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
 
-            String line;
+                String line;
 
-            while((line = bufferedReader.readLine()) != null){
-                output.append(line);
-                output.append("\n");
-            }
+                while((line = bufferedReader.readLine()) != null){
+                    output.append(line);
+                    output.append("\n");
+                }
 
-            bufferedReader.close();
-            inputStreamReader.close();
+                bufferedReader.close();
+                inputStreamReader.close();
 
-            UnityPlayer.UnitySendMessage("AndroidDeviceHelper", "ExecuteShellCallback", output.toString());
+                UnityPlayer.UnitySendMessage("AndroidDeviceHelper", "ExecuteShellCallback", output.toString());
 
-        }catch (IOException e){
-            e.printStackTrace();
-            UnityPlayer.UnitySendMessage("AndroidDeviceHelper", "ExecuteShellCallback", e.getMessage());
+            }catch (IOException e){
+                e.printStackTrace();
+                UnityPlayer.UnitySendMessage("AndroidDeviceHelper", "ExecuteShellCallback", e.getMessage());
+            }
+        } finally {
+            Trace.endSection();
         }
     }
 
     public String executeShellString(final String cmdLine){
-        Log.d(TAG, "executeShellString: " + cmdLine);
+        Trace.beginSection("DeviceHelper.executeShellString");
+        try {
+            Log.d(TAG, "executeShellString: " + cmdLine);
 
-        StringBuilder output = new StringBuilder();
+            StringBuilder output = new StringBuilder();
 
-        try{
-            Process process = Runtime.getRuntime().exec(cmdLine);
+            try{
+                Process process = Runtime.getRuntime().exec(cmdLine);
 
-            InputStreamReader inputStreamReader = new InputStreamReader(process.getInputStream());
-            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
+                InputStreamReader inputStreamReader = new InputStreamReader(process.getInputStream());
+                BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
 
-            String line;
+                String line;
 
-            while((line = bufferedReader.readLine()) != null){
-                output.append(line);
-                output.append("\n");
-            }
+                while((line = bufferedReader.readLine()) != null){
+                    output.append(line);
+                    output.append("\n");
+                }
 
-            bufferedReader.close();
-            inputStreamReader.close();
+                bufferedReader.close();
+                inputStreamReader.close();
 
-            return output.toString();
+                return output.toString();
 
-        }catch (IOException e){
-            e.printStackTrace();
+            }catch (IOException e){
+                e.printStackTrace();
 
-            return e.getMessage();
+                return e.getMessage();
+            }
+        } finally {
+            Trace.endSection();
         }
     }
 
     public void executeShellDefault(String cmdLine){
-        Log.d(TAG, "executeShellDefault: " + cmdLine);
+        Trace.beginSection("DeviceHelper.executeShellDefault");
+        try {
+            Log.d(TAG, "executeShellDefault: " + cmdLine);
 
-        ShellCmd.execute(cmdLine);
+            ShellCmd.execute(cmdLine);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     //System
     public void silentInstall(final String apkPath, final String installerPkgName) {
-        Log.d(TAG, "silentInstall: " + "apkPath: " + apkPath + ", installerPkgName: " + installerPkgName);
-        File file = new File(apkPath);
-        if (file.exists()) {
-            try {
-                SilentInstaller.install(apkPath, installerPkgName, new ShellCmd.ICmdResultCallback() {
-                    public void onException(Exception arg0) {
-                        Log.e(TAG, "onException silentInstall: " + arg0.getMessage());
-                    }
-
-                    public void onError(String arg0) {
-                        Log.e(TAG, "onError silentInstall: " + arg0);
-                        UnityPlayer.UnitySendMessage("AndroidDeviceHelper", "InstallCallback", arg0);
-                    }
-
-                    public void onComplete(String arg0) {
-                        Log.e(TAG, "onComplete silentInstall");
-                        UnityPlayer.UnitySendMessage("AndroidDeviceHelper", "InstallCallback", "success");
-                    }
-                }, this);
-            } catch (IllegalStateException e) {
-                Log.e(TAG, "silentInstall IllegalStateException: " + e);
+        Trace.beginSection("DeviceHelper.silentInstall");
+        try {
+            Log.d(TAG, "silentInstall: " + "apkPath: " + apkPath + ", installerPkgName: " + installerPkgName);
+            File file = new File(apkPath);
+            if (file.exists()) {
+                try {
+                    SilentInstaller.install(apkPath, installerPkgName, new ShellCmd.ICmdResultCallback() {
+                        public void onException(Exception arg0) {
+                            Log.e(TAG, "onException silentInstall: " + arg0.getMessage());
+                        }
+
+                        public void onError(String arg0) {
+                            Log.e(TAG, "onError silentInstall: " + arg0);
+                            UnityPlayer.UnitySendMessage("AndroidDeviceHelper", "InstallCallback", arg0);
+                        }
+
+                        public void onComplete(String arg0) {
+                            Log.e(TAG, "onComplete silentInstall");
+                            UnityPlayer.UnitySendMessage("AndroidDeviceHelper", "InstallCallback", "success");
+                        }
+                    }, this);
+                } catch (IllegalStateException e) {
+                    Log.e(TAG, "silentInstall IllegalStateException: " + e);
+                }
+            } else {
+                Log.e(TAG, "silentInstall: " + "Apk file doesn't exist!");
             }
-        } else {
-            Log.e(TAG, "silentInstall: " + "Apk file doesn't exist!");
+        } finally {
+            Trace.endSection();
         }
     }
 
     //System
     public void silentUninstall(String pkgName) {
-        Log.d(TAG, "silentUninstall: pkgName: " + pkgName);
-        if (mContext.getPackageManager().getLaunchIntentForPackage(pkgName) != null) {
-            PackageManager pm = mContext.getPackageManager();
-            Class<?>[] uninstalltypes = new Class[]{String.class, IPackageDeleteObserver.class, int.class};
-            Method uninstallmethod = null;
-            try {
-                uninstallmethod = pm.getClass().getMethod("deletePackage", uninstalltypes);
-                uninstallmethod.invoke(pm, new Object[]{pkgName, new MyPackageDeleteObserver(), 0});
-            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-                e.printStackTrace();
+        Trace.beginSection("DeviceHelper.silentUninstall");
+        try {
+            Log.d(TAG, "silentUninstall: pkgName: " + pkgName);
+            if (mContext.getPackageManager().getLaunchIntentForPackage(pkgName) != null) {
+                PackageManager pm = mContext.getPackageManager();
+                Class<?>[] uninstalltypes = new Class[]{String.class, IPackageDeleteObserver.class, int.class};
+                Method uninstallmethod = null;
+                try {
+                    uninstallmethod = pm.getClass().getMethod("deletePackage", uninstalltypes);
+                    uninstallmethod.invoke(pm, new Object[]{pkgName, new MyPackageDeleteObserver(), 0});
+                } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                Log.e(TAG, "silentUninstall: " + "The specific package doesn't exist!");
             }
-        } else {
-            Log.e(TAG, "silentUninstall: " + "The specific package doesn't exist!");
+        } finally {
+            Trace.endSection();
         }
     }
 
@@ -181,22 +207,27 @@ public class DeviceHelper extends AndroidHelper {
 
     //System
     public void killApp(String pkgName) {
-        Log.d(TAG, "killApp: pkgName: " + pkgName);
-        int pid = -1;
-        Log.e(TAG, "killapp: ");
-        ActivityManager am = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
-        List<ActivityManager.RunningAppProcessInfo> mRunningProcess = am.getRunningAppProcesses();
-        Log.e(TAG, mRunningProcess.size() + "");
-        for (ActivityManager.RunningAppProcessInfo amProcess : mRunningProcess) {
-            Log.e(TAG, amProcess.processName);
-            Log.e(TAG, "pid:" + amProcess.pid);
-            if (amProcess.processName.equals(pkgName)) {
-                pid = amProcess.pid;
-                break;
+        Trace.beginSection("DeviceHelper.killApp");
+        try {
+            Log.d(TAG, "killApp: pkgName: " + pkgName);
+            int pid = -1;
+            Log.e(TAG, "killapp: ");
+            ActivityManager am = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+            List<ActivityManager.RunningAppProcessInfo> mRunningProcess = am.getRunningAppProcesses();
+            Log.e(TAG, mRunningProcess.size() + "");
+            for (ActivityManager.RunningAppProcessInfo amProcess : mRunningProcess) {
+                Log.e(TAG, amProcess.processName);
+                Log.e(TAG, "pid:" + amProcess.pid);
+                if (amProcess.processName.equals(pkgName)) {
+                    pid = amProcess.pid;
+                    break;
+                }
             }
+            Log.d(TAG, "picovr.factorytest.cmd" + "kill " + pid);
+            setSystemProperties("picovr.factorytest.cmd", "kill " + pid);
+        } finally {
+            Trace.endSection();
         }
-        Log.d(TAG, "picovr.factorytest.cmd" + "kill " + pid);
-        setSystemProperties("picovr.factorytest.cmd", "kill " + pid);
     }
 
     public void launchBrowserWithLinkInFile(int browser, String filePath) {
@@ -210,41 +241,46 @@ public class DeviceHelper extends AndroidHelper {
      *                2: Firefox VR browser
      */
     public void launchBrowser(int browser, String link) {
-        Log.d(TAG, "launchBrowser: browser: " + browser + ", link: " + link);
-        Uri uri = Uri.parse(link);
-        Intent intent = new Intent();
-        intent.setAction("android.intent.action.VIEW");
-        intent.setData(uri);
-        switch (browser) {
-            case 0:
-                if (mContext.getPackageManager().getLaunchIntentForPackage("org.chromium.webview_shell") != null) {
-                    intent.setClassName("org.chromium.webview_shell", "org.chromium.webview_shell.WebViewBrowserActivity");
-                } else {
-                    Log.e(TAG, "launchBrowser: " + "org.chromium.webview_shell doesn't exist!" );
-                    return;
-                }
-                break;
-            case 1:
-                if (mContext.getPackageManager().getLaunchIntentForPackage("org.chromium.chrome") != null) {
-                    intent.setClassName("org.chromium.chrome", "org.chromium.chrome.browser.ChromeTabbedActivity");
-//                intent.setClassName("org.chromium.chrome", "org.chromium.chrome.browser.document.ChromeLauncherActivity");
-                } else {
-                    Log.e(TAG, "launchBrowser: " + "org.chromium.chrome doesn't exist!" );
-                    return;
-                }
-                break;
-            case 2:
-                if (mContext.getPackageManager().getLaunchIntentForPackage("org.mozilla.vrbrowser") != null) {
-                    intent.setClassName("org.mozilla.vrbrowser", "org.mozilla.vrbrowser.VRBrowserActivity");
-                } else {
-                    Log.e(TAG, "launchBrowser: " + "org.mozilla.vrbrowser doesn't exist!" );
-                    return;
-                }
-                break;
-            default:
-                break;
+        Trace.beginSection("DeviceHelper.launchBrowser");
+        try {
+            Log.d(TAG, "launchBrowser: browser: " + browser + ", link: " + link);
+            Uri uri = Uri.parse(link);
+            Intent intent = new Intent();
+            intent.setAction("android.intent.action.VIEW");
+            intent.setData(uri);
+            switch (browser) {
+                case 0:
+                    if (mContext.getPackageManager().getLaunchIntentForPackage("org.chromium.webview_shell") != null) {
+                        intent.setClassName("org.chromium.webview_shell", "org.chromium.webview_shell.WebViewBrowserActivity");
+                    } else {
+                        Log.e(TAG, "launchBrowser: " + "org.chromium.webview_shell doesn't exist!" );
+                        return;
+                    }
+                    break;
+                case 1:
+                    if (mContext.getPackageManager().getLaunchIntentForPackage("org.chromium.chrome") != null) {
+                        intent.setClassName("org.chromium.chrome", "org.chromium.chrome.browser.ChromeTabbedActivity");
+    //                intent.setClassName("org.chromium.chrome", "org.chromium.chrome.browser.document.ChromeLauncherActivity");
+                    } else {
+                        Log.e(TAG, "launchBrowser: " + "org.chromium.chrome doesn't exist!" );
+                        return;
+                    }
+                    break;
+                case 2:
+                    if (mContext.getPackageManager().getLaunchIntentForPackage("org.mozilla.vrbrowser") != null) {
+                        intent.setClassName("org.mozilla.vrbrowser", "org.mozilla.vrbrowser.VRBrowserActivity");
+                    } else {
+                        Log.e(TAG, "launchBrowser: " + "org.mozilla.vrbrowser doesn't exist!" );
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            mContext.startActivity(intent);
+        } finally {
+            Trace.endSection();
         }
-        mContext.startActivity(intent);
     }
 
     private String readFile(String filepath) {
@@ -269,68 +305,103 @@ public class DeviceHelper extends AndroidHelper {
     }
 
     public void goToApp(String packagename) {
-        Log.d(TAG, "goToApp: packageName: " + packagename);
-        if (mContext.getPackageManager().getLaunchIntentForPackage(packagename) != null) {
-            Intent intent = new Intent();
-            PackageManager packageManager = mContext.getPackageManager();
-            intent = packageManager.getLaunchIntentForPackage(packagename);
-            mContext.startActivity(intent);
-        } else {
-            Log.e(TAG, "goToApp: " + "The specific package doesn't exist!");
+        Trace.beginSection("DeviceHelper.goToApp");
+        try {
+            Log.d(TAG, "goToApp: packageName: " + packagename);
+            if (mContext.getPackageManager().getLaunchIntentForPackage(packagename) != null) {
+                Intent intent = new Intent();
+                PackageManager packageManager = mContext.getPackageManager();
+                intent = packageManager.getLaunchIntentForPackage(packagename);
+                mContext.startActivity(intent);
+            } else {
+                Log.e(TAG, "goToApp: " + "The specific package doesn't exist!");
+            }
+        } finally {
+            Trace.endSection();
         }
     }
 
     public void startVRShell(int way, String[] args, int type) {
-        Log.d(TAG, "startVRShell: way: " + way + ", args:" + Arrays.toString(args));
-        Intent vrsIntent = new Intent();
-        vrsIntent.setAction("pvr.intent.action.ADAPTER");
-        vrsIntent.setPackage("com.pvr.adapter");
-        vrsIntent.putExtra("way", way);
-        vrsIntent.putExtra("args", args);
-        mContext.startService(vrsIntent);
+        Trace.beginSection("DeviceHelper.startVRShell");
+        try {
+            Log.d(TAG, "startVRShell: way: " + way + ", args:" + Arrays.toString(args));
+            Intent vrsIntent = new Intent();
+            vrsIntent.setAction("pvr.intent.action.ADAPTER");
+            vrsIntent.setPackage("com.pvr.adapter");
+            vrsIntent.putExtra("way", way);
+            vrsIntent.putExtra("args", args);
+            mContext.startService(vrsIntent);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public void startVRShell(int way, String[] args) {
-        Log.d(TAG, "startVRShell: way: " + way + ", args:" + Arrays.toString(args));
-        Intent vrsIntent = new Intent("pvr.intent.action.VRSHELL");
-        vrsIntent.putExtra("way", way);
-        vrsIntent.putExtra("args", args);
-        vrsIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
-        mContext.startActivity(vrsIntent);
+        Trace.beginSection("DeviceHelper.startVRShell");
+        try {
+            Log.d(TAG, "startVRShell: way: " + way + ", args:" + Arrays.toString(args));
+            Intent vrsIntent = new Intent("pvr.intent.action.VRSHELL");
+            vrsIntent.putExtra("way", way);
+            vrsIntent.putExtra("args", args);
+            vrsIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
+            mContext.startActivity(vrsIntent);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public String getAppList() {
-        GetPackageClass getPackageClass = new GetPackageClass();
-        String s = getPackageClass.getAppString(mContext);
-        Log.d(TAG, "getAppList: " + s);
-        return s;
+        Trace.beginSection("DeviceHelper.getAppList");
+        try {
+            GetPackageClass getPackageClass = new GetPackageClass();
+            String s = getPackageClass.getAppString(mContext);
+            Log.d(TAG, "getAppList: " + s);
+            return s;
+        } finally {
+            Trace.endSection();
+        }
     }
 
     //需要Unity端设置接收信息
     public void registerHomeReceiver() {
-        Log.d(TAG, "registerHomeReceiver: ");
-        HomeKeyReceiverClass.registerHomeReceiver(mContext);
+        Trace.beginSection("DeviceHelper.registerHomeReceiver");
+        try {
+            Log.d(TAG, "registerHomeReceiver: ");
+            HomeKeyReceiverClass.registerHomeReceiver(mContext);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public void unregisterHomeReceiver() {
-        Log.d(TAG, "unregisterHomeReceiver: ");
-        HomeKeyReceiverClass.unregisterHomeReceiver(mContext);
+        Trace.beginSection("DeviceHelper.unregisterHomeReceiver");
+        try {
+            Log.d(TAG, "unregisterHomeReceiver: ");
+            HomeKeyReceiverClass.unregisterHomeReceiver(mContext);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public void openRecenterApp() {
-        Log.d(TAG, "openRecenterApp: ");
-        if (getSystemProperties(KEY, "0").equals("0")) {
-            Log.i(TAG, KEY + " = 0");
-            if (checkIfAppInstalled(mContext, "com.picovr.recenter")) {
-                setSystemProperties(KEY, "1");
-                openAppByComponentName(mContext, "com.picovr.recenter", "com.picovr.recenter.activity.UnityActivity");
+        Trace.beginSection("DeviceHelper.openRecenterApp");
+        try {
+            Log.d(TAG, "openRecenterApp: ");
+            if (getSystemProperties(KEY, "0").equals("0")) {
+                Log.i(TAG, KEY + " = 0");
+                if (checkIfAppInstalled(mContext, "com.picovr.recenter")) {
+                    setSystemProperties(KEY, "1");
+                    openAppByComponentName(mContext, "com.picovr.recenter", "com.picovr.recenter.activity.UnityActivity");
+                } else {
+                    Log.i(TAG, "com.picovr.recenter" + "is not installed!");
+                    return;
+                }
+
             } else {
-                Log.i(TAG, "com.picovr.recenter" + "is not installed!");
-                return;
+                Log.i(TAG, "persist.pvrcon.config.visible = 1");
             }
-
-        } else {
-            Log.i(TAG, "persist.pvrcon.config.visible = 1");
+        } finally {
+            Trace.endSection();
         }
     }
 
@@ -362,107 +433,142 @@ public class DeviceHelper extends AndroidHelper {
     }
 
     public void openAppByComponentName(Context context, String packageName, String activityName) {
-        Log.d(TAG, "openAppByComponentName-------->" + packageName + "-" + activityName);
-        if (!TextUtils.isEmpty(packageName) && !TextUtils.isEmpty(activityName)) {
-            Intent in = new Intent(Intent.ACTION_MAIN);
-            in.addCategory(Intent.CATEGORY_LAUNCHER);
-            ComponentName componentName = new ComponentName(packageName,
-                    activityName);
-            in.setComponent(componentName);
-            in.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK
-                    | Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
-            context.startActivity(in);
+        Trace.beginSection("DeviceHelper.openAppByComponentName");
+        try {
+            Log.d(TAG, "openAppByComponentName-------->" + packageName + "-" + activityName);
+            if (!TextUtils.isEmpty(packageName) && !TextUtils.isEmpty(activityName)) {
+                Intent in = new Intent(Intent.ACTION_MAIN);
+                in.addCategory(Intent.CATEGORY_LAUNCHER);
+                ComponentName componentName = new ComponentName(packageName,
+                        activityName);
+                in.setComponent(componentName);
+                in.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK
+                        | Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
+                context.startActivity(in);
+            }
+        } finally {
+            Trace.endSection();
         }
     }
 
     public boolean checkIfAppInstalled(Context context, String packageName) {
-        Log.i(TAG, "checkIfAppInstalled-------->" + packageName);
-        PackageInfo packageInfo = null;
+        Trace.beginSection("DeviceHelper.checkIfAppInstalled");
         try {
-            packageInfo = context.getPackageManager().getPackageInfo(packageName, 0);
-        } catch (PackageManager.NameNotFoundException e) {
-            packageInfo = null;
-            e.printStackTrace();
-        }
-        if (packageInfo == null) {
-            return false;
-        } else {
-            return true;
+            Log.i(TAG, "checkIfAppInstalled-------->" + packageName);
+            PackageInfo packageInfo = null;
+            try {
+                packageInfo = context.getPackageManager().getPackageInfo(packageName, 0);
+            } catch (PackageManager.NameNotFoundException e) {
+                packageInfo = null;
+                e.printStackTrace();
+            }
+            if (packageInfo == null) {
+                return false;
+            } else {
+                return true;
+            }
+        } finally {
+            Trace.endSection();
         }
     }
 
     public void installApp(String path) {
-        Log.d(TAG, "installApp: ");
-        int sdk = Build.VERSION.SDK_INT;
-        Log.e(TAG, "installApp：" + sdk);
-        Intent intent;
-        if (sdk < 24) {
-            intent = new Intent(Intent.ACTION_VIEW);
-            intent.setDataAndType(
-                    Uri.fromFile(new File(path)),
-                    "application/vnd.android.package-archive"
-            );
-        } else {
-            File file = new File(path);
-
-            Uri apkUri = FileProvider.getUriForFile(mContext, "com.pvr.filemanager.fileprovider", file);
-//            Uri apkUri = FileProvider.getUriForFile(mContext, mContext.getApplicationInfo().packageName + ".fileprovider", file);
-            intent = new Intent(Intent.ACTION_VIEW);
-            intent.setDataAndType(apkUri, "application/vnd.android.package-archive");
-            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+        Trace.beginSection("DeviceHelper.installApp");
+        try {
+            Log.d(TAG, "installApp: ");
+            int sdk = Build.VERSION.SDK_INT;
+            Log.e(TAG, "installApp：" + sdk);
+            Intent intent;
+            if (sdk < 24) {
+                intent = new Intent(Intent.ACTION_VIEW);
+                intent.setDataAndType(
+                        Uri.fromFile(new File(path)),
+                        "application/vnd.android.package-archive"
+                );
+            } else {
+                File file = new File(path);
 
-            mContext.startActivity(intent);
+                Uri apkUri = FileProvider.getUriForFile(mContext, "com.pvr.filemanager.fileprovider", file);
+    //            Uri apkUri = FileProvider.getUriForFile(mContext, mContext.getApplicationInfo().packageName + ".fileprovider", file);
+                intent = new Intent(Intent.ACTION_VIEW);
+                intent.setDataAndType(apkUri, "application/vnd.android.package-archive");
+                intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+
+                mContext.startActivity(intent);
+            }
+        } finally {
+            Trace.endSection();
         }
     }
 
     public boolean setSystemProp(String key, String value) {
-        Log.d(TAG, "setSystemProp: " + "key: " + key + ", value: " + value);
+        Trace.beginSection("DeviceHelper.setSystemProp");
         try {
-            final Class<?> systemProperties = Class.forName("android.os.SystemProperties");
-            final Method set = systemProperties.getMethod("set", String.class, String.class);
-            set.invoke(null, key, value);
+            Log.d(TAG, "setSystemProp: " + "key: " + key + ", value: " + value);
+            try {
+                final Class<?> systemProperties = Class.forName("android.os.SystemProperties");
+                final Method set = systemProperties.getMethod("set", String.class, String.class);
+                set.invoke(null, key, value);
 
-            Log.i(TAG, "setSystemProperties--->key=" + key + " value=" + value);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
+                Log.i(TAG, "setSystemProperties--->key=" + key + " value=" + value);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return false;
+            }
+            return true;
+        } finally {
+            Trace.endSection();
         }
-        return true;
     }
 
     public String getSystemProp(String key, String defaultValue) {
-        Log.d(TAG, "getSystemProp: " + key);
+        Trace.beginSection("DeviceHelper.getSystemProp");
         try {
-            final Class<?> systemProperties = Class.forName("android.os.SystemProperties");
-            final Method get = systemProperties.getMethod("get", String.class, String.class);
-            String result = (String) get.invoke(null, key, defaultValue);
+            Log.d(TAG, "getSystemProp: " + key);
+            try {
+                final Class<?> systemProperties = Class.forName("android.os.SystemProperties");
+                final Method get = systemProperties.getMethod("get", String.class, String.class);
+                String result = (String) get.invoke(null, key, defaultValue);
 
-            Log.i("PicoVRLauncherLib", "getSystemProperties--->key=" + key + " value=" + result);
+                Log.i("PicoVRLauncherLib", "getSystemProperties--->key=" + key + " value=" + result);
 
-            return TextUtils.isEmpty(result) ? defaultValue : result;
-        } catch (Exception e) {
-            // This should never happen
-            return defaultValue;
+                return TextUtils.isEmpty(result) ? defaultValue : result;
+            } catch (Exception e) {
+                // This should never happen
+                return defaultValue;
+            }
+        } finally {
+            Trace.endSection();
         }
     }
 
     public void broadcastIntent(String action){
-        Log.d(TAG, "broadcastIntent: " + action);
+        Trace.beginSection("DeviceHelper.broadcastIntent");
+        try {
+            Log.d(TAG, "broadcastIntent: " + action);
 
-        Intent intent = new Intent();
-        intent.setAction(action);
+            Intent intent = new Intent();
+            intent.setAction(action);
 
-        mContext.sendBroadcast(intent);
+            mContext.sendBroadcast(intent);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public void broadcastIntentWithExtra(String action, String key, String value){
-        Log.d(TAG, "broadcastIntentWithExtra: " + action + ", " + key + ", " + value);
+        Trace.beginSection("DeviceHelper.broadcastIntentWithExtra");
+        try {
+            Log.d(TAG, "broadcastIntentWithExtra: " + action + ", " + key + ", " + value);
 
-        Intent intent = new Intent();
-        intent.setAction(action);
-        intent.putExtra(key, value);
+            Intent intent = new Intent();
+            intent.setAction(action);
+            intent.putExtra(key, value);
 
-        mContext.sendBroadcast(intent);
+            mContext.sendBroadcast(intent);
+        } finally {
+            Trace.endSection();
+        }
     }
 }
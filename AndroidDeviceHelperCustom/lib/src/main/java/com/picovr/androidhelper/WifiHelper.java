@@ -13,6 +13,7 @@ import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.os.Handler;
+import android.os.Trace;
 import android.util.Log;
 
 import com.unity3d.player.UnityPlayer;
@@ -44,237 +45,317 @@ public class WifiHelper extends AndroidHelper {
     }
 
     public void setWifiState(boolean state){
-        Log.d(TAG, "setWifiState to [" + state + "]");
+        Trace.beginSection("WifiHelper.setWifiState");
+        try {
+            Log.d(TAG, "setWifiState to [" + state + "]");
 
-        WifiManager wifiManager = (WifiManager) mContext.getSystemService(WIFI_SERVICE);
+            WifiManager wifiManager = (WifiManager) mContext.getSystemService(WIFI_SERVICE);
 
-        boolean result = wifiManager.setWifiEnabled(state);
+            boolean result = wifiManager.setWifiEnabled(state);
 
-        Log.d(TAG, "setWifiEnabled result is [" + result + "]");
+            Log.d(TAG, "setWifiEnabled result is [" + result + "]");
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public boolean isWifiEnabled(){
-        Log.d(TAG, "isWifiEnabled");
+        Trace.beginSection("WifiHelper.isWifiEnabled");
+        try {
+            Log.d(TAG, "isWifiEnabled");
 
-        WifiManager wifiManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
+            WifiManager wifiManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
 
-        return wifiManager.isWifiEnabled();
+            return wifiManager.isWifiEnabled();
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public boolean isWifiConnected(){
-        Log.d(TAG, "isWifiConnected");
+        Trace.beginSection("WifiHelper.isWifiConnected");
+        try {
+            Log.d(TAG, "isWifiConnected");
 
-        WifiManager wifiManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
+            WifiManager wifiManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
 
-        if (wifiManager.isWifiEnabled()) {
-            WifiInfo wifiInfo = wifiManager.getConnectionInfo();
-            return wifiInfo.getNetworkId() != -1;
-        }
-        else {
-            return false;
+            if (wifiManager.isWifiEnabled()) {
+                WifiInfo wifiInfo = wifiManager.getConnectionInfo();
+                return wifiInfo.getNetworkId() != -1;
+            }
+            else {
+                return false;
+            }
+        } finally {
+            Trace.endSection();
         }
     }
 
     public boolean scanWifi(){
-        Log.d(TAG, "scanWifi");
+        Trace.beginSection("WifiHelper.scanWifi");
+        try {
+            Log.d(TAG, "scanWifi");
 
-        if(!isWifiEnabled()) setWifiState(true);
+            if(!isWifiEnabled()) setWifiState(true);
 
-        WifiManager wifiManager = (WifiManager) mContext.getSystemService(WIFI_SERVICE);
+            WifiManager wifiManager = (WifiManager) mContext.getSystemService(WIFI_SERVICE);
 
-        return wifiManager.startScan();
+            return wifiManager.startScan();
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public String[] getWifiSSIDs(){
-        Log.d(TAG, "getWifiSSIDs");
+        Trace.beginSection("WifiHelper.getWifiSSIDs");
+        try {
+            Log.d(TAG, "getWifiSSIDs");
 
-        String[] ssids = null;
+            String[] ssids = null;
 
-        try
-        {
-            WifiManager wifiManager = (WifiManager) mContext.getSystemService(WIFI_SERVICE);
+            try
+            {
+                WifiManager wifiManager = (WifiManager) mContext.getSystemService(WIFI_SERVICE);
 
-            List<ScanResult> results = wifiManager.getScanResults();
+                List<ScanResult> results = wifiManager.getScanResults();
 
-            ssids = new String[results.size()];
+                ssids = new String[results.size()];
 
-            for (int i = 0; i < results.size(); i++) {
-                ssids[i] = results.get(i).SSID;
+                for (int i = 0; i < results.size(); i++) {
+                    ssids[i] = results.get(i).SSID;
+                }
+            }
+            catch(Exception e)
+            {
+                Log.e("MainActivity",e.getMessage());
             }
-        }
-        catch(Exception e)
-        {
-            Log.e("MainActivity",e.getMessage());
-        }
 
-        return ssids;
+            return ssids;
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public void registerWifiReceiver() {
-        Log.d(TAG, "registerWifiReceiver: ");
-        IntentFilter intentFilter = new IntentFilter();
-        intentFilter.addAction(WifiManager.NETWORK_STATE_CHANGED_ACTION);
-        intentFilter.addAction(WifiManager.WIFI_STATE_CHANGED_ACTION);
-        intentFilter.addAction(WifiManager.RSSI_CHANGED_ACTION);
-        intentFilter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
-        mContext.registerReceiver(mWifiReceiver, intentFilter);
+        Trace.beginSection("WifiHelper.registerWifiReceiver");
+        try {
+            Log.d(TAG, "registerWifiReceiver: ");
+            IntentFilter intentFilter = new IntentFilter();
+            intentFilter.addAction(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+            intentFilter.addAction(WifiManager.WIFI_STATE_CHANGED_ACTION);
+            intentFilter.addAction(WifiManager.RSSI_CHANGED_ACTION);
+            intentFilter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+            mContext.registerReceiver(mWifiReceiver, intentFilter);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public void unregisterWifiReceiver() {
-        Log.d(TAG, "unregisterWifiReceiver: ");
-        if (mWifiReceiver != null) {
-            mContext.unregisterReceiver(mWifiReceiver);
+        Trace.beginSection("WifiHelper.unregisterWifiReceiver");
+        try {
+            Log.d(TAG, "unregisterWifiReceiver: ");
+            if (mWifiReceiver != null) {
+                mContext.unregisterReceiver(mWifiReceiver);
+            }
+        } finally {
+            Trace.endSection();
         }
     }
 
     public String getConnectedWifiSSID() {
-        Log.d(TAG, "getConnectedWifiSSID: ");
-        WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
-        String ssid = wifiManager.getConnectionInfo().getSSID();
-        Log.d(TAG, "getConnectedWifiSSID: ssid: " + ssid);
-        return ssid;
+        Trace.beginSection("WifiHelper.getConnectedWifiSSID");
+        try {
+            Log.d(TAG, "getConnectedWifiSSID: ");
+            WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
+            String ssid = wifiManager.getConnectionInfo().getSSID();
+            Log.d(TAG, "getConnectedWifiSSID: ssid: " + ssid);
+            return ssid;
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public String getWifiMac() {
-        Log.d(TAG, "getWifiMac: ");
-        WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
-        return wifiManager.getConnectionInfo().getMacAddress();
+        Trace.beginSection("WifiHelper.getWifiMac");
+        try {
+            Log.d(TAG, "getWifiMac: ");
+            WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
+            return wifiManager.getConnectionInfo().getMacAddress();
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public String getWifiIpAddress() {
-        Log.d(TAG, "androidGetIpAddress");
-        WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
-        DhcpInfo wifiInfo = wifiManager.getDhcpInfo();
-        Log.d(TAG, "ipAddress = " + intToIp(wifiInfo.ipAddress));
-        return intToIp(wifiInfo.ipAddress);
-
+        Trace.beginSection("WifiHelper.getWifiIpAddress");
+        try {
+            Log.d(TAG, "androidGetIpAddress");
+            WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
+            DhcpInfo wifiInfo = wifiManager.getDhcpInfo();
+            Log.d(TAG, "ipAddress = " + intToIp(wifiInfo.ipAddress));
+            return intToIp(wifiInfo.ipAddress);
+
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public String getWifiGateWay() {
-        Log.d(TAG, "androidGetGateWay");
-        WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
-        DhcpInfo wifiInfo = wifiManager.getDhcpInfo();
-        Log.d(TAG, "gateway = " + intToIp(wifiInfo.gateway));
-        return intToIp(wifiInfo.gateway);
-
+        Trace.beginSection("WifiHelper.getWifiGateWay");
+        try {
+            Log.d(TAG, "androidGetGateWay");
+            WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
+            DhcpInfo wifiInfo = wifiManager.getDhcpInfo();
+            Log.d(TAG, "gateway = " + intToIp(wifiInfo.gateway));
+            return intToIp(wifiInfo.gateway);
+
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public String getWifiDNS() {
-        Log.d(TAG, "androidGetDNS");
-        WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
-        DhcpInfo wifiInfo = wifiManager.getDhcpInfo();
-        Log.d(TAG, "dns = " + intToIp(wifiInfo.dns1));
-        return intToIp(wifiInfo.dns1);
+        Trace.beginSection("WifiHelper.getWifiDNS");
+        try {
+            Log.d(TAG, "androidGetDNS");
+            WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
+            DhcpInfo wifiInfo = wifiManager.getDhcpInfo();
+            Log.d(TAG, "dns = " + intToIp(wifiInfo.dns1));
+            return intToIp(wifiInfo.dns1);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public void connectWifi(String SSID, String PASSWORD) {
-        Log.d(TAG, "connectWifi, ssid == " + SSID + ", password == " + PASSWORD);
+        Trace.beginSection("WifiHelper.connectWifi");
+        try {
+            Log.d(TAG, "connectWifi, ssid == " + SSID + ", password == " + PASSWORD);
 
-        if(!isWifiEnabled()) setWifiState(true);
+            if(!isWifiEnabled()) setWifiState(true);
 
-        WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
-        //WifiConfiguration wifiConfig = CreateWifiInfo(wifiManager, SSID, PASSWORD, 3);
+            WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
+            //WifiConfiguration wifiConfig = CreateWifiInfo(wifiManager, SSID, PASSWORD, 3);
 
-        WifiConfiguration wifiConfig = new WifiConfiguration();
-        wifiConfig.SSID = String.format("\"%s\"", SSID);
-        wifiConfig.preSharedKey = String.format("\"%s\"", PASSWORD);
+            WifiConfiguration wifiConfig = new WifiConfiguration();
+            wifiConfig.SSID = String.format("\"%s\"", SSID);
+            wifiConfig.preSharedKey = String.format("\"%s\"", PASSWORD);
 
-        int wcgID = wifiManager.addNetwork(wifiConfig);
-        wifiManager.disconnect();
-        boolean b = wifiManager.enableNetwork(wcgID, true);
-        wifiManager.reconnect();
-        Log.d(TAG, "wcgID = " + wcgID + ", b = " + b);
+            int wcgID = wifiManager.addNetwork(wifiConfig);
+            wifiManager.disconnect();
+            boolean b = wifiManager.enableNetwork(wcgID, true);
+            wifiManager.reconnect();
+            Log.d(TAG, "wcgID = " + wcgID + ", b = " + b);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public void clearAllSavedWifiSpots(){
-        Log.d(TAG, "clearAllSavedWifiSpots");
+        Trace.beginSection("WifiHelper.clearAllSavedWifiSpots");
+        try {
+            Log.d(TAG, "clearAllSavedWifiSpots");
 
-        WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
+            WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
 
-        List<WifiConfiguration> wifiConfigurationList = wifiManager.getConfiguredNetworks();
+            List<WifiConfiguration> wifiConfigurationList = wifiManager.getConfiguredNetworks();
 
-        for( WifiConfiguration wifiConfiguration : wifiConfigurationList) {
-            wifiManager.removeNetwork(wifiConfiguration.networkId);
-        }
+            for( WifiConfiguration wifiConfiguration : wifiConfigurationList) {
+                wifiManager.removeNetwork(wifiConfiguration.networkId);
+            }
 
-        wifiManager.saveConfiguration();
+            wifiManager.saveConfiguration();
 
-        Log.d(TAG, "clearAllSavedWifiSpots: " + wifiConfigurationList.size() + " spots cleared");
+            Log.d(TAG, "clearAllSavedWifiSpots: " + wifiConfigurationList.size() + " spots cleared");
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public WifiConfiguration CreateWifiInfo(WifiManager wifiManager, String SSID, String Password, int Type) {
-        Log.d(TAG, "CreateWifiInfo , SSID = " + SSID + ", Password = " + Password + ", Type = " + Type);
-        WifiConfiguration config = new WifiConfiguration();
-        config.allowedAuthAlgorithms.clear();
-        config.allowedGroupCiphers.clear();
-        config.allowedKeyManagement.clear();
-        config.allowedPairwiseCiphers.clear();
-        config.allowedProtocols.clear();
-        config.SSID = "\"" + SSID + "\"";
-
-        WifiConfiguration tempConfig = this.IsExsits(wifiManager, SSID);
-        if (tempConfig != null) {
-            wifiManager.removeNetwork(tempConfig.networkId);
-        }
+        Trace.beginSection("WifiHelper.CreateWifiInfo");
+        try {
+            Log.d(TAG, "CreateWifiInfo , SSID = " + SSID + ", Password = " + Password + ", Type = " + Type);
+            WifiConfiguration config = new WifiConfiguration();
+            config.allowedAuthAlgorithms.clear();
+            config.allowedGroupCiphers.clear();
+            config.allowedKeyManagement.clear();
+            config.allowedPairwiseCiphers.clear();
+            config.allowedProtocols.clear();
+            config.SSID = "\"" + SSID + "\"";
+
+            WifiConfiguration tempConfig = this.IsExsits(wifiManager, SSID);
+            if (tempConfig != null) {
+                wifiManager.removeNetwork(tempConfig.networkId);
+            }
 
-        if (Type == 1) // WIFICIPHER_NOPASS
-        {
-            config.wepKeys[0] = "";
-            config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
-            config.wepTxKeyIndex = 0;
-        }
-        if (Type == 2) // WIFICIPHER_WEP
-        {
-            config.hiddenSSID = true;
-            config.wepKeys[0] = "\"" + Password + "\"";
-            config.allowedAuthAlgorithms.set(WifiConfiguration.AuthAlgorithm.SHARED);
-            config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.CCMP);
-            config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.TKIP);
-            config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.WEP40);
-            config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.WEP104);
-            config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
-            config.wepTxKeyIndex = 0;
-        }
-        if (Type == 3) // WIFICIPHER_WPA
-        {
-            config.preSharedKey = "\"" + Password + "\"";
-            config.hiddenSSID = true;
-            config.allowedAuthAlgorithms.set(WifiConfiguration.AuthAlgorithm.OPEN);
-            config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.TKIP);
-            config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.WPA_PSK);
-            config.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.TKIP);
-            config.allowedProtocols.set(WifiConfiguration.Protocol.RSN);
-            config.allowedProtocols.set(WifiConfiguration.Protocol.WPA);
-            config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.CCMP);
-            config.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.CCMP);
-            config.status = WifiConfiguration.Status.ENABLED;
+            if (Type == 1) // WIFICIPHER_NOPASS
+            {
+                config.wepKeys[0] = "";
+                config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
+                config.wepTxKeyIndex = 0;
+            }
+            if (Type == 2) // WIFICIPHER_WEP
+            {
+                config.hiddenSSID = true;
+                config.wepKeys[0] = "\"" + Password + "\"";
+                config.allowedAuthAlgorithms.set(WifiConfiguration.AuthAlgorithm.SHARED);
+                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.CCMP);
+                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.TKIP);
+                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.WEP40);
+                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.WEP104);
+                config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
+                config.wepTxKeyIndex = 0;
+            }
+            if (Type == 3) // WIFICIPHER_WPA
+            {
+                config.preSharedKey = "\"" + Password + "\"";
+                config.hiddenSSID = true;
+                config.allowedAuthAlgorithms.set(WifiConfiguration.AuthAlgorithm.OPEN);
+                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.TKIP);
+                config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.WPA_PSK);
+                config.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.TKIP);
+                config.allowedProtocols.set(WifiConfiguration.Protocol.RSN);
+                config.allowedProtocols.set(WifiConfiguration.Protocol.WPA);
+                config.allowedGroupCiphers.set(WifiConfiguration.GroupCipher.CCMP);
+                config.allowedPairwiseCiphers.set(WifiConfiguration.PairwiseCipher.CCMP);
+                config.status = WifiConfiguration.Status.ENABLED;
+            }
+            return config;
+        } finally {
+            Trace.endSection();
         }
-        return config;
     }
 
     public void connectWifiWithStaticIP(final String SSID, String PASSWORD, final String ip, final String gateway,
                              final String dns) {
-        WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
-        Log.d(TAG, "connectWifiWithStaticIP");
-        WifiConfiguration tempConfig = IsExsits(wifiManager, SSID);
-
-        if (tempConfig == null) {
-            final WifiConfiguration wifiConfig = CreateWifiInfo(wifiManager, SSID, PASSWORD, 3);
-            int wcgID = wifiManager.addNetwork(wifiConfig);
-            boolean b = wifiManager.enableNetwork(wcgID, true);
-            Log.d(TAG, "wcgID = " + wcgID + ", b = " + b);
+        Trace.beginSection("WifiHelper.connectWifiWithStaticIP");
+        try {
+            WifiManager wifiManager = (WifiManager) mContext.getApplicationContext().getSystemService(WIFI_SERVICE);
+            Log.d(TAG, "connectWifiWithStaticIP");
+            WifiConfiguration tempConfig = IsExsits(wifiManager, SSID);
+
+            if (tempConfig == null) {
+                final WifiConfiguration wifiConfig = CreateWifiInfo(wifiManager, SSID, PASSWORD, 3);
+                int wcgID = wifiManager.addNetwork(wifiConfig);
+                boolean b = wifiManager.enableNetwork(wcgID, true);
+                Log.d(TAG, "wcgID = " + wcgID + ", b = " + b);
+
+                Handler handler = new Handler();
+                handler.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        setStaticIPConfig(wifiConfig, ip, gateway, dns);
+                    }
+                }, 5000);
+            } else {
+                setStaticIPConfig(tempConfig, ip, gateway, dns);
+            }
 
-            Handler handler = new Handler();
-            handler.postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    setStaticIPConfig(wifiConfig, ip, gateway, dns);
-                }
-            }, 5000);
-        } else {
-            setStaticIPConfig(tempConfig, ip, gateway, dns);
+        } finally {
+            Trace.endSection();
         }
-
     }
 
     //system
@@ -301,31 +382,36 @@ public class WifiHelper extends AndroidHelper {
                                                 int prefixLength, InetAddress gateway, InetAddress[] dns)
             throws ClassNotFoundException, IllegalAccessException, IllegalArgumentException, InvocationTargetException,
             NoSuchMethodException, NoSuchFieldException, InstantiationException {
+        Trace.beginSection("WifiHelper.setStaticIpConfiguration");
+        try {
 
-        Log.d(TAG, "setStaticIpConfiguration, manager = " + manager.toString() + ", config = " + config
-                + ", ipAddress = " + ipAddress + ", prefixLength" + prefixLength + ", gateway = " + gateway);
-        // First set up IpAssignment to STATIC.
-        Object ipAssignment = getEnumValue("android.net.IpConfiguration$IpAssignment", "STATIC");
-        callMethod(config, "setIpAssignment", new String[]{"android.net.IpConfiguration$IpAssignment"},
-                new Object[]{ipAssignment});
-
-        // Then set properties in StaticIpConfiguration.
-        Object staticIpConfig = newInstance("android.net.StaticIpConfiguration");
-
-        Object linkAddress = newInstance("android.net.LinkAddress", new Class[]{InetAddress.class, int.class},
-                new Object[]{ipAddress, prefixLength});
-        setField(staticIpConfig, "ipAddress", linkAddress);
-        setField(staticIpConfig, "gateway", gateway);
-        ArrayList<Object> aa = (ArrayList<Object>) getField(staticIpConfig, "dnsServers");
-        aa.clear();
-        for (int i = 0; i < dns.length; i++)
-            aa.add(dns[i]);
-        callMethod(config, "setStaticIpConfiguration", new String[]{"android.net.StaticIpConfiguration"},
-                new Object[]{staticIpConfig});
-        Log.d(TAG, "conconconm" + config);
-        int updateNetwork = manager.updateNetwork(config);
-        boolean saveConfiguration = manager.saveConfiguration();
-        Log.d(TAG, "updateNetwork" + updateNetwork + saveConfiguration);
+            Log.d(TAG, "setStaticIpConfiguration, manager = " + manager.toString() + ", config = " + config
+                    + ", ipAddress = " + ipAddress + ", prefixLength" + prefixLength + ", gateway = " + gateway);
+            // First set up IpAssignment to STATIC.
+            Object ipAssignment = getEnumValue("android.net.IpConfiguration$IpAssignment", "STATIC");
+            callMethod(config, "setIpAssignment", new String[]{"android.net.IpConfiguration$IpAssignment"},
+                    new Object[]{ipAssignment});
+
+            // Then set properties in StaticIpConfiguration.
+            Object staticIpConfig = newInstance("android.net.StaticIpConfiguration");
+
+            Object linkAddress = newInstance("android.net.LinkAddress", new Class[]{InetAddress.class, int.class},
+                    new Object[]{ipAddress, prefixLength});
+            setField(staticIpConfig, "ipAddress", linkAddress);
+            setField(staticIpConfig, "gateway", gateway);
+            ArrayList<Object> aa = (ArrayList<Object>) getField(staticIpConfig, "dnsServers");
+            aa.clear();
+            for (int i = 0; i < dns.length; i++)
+                aa.add(dns[i]);
+            callMethod(config, "setStaticIpConfiguration", new String[]{"android.net.StaticIpConfiguration"},
+                    new Object[]{staticIpConfig});
+            Log.d(TAG, "conconconm" + config);
+            int updateNetwork = manager.updateNetwork(config);
+            boolean saveConfiguration = manager.saveConfiguration();
+            Log.d(TAG, "updateNetwork" + updateNetwork + saveConfiguration);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     private static void setField(Object object, String fieldName, Object value)
@@ -0,0 +1,68 @@
+package com.viavr.watchdog;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Сравнение бэкендов ProcessTable на устройстве, результат в logcat с тегом WATCHDOG.
+ * adb shell am instrument -w -e class com.viavr.watchdog.ProcessTableBenchmark com.viavr.watchdog.test/androidx.test.runner.AndroidJUnitRunner
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProcessTableBenchmark {
+
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+
+    @Test
+    public void compareBackends() {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        ActivityManager activityManager = (ActivityManager)appContext.getSystemService(Context.ACTIVITY_SERVICE);
+
+        ProcessTable.Source[] sources = {
+                new ActivityManagerProcessSource(activityManager),
+                new ProcfsProcessSource()
+        };
+
+        for (ProcessTable.Source source : sources) {
+            ProcessTable table = source.snapshot();
+
+            // свой процесс виден любому бэкенду
+            assertTrue(source.getName(), table.isAlive(Process.myPid()));
+
+            for (int i = 0; i < WARMUP; i++) source.snapshot();
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            long cpuStart = SystemClock.currentThreadTimeMillis();
+
+            for (int i = 0; i < ITERATIONS; i++) source.snapshot();
+
+            long wallUs = (SystemClock.elapsedRealtimeNanos() - start) / 1000 / ITERATIONS;
+            long cpuMs = SystemClock.currentThreadTimeMillis() - cpuStart;
+
+            Log.i("WATCHDOG", "ProcessTableBenchmark " + source.getName() + ": " + table.size() + " processes, " +
+                    wallUs + " us/snapshot, thread cpu " + cpuMs + " ms per " + ITERATIONS);
+        }
+    }
+
+    @Test
+    public void lookupByName() {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        ActivityManager activityManager = (ActivityManager)appContext.getSystemService(Context.ACTIVITY_SERVICE);
+
+        ProcessTable table = new ActivityManagerProcessSource(activityManager).snapshot();
+
+        assertTrue(table.contains(appContext.getPackageName()));
+        assertEquals(Process.myPid(), table.findPid(appContext.getPackageName()));
+        assertEquals(-1, table.findPid("com.viavr.not.running"));
+    }
+}
@@ -0,0 +1,57 @@
+package com.viavr.watchdog;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.provider.Settings;
+
+// эвенты TYPE_WINDOW_STATE_CHANGED от WatchdogAccessibilityService
+// adb shell settings put secure enabled_accessibility_services com.viavr.watchdog/.WatchdogAccessibilityService
+// adb shell settings put secure accessibility_enabled 1
+public class AccessibilityForegroundSource implements ForegroundSource {
+
+    // accessibility сервис живет своей жизнью, поэтому связь через статик
+    private static volatile AccessibilityForegroundSource current;
+
+    private Callback callback;
+
+    @Override
+    public String getName() {
+        return "accessibility";
+    }
+
+    @Override
+    public boolean start(Context context, Callback callback) {
+        if(!isServiceEnabled(context)) return false;
+
+        this.callback = callback;
+        current = this;
+
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        if(current == this) current = null;
+    }
+
+    static void dispatch(String packageName){
+        AccessibilityForegroundSource source = current;
+
+        if(source != null)
+            source.callback.onForegroundEvent(source, packageName);
+    }
+
+    private static boolean isServiceEnabled(Context context){
+        String enabledServices = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES);
+
+        if(enabledServices == null) return false;
+
+        ComponentName component = new ComponentName(context, WatchdogAccessibilityService.class);
+
+        for (String service : enabledServices.split(":")) {
+            if(component.equals(ComponentName.unflattenFromString(service))) return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,35 @@
+package com.viavr.watchdog;
+
+import android.app.ActivityManager;
+
+import java.util.List;
+
+// список процессов через ActivityManager.getRunningAppProcesses (один binder вызов)
+public class ActivityManagerProcessSource implements ProcessTable.Source {
+
+    private final ActivityManager activityManager;
+
+    public ActivityManagerProcessSource(ActivityManager activityManager){
+        this.activityManager = activityManager;
+    }
+
+    @Override
+    public String getName() {
+        return "activity_manager";
+    }
+
+    @Override
+    public ProcessTable snapshot() {
+        List<ActivityManager.RunningAppProcessInfo> runningAppProcesses = activityManager.getRunningAppProcesses();
+
+        if(runningAppProcesses == null) return ProcessTable.EMPTY;
+
+        ProcessTable.Builder builder = new ProcessTable.Builder(runningAppProcesses.size());
+
+        for(ActivityManager.RunningAppProcessInfo runningProInfo:runningAppProcesses){
+            builder.add(runningProInfo.processName, runningProInfo.pid);
+        }
+
+        return builder.build();
+    }
+}
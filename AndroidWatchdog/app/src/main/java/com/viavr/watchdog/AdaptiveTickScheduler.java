@@ -0,0 +1,112 @@
+package com.viavr.watchdog;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+// планировщик тиков с переменным периодом на WatchdogScheduler, сам период считает TickCadence
+// FAST - сразу после смены foreground приложения, истечения вайтлиста или перезапуска лаунчера
+// IDLE - экран выключен и foreground приложение не менялось несколько тиков
+// NORMAL - всё остальное время, период из конфига
+public class AdaptiveTickScheduler {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    public interface Tick {
+        // eventDriven - тик вызван эвентом или идет в FAST режиме, foreground можно брать из трекера
+        void run(boolean eventDriven);
+    }
+
+    static final String JOB_NAME = "tick";
+
+    private final WatchdogScheduler scheduler;
+    private final Tick tick;
+
+    private TickCadence cadence = new TickCadence(0);
+    private boolean running;
+
+    public AdaptiveTickScheduler(WatchdogScheduler scheduler, Tick tick){
+        this.scheduler = scheduler;
+        this.tick = tick;
+    }
+
+    public synchronized void start(long basePeriodMs){
+        cadence = new TickCadence(basePeriodMs);
+        running = true;
+
+        scheduleNext(0);
+    }
+
+    public synchronized void stop(){
+        running = false;
+
+        scheduler.cancel(JOB_NAME);
+    }
+
+    // новый период вступает в силу сразу, а не после уже взведенного ожидания
+    public synchronized void setBasePeriod(long basePeriodMs){
+        if(cadence.getBasePeriodMs() == basePeriodMs) return;
+
+        cadence.setBasePeriod(basePeriodMs);
+
+        if(running) scheduleNext(0);
+    }
+
+    // следующие несколько тиков идут с коротким периодом
+    public synchronized void tighten(String reason){
+        if(cadence.tighten()) {
+            Log.i(LOG_TAG, "Tick tighten: " + reason);
+            scheduleNext(cadence.getFastPeriodMs());
+        }
+    }
+
+    // внеочередной тик прямо сейчас, дальше FAST режим
+    public synchronized void tickNow(String reason){
+        Log.d(LOG_TAG, "Tick now: " + reason);
+
+        cadence.tickNow();
+
+        scheduleNext(0);
+    }
+
+    // состояние на текущем тике, по нему решаем про IDLE и FAST
+    public synchronized void report(String foregroundApp, boolean interactive){
+        cadence.report(foregroundApp, interactive);
+    }
+
+    public synchronized TickCadence.Mode getMode(){
+        return cadence.getMode();
+    }
+
+    public synchronized long getTickCount(){
+        return cadence.getTickCount();
+    }
+
+    // фактическая частота тиков, включая внеочередные
+    public synchronized double getEffectiveTicksPerMinute(){
+        return cadence.getEffectiveTicksPerMinute();
+    }
+
+    private void runTick(){
+        boolean eventDriven;
+
+        synchronized (this){
+            if(!running) return;
+
+            eventDriven = cadence.onTick(SystemClock.elapsedRealtime());
+        }
+
+        try {
+            tick.run(eventDriven);
+        }catch (Exception e){
+            Log.e(LOG_TAG, "Tick failed: " + e);
+        }finally {
+            synchronized (this){
+                if(running) scheduleNext(cadence.nextDelay());
+            }
+        }
+    }
+
+    private void scheduleNext(long delayMs){
+        scheduler.schedule(JOB_NAME, delayMs, this::runTick);
+    }
+}
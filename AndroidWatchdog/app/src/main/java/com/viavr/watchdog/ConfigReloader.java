@@ -0,0 +1,145 @@
+package com.viavr.watchdog;
+
+import android.os.FileObserver;
+import android.util.Log;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+// горячая перезагрузка watchdog_config.json
+// следим за папкой (лаунчер может перезаписывать файл через rename), эвенты сглаживаются и
+// обрабатываются на потоке WatchdogScheduler. Неизменный файл не парсится: сначала сверяем размер и mtime,
+// затем контрольную сумму содержимого
+public class ConfigReloader {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    // лаунчер пишет файл несколькими вызовами, ждем пока успокоится
+    static final long DEBOUNCE_MS = 200;
+
+    public interface Listener {
+        void onConfigChanged(WatchdogConfig config);
+    }
+
+    private final File configFile;
+    private final WatchdogScheduler scheduler;
+    private final Listener listener;
+
+    private FileObserver fileObserver;
+
+    private long lastLength = -1;
+    private long lastModified = -1;
+    private long lastChecksum = -1;
+
+    private final LongAdder parseErrorsMetric = Metrics.get().counter("config_parse_errors");
+
+    public ConfigReloader(File configFile, WatchdogScheduler scheduler, Listener listener){
+        this.configFile = configFile;
+        this.scheduler = scheduler;
+        this.listener = listener;
+    }
+
+    public File getConfigFile(){
+        return configFile;
+    }
+
+    // контрольная сумма уже примененного содержимого (например из ConfigSnapshot), такой файл парсить не будем
+    public synchronized void setKnownChecksum(long checksum){
+        lastChecksum = checksum;
+    }
+
+    public synchronized long getLastChecksum(){
+        return lastChecksum;
+    }
+
+    public void startWatching(){
+        String fileName = configFile.getName();
+
+        fileObserver = new FileObserver(configFile.getParent(), FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.CREATE) {
+            @Override
+            public void onEvent(int event, String path) {
+                if(fileName.equals(path))
+                    scheduler.schedule("config_reload", DEBOUNCE_MS, ConfigReloader.this::check);
+            }
+        };
+
+        fileObserver.startWatching();
+    }
+
+    public void stopWatching(){
+        if(fileObserver != null) fileObserver.stopWatching();
+
+        fileObserver = null;
+        scheduler.cancel("config_reload");
+    }
+
+    // перечитывает конфиг если файл изменился, true - слушатель получил новый конфиг
+    public synchronized boolean check(){
+        if(!configFile.exists()){
+            Log.e(LOG_TAG,"Config file '" + configFile.getAbsolutePath() + "' not exists!");
+            return false;
+        }
+
+        long length = configFile.length();
+        long modified = configFile.lastModified();
+
+        if(length == lastLength && modified == lastModified) return false;
+
+        byte[] content;
+
+        try {
+            content = readFully(configFile);
+        } catch (IOException e) {
+            Log.e(LOG_TAG,"Error reading '" + configFile.getAbsolutePath() + "': " + e.getMessage());
+            return false;
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(content);
+
+        long checksum = crc32.getValue();
+
+        lastLength = length;
+        lastModified = modified;
+
+        // файл перезаписан тем же содержимым (лаунчер делает так при каждом старте)
+        if(checksum == lastChecksum) {
+            Log.i(LOG_TAG,"Config '" + configFile.getAbsolutePath() + "' unchanged, skip parsing");
+            return false;
+        }
+
+        WatchdogConfig config;
+
+        try {
+            config = WatchdogConfig.parse(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // битый конфиг не применяем, действует предыдущий
+            Log.e(LOG_TAG,"Error parsing '" + configFile.getAbsolutePath() + "': " + e.getMessage());
+            parseErrorsMetric.increment();
+            return false;
+        }
+
+        lastChecksum = checksum;
+
+        Log.i(LOG_TAG,"Config '" + configFile.getAbsolutePath() + "' read success");
+
+        listener.onConfigChanged(config);
+
+        return true;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int)Math.max(file.length(), 256));
+            byte[] buffer = new byte[4096];
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1)
+                outputStream.write(buffer, 0, read);
+
+            return outputStream.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.viavr.watchdog;
+
+import android.content.Context;
+
+// источник эвентов о смене foreground приложения для ForegroundTracker
+public interface ForegroundSource {
+
+    interface Callback {
+        void onForegroundEvent(ForegroundSource source, String packageName);
+    }
+
+    String getName();
+
+    // false если источник недоступен на этом устройстве (нет прав, скрытое API и т.д.)
+    boolean start(Context context, Callback callback);
+
+    void stop();
+}
@@ -0,0 +1,107 @@
+package com.viavr.watchdog;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// отслеживает foreground приложение по эвентам вместо опроса getRunningTasks на каждом тике
+public class ForegroundTracker implements ForegroundSource.Callback {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    public interface Listener {
+        void onForegroundChanged(String packageName, String sourceName);
+    }
+
+    private final Context context;
+    private final Listener listener;
+
+    private final List<ForegroundSource> sources = new ArrayList<>();
+    private final List<ForegroundSource> fallbackSources = new ArrayList<>();
+    private final List<ForegroundSource> activeSources = new ArrayList<>();
+
+    private volatile String foregroundApp;
+
+    public ForegroundTracker(Context context, Listener listener){
+        this.context = context;
+        this.listener = listener;
+    }
+
+    // основные источники, стартуют всегда
+    public void addSource(ForegroundSource source){
+        sources.add(source);
+    }
+
+    // запасные источники, стартуют только если ни один основной не поднялся
+    public void addFallbackSource(ForegroundSource source){
+        fallbackSources.add(source);
+    }
+
+    public synchronized void start(){
+        stop();
+
+        for (ForegroundSource source : sources)
+            startSource(source);
+
+        if(activeSources.isEmpty()){
+            for (ForegroundSource source : fallbackSources)
+                startSource(source);
+        }
+
+        if(activeSources.isEmpty())
+            Log.e(LOG_TAG, "ForegroundTracker: no event sources available, polling only");
+    }
+
+    public synchronized void stop(){
+        for (ForegroundSource source : activeSources)
+            source.stop();
+
+        activeSources.clear();
+        foregroundApp = null;
+    }
+
+    private void startSource(ForegroundSource source){
+        boolean started;
+
+        try {
+            started = source.start(context, this);
+        }catch (Exception e){
+            Log.e(LOG_TAG, "ForegroundTracker: " + source.getName() + " failed: " + e);
+            started = false;
+        }
+
+        if(started){
+            activeSources.add(source);
+            Log.i(LOG_TAG, "ForegroundTracker: " + source.getName() + " started");
+        }else{
+            Log.i(LOG_TAG, "ForegroundTracker: " + source.getName() + " unavailable");
+        }
+    }
+
+    public synchronized boolean hasActiveSources(){
+        return !activeSources.isEmpty();
+    }
+
+    // null если ни одного эвента еще не было
+    public String getForegroundApp(){
+        return foregroundApp;
+    }
+
+    // синхронизация с результатом прямого опроса (страховочный тик)
+    public void setForegroundApp(String packageName){
+        if(packageName == null) return;
+
+        foregroundApp = packageName;
+    }
+
+    @Override
+    public void onForegroundEvent(ForegroundSource source, String packageName) {
+        if(packageName == null || packageName.equals(foregroundApp)) return;
+
+        foregroundApp = packageName;
+
+        listener.onForegroundChanged(packageName, source.getName());
+    }
+}
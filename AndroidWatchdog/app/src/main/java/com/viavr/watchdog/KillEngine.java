@@ -0,0 +1,320 @@
+package com.viavr.watchdog;
+
+import android.app.ActivityManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// убийство пакетов пачкой, со всеми процессами пакета (pkg, pkg:remote, pkg:unity...)
+// за один проход по снимку процессов. Эскалация:
+// 1. killBackgroundProcesses + SIGKILL всем найденным pid (без первого второе не работает)
+// 2. через ESCALATE_AFTER_MS если пакет еще жив - forceStopPackage (скрытое API, вачдог под android.uid.system)
+//    и SIGKILL процессам, которые успели подняться заново
+// смерть проверяется по снимкам процессов каждые VERIFY_EVERY_MS, после DEADLINE_MS пакет считается неубиваемым
+// все вызовы на потоке WatchdogScheduler
+public class KillEngine {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    static final long VERIFY_EVERY_MS = 100;
+    static final long ESCALATE_AFTER_MS = 500;
+    static final long DEADLINE_MS = 2000;
+
+    static final String JOB_NAME = "kill_verify";
+
+    public static final int STAGE_KILL = 1;
+    public static final int STAGE_FORCE_STOP = 2;
+
+    // то, чем убиваем, отдельно от логики эскалации
+    public interface Backend {
+        void killBackgroundProcesses(String packageName);
+
+        void killProcess(int pid);
+
+        // false если скрытое API недоступно
+        boolean forceStopPackage(String packageName);
+    }
+
+    public interface Listener {
+        void onKillFinished(Result result);
+    }
+
+    public static final class Result {
+        public final String packageName;
+        public final boolean dead;
+        // от первого сигнала до снимка, в котором процессов пакета уже нет
+        public final long timeToDeadMs;
+        public final int stage;
+        public final int pidsKilled;
+
+        Result(String packageName, boolean dead, long timeToDeadMs, int stage, int pidsKilled){
+            this.packageName = packageName;
+            this.dead = dead;
+            this.timeToDeadMs = timeToDeadMs;
+            this.stage = stage;
+            this.pidsKilled = pidsKilled;
+        }
+
+        @Override
+        public String toString() {
+            return packageName + (dead ? " dead in " + timeToDeadMs + "ms" : " survived " + timeToDeadMs + "ms") +
+                    " (stage " + stage + ", " + pidsKilled + " pids)";
+        }
+    }
+
+    private final Backend backend;
+    private ProcessTable.Source processSource;
+    private final WatchdogScheduler scheduler;
+
+    private Listener listener;
+
+    // пакеты, смерть которых еще не подтверждена
+    private final HashMap<String, Kill> pending = new HashMap<>();
+
+    private int killedCount;
+    private int survivedCount;
+    private long maxTimeToDeadMs;
+
+    public KillEngine(Backend backend, ProcessTable.Source processSource, WatchdogScheduler scheduler){
+        this.backend = backend;
+        this.processSource = processSource;
+        this.scheduler = scheduler;
+    }
+
+    public void setListener(Listener listener){
+        this.listener = listener;
+    }
+
+    // бэкенд снимков меняется вместе с конфигом
+    public void setProcessSource(ProcessTable.Source processSource){
+        this.processSource = processSource;
+    }
+
+    // убивает все процессы пакетов из снимка, повторный вызов для пакета в процессе убийства ничего не делает
+    public void kill(Collection<String> packages, ProcessTable processes){
+        long now = SystemClock.elapsedRealtime();
+
+        HashMap<String, Kill> batch = new HashMap<>();
+
+        for (String packageName : packages) {
+            if(packageName == null || pending.containsKey(packageName)) continue;
+
+            batch.put(packageName, new Kill(packageName, now));
+        }
+
+        if(batch.isEmpty()) return;
+
+        for (Kill kill : batch.values()) {
+            EventLog.log(EventLog.KILL, kill.packageName);
+            backend.killBackgroundProcesses(kill.packageName);
+        }
+
+        killResolved(batch, processes);
+
+        pending.putAll(batch);
+
+        if(!scheduler.isScheduled(JOB_NAME))
+            scheduler.schedule(JOB_NAME, VERIFY_EVERY_MS, this::verify);
+    }
+
+    public boolean isPending(String packageName){
+        return pending.containsKey(packageName);
+    }
+
+    public int getPendingCount(){
+        return pending.size();
+    }
+
+    public int getKilledCount(){
+        return killedCount;
+    }
+
+    public int getSurvivedCount(){
+        return survivedCount;
+    }
+
+    public long getMaxTimeToDeadMs(){
+        return maxTimeToDeadMs;
+    }
+
+    public void cancel(){
+        pending.clear();
+        scheduler.cancel(JOB_NAME);
+    }
+
+    @Override
+    public String toString() {
+        return "KillEngine{pending=" + pending.size() + ", killed=" + killedCount + ", survived=" + survivedCount + ", maxTimeToDead=" + maxTimeToDeadMs + "ms}";
+    }
+
+    // один снимок на все пакеты в работе
+    void verify(){
+        if(pending.isEmpty()) return;
+
+        long now = SystemClock.elapsedRealtime();
+
+        ProcessTable processes;
+
+        WatchdogTrace.begin("kill:verify");
+
+        try {
+            processes = processSource.snapshot();
+        } finally {
+            WatchdogTrace.end();
+        }
+
+        HashMap<String, List<Integer>> alive = resolve(pending.keySet(), processes);
+
+        HashMap<String, Kill> escalate = new HashMap<>();
+
+        for (Iterator<Kill> it = pending.values().iterator(); it.hasNext(); ) {
+            Kill kill = it.next();
+            long elapsed = now - kill.startElapsed;
+
+            if(!alive.containsKey(kill.packageName)) {
+                it.remove();
+                finish(new Result(kill.packageName, true, elapsed, kill.stage, kill.pidsKilled));
+            } else if(elapsed >= DEADLINE_MS) {
+                it.remove();
+                finish(new Result(kill.packageName, false, elapsed, kill.stage, kill.pidsKilled));
+            } else if(kill.stage < STAGE_FORCE_STOP && elapsed >= ESCALATE_AFTER_MS) {
+                kill.stage = STAGE_FORCE_STOP;
+                escalate.put(kill.packageName, kill);
+            }
+        }
+
+        if(!escalate.isEmpty()) {
+            for (Kill kill : escalate.values()) {
+                EventLog.log(EventLog.KILL_ESCALATED, ESCALATE_AFTER_MS, kill.packageName);
+
+                if(!backend.forceStopPackage(kill.packageName))
+                    backend.killBackgroundProcesses(kill.packageName);
+            }
+
+            // процессы могли подняться заново с другими pid
+            killResolved(escalate, processes);
+        }
+
+        if(!pending.isEmpty())
+            scheduler.schedule(JOB_NAME, VERIFY_EVERY_MS, this::verify);
+    }
+
+    private void killResolved(HashMap<String, Kill> kills, ProcessTable processes){
+        HashMap<String, List<Integer>> resolved = resolve(kills.keySet(), processes);
+
+        for (Map.Entry<String, List<Integer>> entry : resolved.entrySet()) {
+            Kill kill = kills.get(entry.getKey());
+
+            for (int pid : entry.getValue()) {
+                EventLog.log(EventLog.KILL_PID, pid, kill.packageName);
+                backend.killProcess(pid);
+                kill.pidsKilled++;
+            }
+        }
+    }
+
+    private void finish(Result result){
+        if(result.dead) {
+            killedCount++;
+            maxTimeToDeadMs = Math.max(maxTimeToDeadMs, result.timeToDeadMs);
+            Log.i(LOG_TAG, "Kill: " + result);
+        } else {
+            survivedCount++;
+            Log.e(LOG_TAG, "Kill failed: " + result);
+        }
+
+        if(listener != null) listener.onKillFinished(result);
+    }
+
+    // пакет -> pid всех его процессов, включая pkg:suffix, за один проход по снимку
+    static HashMap<String, List<Integer>> resolve(Collection<String> packages, ProcessTable processes){
+        HashMap<String, List<Integer>> resolved = new HashMap<>();
+
+        for (int i = 0; i < processes.size(); i++) {
+            String processName = processes.getName(i);
+            int separator = processName.indexOf(':');
+            String packageName = separator > 0 ? processName.substring(0, separator) : processName;
+
+            if(!packages.contains(packageName)) continue;
+
+            List<Integer> pids = resolved.get(packageName);
+
+            if(pids == null) {
+                pids = new ArrayList<>(2);
+                resolved.put(packageName, pids);
+            }
+
+            pids.add(processes.getPid(i));
+        }
+
+        return resolved;
+    }
+
+    private static final class Kill {
+        final String packageName;
+        final long startElapsed;
+
+        int stage = STAGE_KILL;
+        int pidsKilled;
+
+        Kill(String packageName, long startElapsed){
+            this.packageName = packageName;
+            this.startElapsed = startElapsed;
+        }
+    }
+
+    // боевой бэкенд через ActivityManager
+    public static final class ActivityManagerBackend implements Backend {
+
+        final String LOG_TAG = "WATCHDOG";
+
+        private final ActivityManager activityManager;
+
+        private Method forceStopMethod;
+        private boolean forceStopResolved = false;
+
+        public ActivityManagerBackend(ActivityManager activityManager){
+            this.activityManager = activityManager;
+        }
+
+        @Override
+        public void killBackgroundProcesses(String packageName) {
+            activityManager.killBackgroundProcesses(packageName); // убивает "приложуху" но не убивает процесс
+        }
+
+        @Override
+        public void killProcess(int pid) {
+            android.os.Process.killProcess(pid);
+        }
+
+        @Override
+        public boolean forceStopPackage(String packageName) {
+            if(!forceStopResolved) {
+                forceStopResolved = true;
+
+                try {
+                    forceStopMethod = ActivityManager.class.getMethod("forceStopPackage", String.class);
+                } catch (Throwable e) {
+                    Log.e(LOG_TAG, "forceStopPackage unavailable: " + e);
+                }
+            }
+
+            if(forceStopMethod == null) return false;
+
+            try {
+                forceStopMethod.invoke(activityManager, packageName);
+                return true;
+            } catch (Throwable e) {
+                Log.e(LOG_TAG, "forceStopPackage " + packageName + " failed: " + e);
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.viavr.watchdog;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+import java.util.Map;
+
+// метрики без dumpsys и logcat, только чтение:
+// adb shell content query --uri content://com.viavr.watchdog.metrics
+// строка на метрику: name, type (counter/gauge/histogram), value (для гистограммы - число замеров), p50, p95, p99, max
+public class MetricsProvider extends ContentProvider {
+
+    static final String[] COLUMNS = {"name", "type", "value", "p50", "p95", "p99", "max"};
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        Metrics metrics = Metrics.get();
+
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+
+        for (Map.Entry<String, Long> counter : metrics.getCounters().entrySet())
+            cursor.addRow(new Object[]{counter.getKey(), "counter", counter.getValue(), null, null, null, null});
+
+        for (Map.Entry<String, Long> gauge : metrics.getGauges().entrySet())
+            cursor.addRow(new Object[]{gauge.getKey(), "gauge", gauge.getValue(), null, null, null, null});
+
+        for (LatencyHistogram histogram : metrics.getHistograms().values())
+            cursor.addRow(new Object[]{histogram.getName(), "histogram", histogram.getCount(),
+                    histogram.getPercentile(0.5), histogram.getPercentile(0.95), histogram.getPercentile(0.99), histogram.getMax()});
+
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "vnd.android.cursor.dir/vnd.com.viavr.watchdog.metric";
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("read only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("read only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("read only");
+    }
+}
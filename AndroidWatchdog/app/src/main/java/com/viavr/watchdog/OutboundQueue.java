@@ -0,0 +1,561 @@
+package com.viavr.watchdog;
+
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// очередь исходящих запросов вачдога
+// POST'ы лежат на диске до подтверждения сервером и переживают рестарт сервиса и ребут
+// повторы с экспоненциальной задержкой и джиттером отдельно по каждому эндпоинту, не чаще одного запроса в полете на эндпоинт
+// запрос с тем же dedupeKey заменяет еще не отправленный предыдущий
+// очередь разбирается только при живой сети (NetworkCallback), вся работа идет на потоке WatchdogScheduler
+// на диск пишутся только метод, url и тело: токен и прочие общие заголовки подставляет HeaderSupplier в момент отправки
+public class OutboundQueue {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    static final int FILE_VERSION = 3;
+
+    // v2 хранил заголовки вместе с токеном, такие файлы читаем и перезаписываем без них
+    static final int FILE_VERSION_HEADERS = 2;
+    static final String FILE_SUFFIX = ".req";
+
+    static final long BACKOFF_BASE_MS = 10 * 1000;
+    static final long BACKOFF_MAX_MS = 30 * 60 * 1000;
+
+    // без Retry-After после 429 ждем столько
+    static final long DEFAULT_RETRY_AFTER_MS = 5 * 60 * 1000;
+
+    // после появления сети стартуем вразброс, а не всем парком в одну секунду
+    static final long RECONNECT_JITTER_MS = 10 * 1000;
+
+    static final int MAX_ENTRIES = 256;
+
+    public interface ResponseHandler {
+        void onResponse(Entry entry, HttpTransport.Response response);
+
+        // response == null если ответа не было (сеть, таймаут), retrying - запрос остался в очереди и будет повторен
+        void onFailure(Entry entry, HttpTransport.Response response, boolean retrying);
+    }
+
+    public interface HeaderSupplier {
+        // заголовки на момент отправки поверх заголовков самого запроса, null - отправлять пока нечем (нет токена)
+        Map<String, String> getHeaders(Entry entry);
+    }
+
+    public static final class Entry {
+        final long id;
+        public final String kind;
+        public final String dedupeKey;
+        public final String method;
+        public final String url;
+        public final Map<String, String> headers; // только в памяти, на диск не попадают
+        public final byte[] body;
+        public final long enqueuedAt; // System.currentTimeMillis(), чтобы латенси считалась и через ребут
+        public final boolean persistent;
+
+        int attempts;
+        boolean legacy; // прочитан из файла v2 с заголовками
+
+        Entry(long id, String kind, String dedupeKey, String method, String url, Map<String, String> headers, byte[] body, long enqueuedAt, boolean persistent){
+            this.id = id;
+            this.kind = kind;
+            this.dedupeKey = dedupeKey;
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.body = body;
+            this.enqueuedAt = enqueuedAt;
+            this.persistent = persistent;
+        }
+    }
+
+    private static final class Endpoint {
+        int failures;
+        long blockedUntilElapsed;
+        long inFlightId = -1;
+
+        // метрики по пути эндпоинта, пишутся с потока транспорта
+        final LatencyHistogram latency;
+        final LongAdder errors;
+
+        Endpoint(String path){
+            latency = Metrics.get().histogram("http_ms " + path);
+            errors = Metrics.get().counter("http_errors " + path);
+        }
+    }
+
+    private final File directory;
+    private final HttpTransport transport;
+    private final WatchdogScheduler scheduler;
+    private final Random random = new Random();
+
+    private final TreeMap<Long, Entry> entries = new TreeMap<>();
+    private final HashMap<String, Endpoint> endpoints = new HashMap<>();
+    private final HashMap<String, ResponseHandler> handlers = new HashMap<>();
+
+    private HeaderSupplier headerSupplier;
+
+    private long nextId = 1;
+    private boolean online = true;
+
+    private ConnectivityManager connectivityManager;
+    private ConnectivityManager.NetworkCallback networkCallback;
+
+    // метрики
+    private long deliveredCount;
+    private long droppedCount;
+    private long lastDrainLatencyMs;
+    private long maxDrainLatencyMs;
+
+    public OutboundQueue(File directory, HttpTransport transport, WatchdogScheduler scheduler){
+        this.directory = directory;
+        this.transport = transport;
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void registerHandler(String kind, ResponseHandler handler){
+        handlers.put(kind, handler);
+    }
+
+    public synchronized void setHeaderSupplier(HeaderSupplier supplier){
+        headerSupplier = supplier;
+    }
+
+    // поднимаем неотправленное с диска
+    public synchronized void load(){
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            Log.e(LOG_TAG, "Outbox directory create failed: " + directory);
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if(files == null) return;
+
+        for (File file : files) {
+            if(!file.getName().endsWith(FILE_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+
+            try {
+                Entry entry = read(file);
+
+                // старый формат с токеном на диске, переписываем
+                if(entry.legacy) write(entry);
+
+                entries.put(entry.id, entry);
+                nextId = Math.max(nextId, entry.id + 1);
+            } catch (IOException | RuntimeException e) {
+                Log.e(LOG_TAG, "Outbox entry " + file.getName() + " is broken: " + e.getMessage());
+                file.delete();
+            }
+        }
+
+        Log.i(LOG_TAG, "Outbox loaded: " + entries.size() + " requests");
+    }
+
+    // очередь разбирается пока есть дефолтная сеть, колбэки приходят на поток планировщика
+    public void startConnectivityTracking(ConnectivityManager connectivityManager){
+        this.connectivityManager = connectivityManager;
+
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                setOnline(true);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                setOnline(false);
+            }
+        };
+
+        synchronized (this) {
+            online = connectivityManager.getActiveNetwork() != null;
+        }
+
+        connectivityManager.registerDefaultNetworkCallback(networkCallback, new Handler(scheduler.getLooper()));
+    }
+
+    public void stopConnectivityTracking(){
+        if(connectivityManager != null && networkCallback != null)
+            connectivityManager.unregisterNetworkCallback(networkCallback);
+
+        networkCallback = null;
+        scheduler.cancel("outbox_drain");
+    }
+
+    public synchronized void setOnline(boolean value){
+        if(online == value) return;
+
+        online = value;
+
+        Log.i(LOG_TAG, "Outbox network " + (value ? "available" : "lost") + ", pending " + entries.size());
+
+        if(online) scheduler.schedule("outbox_drain", (long)(random.nextDouble() * RECONNECT_JITTER_MS), this::drain);
+    }
+
+    public synchronized void enqueue(String kind, String dedupeKey, String method, String url, Map<String, String> headers, byte[] body, boolean persistent){
+        // заменяем предыдущий еще не отправленный запрос
+        if(dedupeKey != null) {
+            Iterator<Entry> iterator = entries.values().iterator();
+
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+
+                if(dedupeKey.equals(entry.dedupeKey) && !isInFlight(entry)) {
+                    iterator.remove();
+                    deleteFile(entry);
+                }
+            }
+        }
+
+        // переполнение, выкидываем самые старые
+        while (entries.size() >= MAX_ENTRIES) {
+            Entry oldest = null;
+
+            for (Entry entry : entries.values()) {
+                if(!isInFlight(entry)) { oldest = entry; break; }
+            }
+
+            if(oldest == null) break;
+
+            entries.remove(oldest.id);
+            deleteFile(oldest);
+            droppedCount++;
+
+            Log.e(LOG_TAG, "Outbox overflow, dropped " + oldest.kind + " " + oldest.url);
+        }
+
+        Entry entry = new Entry(nextId++, kind, dedupeKey, method, url, new HashMap<>(headers), body, System.currentTimeMillis(), persistent);
+
+        if(persistent) {
+            try {
+                write(entry);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Outbox write failed: " + e.getMessage());
+            }
+        }
+
+        entries.put(entry.id, entry);
+
+        scheduler.post(this::drain);
+    }
+
+    public synchronized int getDepth(){
+        return entries.size();
+    }
+
+    public synchronized int getPendingCount(String kind){
+        int count = 0;
+
+        for (Entry entry : entries.values()) {
+            if(entry.kind.equals(kind)) count++;
+        }
+
+        return count;
+    }
+
+    public synchronized long getLastDrainLatencyMs(){
+        return lastDrainLatencyMs;
+    }
+
+    public synchronized long getMaxDrainLatencyMs(){
+        return maxDrainLatencyMs;
+    }
+
+    public synchronized long getDeliveredCount(){
+        return deliveredCount;
+    }
+
+    public synchronized long getDroppedCount(){
+        return droppedCount;
+    }
+
+    // отправляем по одному запросу на каждый свободный эндпоинт
+    public synchronized void drain(){
+        if(!online) return;
+
+        long now = SystemClock.elapsedRealtime();
+        long nextWakeup = Long.MAX_VALUE;
+
+        for (Entry entry : entries.values()) {
+            Endpoint endpoint = endpoint(entry.url);
+
+            if(endpoint.inFlightId >= 0) continue;
+
+            if(now < endpoint.blockedUntilElapsed) {
+                nextWakeup = Math.min(nextWakeup, endpoint.blockedUntilElapsed);
+                continue;
+            }
+
+            Map<String, String> headers = headers(entry);
+
+            // без токена ждем следующего drain (setToken, сеть)
+            if(headers == null) continue;
+
+            send(entry, endpoint, headers);
+        }
+
+        if(nextWakeup != Long.MAX_VALUE)
+            scheduler.scheduleAtElapsed("outbox_drain", nextWakeup, this::drain);
+    }
+
+    private Map<String, String> headers(Entry entry){
+        if(headerSupplier == null) return entry.headers;
+
+        Map<String, String> supplied = headerSupplier.getHeaders(entry);
+
+        if(supplied == null) return null;
+
+        HashMap<String, String> headers = new HashMap<>(supplied);
+        headers.putAll(entry.headers);
+
+        return headers;
+    }
+
+    private void send(Entry entry, Endpoint endpoint, Map<String, String> headers){
+        endpoint.inFlightId = entry.id;
+        entry.attempts++;
+
+        // ответы транспорта приходят на его поток, перекладываем на поток планировщика
+        transport.execute(new HttpTransport.Request(entry.method, entry.url, headers, entry.body), new HttpTransport.Callback() {
+            @Override
+            public void onResponse(HttpTransport.Response response) {
+                endpoint.latency.record(response.latencyMs);
+
+                if(response.isSuccessful() || response.statusCode == HttpURLConnection.HTTP_NOT_MODIFIED)
+                    scheduler.post(() -> onDelivered(entry, endpoint, response));
+                else
+                    scheduler.post(() -> onFailed(entry, endpoint, response, "HTTP " + response.statusCode));
+            }
+
+            @Override
+            public void onError(IOException error) {
+                endpoint.errors.increment();
+
+                scheduler.post(() -> onFailed(entry, endpoint, null, error.toString()));
+            }
+        });
+    }
+
+    private void onDelivered(Entry entry, Endpoint endpoint, HttpTransport.Response response){
+        synchronized (this) {
+            endpoint.inFlightId = -1;
+            endpoint.failures = 0;
+            endpoint.blockedUntilElapsed = 0;
+
+            if(entries.remove(entry.id) != null) deleteFile(entry);
+
+            deliveredCount++;
+            lastDrainLatencyMs = Math.max(0, System.currentTimeMillis() - entry.enqueuedAt);
+            maxDrainLatencyMs = Math.max(maxDrainLatencyMs, lastDrainLatencyMs);
+        }
+
+        ResponseHandler handler = getHandler(entry.kind);
+
+        if(handler != null) {
+            try {
+                handler.onResponse(entry, response);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Outbox " + entry.kind + " handler error: " + e);
+            }
+        }
+
+        drain();
+    }
+
+    private void onFailed(Entry entry, Endpoint endpoint, HttpTransport.Response response, String reason){
+        int statusCode = response != null ? response.statusCode : 0;
+        boolean retrying = isRetryable(statusCode);
+
+        synchronized (this) {
+            endpoint.inFlightId = -1;
+
+            if(retrying) {
+                long retryAfterMs = response != null ? getRetryAfterMs(response, System.currentTimeMillis()) : 0;
+                long delay = Math.max(retryAfterMs, Backoff.delayMs(endpoint.failures++, BACKOFF_BASE_MS, BACKOFF_MAX_MS, random));
+
+                endpoint.blockedUntilElapsed = SystemClock.elapsedRealtime() + delay;
+
+                Log.e(LOG_TAG, "Outbox " + entry.kind + " failed (" + reason + "), retry in " + delay + "ms, attempt " + entry.attempts);
+            } else {
+                if(entries.remove(entry.id) != null) deleteFile(entry);
+
+                droppedCount++;
+
+                Log.e(LOG_TAG, "Outbox " + entry.kind + " rejected with " + reason + ", dropped");
+            }
+        }
+
+        ResponseHandler handler = getHandler(entry.kind);
+
+        if(handler != null) {
+            try {
+                handler.onFailure(entry, response, retrying);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Outbox " + entry.kind + " handler error: " + e);
+            }
+        }
+
+        drain();
+    }
+
+    // сеть, таймаут, 408, 429 и 5xx повторяем, остальные 4xx - нет смысла
+    static boolean isRetryable(int statusCode){
+        return statusCode == 0 || statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    // сколько сервер просит подождать: 0 - ограничения нет
+    static long getRetryAfterMs(HttpTransport.Response response, long nowMillis){
+        if(response.statusCode != 429 && response.statusCode != 503) return 0;
+
+        long retryAfterMs = parseRetryAfter(response.getHeader("Retry-After"), nowMillis);
+
+        if(retryAfterMs > 0) return retryAfterMs;
+
+        return response.statusCode == 429 ? DEFAULT_RETRY_AFTER_MS : 0;
+    }
+
+    // Retry-After бывает в секундах или HTTP датой
+    static long parseRetryAfter(String value, long nowMillis){
+        if(value == null || value.trim().isEmpty()) return 0;
+
+        value = value.trim();
+
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException ignored) {}
+
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+
+        try {
+            return Math.max(0, format.parse(value).getTime() - nowMillis);
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "OutboundQueue{depth=" + entries.size() +
+                ", delivered=" + deliveredCount +
+                ", dropped=" + droppedCount +
+                ", lastDrainLatencyMs=" + lastDrainLatencyMs +
+                ", maxDrainLatencyMs=" + maxDrainLatencyMs +
+                ", online=" + online + "}";
+    }
+
+    private synchronized ResponseHandler getHandler(String kind){
+        return handlers.get(kind);
+    }
+
+    private boolean isInFlight(Entry entry){
+        return endpoint(entry.url).inFlightId == entry.id;
+    }
+
+    // эндпоинт - url без query
+    private Endpoint endpoint(String url){
+        int query = url.indexOf('?');
+        String key = query >= 0 ? url.substring(0, query) : url;
+
+        Endpoint endpoint = endpoints.get(key);
+
+        if(endpoint == null) {
+            endpoint = new Endpoint(path(key));
+            endpoints.put(key, endpoint);
+        }
+
+        return endpoint;
+    }
+
+    // метрики без хоста: https://api.vrcinema.pro/api/v1/device/apps -> /api/v1/device/apps
+    static String path(String url){
+        int scheme = url.indexOf("://");
+        int slash = url.indexOf('/', scheme >= 0 ? scheme + 3 : 0);
+
+        return slash >= 0 ? url.substring(slash) : "/";
+    }
+
+    private File file(Entry entry){
+        return new File(directory, entry.id + FILE_SUFFIX);
+    }
+
+    private void deleteFile(Entry entry){
+        if(entry.persistent) file(entry).delete();
+    }
+
+    private void write(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + (entry.body != null ? entry.body.length : 0));
+        DataOutputStream outputStream = new DataOutputStream(bytes);
+
+        outputStream.writeInt(FILE_VERSION);
+        outputStream.writeLong(entry.id);
+        outputStream.writeUTF(entry.kind);
+        outputStream.writeUTF(entry.dedupeKey != null ? entry.dedupeKey : "");
+        outputStream.writeUTF(entry.method);
+        outputStream.writeUTF(entry.url);
+        outputStream.writeLong(entry.enqueuedAt);
+
+        outputStream.writeInt(entry.body != null ? entry.body.length : -1);
+        if(entry.body != null) outputStream.write(entry.body);
+
+        outputStream.flush();
+
+        File tempFile = new File(directory, entry.id + ".tmp");
+
+        try (FileOutputStream fileOutputStream = new FileOutputStream(tempFile)) {
+            fileOutputStream.write(bytes.toByteArray());
+            fileOutputStream.getFD().sync();
+        }
+
+        if(!tempFile.renameTo(file(entry)))
+            throw new IOException("rename " + tempFile + " failed");
+    }
+
+    private static Entry read(File file) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = inputStream.readInt();
+
+            if(version != FILE_VERSION && version != FILE_VERSION_HEADERS) throw new IOException("unknown version");
+
+            long id = inputStream.readLong();
+            String kind = inputStream.readUTF();
+            String dedupeKey = inputStream.readUTF();
+            String method = inputStream.readUTF();
+            String url = inputStream.readUTF();
+            long enqueuedAt = inputStream.readLong();
+
+            // заголовки v2 выбрасываем, их заново даст HeaderSupplier
+            if(version == FILE_VERSION_HEADERS) {
+                int headerCount = inputStream.readInt();
+
+                for (int i = 0; i < headerCount * 2; i++) inputStream.readUTF();
+            }
+
+            int bodyLength = inputStream.readInt();
+            byte[] body = null;
+
+            if(bodyLength >= 0) {
+                body = new byte[bodyLength];
+                inputStream.readFully(body);
+            }
+
+            Entry entry = new Entry(id, kind, dedupeKey.isEmpty() ? null : dedupeKey, method, url, new HashMap<>(), body, enqueuedAt, true);
+
+            entry.legacy = version == FILE_VERSION_HEADERS;
+
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.viavr.watchdog;
+
+import android.app.IProcessObserver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+// IProcessObserver из ActivityManagerService (скрытое API, работает т.к. вачдог под android.uid.system)
+// эвент прилетает в момент когда у процесса появляются foreground активити
+public class ProcessObserverForegroundSource implements ForegroundSource {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    private Callback callback;
+    private PackageManager packageManager;
+
+    private Object activityManagerService;
+    private Method unregisterMethod;
+
+    private final byte[] cmdlineBuffer = new byte[256];
+
+    private final IProcessObserver.Stub observer = new IProcessObserver.Stub() {
+        @Override
+        public void onForegroundActivitiesChanged(int pid, int uid, boolean foregroundActivities) {
+            if(!foregroundActivities) return;
+
+            String packageName = resolvePackage(pid, uid);
+
+            if(packageName != null)
+                callback.onForegroundEvent(ProcessObserverForegroundSource.this, packageName);
+        }
+
+        @Override
+        public void onForegroundServicesChanged(int pid, int uid, int serviceTypes) {}
+
+        @Override
+        public void onProcessDied(int pid, int uid) {}
+    };
+
+    @Override
+    public String getName() {
+        return "process_observer";
+    }
+
+    @Override
+    public boolean start(Context context, Callback callback) {
+        this.callback = callback;
+        this.packageManager = context.getPackageManager();
+
+        try {
+            activityManagerService = Class.forName("android.app.ActivityManager").getMethod("getService").invoke(null);
+
+            Method registerMethod = activityManagerService.getClass().getMethod("registerProcessObserver", IProcessObserver.class);
+            unregisterMethod = activityManagerService.getClass().getMethod("unregisterProcessObserver", IProcessObserver.class);
+
+            registerMethod.invoke(activityManagerService, observer);
+
+            return true;
+        } catch (Throwable e) {
+            Log.e(LOG_TAG, "registerProcessObserver failed: " + e);
+
+            activityManagerService = null;
+            return false;
+        }
+    }
+
+    @Override
+    public void stop() {
+        if(activityManagerService == null) return;
+
+        try {
+            unregisterMethod.invoke(activityManagerService, observer);
+        } catch (Throwable e) {
+            Log.e(LOG_TAG, "unregisterProcessObserver failed: " + e);
+        }
+
+        activityManagerService = null;
+    }
+
+    // имя процесса из /proc без лишнего binder вызова, фоллбек на PackageManager
+    private synchronized String resolvePackage(int pid, int uid){
+        try (FileInputStream inputStream = new FileInputStream("/proc/" + pid + "/cmdline")) {
+            int length = inputStream.read(cmdlineBuffer);
+            int end = 0;
+
+            while (end < length && cmdlineBuffer[end] != 0 && cmdlineBuffer[end] != ':') end++;
+
+            if(end > 0) return new String(cmdlineBuffer, 0, end);
+        } catch (IOException ignored) {}
+
+        String[] packages = packageManager.getPackagesForUid(uid);
+
+        return packages != null && packages.length > 0 ? packages[0] : null;
+    }
+}
@@ -0,0 +1,201 @@
+package com.viavr.watchdog;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// постоянный канал сервер -> шлем (Server-Sent Events поверх одного keep-alive соединения)
+// по нему прилетают дельты политики приложений и команды вайтлиста
+// пока канал не подключен, вачдог продолжает опрашивать сервер как раньше
+// stop() не ждет поток чтения: он зовется с потока планировщика, старый поток сам выходит, его колбэки больше не доходят
+public class PushChannel {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    public interface Listener {
+        void onConnectionChanged(boolean connected);
+
+        void onEvent(String event, String data);
+    }
+
+    static final long MIN_BACKOFF_MS = 1000;
+    static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+
+    // сервер шлет комментарий-пинг чаще, иначе считаем соединение мертвым
+    static final int READ_TIMEOUT_MS = 90 * 1000;
+    static final int CONNECT_TIMEOUT_MS = 15 * 1000;
+
+    private final String url;
+    private final Listener listener;
+    private final Random random = new Random();
+
+    private volatile String token;
+    private volatile boolean connected;
+    private volatile HttpURLConnection connection;
+
+    private volatile Thread thread;
+    private String lastEventId;
+    private int failedAttempts;
+
+    public PushChannel(String url, Listener listener){
+        this.url = url;
+        this.listener = listener;
+    }
+
+    public synchronized void start(String token){
+        stop();
+
+        this.token = token;
+
+        thread = new Thread(this::run, "watchdog-push");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop(){
+        Thread activeThread = thread;
+
+        if(activeThread == null) return;
+
+        // сначала отцепляем поток, потом рвем соединение: readStream после записи connection проверяет isCurrent,
+        // так что соединение, открытое в этот момент, закроет либо stop, либо сам поток
+        thread = null;
+        activeThread.interrupt();
+
+        // disconnect закрывает сокет, заблокированное чтение сразу падает
+        HttpURLConnection activeConnection = connection;
+        if(activeConnection != null) activeConnection.disconnect();
+
+        setConnected(false);
+    }
+
+    public boolean isConnected(){
+        return connected;
+    }
+
+    // задержка переподключения
+    static long backoffMs(int attempt, Random random){
+        return Backoff.delayMs(attempt, MIN_BACKOFF_MS, MAX_BACKOFF_MS, random);
+    }
+
+    // поток чтения еще не остановлен через stop()
+    private boolean isCurrent(){
+        return thread == Thread.currentThread();
+    }
+
+    private void run(){
+        while (isCurrent()) {
+            try {
+                readStream();
+            } catch (IOException e) {
+                if(isCurrent()) Log.e(LOG_TAG, "Push channel error: " + e.getMessage());
+            } finally {
+                if(isCurrent()) setConnected(false);
+            }
+
+            if(!isCurrent()) break;
+
+            long delay = backoffMs(failedAttempts++, random);
+
+            Log.i(LOG_TAG, "Push channel reconnect in " + delay + "ms");
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    private void readStream() throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection)new URL(url).openConnection();
+
+        connection = urlConnection;
+
+        try {
+            if(!isCurrent()) return;
+
+            urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            urlConnection.setReadTimeout(READ_TIMEOUT_MS);
+            urlConnection.setRequestProperty("Accept", "text/event-stream");
+            urlConnection.setRequestProperty("Cache-Control", "no-cache");
+
+            if(token != null) urlConnection.setRequestProperty("token", token);
+            if(lastEventId != null) urlConnection.setRequestProperty("Last-Event-ID", lastEventId);
+
+            int code = urlConnection.getResponseCode();
+
+            if(code != HttpURLConnection.HTTP_OK)
+                throw new IOException("HTTP " + code);
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(urlConnection.getInputStream(), StandardCharsets.UTF_8));
+
+            if(!isCurrent()) return;
+
+            setConnected(true);
+            failedAttempts = 0;
+
+            String event = null;
+            StringBuilder data = new StringBuilder();
+            String line;
+
+            while ((line = reader.readLine()) != null && isCurrent()) {
+                if(line.isEmpty()){
+                    // пустая строка - конец эвента
+                    if(data.length() > 0)
+                        listener.onEvent(event != null ? event : "message", data.toString());
+
+                    event = null;
+                    data.setLength(0);
+                    continue;
+                }
+
+                // комментарий, сервер так пингует соединение
+                if(line.startsWith(":")) continue;
+
+                int colon = line.indexOf(':');
+                String field = colon >= 0 ? line.substring(0, colon) : line;
+                String value = colon >= 0 ? line.substring(colon + 1) : "";
+
+                if(value.startsWith(" ")) value = value.substring(1);
+
+                switch (field){
+                    case "event":
+                        event = value;
+                        break;
+
+                    case "data":
+                        if(data.length() > 0) data.append('\n');
+                        data.append(value);
+                        break;
+
+                    case "id":
+                        lastEventId = value;
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            if(connection == urlConnection) connection = null;
+            urlConnection.disconnect();
+        }
+    }
+
+    private void setConnected(boolean value){
+        if(connected == value) return;
+
+        connected = value;
+
+        Log.i(LOG_TAG, "Push channel " + (value ? "connected" : "disconnected"));
+
+        listener.onConnectionChanged(value);
+    }
+}
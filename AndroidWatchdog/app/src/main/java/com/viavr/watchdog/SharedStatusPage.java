@@ -0,0 +1,61 @@
+package com.viavr.watchdog;
+
+import android.os.Build;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+// StatusPage в SharedMemory (API 27+), лаунчер получает ее через IWatchdog.getStatusPage() и мапит на запись
+// на API 26 страницы нет: heartbeat не проверяется, всё остальное работает как раньше
+public class SharedStatusPage {
+
+    static final String LOG_TAG = "WATCHDOG";
+
+    private final SharedMemory sharedMemory;
+    private final ByteBuffer mapping;
+    private final StatusPage page;
+
+    private SharedStatusPage(SharedMemory sharedMemory, ByteBuffer mapping){
+        this.sharedMemory = sharedMemory;
+        this.mapping = mapping;
+        this.page = new StatusPage(mapping);
+    }
+
+    // null если SharedMemory недоступна
+    public static SharedStatusPage create(){
+        if(Build.VERSION.SDK_INT < Build.VERSION_CODES.O_MR1) return null;
+
+        SharedMemory sharedMemory = null;
+
+        try {
+            sharedMemory = SharedMemory.create("watchdog-status", StatusPage.SIZE);
+
+            SharedStatusPage statusPage = new SharedStatusPage(sharedMemory, sharedMemory.mapReadWrite());
+            statusPage.page.init();
+
+            return statusPage;
+        } catch (ErrnoException | RuntimeException e) {
+            Log.e(LOG_TAG, "Status page create failed: " + e);
+
+            if(sharedMemory != null) sharedMemory.close();
+
+            return null;
+        }
+    }
+
+    public StatusPage getPage(){
+        return page;
+    }
+
+    // уходит через binder как дубликат дескриптора, лаунчер держит свое отображение
+    public SharedMemory getSharedMemory(){
+        return sharedMemory;
+    }
+
+    public void close(){
+        SharedMemory.unmap(mapping);
+        sharedMemory.close();
+    }
+}
@@ -0,0 +1,110 @@
+package com.viavr.watchdog;
+
+import android.app.AppOpsManager;
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.PowerManager;
+import android.os.Process;
+
+import java.util.function.LongSupplier;
+
+// MOVE_TO_FOREGROUND эвенты из UsageStatsManager
+// последний запасной источник: стартует только если не поднялись ни process observer, ни accessibility
+// push API у UsageStatsManager нет, поэтому забираем только новые эвенты с момента прошлого запроса
+// опрос не чаще базового тика (check_process_every_ms) и только при включенном экране,
+// эвенты за время с выключенным экраном заберет первый запрос после включения
+public class UsageStatsForegroundSource implements ForegroundSource {
+
+    private static final String JOB_NAME = "usage_stats_query";
+
+    private final LongSupplier queryEveryMs;
+
+    private UsageStatsManager usageStatsManager;
+    private PowerManager powerManager;
+    private Callback callback;
+
+    private long lastQueryTime;
+
+    private final UsageEvents.Event event = new UsageEvents.Event();
+
+    // период берется на каждом запросе, чтобы следовать смене конфига
+    public UsageStatsForegroundSource(LongSupplier queryEveryMs){
+        this.queryEveryMs = queryEveryMs;
+    }
+
+    @Override
+    public String getName() {
+        return "usage_stats";
+    }
+
+    @Override
+    public boolean start(Context context, Callback callback) {
+        usageStatsManager = (UsageStatsManager)context.getSystemService(Context.USAGE_STATS_SERVICE);
+
+        if(usageStatsManager == null) return false;
+
+        powerManager = (PowerManager)context.getSystemService(Context.POWER_SERVICE);
+
+        this.callback = callback;
+
+        // без PACKAGE_USAGE_STATS queryEvents молча вернет пустой список, поэтому проверяем доступ, а не эвенты:
+        // за последний час их может и не быть, когда лаунчер давно на экране
+        if(!hasUsageAccess(context)) return false;
+
+        lastQueryTime = System.currentTimeMillis();
+
+        // запросы идут на общем потоке планировщика
+        WatchdogScheduler.get().schedule(JOB_NAME, 0, this::query);
+
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        WatchdogScheduler.get().cancel(JOB_NAME);
+    }
+
+    // доступ к usage stats выдается через app op, разрешение в манифесте само по себе его не дает
+    private static boolean hasUsageAccess(Context context){
+        AppOpsManager appOps = (AppOpsManager)context.getSystemService(Context.APP_OPS_SERVICE);
+
+        if(appOps == null) return false;
+
+        int mode = appOps.checkOpNoThrow(AppOpsManager.OPSTR_GET_USAGE_STATS, Process.myUid(), context.getPackageName());
+
+        if(mode == AppOpsManager.MODE_DEFAULT)
+            return context.checkSelfPermission(android.Manifest.permission.PACKAGE_USAGE_STATS) == PackageManager.PERMISSION_GRANTED;
+
+        return mode == AppOpsManager.MODE_ALLOWED;
+    }
+
+    private void query(){
+        WatchdogScheduler.get().schedule(JOB_NAME, queryEveryMs.getAsLong(), this::query);
+
+        // экран выключен - не опрашиваем, lastQueryTime не двигаем
+        if(powerManager != null && !powerManager.isInteractive()) return;
+
+        long now = System.currentTimeMillis();
+
+        UsageEvents events = usageStatsManager.queryEvents(lastQueryTime, now);
+
+        lastQueryTime = now;
+
+        if(events == null) return;
+
+        String foregroundPackage = null;
+
+        while (events.hasNextEvent()){
+            events.getNextEvent(event);
+
+            if(event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND)
+                foregroundPackage = event.getPackageName();
+        }
+
+        // интересует только последний эвент за интервал
+        if(foregroundPackage != null)
+            callback.onForegroundEvent(this, foregroundPackage);
+    }
+}
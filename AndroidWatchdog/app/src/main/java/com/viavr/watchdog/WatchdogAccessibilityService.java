@@ -0,0 +1,36 @@
+package com.viavr.watchdog;
+
+import android.accessibilityservice.AccessibilityService;
+import android.content.ComponentName;
+import android.content.pm.PackageManager;
+import android.view.accessibility.AccessibilityEvent;
+
+public class WatchdogAccessibilityService extends AccessibilityService {
+
+    @Override
+    public void onAccessibilityEvent(AccessibilityEvent event) {
+
+        if(event.getEventType() != AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) return;
+
+        if(event.getPackageName() == null || event.getClassName() == null) return;
+
+        String packageName = event.getPackageName().toString();
+
+        // диалоги, тосты и systemui тоже шлют TYPE_WINDOW_STATE_CHANGED, нас интересуют только активити
+        if(!isActivity(packageName, event.getClassName().toString())) return;
+
+        AccessibilityForegroundSource.dispatch(packageName);
+    }
+
+    @Override
+    public void onInterrupt() {}
+
+    private boolean isActivity(String packageName, String className){
+        try {
+            getPackageManager().getActivityInfo(new ComponentName(packageName, className), 0);
+            return true;
+        } catch (PackageManager.NameNotFoundException e) {
+            return false;
+        }
+    }
+}
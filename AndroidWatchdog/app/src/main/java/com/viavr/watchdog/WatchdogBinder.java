@@ -0,0 +1,116 @@
+package com.viavr.watchdog;
+
+import android.os.Binder;
+import android.os.Process;
+import android.os.SharedMemory;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+
+// IWatchdog поверх WatchdogService: binder поток проверяет вызывающего и передает вызов на поток планировщика,
+// где живет состояние сервиса; ответ уходит в той же транзакции
+// ошибки уходят клиенту исключениями, которые binder умеет передавать (IllegalArgumentException, IllegalStateException, SecurityException)
+class WatchdogBinder extends IWatchdog.Stub {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    // тик может занять поток планировщика, дольше лаунчер ждать не должен
+    static final long CALL_TIMEOUT_MS = 2000;
+
+    private final WatchdogService service;
+
+    WatchdogBinder(WatchdogService service){
+        this.service = service;
+    }
+
+    @Override
+    public int grantWhitelist(String[] packages, long[] durationsMs) {
+        if(packages == null || durationsMs == null || packages.length != durationsMs.length)
+            throw new IllegalArgumentException("packages and durationsMs must have the same length");
+
+        return call("grantWhitelist", () -> service.grantWhitelist(packages, durationsMs));
+    }
+
+    @Override
+    public int revokeWhitelist(String[] packages) {
+        if(packages == null) throw new IllegalArgumentException("packages is null");
+
+        return call("revokeWhitelist", () -> service.revokeWhitelist(packages));
+    }
+
+    @Override
+    public void clearWhitelist() {
+        call("clearWhitelist", () -> {
+            service.clearWhitelist();
+            return null;
+        });
+    }
+
+    @Override
+    public List<String> getWhitelistedPackages() {
+        return call("getWhitelistedPackages", service::getWhitelistedPackages);
+    }
+
+    @Override
+    public long[] getWhitelistMillisLeft(String[] packages) {
+        if(packages == null) throw new IllegalArgumentException("packages is null");
+
+        return call("getWhitelistMillisLeft", () -> service.getWhitelistMillisLeft(packages));
+    }
+
+    @Override
+    public long[] getDeadlines() {
+        return call("getDeadlines", service::getDeadlines);
+    }
+
+    @Override
+    public void setToken(String token) {
+        if(token == null || token.isEmpty()) throw new IllegalArgumentException("token is empty");
+
+        call("setToken", () -> {
+            service.setToken(token);
+            return null;
+        });
+    }
+
+    @Override
+    public SharedMemory getStatusPage() {
+        return call("getStatusPage", service::getStatusPage);
+    }
+
+    private <T> T call(String name, Callable<T> task){
+        enforceCaller(name);
+
+        try {
+            return WatchdogScheduler.get().call(task, CALL_TIMEOUT_MS);
+        } catch (TimeoutException e) {
+            Log.e(LOG_TAG, "IWatchdog." + name + " timed out after " + CALL_TIMEOUT_MS + "ms");
+            throw new IllegalStateException("watchdog is busy");
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "IWatchdog." + name + " failed: " + e);
+            throw e;
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "IWatchdog." + name + " failed: " + e);
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    // сам вачдог (android.uid.system) и target_package из текущего конфига
+    private void enforceCaller(String name){
+        int uid = Binder.getCallingUid();
+
+        if(uid == Process.myUid()) return;
+
+        String targetPackage = service.getTargetPackage();
+        String[] packages = service.getPackageManager().getPackagesForUid(uid);
+
+        if(targetPackage != null && packages != null && Arrays.asList(packages).contains(targetPackage)) return;
+
+        Log.e(LOG_TAG, "IWatchdog." + name + " rejected for uid " + uid + " " + Arrays.toString(packages));
+
+        throw new SecurityException("uid " + uid + " is not allowed to call IWatchdog");
+    }
+}
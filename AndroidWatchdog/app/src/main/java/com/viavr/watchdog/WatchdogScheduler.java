@@ -0,0 +1,276 @@
+package com.viavr.watchdog;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// единое ядро планирования вачдога: все задачи по дедлайнам в очереди одного HandlerThread
+// поток один на процесс и переживает пересоздание сервиса
+// задачи именованные, повторная регистрация задачи с тем же именем заменяет предыдущую
+//
+// поток планировщика - единственный владелец состояния WatchdogService (актор): тики, таймеры, интенты,
+// ответы сети и эвенты push канала приходят сюда сообщениями через post/schedule, поэтому само состояние
+// сервиса без локов. Метрики почтового ящика: глубина (сообщения post ждущие обработки),
+// задержка от положенного момента до начала обработки и время обработки
+public final class WatchdogScheduler {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    private static WatchdogScheduler instance;
+
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    private final HashMap<String, Job> jobs = new HashMap<>();
+
+    // метрики пишет только поток планировщика (кроме глубины), читают все
+    private final AtomicInteger mailboxDepth = new AtomicInteger();
+    private volatile int maxMailboxDepth;
+    private final AtomicLong processedCount = new AtomicLong();
+    private volatile long lastDispatchLatencyMs;
+    private volatile long maxDispatchLatencyMs;
+    private volatile long lastProcessingMs;
+    private volatile long maxProcessingMs;
+    private volatile String slowestMessage;
+
+    private WatchdogScheduler(){
+        thread = new HandlerThread("watchdog-scheduler");
+        thread.start();
+
+        handler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized WatchdogScheduler get(){
+        if(instance == null)
+            instance = new WatchdogScheduler();
+
+        return instance;
+    }
+
+    public Looper getLooper(){
+        return thread.getLooper();
+    }
+
+    public boolean isSchedulerThread(){
+        return Thread.currentThread() == thread;
+    }
+
+    // разовая задача без имени, выполняется по очереди с остальными
+    public void post(Runnable task){
+        int depth = mailboxDepth.incrementAndGet();
+
+        if(depth > maxMailboxDepth) maxMailboxDepth = depth;
+
+        long postedAt = SystemClock.uptimeMillis();
+
+        handler.post(() -> {
+            mailboxDepth.decrementAndGet();
+            dispatch("post", task, postedAt);
+        });
+    }
+
+    // синхронный вызов с чужого потока (binder): задача выполняется на потоке планировщика по очереди с тиками,
+    // вызывающий ждет результат; с потока планировщика выполняется сразу
+    public <T> T call(Callable<T> task, long timeoutMs) throws Exception {
+        if(isSchedulerThread()) return task.call();
+
+        FutureTask<T> future = new FutureTask<>(task);
+        post(future);
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if(cause instanceof Exception) throw (Exception)cause;
+
+            throw e;
+        } finally {
+            // не дождались - задача не выполнится позже вызова
+            future.cancel(false);
+        }
+    }
+
+    // сообщения, отправленные через post и еще не обработанные
+    public int getMailboxDepth(){
+        return mailboxDepth.get();
+    }
+
+    public int getMaxMailboxDepth(){
+        return maxMailboxDepth;
+    }
+
+    public long getProcessedCount(){
+        return processedCount.get();
+    }
+
+    // сколько сообщение ждало потока после положенного момента
+    public long getLastDispatchLatencyMs(){
+        return lastDispatchLatencyMs;
+    }
+
+    public long getMaxDispatchLatencyMs(){
+        return maxDispatchLatencyMs;
+    }
+
+    public long getLastProcessingMs(){
+        return lastProcessingMs;
+    }
+
+    public long getMaxProcessingMs(){
+        return maxProcessingMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "WatchdogScheduler{jobs=%d, mailbox=%d (max %d), processed=%d, dispatch=%dms (max %d), processing=%dms (max %d, %s)}",
+                getJobCount(), mailboxDepth.get(), maxMailboxDepth, processedCount.get(),
+                lastDispatchLatencyMs, maxDispatchLatencyMs, lastProcessingMs, maxProcessingMs, slowestMessage);
+    }
+
+    // выполнение одного сообщения на потоке планировщика с замером задержки и времени обработки
+    private void dispatch(String name, Runnable task, long dueUptime){
+        long start = SystemClock.uptimeMillis();
+
+        lastDispatchLatencyMs = Math.max(0, start - dueUptime);
+        if(lastDispatchLatencyMs > maxDispatchLatencyMs) maxDispatchLatencyMs = lastDispatchLatencyMs;
+
+        try {
+            task.run();
+        }catch (Exception e){
+            Log.e(LOG_TAG, "Scheduler job '" + name + "' failed: " + e);
+        }
+
+        lastProcessingMs = SystemClock.uptimeMillis() - start;
+
+        if(lastProcessingMs > maxProcessingMs) {
+            maxProcessingMs = lastProcessingMs;
+            slowestMessage = name;
+        }
+
+        processedCount.incrementAndGet();
+    }
+
+    public synchronized void schedule(String name, long delayMs, Runnable task){
+        arm(new Job(name, task, 0, 0, 0), Math.max(0, delayMs));
+    }
+
+    // повторяющаяся задача, следующий запуск отсчитывается от старта текущего
+    public synchronized void scheduleRepeating(String name, long initialDelayMs, long periodMs, Runnable task){
+        arm(new Job(name, task, periodMs, 0, 0), Math.max(0, initialDelayMs));
+    }
+
+    // задача на конкретное время по часам (ребут, вейкап)
+    // очередь Handler считает uptime, поэтому при срабатывании перепроверяем часы и при необходимости довзводим
+    public synchronized void scheduleAt(String name, long wallTimeMillis, Runnable task){
+        arm(new Job(name, task, 0, wallTimeMillis, 0), wallTimeMillis - System.currentTimeMillis());
+    }
+
+    // задача на момент в шкале SystemClock.elapsedRealtime(), перевод часов на нее не влияет
+    public synchronized void scheduleAtElapsed(String name, long elapsedRealtime, Runnable task){
+        arm(new Job(name, task, 0, 0, elapsedRealtime), elapsedRealtime - SystemClock.elapsedRealtime());
+    }
+
+    public synchronized void cancel(String name){
+        Job job = jobs.remove(name);
+
+        if(job != null)
+            handler.removeCallbacks(job);
+    }
+
+    public synchronized void cancelAll(){
+        for (Job job : jobs.values())
+            handler.removeCallbacks(job);
+
+        jobs.clear();
+    }
+
+    public synchronized boolean isScheduled(String name){
+        return jobs.containsKey(name);
+    }
+
+    // время следующего срабатывания по часам, 0 если задачи нет
+    public synchronized long getDeadline(String name){
+        Job job = jobs.get(name);
+
+        return job != null ? job.deadlineMillis : 0;
+    }
+
+    public synchronized int getJobCount(){
+        return jobs.size();
+    }
+
+    private void arm(Job job, long delayMs){
+        Job previous = jobs.put(job.name, job);
+
+        if(previous != null && previous != job)
+            handler.removeCallbacks(previous);
+
+        job.deadlineMillis = System.currentTimeMillis() + Math.max(0, delayMs);
+        job.dueUptime = SystemClock.uptimeMillis() + Math.max(0, delayMs);
+        handler.postAtTime(job, job.dueUptime);
+    }
+
+    private final class Job implements Runnable {
+
+        final String name;
+        final Runnable task;
+        final long periodMs;
+        final long wallTimeMillis;
+        final long elapsedRealtime;
+
+        long deadlineMillis;
+        long dueUptime;
+
+        Job(String name, Runnable task, long periodMs, long wallTimeMillis, long elapsedRealtime){
+            this.name = name;
+            this.task = task;
+            this.periodMs = periodMs;
+            this.wallTimeMillis = wallTimeMillis;
+            this.elapsedRealtime = elapsedRealtime;
+        }
+
+        @Override
+        public void run() {
+            long due;
+
+            synchronized (WatchdogScheduler.this){
+                due = dueUptime;
+
+                // задачу успели заменить или отменить
+                if(jobs.get(name) != this) return;
+
+                long now = System.currentTimeMillis();
+
+                // устройство спало или часы перевели, до дедлайна еще далеко
+                if(wallTimeMillis > 0 && now < wallTimeMillis){
+                    arm(this, wallTimeMillis - now);
+                    return;
+                }
+
+                long elapsedNow = SystemClock.elapsedRealtime();
+
+                if(elapsedRealtime > 0 && elapsedNow < elapsedRealtime){
+                    arm(this, elapsedRealtime - elapsedNow);
+                    return;
+                }
+
+                if(periodMs > 0) arm(this, periodMs);
+                else jobs.remove(name);
+            }
+
+            dispatch(name, task, due);
+        }
+    }
+}
@@ -4,21 +4,22 @@ import android.content.*;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.*;
+import android.net.ConnectivityManager;
+import android.provider.Settings;
 import android.text.format.DateFormat;
 import android.util.Log;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
-import com.android.volley.*;
-import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 // adb shell am startservice com.viavr.watchdog/.WatchdogService API < 26
 // adb shell am start-foreground-service com.viavr.watchdog/.WatchdogService API >= 26
@@ -27,19 +28,48 @@ public class WatchdogService extends Service {
 
     final String LOG_TAG = "WATCHDOG";
     final String CONFIG_PATH = "watchdog_config.json";
+    final String CONFIG_SNAPSHOT_PATH = "watchdog_config.snapshot";
+    final String STATE_JOURNAL_PATH = "state.journal";
+    final int STATE_JOURNAL_CAPACITY = 64 * 1024;
+    // журнал событий: 8 файлов по 256 КБ несжатых записей (~5000 событий каждый)
+    final long EVENT_LOG_FILE_BYTES = 256 * 1024;
+    final int EVENT_LOG_FILES = 8;
+    final int EVENT_DUMP_DEFAULT = 500;
+    // ожидание потока планировщика из dumpsys и гейджей с чужого потока
+    final long DUMP_TIMEOUT_MS = 2000;
+    final long GAUGE_TIMEOUT_MS = 500;
     final String APPS_URL = "https://api.vrcinema.pro/api/v1/device/apps";
+    final String EVENTS_URL = "https://api.vrcinema.pro/api/v1/device/events";
+    final long APPS_POLL_EVERY_MS = 10 * 1000;
+    final long RUNTIME_RETRY_MS = 60 * 1000;
 
-    private static Notification notification;
-    private ScheduledFuture<?> scheduler;
-    private ScheduledFuture<?> appsScheduler;
+    // телеметрия копится локально и уходит пачками
+    final long TELEMETRY_SAMPLE_EVERY_MS = 5 * 60 * 1000;
+    final int TELEMETRY_BUFFER_CAPACITY = 4096;
+    final int TELEMETRY_BATCH_SAMPLES = 64;
+    final int TELEMETRY_MAX_BATCH_SAMPLES = 512;
+
+    private Notification notification;
+    private WatchdogScheduler scheduler;
+    private AdaptiveTickScheduler tickScheduler;
 
     SharedPreferences sharedPreferences;
 
-    private WatchdogConfig watchdogConfig;
+    private volatile WatchdogConfig watchdogConfig;
+    private ConfigReloader configReloader;
 
-    private final Random random = new Random();
+    // снимок для binder потоков (проверка вызывающего), пишется в applyConfig
+    private volatile String targetPackage;
+
+    // латенси холодного старта: от onCreate до первого тика
+    private long onCreateElapsed;
+    private boolean firstTickLogged = false;
+    private boolean configFromSnapshot = false;
 
-    private String lastForegroundApp; // приложуха запущенная из лаунчера
+    // все поля ниже после onCreate принадлежат потоку WatchdogScheduler: тики, таймеры, интенты,
+    // ответы сети и push эвенты приходят туда сообщениями, с main потока состояние не трогаем
+
+    private final Random random = new Random();
 
     private long targetRebootTime;
 
@@ -48,38 +78,134 @@ public class WatchdogService extends Service {
 
     private String token = null;
 
-    RequestQueue requestQueue;
-    private boolean appsRequestInProcess = false;
+    // гранты вайтлиста, lastForegroundApp и дедлайны переживают рестарт процесса
+    private StateJournal stateJournal;
+
+    private UrlConnectionTransport transport;
+    private OutboundQueue outboundQueue;
+    private AppsPolicyCache appsPolicyCache;
+    private PushChannel pushChannel;
+
+    private TelemetryBuffer telemetryBuffer;
 
     private PowerManager powerManager;
     BatteryManager batteryManager;
 
+    private ForegroundTracker foregroundTracker;
+    private BroadcastReceiver screenOnReceiver;
+    private BroadcastReceiver commandReceiver;
+    private BroadcastReceiver launcherReceiver;
+    private ProcessTable.Source processSource;
+    private KillEngine killEngine;
+
+    // общая с лаунчером страница: его heartbeat, наши дедлайны, вайтлист и причина перезапуска
+    private SharedStatusPage statusPage;
+    private boolean statusDirty = true;
+    private long publishedRelaunchCount;
+
+    // латенси перезапуска лаунчера - основной SLO киоска
+    private final RelaunchTracker relaunchTracker = new RelaunchTracker();
+
+    // решения тика в :core, система за ServiceDevice
+    private final WatchdogTick watchdogTick = new WatchdogTick(new ServiceDevice(), relaunchTracker);
+
+    // IWatchdog для лаунчера, команды одной binder транзакцией
+    private final WatchdogBinder binder = new WatchdogBinder(this);
+
+    // метрики берутся из реестра один раз, на тике только increment/record
+    private final LatencyHistogram tickDurationMetric = Metrics.get().histogram("tick_us");
+    private final LongAdder ticksMetric = Metrics.get().counter("ticks");
+    private final LongAdder killsMetric = Metrics.get().counter("kills");
+    private final LongAdder killsSurvivedMetric = Metrics.get().counter("kills_survived");
+    private final LatencyHistogram killTimeToDeadMetric = Metrics.get().histogram("kill_time_to_dead_ms");
+    private final LongAdder relaunchesMetric = Metrics.get().counter("relaunches");
+    private final LongAdder whitelistGrantsMetric = Metrics.get().counter("whitelist_grants");
+    private final LongAdder configReloadsMetric = Metrics.get().counter("config_reloads");
+
     @Override
     public void onCreate() {
         super.onCreate();
 
+        onCreateElapsed = SystemClock.elapsedRealtime();
+
+        // логи ядра (конфиг, политика, кеши) в logcat
+        WatchdogLog.setSink(Log::println);
+
         Log.d(LOG_TAG, "Watchdog service v" + BuildConfig.VERSION_NAME + ": onCreate()");
 
+        // журнал событий во внутренней памяти, переживает ребут; info строки тика идут туда, а не в logcat
+        try {
+            EventLog.get().start(new File(getFilesDir(), "events"), EVENT_LOG_FILE_BYTES, EVENT_LOG_FILES);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Event log open failed: " + e.getMessage());
+        }
+
+        EventLog.log(EventLog.SERVICE_CREATED, BuildConfig.VERSION_NAME);
+
         powerManager = (PowerManager)getSystemService(Context.POWER_SERVICE);
         batteryManager = (BatteryManager)this.getSystemService(BATTERY_SERVICE);
 
-        if (notification != null) return;
-
         sharedPreferences = getSharedPreferences("watchdog_preferences", Context.MODE_PRIVATE);
 
         if(sharedPreferences.contains("token"))
             token = sharedPreferences.getString("token", null);
 
-        // https://google.github.io/volley/simple.html
-        requestQueue = Volley.newRequestQueue(this);
+        // общий транспорт с keep-alive пулом соединений к api.vrcinema.pro
+        transport = new UrlConnectionTransport(2);
+        transport.warmUp(APPS_URL);
+
+        // последняя политика приложений, действует до первого ответа сервера
+        appsPolicyCache = new AppsPolicyCache(getFilesDir());
+        appsPolicyCache.load();
+
+        // все запросы к серверу идут через очередь с повторами
+        outboundQueue = new OutboundQueue(new File(getFilesDir(), "outbox"), transport, WatchdogScheduler.get());
+        outboundQueue.setHeaderSupplier(this::requestHeaders);
+        outboundQueue.load();
+
+        outboundQueue.registerHandler("apps", new OutboundQueue.ResponseHandler() {
+            @Override
+            public void onResponse(OutboundQueue.Entry entry, HttpTransport.Response response) {
+                onAppsResponse(response);
+            }
+
+            @Override
+            public void onFailure(OutboundQueue.Entry entry, HttpTransport.Response response, boolean retrying) {
+                // сети нет, действует последняя сохраненная политика
+                applyAppsPolicy(appsPolicyCache.getPolicy());
+            }
+        });
+
+        outboundQueue.registerHandler("telemetry", new OutboundQueue.ResponseHandler() {
+            @Override
+            public void onResponse(OutboundQueue.Entry entry, HttpTransport.Response response) {
+                EventLog.log(EventLog.TELEMETRY_SENT, entry.body.length, null);
+            }
+
+            @Override
+            public void onFailure(OutboundQueue.Entry entry, HttpTransport.Response response, boolean retrying) {}
+        });
+
+        // замеры рантайма переживают отсутствие сети и ребуты
+        try {
+            telemetryBuffer = new TelemetryBuffer(new File(getFilesDir(), "telemetry.ring"), TELEMETRY_BUFFER_CAPACITY);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Telemetry buffer open failed: " + e.getMessage());
+        }
 
         // https://commonsware.com/blog/2017/04/11/android-o-implicit-broadcast-ban.html
-        registerReceiver(new CommandBroadcastReceiver(), new IntentFilter("com.viavr.intent.WATCHDOG_COMMAND"));
-        registerReceiver(new LauncherBroadcastReceiver(), new IntentFilter("com.viavr.intent.LAUNCHER_RUNNING"));
+        // ресиверы снимаются в onDestroy, иначе каждое пересоздание сервиса добавляет по паре
+        commandReceiver = new CommandBroadcastReceiver();
+        launcherReceiver = new LauncherBroadcastReceiver();
+        registerReceiver(commandReceiver, new IntentFilter("com.viavr.intent.WATCHDOG_COMMAND"));
+        registerReceiver(launcherReceiver, new IntentFilter("com.viavr.intent.LAUNCHER_RUNNING"));
 
         // читаем конфиг
         initializeConfig();
 
+        // состояние до рестарта процесса
+        StateJournal.State restoredState = openStateJournal();
+
         // для API >= 26 нужно создавать канал
         NotificationChannel notificationChannel = new NotificationChannel("watchdog", "Watchdog Service", NotificationManager.IMPORTANCE_NONE);
         NotificationManager notificationManager = (NotificationManager)getSystemService(Context.NOTIFICATION_SERVICE);
@@ -96,167 +222,284 @@ public class WatchdogService extends Service {
         // старт сервиса
         startForeground(1, notification);
 
-        nextWakeupMillis = getNextWakeupTime();
-        nextSendRuntimeMillis = getNextSendRuntimeTime();
+        // восстановленные дедлайны не сдвигаем, пропущенные за время простоя сработают сразу
+        setNextWakeupMillis(restoredState != null && restoredState.nextWakeupMillis != 0 ? restoredState.nextWakeupMillis : getNextWakeupTime());
+        setNextSendRuntimeMillis(restoredState != null && restoredState.nextSendRuntimeMillis != 0 ? restoredState.nextSendRuntimeMillis : getNextSendRuntimeTime());
 
-        // повторяющаяся таска
-        ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
+        processSource = createProcessSource(watchdogConfig);
 
-        // предыдущую офаем
-        if(scheduler != null)
-            scheduler.cancel(true);
+        statusPage = SharedStatusPage.create();
 
-        // непосредственно таска
-        scheduler = service.scheduleAtFixedRate(() -> {
+        // все задачи по дедлайнам на одном потоке, предыдущие офаем
+        scheduler = WatchdogScheduler.get();
+        scheduler.cancelAll();
 
-            // проверяем ребут
-            if(watchdogConfig.allowReboot && checkRebootTime()) return;
+        // все процессы пакета пачкой, с эскалацией и проверкой что умерли
+        killEngine = new KillEngine(new KillEngine.ActivityManagerBackend((ActivityManager)getSystemService(ACTIVITY_SERVICE)), processSource, scheduler);
+        killEngine.setListener(result -> {
+            if(result.dead) {
+                killsMetric.increment();
+                killTimeToDeadMetric.record(result.timeToDeadMs);
+            } else {
+                killsSurvivedMetric.increment();
+            }
+        });
 
-            // проверяем вейкап
-            if(watchdogConfig.allowWakeup) checkWakeupTime();
+        registerMetrics();
 
-            // проверяем пересылку данных шлема
-            if(watchdogConfig.allowSendRuntime) checkSendRuntimeTime();
+        // непосредственно таска, период подстраивается под активность
+        tickScheduler = new AdaptiveTickScheduler(scheduler, this::tick);
 
-            // проверять нечего
-            if(watchdogConfig.targetPackage == null) return;
+        watchdogTick.setListener(new WatchdogTick.Listener() {
+            @Override
+            public void onLastForegroundChanged(String packageName) {
+                if(stateJournal != null) stateJournal.recordLastForegroundApp(packageName);
+            }
 
-            String foregroundApp = getForegroundApp();
+            @Override
+            public void onTargetKilled() {
+                tickScheduler.tighten("launcher heartbeat stalled");
+            }
 
-            // если активен targetPackage то всё ок
-            if(foregroundApp.equals(watchdogConfig.targetPackage)) {
-                // чистим предыдущее приложение
-                lastForegroundApp = checkProcessForKill(lastForegroundApp);
+            @Override
+            public void onAppsDisabled() {
+                scheduleWhitelistExpiry();
+            }
+        });
+
+        // трекер foreground приложения, по эвенту сразу прогоняем тик
+        foregroundTracker = new ForegroundTracker(this, (packageName, sourceName) -> tickScheduler.tickNow("foreground " + packageName + " (" + sourceName + ")"));
+        foregroundTracker.addSource(new ProcessObserverForegroundSource());
+        foregroundTracker.addSource(new AccessibilityForegroundSource());
+        // usage stats - последний запасной вариант, опрос с периодом базового тика
+        foregroundTracker.addFallbackSource(new UsageStatsForegroundSource(() -> watchdogConfig.checkProcessEveryMs));
+        foregroundTracker.start();
+
+        // политика с диска действует с первого тика: при загрузке без сети и без токена
+        // ответа сервера (и onFailure очереди) может не быть сколько угодно
+        scheduler.post(() -> applyAppsPolicy(appsPolicyCache.getPolicy()));
+
+        tickScheduler.start(getTickPeriodMs());
+
+        // после включения экрана выходим из IDLE не дожидаясь длинного тика
+        screenOnReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                tickScheduler.tighten("screen on");
+            }
+        };
+        registerReceiver(screenOnReceiver, new IntentFilter(Intent.ACTION_SCREEN_ON));
+
+        // задачи по дедлайнам срабатывают ровно в свое время, а не на ближайшем тике
+        scheduler.scheduleAt("reboot", targetRebootTime, this::onRebootTime);
+        scheduler.scheduleAt("wakeup", nextWakeupMillis, this::onWakeupTime);
+        scheduler.scheduleAt("runtime", nextSendRuntimeMillis, this::onSendRuntimeTime);
+        scheduler.scheduleRepeating("telemetry_sample", 0, TELEMETRY_SAMPLE_EVERY_MS, this::onSampleTelemetry);
+        scheduler.scheduleRepeating("apps", 0, APPS_POLL_EVERY_MS, this::pollApps);
+        scheduleWhitelistExpiry();
+
+        // правки конфига применяются сразу, без рестарта сервиса
+        configReloader.startWatching();
+
+        // изменения политики и команды вайтлиста прилетают пушем, опрос остается только пока канал не подключен
+        outboundQueue.startConnectivityTracking((ConnectivityManager)getSystemService(Context.CONNECTIVITY_SERVICE));
+
+        pushChannel = new PushChannel(EVENTS_URL, new PushChannel.Listener() {
+            @Override
+            public void onConnectionChanged(boolean connected) {
+                // после (пере)подключения один раз забираем полную политику без валидаторов:
+                // пока канала не было, дельты могли потеряться, дальше только дельты поверх нее
+                if(connected) scheduler.post(() -> requestApps(true));
+            }
 
-                return;
+            @Override
+            public void onEvent(String event, String data) {
+                scheduler.post(() -> processPushEvent(event, data));
             }
+        });
 
-            lastForegroundApp = foregroundApp;
+        if(token != null)
+            pushChannel.start(token);
+    }
 
-            boolean needLaunch = true;
-            String message = null;
+    // опрос политики приложений, пока жив push канал не нужен
+    // и пока наверху лаунчер (как до push канала): фоновые процессы проверяет тик по кэшу на каждой смене foreground
+    private void pollApps(){
+        if(pushChannel != null && pushChannel.isConnected()) return;
 
-            if(!isPackageInstalled(watchdogConfig.targetPackage)){
-                // если лаунчер не установлен
-                needLaunch = false;
+        if(watchdogConfig == null || WatchdogPolicy.isTargetForeground(watchdogConfig, getForegroundApp())) return;
 
-                message = "Target package " + watchdogConfig.targetPackage + " is not installed!";
-                Log.e(LOG_TAG, message);
+        requestApps(false);
+    }
 
-            }else if(watchdogConfig.checkIfWhitelisted(foregroundApp)){
-                // если приложение в вайтлисте
-                needLaunch = false;
+    // условный запрос политики приложений с сервера, неотправленный предыдущий запрос заменяется
+    // full - без If-None-Match/If-Modified-Since, ответ всегда с полным телом
+    private void requestApps(boolean full){
+        if(token != null)
+        {
+            HashMap<String, String> headers = new HashMap<>();
 
-                if(isProcessExists(watchdogConfig.targetPackage) && !watchdogConfig.launcherKillWhitelist.contains(foregroundApp))
-                    killPackage(watchdogConfig.targetPackage);
+            if(!full && appsPolicyCache.getEtag() != null) headers.put("If-None-Match", appsPolicyCache.getEtag());
+            if(!full && appsPolicyCache.getLastModified() != null) headers.put("If-Modified-Since", appsPolicyCache.getLastModified());
 
-                Log.i(LOG_TAG, foregroundApp + " is whitelisted, milliseconds left: " + (watchdogConfig.getWhitelistEndTimestamp(foregroundApp) - System.currentTimeMillis()));
-            }else if(!isProcessExists(watchdogConfig.targetPackage)){
-                // если процесс лаунчера не запущен
-                message = watchdogConfig.targetPackage + " process not exists";
-                Log.i(LOG_TAG, message);
+            outboundQueue.enqueue("apps", "apps", "GET", APPS_URL, headers, null, false);
+        }
+    }
+
+    private void onAppsResponse(HttpTransport.Response response){
+        try {
+            if(response.statusCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                AppsPolicy policy = AppsPolicy.parse(new InputStreamReader(new ByteArrayInputStream(response.body), StandardCharsets.UTF_8));
+
+                appsPolicyCache.update(policy, response.body, response.getHeader("ETag"), response.getHeader("Last-Modified"));
             }
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Apps policy error: " + e);
+        }
 
-            if(needLaunch){
-                if(!watchdogConfig.allowStartLauncher) {
-                    // если старт лаунчера НЕ разрешен
-                    return;
-                }
+        applyAppsPolicy(appsPolicyCache.getPolicy());
+    }
 
-                Log.i(LOG_TAG, "Active app: " + foregroundApp);
+    // эвенты push канала: policy - дельта в формате /device/apps, command - объект с командами вайтлиста
+    private void processPushEvent(String event, String data){
+        EventLog.log(EventLog.PUSH_EVENT, event);
 
-                // запускаем наш лаунчер
-                launchPackage(watchdogConfig.targetPackage, watchdogConfig.targetPackageActivity);
+        try {
+            switch (event){
+                case "policy":
+                    appsPolicyCache.applyDelta(AppsPolicy.parse(new StringReader(data)));
+                    applyAppsPolicy(appsPolicyCache.getPolicy());
+                    break;
 
-                // чистим предыдущее приложение
-                lastForegroundApp = checkProcessForKill(lastForegroundApp);
-            }
+                case "command":
+                    if(watchdogConfig == null) return;
 
-        }, 0, watchdogConfig.checkProcessEveryMs, TimeUnit.MILLISECONDS);
+                    JSONObject commands = new JSONObject(data);
+                    Iterator<String> keys = commands.keys();
 
+                    while (keys.hasNext()) {
+                        String key = keys.next();
 
-        // повторяющаяся таска
-        ScheduledExecutorService appsService = Executors.newSingleThreadScheduledExecutor();
+                        // токен с сервера не меняем, только команды вайтлиста
+                        if(key.equals("set_token")) continue;
 
-        // предыдущую офаем
-        if(appsScheduler != null)
-            appsScheduler.cancel(true);
+                        processCommand(key, commands.isNull(key) ? null : commands.get(key).toString());
+                    }
+                    break;
+
+                default:
+                    Log.e(LOG_TAG, "Unhandled push event: " + event);
+                    break;
+            }
+        } catch (IOException | JSONException | RuntimeException e) {
+            Log.e(LOG_TAG, "Push event error: " + e);
+        }
+    }
+
+    // политика применяется ко всем запущенным приложениям, а не только к foreground
+    // дальше тик сам проверяет ее на каждой смене foreground, даже если push канал молчит
+    private void applyAppsPolicy(AppsPolicy policy){
+        watchdogTick.setAppsPolicy(policy);
+
+        if(watchdogTick.applyAppsPolicy(watchdogConfig, policy, SystemClock.elapsedRealtime()))
+            scheduleWhitelistExpiry();
+
+        publishStatus();
+    }
 
-        appsScheduler = appsService.scheduleAtFixedRate(() -> {
+    private void tick(boolean eventDriven){
+        // тик обычно короче миллисекунды: в миллисекундах все замеры легли бы в первый бакет
+        long start = SystemClock.elapsedRealtimeNanos();
 
-            if(!appsRequestInProcess && token != null && !getForegroundApp().equals(watchdogConfig.targetPackage))
-            {
-                appsRequestInProcess = true;
+        WatchdogTrace.begin("tick");
 
-                StringRequest stringRequest = new StringRequest(Request.Method.GET, APPS_URL,
-                        (Response.Listener<String>) response -> {
+        try {
+            checkForeground(eventDriven);
+        } finally {
+            WatchdogTrace.end();
 
-                            try {
-                                JSONArray jsonArray = new JSONArray(response); // gson почему-то не парсит поля объектов
+            ticksMetric.increment();
+            tickDurationMetric.record((SystemClock.elapsedRealtimeNanos() - start) / 1000);
+        }
+    }
 
-                                if(jsonArray.length() > 0){
+    // основной тик вачдога, само решение в WatchdogTick
+    private void checkForeground(boolean eventDriven){
 
-                                    String foregroundApp = getForegroundApp();
+        // уже ребутимся
+        if(rebooting) return;
 
-                                    //Log.i(LOG_TAG, "foregroundApp: '" + foregroundApp + "'");
+        if(!firstTickLogged){
+            firstTickLogged = true;
 
-                                    for (int i = 0; i < jsonArray.length(); i++) {
+            long now = SystemClock.elapsedRealtime();
+            EventLog.log(EventLog.FIRST_TICK, now - onCreateElapsed, now, configFromSnapshot ? "snapshot" : "json");
+        }
 
-                                        JSONObject jsonObject = jsonArray.getJSONObject(i);
+        String foregroundApp = watchdogTick.run(watchdogConfig, eventDriven, SystemClock.elapsedRealtime());
 
-                                        String appPackage = jsonObject.getString("name");
-                                        boolean isActive = jsonObject.getBoolean("is_active");
+        tickScheduler.report(foregroundApp, powerManager.isInteractive());
+        scheduleHeartbeatCheck();
 
-                                        //Log.i(LOG_TAG, "appResult: '" + appPackage + "', is_active == " + isActive);
+        if(statusPage != null) {
+            statusPage.getPage().writeWatchdogTick(SystemClock.elapsedRealtime());
+            publishStatus();
+        }
+    }
 
-                                        if (!foregroundApp.equals(appPackage)) continue;
+    // зависание лаунчера ловится ровно по дедлайну heartbeat, а не на ближайшем тике после него
+    private void scheduleHeartbeatCheck(){
+        long nextCheck = watchdogTick.getNextHeartbeatCheck();
 
-                                        if (!isActive) {
+        if(nextCheck == 0) scheduler.cancel("heartbeat");
+        else scheduler.scheduleAtElapsed("heartbeat", nextCheck, () -> {
+            if(rebooting) return;
 
-                                            watchdogConfig.removeFromWhitelist(appPackage);
+            watchdogTick.checkHeartbeat(watchdogConfig, SystemClock.elapsedRealtime());
+            scheduleHeartbeatCheck();
+        });
+    }
 
-                                            Log.i(LOG_TAG, appPackage + " is_active == false");
+    // дедлайны и вайтлист переписываются только после изменений, причина перезапуска - после нового перезапуска
+    private void publishStatus(){
+        if(statusPage == null) return;
 
-                                            // запускаем наш лаунчер
-                                            launchPackage(watchdogConfig.targetPackage, watchdogConfig.targetPackageActivity);
-                                            // чистим предыдущее приложение
-                                            lastForegroundApp = checkProcessForKill(lastForegroundApp);
-                                        }
-                                    }
-                                }
+        StatusPage page = statusPage.getPage();
 
-                            }catch (Exception e){
-                                Log.e(LOG_TAG, e.getMessage());
-                            }finally {
-                                appsRequestInProcess = false;
-                            }
-                        },
-                        (Response.ErrorListener) error -> {
-                            Log.e(LOG_TAG, error.getMessage());
+        if(statusDirty) {
+            statusDirty = false;
 
-                            appsRequestInProcess = false;
-                        }){
+            long[] deadlines = getDeadlines();
 
-                    @Override
-                    public Map<String, String> getHeaders() {
+            page.writeStatus(deadlines[IWatchdog.DEADLINE_REBOOT], deadlines[IWatchdog.DEADLINE_WAKEUP], deadlines[IWatchdog.DEADLINE_RUNTIME],
+                    watchdogConfig.packagesForegroundTimedWhitelist.snapshot());
+        }
 
-                        Map<String, String> params = new HashMap<>();
-                        params.put("token", token);
+        if(watchdogTick.getRelaunchCount() != publishedRelaunchCount) {
+            publishedRelaunchCount = watchdogTick.getRelaunchCount();
 
-                        return params;
-                    }
-                };
+            page.writeRelaunch(watchdogTick.getLastRelaunchAt(), watchdogTick.getLastRelaunchReason(), watchdogTick.getLastRelaunchPackage());
+        }
+    }
 
-                requestQueue.add(stringRequest);
+    // грант вайтлиста истек: политика по всем процессам и сразу тик чтобы вернуть лаунчер
+    private void onWhitelistExpired(String packageName){
+        EventLog.log(EventLog.WHITELIST_EXPIRED, packageName);
 
-            }
+        applyAppsPolicy(appsPolicyCache.getPolicy());
 
-        }, 0, 10, TimeUnit.SECONDS);
+        tickScheduler.tickNow("whitelist expired for " + packageName);
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
 
+        // START_STICKY: после убийства процесса система перезапускает сервис с пустым интентом
+        if(intent == null || intent.getAction() == null) {
+            Log.d(LOG_TAG, "Watchdog service onStartCommand() restarted");
+            return START_STICKY;
+        }
+
         Log.d(LOG_TAG, "Watchdog service onStartCommand() " + intent.getAction());
 
         switch (intent.getAction()){
@@ -264,10 +507,10 @@ public class WatchdogService extends Service {
             case "com.viavr.intent.LAUNCHER_RUNNING":
                 Log.i(LOG_TAG,"Reloading watchdog config...");
 
-                // перезагружаем конфиг так как возможно он обновился (файл конфига ререзаписывается при каждом запуске лаунчера)
-                watchdogConfig = readConfig(CONFIG_PATH);
-
-                checkConfig(watchdogConfig);
+                // файл конфига перезаписывается при каждом запуске лаунчера, обычно тем же содержимым - тогда не парсим
+                // изменения сами по себе ловит FileObserver, эвент лаунчера остается страховкой
+                if(configReloader != null)
+                    WatchdogScheduler.get().post(configReloader::check);
                 break;
 
             case "android.intent.action.MAIN":
@@ -276,8 +519,11 @@ public class WatchdogService extends Service {
                 break;
 
             case "com.viavr.intent.WATCHDOG_COMMAND":
-                // команды вачдогу через интент
-                processIntentCommand(intent.getExtras());
+                // команды вачдогу через интент, обрабатываются на потоке планировщика вместе с тиками
+                Bundle extras = intent.getExtras();
+
+                if(extras != null)
+                    WatchdogScheduler.get().post(() -> processIntentCommand(extras));
                 break;
 
             default:
@@ -288,127 +534,449 @@ public class WatchdogService extends Service {
         return START_STICKY;
     }
 
+    // adb shell dumpsys activity service com.viavr.watchdog/.WatchdogService
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Watchdog v" + BuildConfig.VERSION_NAME);
+        writer.println("  Metrics");
+        Metrics.get().dump(writer, "    ");
+        writer.println("  " + WatchdogScheduler.get());
+
+        // dump приходит с binder потока: состояние сервиса собираем на потоке планировщика
+        try {
+            writer.print(WatchdogScheduler.get().call(this::describeState, DUMP_TIMEOUT_MS));
+        } catch (Exception e) {
+            writer.println("  state unavailable: " + e);
+        }
+
+        writer.println("  " + EventLog.get());
+
+        // dumpsys activity service com.viavr.watchdog/.WatchdogService events [N] - последние N событий журнала
+        if(args != null && args.length > 0 && "events".equals(args[0])) {
+            int max = EVENT_DUMP_DEFAULT;
+
+            if(args.length > 1) {
+                try {
+                    max = Math.max(1, Integer.parseInt(args[1]));
+                } catch (NumberFormatException ignored) {}
+            }
+
+            writer.println("  Events");
+            EventLog.get().dump(writer, max);
+        }
+    }
+
+    // на потоке планировщика
+    private String describeState(){
+        StringBuilder state = new StringBuilder();
+
+        state.append("  ").append(relaunchTracker).append('\n');
+
+        if(outboundQueue != null) state.append("  ").append(outboundQueue).append('\n');
+        if(stateJournal != null) state.append("  ").append(stateJournal).append('\n');
+        if(killEngine != null) state.append("  ").append(killEngine).append('\n');
+        if(statusPage != null) state.append("  ").append(statusPage.getPage()).append('\n');
+
+        if(watchdogConfig != null) state.append("  ").append(describeConfig(watchdogConfig)).append('\n');
+
+        return state.toString();
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
 
+        if(tickScheduler != null)
+            tickScheduler.stop();
+
         if(scheduler != null)
-            scheduler.cancel(true);
+            scheduler.cancelAll();
+
+        if(screenOnReceiver != null)
+            unregisterReceiver(screenOnReceiver);
+
+        if(commandReceiver != null)
+            unregisterReceiver(commandReceiver);
+
+        if(launcherReceiver != null)
+            unregisterReceiver(launcherReceiver);
+
+        if(foregroundTracker != null)
+            foregroundTracker.stop();
+
+        if(pushChannel != null)
+            pushChannel.stop();
+
+        if(configReloader != null)
+            configReloader.stopWatching();
+
+        if(outboundQueue != null)
+            outboundQueue.stopConnectivityTracking();
+
+        if(transport != null)
+            transport.shutdown();
+
+        if(telemetryBuffer != null) {
+            try {
+                telemetryBuffer.close();
+            } catch (IOException ignored) {}
+        }
+
+        // журнал, проверки убийств и отображение снимаем на потоке планировщика:
+        // идущий тик не должен писать в закрытый журнал и память или обходить очищаемый pending
+        if(stateJournal != null) {
+            StateJournal journal = stateJournal;
+            WatchdogScheduler.get().post(journal::close);
+        }
+
+        if(killEngine != null) {
+            KillEngine engine = killEngine;
+            WatchdogScheduler.get().post(engine::cancel);
+        }
+
+        if(statusPage != null) {
+            SharedStatusPage page = statusPage;
+            WatchdogScheduler.get().post(() -> {
+                statusPage = null;
+                page.close();
+            });
+        }
 
         Log.d(LOG_TAG, "Watchdog service onDestroy()");
+
+        // хвост кольца в файл до смерти процесса
+        EventLog.get().stop();
     }
 
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
     }
 
     void initializeConfig(){
-        watchdogConfig = readConfig(CONFIG_PATH);
+        // корневая папка внутренней памяти
+        File configFile = new File(Environment.getExternalStorageDirectory().getPath(), CONFIG_PATH);
+
+        File snapshotFile = new File(getFilesDir(), CONFIG_SNAPSHOT_PATH);
+
+        configReloader = new ConfigReloader(configFile, WatchdogScheduler.get(), config -> {
+            checkConfig(config);
+            applyConfig(config);
+
+            // снимок для следующего холодного старта
+            ConfigSnapshot.write(snapshotFile, config, configReloader.getLastChecksum());
+        });
+
+        ConfigSnapshot snapshot = ConfigSnapshot.read(snapshotFile);
 
-        checkConfig(watchdogConfig);
+        if(snapshot != null){
+            // стартуем со снимка, json сверяем в фоне: на буте external storage может быть еще не смонтирована
+            Log.i(LOG_TAG,"Config loaded from snapshot '" + snapshotFile.getAbsolutePath() + "'");
+
+            configFromSnapshot = true;
+            configReloader.setKnownChecksum(snapshot.sourceChecksum);
+
+            checkConfig(snapshot.config);
+            applyConfig(snapshot.config);
+
+            WatchdogScheduler.get().post(configReloader::check);
+        }
+        else if(!configReloader.check()){
+            // ошибка при загрузке файла, работаем на дефолтном конфиге
+            checkConfig(null);
+            applyConfig(WatchdogConfig.createDefault());
+        }
 
         initRebootTime(watchdogConfig);
     }
 
-    private void initRebootTime(WatchdogConfig watchdogConfig){
-        Calendar calendar = Calendar.getInstance(Locale.getDefault());
+    // атомарная подмена конфига: гранты вайтлиста переезжают в новый, перевзводятся только задачи с изменившимися параметрами
+    private void applyConfig(WatchdogConfig newConfig){
+        WatchdogConfig previousConfig = watchdogConfig;
+
+        // гранты вайтлиста живут дольше конфига
+        if(previousConfig != null)
+            newConfig.packagesForegroundTimedWhitelist = previousConfig.packagesForegroundTimedWhitelist;
+
+        newConfig.packagesForegroundTimedWhitelist.setExpiryListener(this::onWhitelistExpired);
+
+        watchdogConfig = newConfig;
+        targetPackage = newConfig.targetPackage;
+
+        // первый конфиг, задачи еще не заведены
+        if(previousConfig == null || tickScheduler == null) return;
+
+        Set<String> changed = WatchdogConfig.diff(previousConfig, newConfig);
 
-        //выставляем время ребута, по умолчанию 6 часов утра
-        calendar.set(Calendar.HOUR_OF_DAY, watchdogConfig.rebootAtHour);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
+        if(changed.isEmpty()) return;
 
-        // если время уже прошло то выставляем ребут на следующий день
-        if(System.currentTimeMillis() > calendar.getTimeInMillis())
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        EventLog.log(EventLog.CONFIG_CHANGED, changed.toString());
 
-        targetRebootTime = calendar.getTimeInMillis();
+        configReloadsMetric.increment();
+
+        if(changed.contains("check_every_milliseconds"))
+            tickScheduler.setBasePeriod(getTickPeriodMs());
+
+        if(changed.contains("process_table_backend")) {
+            processSource = createProcessSource(newConfig);
+            killEngine.setProcessSource(processSource);
+        }
+
+        if(changed.contains("allow_reboot") || changed.contains("reboot_at_hour")) {
+            initRebootTime(newConfig);
+            scheduler.scheduleAt("reboot", targetRebootTime, this::onRebootTime);
+        }
+
+        if(changed.contains("allow_wakeup") || changed.contains("wakeup_every_seconds") || changed.contains("wakeup_random_seconds")) {
+            setNextWakeupMillis(getNextWakeupTime());
+            scheduler.scheduleAt("wakeup", nextWakeupMillis, this::onWakeupTime);
+        }
+
+        if(changed.contains("allow_runtime") || changed.contains("runtime_every_seconds") || changed.contains("runtime_random_seconds")) {
+            setNextSendRuntimeMillis(getNextSendRuntimeTime());
+            scheduler.scheduleAt("runtime", nextSendRuntimeMillis, this::onSendRuntimeTime);
+        }
+
+        // таргет или правила запуска поменялись, проверяем сразу
+        if(changed.contains("target_package") || changed.contains("target_package_activity") || changed.contains("allow_start_vrlauncher"))
+            tickScheduler.tickNow("config changed");
+    }
+
+    // при живых эвентах ForegroundTracker тик остается только страховкой
+    private long getTickPeriodMs(){
+        return WatchdogSchedule.tickPeriodMs(watchdogConfig, foregroundTracker != null && foregroundTracker.hasActiveSources());
+    }
+
+    private void initRebootTime(WatchdogConfig watchdogConfig){
+        //выставляем время ребута, по умолчанию 6 часов утра; если время уже прошло то на следующий день
+        targetRebootTime = WatchdogSchedule.nextDailyAt(System.currentTimeMillis(), watchdogConfig.rebootAtHour, TimeZone.getDefault());
+        statusDirty = true;
 
-        Log.i(LOG_TAG, "Next reboot at: " + DateFormat.format("dd.MM.yyyy HH:mm:ss", calendar));
+        EventLog.log(EventLog.SCHEDULED, IWatchdog.DEADLINE_REBOOT, targetRebootTime, null);
     }
 
     boolean rebooting = false;
 
-    private boolean checkRebootTime(){
+    private void onRebootTime(){
 
-        if(rebooting) return true;
+        if(rebooting) return;
 
-        if(System.currentTimeMillis() >= targetRebootTime){
-            rebooting = true;
+        if(!watchdogConfig.allowReboot){
+            // ребут выключен, переносим на следующие сутки
+            initRebootTime(watchdogConfig);
+            scheduler.scheduleAt("reboot", targetRebootTime, this::onRebootTime);
+            return;
+        }
+
+        rebooting = true;
+
+        powerManager.reboot("");
+    }
+
+    // плановая отправка накопленной телеметрии, раз в sendRuntimeEverySeconds
+    private void onSendRuntimeTime(){
+        if(!watchdogConfig.allowSendRuntime){
+            setNextSendRuntimeMillis(getNextSendRuntimeTime());
+            scheduler.scheduleAt("runtime", nextSendRuntimeMillis, this::onSendRuntimeTime);
+            return;
+        }
 
-            powerManager.reboot("");
+        // шлем только при выключенном экране, дедлайн не сдвигаем а перепроверяем позже
+        if(token == null || powerManager.isInteractive()){
+            scheduler.schedule("runtime", RUNTIME_RETRY_MS, this::onSendRuntimeTime);
+            return;
         }
 
-        return rebooting;
+        setNextSendRuntimeMillis(getNextSendRuntimeTime());
+        scheduler.scheduleAt("runtime", nextSendRuntimeMillis, this::onSendRuntimeTime);
+
+        uploadTelemetry();
     }
 
-    private void checkSendRuntimeTime(){
-        if(token != null && System.currentTimeMillis() >= nextSendRuntimeMillis && !powerManager.isInteractive()){
+    // замер в кольцевой буфер, пачка уходит раньше срока если набралась или шлем на зарядке с выключенным экраном
+    private void onSampleTelemetry(){
+        if(telemetryBuffer == null || !watchdogConfig.allowSendRuntime) return;
 
-            if(watchdogConfig.runtimeApiUrl == null || watchdogConfig.runtimeApiUrl.equals("")) return;
+        try {
+            telemetryBuffer.append(new TelemetrySample(System.currentTimeMillis(), getBatteryLevel(), isDeviceCharging(), getPackageVersion(watchdogConfig.targetPackage)));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Telemetry sample write failed: " + e.getMessage());
+            return;
+        }
 
-            try {
-                String URL = watchdogConfig.runtimeApiUrl;
-
-                JSONObject jsonBody = new JSONObject();
-
-                jsonBody.put("battery", getBatteryLevel());
-                jsonBody.put("firmware", getPackageVersion(watchdogConfig.targetPackage));
-                jsonBody.put("charging", isDeviceCharging());
-
-                final String requestBody = jsonBody.toString();
-
-                StringRequest stringRequest = new StringRequest(Request.Method.POST, URL, new Response.Listener<String>() {
-                    @Override
-                    public void onResponse(String response) {}
-                }, new Response.ErrorListener() {
-                    @Override
-                    public void onErrorResponse(VolleyError error) { Log.e(LOG_TAG, error.toString()); }
-                }) {
-                    @Override
-                    public String getBodyContentType() {
-                        return "application/json; charset=utf-8";
-                    }
+        boolean idleCharging = isDeviceCharging() && !powerManager.isInteractive();
 
-                    @Override
-                    public byte[] getBody() {
-                        return requestBody.getBytes(StandardCharsets.UTF_8);
-                    }
+        if(telemetryBuffer.size() >= TELEMETRY_BATCH_SAMPLES || idleCharging)
+            uploadTelemetry();
+    }
 
-                    @Override
-                    public Map<String, String> getHeaders() {
+    // пачка замеров переезжает из кольца в очередь исходящих, дальше повторы и Retry-After на ней
+    private void uploadTelemetry(){
+        if(telemetryBuffer == null || token == null) return;
+        if(watchdogConfig.runtimeApiUrl == null || watchdogConfig.runtimeApiUrl.equals("")) return;
 
-                        Map<String, String> params = new HashMap<>();
-                        params.put("token", token);
+        // следующая пачка только после доставки предыдущей, иначе без сети замеры расползутся по мелким пачкам
+        if(outboundQueue.getPendingCount("telemetry") > 0) return;
 
-                        return params;
-                    }
-                };
+        try {
+            TelemetryBuffer.Batch batch = telemetryBuffer.peekBatch(TELEMETRY_MAX_BATCH_SAMPLES);
 
-                requestQueue.add(stringRequest);
+            if(batch.samples.isEmpty()) return;
 
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
+            HashMap<String, String> sections = new HashMap<>();
+            sections.put("relaunch", relaunchTracker.toJson());
+            sections.put("metrics", Metrics.get().toJson());
+
+            outboundQueue.enqueue("telemetry", null, "POST", watchdogConfig.runtimeApiUrl, Collections.emptyMap(), TelemetryBatch.encode(batch.samples, sections), true);
 
-            nextSendRuntimeMillis = getNextSendRuntimeTime();
+            telemetryBuffer.remove(batch);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Telemetry batch failed: " + e.getMessage());
         }
     }
 
-    private void checkWakeupTime(){
-        if(System.currentTimeMillis() >= nextWakeupMillis){
+    // заголовки подставляются очередью в момент отправки, токен всегда текущий и на диск не попадает
+    private Map<String, String> requestHeaders(OutboundQueue.Entry entry){
+        if(token == null) return null;
+
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("token", token);
+
+        if(entry.kind.equals("telemetry")) {
+            headers.put("Content-Type", "application/json; charset=utf-8");
+            headers.put("Content-Encoding", "gzip");
+        }
+
+        return headers;
+    }
+
+    private void onWakeupTime(){
+        if(watchdogConfig.allowWakeup){
 
             PowerManager.WakeLock wakeLock = powerManager.newWakeLock(PowerManager.ACQUIRE_CAUSES_WAKEUP | PowerManager.SCREEN_DIM_WAKE_LOCK, "helper:AlarmReceiver");
 
             wakeLock.acquire(60*1000L /*1 minute*/);
             wakeLock.release();
 
-            Log.i(LOG_TAG, "WAKEUP!");
+            EventLog.log(EventLog.WAKEUP, null);
+        }
+
+        setNextWakeupMillis(getNextWakeupTime());
+        scheduler.scheduleAt("wakeup", nextWakeupMillis, this::onWakeupTime);
+    }
+
+    // журнал открывается после конфига: вайтлист уже создан и дальше переезжает между конфигами
+    private StateJournal.State openStateJournal(){
+        int bootCount = Settings.Global.getInt(getContentResolver(), Settings.Global.BOOT_COUNT, 0);
+
+        StateJournal.State state;
+
+        try {
+            stateJournal = new StateJournal(new File(getFilesDir(), STATE_JOURNAL_PATH), STATE_JOURNAL_CAPACITY, bootCount);
+
+            long replayStart = SystemClock.elapsedRealtimeNanos();
+            state = stateJournal.replay(SystemClock.elapsedRealtime());
 
-            nextWakeupMillis = getNextWakeupTime();
+            Log.i(LOG_TAG, "State journal replayed in " + (SystemClock.elapsedRealtimeNanos() - replayStart) / 1000 + "us: " +
+                    stateJournal.getReplayedRecords() + " records, " + state.grants.size() + " grants, boot " + bootCount);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "State journal open failed: " + e.getMessage());
+            return null;
         }
+
+        TimedWhitelist whitelist = watchdogConfig.packagesForegroundTimedWhitelist;
+
+        for (Map.Entry<String, Long> grant : state.grants.entrySet())
+            whitelist.grantUntil(grant.getKey(), grant.getValue());
+
+        whitelist.setChangeListener(new TimedWhitelist.ChangeListener() {
+            @Override
+            public void onGranted(String packageName, long deadline) {
+                stateJournal.recordGrant(packageName, deadline);
+            }
+
+            @Override
+            public void onRevoked(String packageName) {
+                stateJournal.recordRevoke(packageName);
+            }
+
+            @Override
+            public void onCleared() {
+                stateJournal.recordClear();
+            }
+        });
+
+        watchdogTick.restoreLastForegroundApp(state.lastForegroundApp);
+
+        return state;
+    }
+
+    // гейджи читают состояние в момент запроса метрик
+    private void registerMetrics(){
+        Metrics metrics = Metrics.get();
+
+        metrics.gauge("mailbox_depth", scheduler::getMailboxDepth);
+        metrics.gauge("scheduler_jobs", scheduler::getJobCount);
+        metrics.gauge("outbox_depth", outboundQueue::getDepth);
+        metrics.gauge("kill_pending", onScheduler(killEngine::getPendingCount));
+        // tickScheduler заводится после метрик; сам синхронизирован, читается с любого потока
+        metrics.gauge("tick_rate_per_min", () -> Math.round(tickScheduler.getEffectiveTicksPerMinute()));
+        // 0 FAST, 1 NORMAL, 2 IDLE
+        metrics.gauge("tick_mode", () -> tickScheduler.getMode().ordinal());
+        metrics.gauge("tick_count", () -> tickScheduler.getTickCount());
+        metrics.gauge("whitelist_size", onScheduler(() -> watchdogConfig.packagesForegroundTimedWhitelist.size()));
+
+        if(telemetryBuffer != null) metrics.gauge("telemetry_buffered", telemetryBuffer::size);
+        if(stateJournal != null) metrics.gauge("state_journal_bytes", stateJournal::getUsedBytes);
+
+        metrics.register(relaunchTracker.detectToForeground);
+        metrics.register(relaunchTracker.detectToLaunch);
+        metrics.register(relaunchTracker.launchToProcess);
+        metrics.register(relaunchTracker.launchToForeground);
+    }
+
+    // гейдж по состоянию потока планировщика: телеметрия читает его там же, dumpsys - с binder потока
+    // планировщик занят дольше GAUGE_TIMEOUT_MS - значение -1
+    private Metrics.Gauge onScheduler(Metrics.Gauge gauge){
+        return () -> {
+            try {
+                return scheduler.call(gauge::get, GAUGE_TIMEOUT_MS);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    private void setNextWakeupMillis(long millis){
+        nextWakeupMillis = millis;
+        statusDirty = true;
+
+        if(stateJournal != null) stateJournal.recordNextWakeup(millis);
+    }
+
+    private void setNextSendRuntimeMillis(long millis){
+        nextSendRuntimeMillis = millis;
+        statusDirty = true;
+
+        if(stateJournal != null) stateJournal.recordNextSendRuntime(millis);
+    }
+
+    // срабатывание ровно в момент истечения ближайшего гранта вайтлиста
+    private void scheduleWhitelistExpiry(){
+        long nextExpiry = watchdogConfig.getNextWhitelistExpiry();
+
+        if(nextExpiry == 0) scheduler.cancel("whitelist_expiry");
+        else scheduler.scheduleAtElapsed("whitelist_expiry", nextExpiry, () -> {
+            watchdogConfig.expireWhitelist(SystemClock.elapsedRealtime());
+            scheduleWhitelistExpiry();
+        });
+
+        // лаунчер видит выданный грант сразу, а не на следующем тике
+        statusDirty = true;
+        publishStatus();
     }
 
     // обработка кастомных команд которые прилетают с интентом com.viavr.intent.WATCHDOG_COMMAND
@@ -417,82 +985,190 @@ public class WatchdogService extends Service {
         if(watchdogConfig == null) return;
 
         for (String key : extras.keySet()) {
+            processCommand(key, extras.get(key) != null ? extras.get(key).toString() : null);
+        }
+    }
 
-            String message = "";
-            String value = (extras.get(key) != null ? extras.get(key).toString() : null);
+    // одна команда вачдогу, общая для интента и push канала
+    void processCommand(String key, String value){
 
-            Log.i(LOG_TAG, "Processing intent key: " + key + " value: " + value);
+        String message = "";
 
-            if(value == null) continue;
+        // значение в журнал не пишем: в set_token это токен
+        EventLog.log(EventLog.COMMAND, key);
 
-            switch (key){
-                case "add_whitelist": // формат строки: com.random.package:60000 или массив: com.random.package:60000&com.another.package:30000
-                    String[] apps = value.split("&");
+        if(value == null) return;
 
-                    for (String app : apps){
-                        String[] splitted = app.split(":", 2);
-                        if(splitted.length != 2) continue;
+        switch (key){
+            case WatchdogCommand.ADD_WHITELIST: // формат строки: com.random.package:60000 или массив: com.random.package:60000&com.another.package:30000
+                for (WatchdogCommand.Grant grant : WatchdogCommand.parseWhitelistGrants(value))
+                    addGrant(grant.packageName, grant.durationMs);
 
-                        String packageName = splitted[0];
-                        long timerValue = 0L;
+                scheduleWhitelistExpiry();
+                break;
 
-                        try {
-                            timerValue = Long.parseLong(splitted[1]);
-                        }catch (NumberFormatException e){
-                            continue;
-                        }
+            case WatchdogCommand.REMOVE_WHITELIST:
+                revokeWhitelist(new String[] { value });
+                break;
 
-                        watchdogConfig.addToWhitelist(packageName, timerValue);
+            case WatchdogCommand.CLEAR_WHITELIST:
+                clearWhitelist();
+                break;
 
-                        message = "addToWhitelist: " + packageName + " for " + timerValue + "ms";
-                        Log.i(LOG_TAG, message);
-                    }
-                    break;
+            case WatchdogCommand.TRACE: // on - запись секций в кольцевой буфер, dump - сброс в файл Chrome JSON, off - выключить
+                message = processTraceCommand(value);
+                Log.i(LOG_TAG, message);
+                break;
 
-                case "remove_whitelist":
-                    watchdogConfig.removeFromWhitelist(value);
+            case WatchdogCommand.SET_TOKEN:
+                setToken(value);
+                break;
 
-                    message = "removeFromWhitelist: " + value;
-                    Log.i(LOG_TAG, message);
-                    break;
+            default:
+                message = "Unhandled key: " + key + " with value " + value;
+                Log.e(LOG_TAG, message);
+                break;
+        }
+    }
 
-                case "clear_whitelist":
-                    watchdogConfig.clearWhitelist();
+    // команды ниже общие для интента и IWatchdog (WatchdogBinder), вызываются на потоке планировщика
 
-                    message = "clearWhitelist";
-                    Log.i(LOG_TAG, message);
-                    break;
+    // гранты пачкой, таймер истечения перевзводится один раз на всю пачку
+    int grantWhitelist(String[] packages, long[] durationsMs){
+        int granted = 0;
 
-                case "set_token":
-                    token = value;
+        for (int i = 0; i < packages.length; i++) {
+            if(addGrant(packages[i], durationsMs[i])) granted++;
+        }
 
-                    SharedPreferences.Editor editor = sharedPreferences.edit();
-                    editor.putString("token", token);
-                    editor.apply();
+        if(granted > 0) scheduleWhitelistExpiry();
 
-                    message = "set_token: " + value;
-                    Log.i(LOG_TAG, message);
-                    break;
+        return granted;
+    }
 
-                default:
-                    message = "Unhandled key: " + key + " with value " + value;
-                    Log.e(LOG_TAG, message);
-                    break;
-            }
+    int revokeWhitelist(String[] packages){
+        long now = SystemClock.elapsedRealtime();
+        int revoked = 0;
+
+        for (String packageName : packages) {
+            if(packageName == null) continue;
+
+            if(watchdogConfig.getWhitelistMillisLeft(packageName, now) > 0) revoked++;
+
+            watchdogConfig.removeFromWhitelist(packageName);
+
+            EventLog.log(EventLog.WHITELIST_REVOKE, packageName);
         }
+
+        scheduleWhitelistExpiry();
+        applyAppsPolicy(appsPolicyCache.getPolicy());
+
+        return revoked;
     }
 
-    String checkProcessForKill(String backgroundApp){
-        if(backgroundApp == null) return null;
+    void clearWhitelist(){
+        watchdogConfig.clearWhitelist();
+        scheduleWhitelistExpiry();
 
-        if(!backgroundApp.contains(watchdogConfig.targetPackage) && isProcessExists(backgroundApp))
-        {
-            killPackage(backgroundApp);
-            return backgroundApp;
+        EventLog.log(EventLog.WHITELIST_CLEAR, null);
+    }
+
+    List<String> getWhitelistedPackages(){
+        long now = SystemClock.elapsedRealtime();
+        ArrayList<String> packages = new ArrayList<>();
+
+        for (String packageName : watchdogConfig.packagesForegroundTimedWhitelist.snapshot().keySet()) {
+            if(watchdogConfig.checkIfWhitelisted(packageName, now)) packages.add(packageName);
         }
-        else
-        {
-            return null;
+
+        return packages;
+    }
+
+    long[] getWhitelistMillisLeft(String[] packages){
+        long now = SystemClock.elapsedRealtime();
+        long[] millisLeft = new long[packages.length];
+
+        for (int i = 0; i < packages.length; i++)
+            millisLeft[i] = packages[i] != null ? Math.max(0, watchdogConfig.getWhitelistMillisLeft(packages[i], now)) : 0;
+
+        return millisLeft;
+    }
+
+    // фактически взведенные задачи планировщика, выключенные конфигом не показываем
+    long[] getDeadlines(){
+        long[] deadlines = new long[3];
+
+        deadlines[IWatchdog.DEADLINE_REBOOT] = watchdogConfig.allowReboot ? scheduler.getDeadline("reboot") : 0;
+        deadlines[IWatchdog.DEADLINE_WAKEUP] = watchdogConfig.allowWakeup ? scheduler.getDeadline("wakeup") : 0;
+        deadlines[IWatchdog.DEADLINE_RUNTIME] = watchdogConfig.allowSendRuntime ? scheduler.getDeadline("runtime") : 0;
+
+        return deadlines;
+    }
+
+    void setToken(String value){
+        token = value;
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putString("token", token);
+        editor.apply();
+
+        // переподключаем push канал с новым токеном
+        if(pushChannel != null)
+            pushChannel.start(token);
+
+        // отложенные без токена запросы
+        if(outboundQueue != null)
+            scheduler.post(outboundQueue::drain);
+    }
+
+    SharedMemory getStatusPage(){
+        return statusPage != null ? statusPage.getSharedMemory() : null;
+    }
+
+    // с binder потока
+    String getTargetPackage(){
+        return targetPackage;
+    }
+
+    // без перевзвода таймера истечения
+    private boolean addGrant(String packageName, long durationMs){
+        if(packageName == null || packageName.isEmpty() || durationMs <= 0) return false;
+
+        watchdogConfig.addToWhitelist(packageName, durationMs, SystemClock.elapsedRealtime());
+        whitelistGrantsMetric.increment();
+
+        EventLog.log(EventLog.WHITELIST_GRANT, durationMs, packageName);
+
+        return true;
+    }
+
+    // файлы трейса: /sdcard/Android/data/com.viavr.watchdog/files/traces/watchdog-<время>.json
+    private String processTraceCommand(String value){
+        switch (value){
+            case "on":
+                WatchdogTrace.startRecording(WatchdogTrace.DEFAULT_CAPACITY);
+                return "trace: recording";
+
+            case "off":
+                WatchdogTrace.stopRecording();
+                return "trace: stopped";
+
+            case "dump":
+                File directory = new File(getExternalFilesDir(null), "traces");
+
+                if(!directory.isDirectory() && !directory.mkdirs())
+                    return "trace: can't create " + directory;
+
+                File file = new File(directory, "watchdog-" + DateFormat.format("yyyyMMdd-HHmmss", System.currentTimeMillis()) + ".json");
+
+                try {
+                    return WatchdogTrace.writeChromeJson(file) ? "trace: written " + file : "trace: not recording";
+                } catch (IOException e) {
+                    return "trace: write failed " + e.getMessage();
+                }
+
+            default:
+                return "trace: unknown value " + value;
         }
     }
 
@@ -501,61 +1177,26 @@ public class WatchdogService extends Service {
 
         if(watchdogConfig == null){
             // ошибка при загрузке файла, создаем пустой конфиг по дефолту, запуск лаунчера и сентри отключены
-            watchdogConfig = new WatchdogConfig();
+            watchdogConfig = WatchdogConfig.createDefault();
 
-            String message = "No valid config found, using default watchdog config\n" + watchdogConfig.toString();
+            String message = "No valid config found, using default watchdog config\n" + describeConfig(watchdogConfig);
             Log.e(LOG_TAG, message);
+            EventLog.log(EventLog.CONFIG_LOADED, 1, "default");
         }
         else if(watchdogConfig.errors != null){
             // какие-то поля распарсились криво
-            String message = "Config created with errors!\nerrors: " + watchdogConfig.errors + "\n" + watchdogConfig.toString();
+            String message = "Config created with errors!\nerrors: " + watchdogConfig.errors + "\n" + describeConfig(watchdogConfig);
             Log.e(LOG_TAG, message);
+            EventLog.log(EventLog.CONFIG_LOADED, 1, watchdogConfig.errors);
         }
         else{
-            // всё ок
-            Log.i(LOG_TAG, "Watchdog config loaded without errors\n" + watchdogConfig.toString());
+            // всё ок; сам конфиг целиком - в dumpsys, а не в каждой перезагрузке
+            EventLog.log(EventLog.CONFIG_LOADED, 0, null);
         }
     }
 
-    // чтение и парсинг конфига из внутренней памяти
-    WatchdogConfig readConfig(String relativeConfigFilePath){
-        // корневая папка внутренней памяти
-        String internalStorageRoot = Environment.getExternalStorageDirectory().getPath();
-
-        File configFile = new File(internalStorageRoot, relativeConfigFilePath);
-
-        if(!configFile.exists()){
-            Log.e(LOG_TAG,"Config file '" + configFile.getAbsolutePath() + "' not exists!");
-            return null;
-        }
-
-        StringBuilder text = new StringBuilder();
-
-        Log.i(LOG_TAG,"Reading config '" + configFile.getAbsolutePath() + "'...");
-
-        try {
-            BufferedReader br = new BufferedReader(new FileReader(configFile));
-            String line;
-
-            while ((line = br.readLine()) != null) {
-                text.append(line);
-                text.append('\n');
-            }
-            br.close();
-        }
-        catch (IOException e) {
-            Log.e(LOG_TAG,"Error reading '" + configFile.getAbsolutePath() + "': " + e.getMessage());
-            return null;
-        }
-
-        Log.i(LOG_TAG,"Config '" + configFile.getAbsolutePath() + "' read success");
-
-        try {
-            return WatchdogConfig.create(new JSONObject(text.toString()));
-        } catch (JSONException e) {
-            Log.e(LOG_TAG,"Error parsing '" + configFile.getAbsolutePath() + "': " + e.getMessage());
-            return null;
-        }
+    private static String describeConfig(WatchdogConfig watchdogConfig){
+        return "[v" + BuildConfig.VERSION_NAME + "] received " + watchdogConfig;
     }
 
     // запуск приложения (в данном случае юзаем для запуска лаунчера)
@@ -563,29 +1204,42 @@ public class WatchdogService extends Service {
         Intent launchIntent = new Intent(Intent.ACTION_MAIN);
         launchIntent.setComponent(new ComponentName(packageToLaunch, activityToLaunch));
 
-        Log.i(LOG_TAG, "Launching package " + packageToLaunch);
-        startActivity(launchIntent);
-    }
+        EventLog.log(EventLog.LAUNCH, packageToLaunch);
 
-    private void killPackage(String packageToKill){
+        WatchdogTrace.begin("launch");
 
-        if(!watchdogConfig.allowKillApps || watchdogConfig.launcherKillWhitelist.contains(packageToKill)) return;
+        try {
+            startActivity(launchIntent);
+        } finally {
+            WatchdogTrace.end();
+        }
 
-        Log.i(LOG_TAG, "Killing package " + packageToKill);
+        relaunchesMetric.increment();
 
-        ActivityManager activityManager = (ActivityManager)getSystemService(Activity.ACTIVITY_SERVICE);
+        // проверяем что лаунчер поднялся
+        if(tickScheduler != null)
+            tickScheduler.tighten("relaunch " + packageToLaunch);
+    }
 
-        activityManager.killBackgroundProcesses(packageToKill); // убивает "приложуху" но не убивает процесс
+    // все процессы пакетов, смерть проверяет KillEngine
+    private void killPackages(List<String> packages, ProcessTable processes){
+        WatchdogTrace.begin("kill");
 
-        List<ActivityManager.RunningAppProcessInfo> runningAppProcesses = activityManager.getRunningAppProcesses();
+        try {
+            killEngine.kill(packages, processes);
+        } finally {
+            WatchdogTrace.end();
+        }
+    }
 
-        for(ActivityManager.RunningAppProcessInfo runningProInfo:runningAppProcesses){
-            if(runningProInfo.processName.equals(packageToKill))
-            {
-                Log.i(LOG_TAG, "Killing pid " + runningProInfo.pid);
-                // убиваем процесс. Без предварительного activityManager.killBackgroundProcesses не будет работать
-                android.os.Process.killProcess(runningProInfo.pid);
-            }
+    // снимок процессов, в трейсе отдельной секцией: это binder вызов или чтение /proc
+    private ProcessTable snapshotProcesses(){
+        WatchdogTrace.begin("tick:process_scan");
+
+        try {
+            return processSource.snapshot();
+        } finally {
+            WatchdogTrace.end();
         }
     }
 
@@ -607,24 +1261,24 @@ public class WatchdogService extends Service {
         return batteryManager.isCharging();
     }
 
-    ArrayList<String> runningProcesses = new ArrayList<>();
+    // бэкенд для снимков процессов, /proc только если явно задан в конфиге
+    private ProcessTable.Source createProcessSource(WatchdogConfig watchdogConfig){
+        if("procfs".equals(watchdogConfig.processTableBackend))
+            return new ProcfsProcessSource();
 
-    // список процессов
-    private ArrayList<String> getRunningProcesses(){
-        ActivityManager activityManager = (ActivityManager)getSystemService(ACTIVITY_SERVICE);
+        return new ActivityManagerProcessSource((ActivityManager)getSystemService(ACTIVITY_SERVICE));
+    }
 
-        List<ActivityManager.RunningAppProcessInfo> runningAppProcesses = activityManager.getRunningAppProcesses();
+    // foreground приложение по последнему эвенту трекера, если эвентов нет - прямой опрос
+    private String getForegroundApp(){
+        String trackedApp = foregroundTracker != null ? foregroundTracker.getForegroundApp() : null;
 
-        runningProcesses.clear();
+        if(trackedApp != null) return trackedApp;
 
-        for(ActivityManager.RunningAppProcessInfo runningProInfo:runningAppProcesses){
-            runningProcesses.add(runningProInfo.processName);
-        }
-
-        return runningProcesses;
+        return pollForegroundApp();
     }
 
-    private String getForegroundApp(){
+    private String pollForegroundApp(){
         ActivityManager activityManager = (ActivityManager)getSystemService(ACTIVITY_SERVICE);
 
         ActivityManager.RunningTaskInfo foregroundTaskInfo = activityManager.getRunningTasks(1).get(0);
@@ -633,17 +1287,71 @@ public class WatchdogService extends Service {
            foregroundTaskInfo.topActivity == null ||
            foregroundTaskInfo.topActivity.getPackageName() == null) return "NULL";
 
-        return foregroundTaskInfo.topActivity.getPackageName();
+        String foregroundApp = foregroundTaskInfo.topActivity.getPackageName();
+
+        // поправляем трекер если эвент был пропущен
+        if(foregroundTracker != null)
+            foregroundTracker.setForegroundApp(foregroundApp);
+
+        return foregroundApp;
     }
 
-    // запущен ли процесс (у свёрнутого приложения процесс остается висеть)
-    private boolean isProcessExists(String packageName){
+    // система для WatchdogTick, опросы в трейсе отдельными секциями
+    private final class ServiceDevice implements WatchdogTick.Device {
 
-        if(packageName == null || !packageName.contains(".")) return false;
+        @Override
+        public String pollForegroundApp() {
+            WatchdogTrace.begin("tick:foreground");
 
-        ArrayList<String> ps = getRunningProcesses();
+            try {
+                return WatchdogService.this.pollForegroundApp();
+            } finally {
+                WatchdogTrace.end();
+            }
+        }
 
-        return ps != null && ps.contains(packageName);
+        @Override
+        public String getForegroundApp() {
+            return WatchdogService.this.getForegroundApp();
+        }
+
+        @Override
+        public boolean hasForegroundEvents() {
+            return foregroundTracker != null && foregroundTracker.hasActiveSources();
+        }
+
+        @Override
+        public ProcessTable snapshotProcesses() {
+            return WatchdogService.this.snapshotProcesses();
+        }
+
+        @Override
+        public boolean isInstalled(String packageName) {
+            return isPackageInstalled(packageName);
+        }
+
+        @Override
+        public void launch(String packageName, String activityName) {
+            launchPackage(packageName, activityName);
+        }
+
+        @Override
+        public void kill(List<String> packages, ProcessTable processes) {
+            killPackages(packages, processes);
+        }
+
+        // Unity на паузе при выключенном экране heartbeat не пишет, это не зависание
+        @Override
+        public long getLauncherHeartbeat() {
+            if(statusPage == null || !powerManager.isInteractive()) return 0;
+
+            return statusPage.getPage().readHeartbeat();
+        }
+
+        @Override
+        public long getLauncherHeartbeatAt() {
+            return statusPage != null ? statusPage.getPage().readLauncherWrittenAt() : 0;
+        }
     }
 
     // установлено ли приложения (в нашем случае лаунчер)
@@ -657,27 +1365,17 @@ public class WatchdogService extends Service {
     }
 
     private long getNextWakeupTime(){
-        if(watchdogConfig == null) return System.currentTimeMillis() + 600 * 1000;
-
-        long nextWakeup = System.currentTimeMillis() + (watchdogConfig.wakeupEverySeconds * 1000L) + random.nextInt(watchdogConfig.wakeupRandomSeconds * 1000);
-
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(nextWakeup);
+        long nextWakeup = WatchdogSchedule.nextWakeup(watchdogConfig, System.currentTimeMillis(), random);
 
-        Log.i(LOG_TAG, "NextWakeupTime: " + DateFormat.format("dd.MM.yyyy HH:mm:ss", calendar));
+        EventLog.log(EventLog.SCHEDULED, IWatchdog.DEADLINE_WAKEUP, nextWakeup, null);
 
         return nextWakeup;
     }
 
     private long getNextSendRuntimeTime(){
-        if(watchdogConfig == null) return System.currentTimeMillis() + 600 * 1000;
-
-        long nextWakeup = System.currentTimeMillis() + (watchdogConfig.sendRuntimeEverySeconds * 1000L) + random.nextInt(watchdogConfig.sendRuntimeRandomSeconds * 1000);
-
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(nextWakeup);
+        long nextWakeup = WatchdogSchedule.nextSendRuntime(watchdogConfig, System.currentTimeMillis(), random);
 
-        Log.i(LOG_TAG, "NextRuntimeTime: " + DateFormat.format("dd.MM.yyyy HH:mm:ss", calendar));
+        EventLog.log(EventLog.SCHEDULED, IWatchdog.DEADLINE_RUNTIME, nextWakeup, null);
 
         return nextWakeup;
     }
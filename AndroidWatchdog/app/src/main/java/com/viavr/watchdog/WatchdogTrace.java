@@ -0,0 +1,164 @@
+package com.viavr.watchdog;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// секции трейса вачдога: всегда идут в android.os.Trace (видно в Perfetto/systrace с тегом app),
+// плюс опционально пишутся в кольцевой буфер в памяти, который сбрасывается в файл формата Chrome JSON
+// (открывается в ui.perfetto.dev и chrome://tracing). Время - elapsedRealtimeNanos, т.е. CLOCK_BOOTTIME
+//
+// использование:
+//   WatchdogTrace.begin("tick:foreground");
+//   try { ... } finally { WatchdogTrace.end(); }
+public final class WatchdogTrace {
+
+    static final int DEFAULT_CAPACITY = 8192;
+
+    // глубина вложенности секций на поток
+    static final int MAX_DEPTH = 16;
+
+    private static final ThreadLocal<Stack> stacks = new ThreadLocal<Stack>() {
+        @Override
+        protected Stack initialValue() {
+            return new Stack();
+        }
+    };
+
+    private static volatile Ring ring;
+
+    private WatchdogTrace(){}
+
+    public static void begin(String name){
+        Trace.beginSection(name);
+
+        // стек ведется всегда, чтобы включение буфера посреди секции не сбивало пары begin/end
+        stacks.get().push(name, SystemClock.elapsedRealtimeNanos());
+    }
+
+    public static void end(){
+        Trace.endSection();
+
+        Stack stack = stacks.get();
+
+        if(stack.depth == 0) return;
+
+        stack.depth--;
+
+        Ring current = ring;
+
+        if(current != null && stack.depth < MAX_DEPTH) {
+            long start = stack.starts[stack.depth];
+            current.add(stack.names[stack.depth], start, SystemClock.elapsedRealtimeNanos() - start, Process.myTid());
+        }
+    }
+
+    // включает запись в кольцевой буфер, старые события при переполнении затираются
+    public static synchronized void startRecording(int capacity){
+        if(ring == null) ring = new Ring(capacity);
+    }
+
+    public static synchronized void stopRecording(){
+        ring = null;
+    }
+
+    public static boolean isRecording(){
+        return ring != null;
+    }
+
+    // сбрасывает содержимое буфера в файл, запись продолжается; false если буфер выключен
+    public static boolean writeChromeJson(File file) throws IOException {
+        Ring current = ring;
+
+        if(current == null) return false;
+
+        File tempFile = new File(file.getPath() + ".tmp");
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+            current.writeTo(writer, Process.myPid());
+        }
+
+        if(!tempFile.renameTo(file))
+            throw new IOException("rename " + tempFile + " failed");
+
+        return true;
+    }
+
+    private static final class Stack {
+        final String[] names = new String[MAX_DEPTH];
+        final long[] starts = new long[MAX_DEPTH];
+        int depth;
+
+        void push(String name, long start){
+            if(depth < MAX_DEPTH) {
+                names[depth] = name;
+                starts[depth] = start;
+            }
+
+            depth++;
+        }
+    }
+
+    // завершенные секции, массивы выделены заранее
+    private static final class Ring {
+        final String[] names;
+        final long[] starts;
+        final long[] durations;
+        final int[] tids;
+
+        int next;
+        int size;
+
+        Ring(int capacity){
+            names = new String[capacity];
+            starts = new long[capacity];
+            durations = new long[capacity];
+            tids = new int[capacity];
+        }
+
+        synchronized void add(String name, long start, long duration, int tid){
+            names[next] = name;
+            starts[next] = start;
+            durations[next] = duration;
+            tids[next] = tid;
+
+            next = (next + 1) % names.length;
+            size = Math.min(size + 1, names.length);
+        }
+
+        // {"traceEvents":[{"name":"tick","ph":"X","ts":123.456,"dur":7.89,"pid":1,"tid":2},...],"displayTimeUnit":"ms"}
+        synchronized void writeTo(Writer writer, int pid) throws IOException {
+            writer.write("{\"traceEvents\":[");
+
+            int first = (next - size + names.length) % names.length;
+
+            for (int i = 0; i < size; i++) {
+                int index = (first + i) % names.length;
+
+                if(i > 0) writer.write(",\n");
+
+                writer.write("{\"name\":\"");
+                writer.write(names[index]);
+                writer.write("\",\"cat\":\"watchdog\",\"ph\":\"X\",\"ts\":");
+                writer.write(micros(starts[index]));
+                writer.write(",\"dur\":");
+                writer.write(micros(durations[index]));
+                writer.write(",\"pid\":");
+                writer.write(Integer.toString(pid));
+                writer.write(",\"tid\":");
+                writer.write(Integer.toString(tids[index]));
+                writer.write("}");
+            }
+
+            writer.write("],\"displayTimeUnit\":\"ms\"}\n");
+        }
+
+        // Chrome JSON хочет микросекунды, дробная часть сохраняет точность наносекунд
+        private static String micros(long nanos){
+            return (nanos / 1000) + "." + String.format(java.util.Locale.US, "%03d", nanos % 1000);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.viavr.watchdog;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KillEngineTest {
+
+    @Test
+    public void resolvesSecondaryProcessesInOnePass() {
+        ProcessTable processes = new ProcessTable.Builder(6)
+                .add("com.viavr.launcher", 100)
+                .add("com.game", 200)
+                .add("com.game:unity", 201)
+                .add("com.game:remote", 202)
+                .add("com.gamepad", 300)
+                .add("com.player:media", 400)
+                .build();
+
+        HashMap<String, List<Integer>> resolved = KillEngine.resolve(new HashSet<>(Arrays.asList("com.game", "com.player", "com.absent")), processes);
+
+        assertEquals(2, resolved.size());
+        assertEquals(Arrays.asList(200, 201, 202), resolved.get("com.game"));
+        assertEquals(Arrays.asList(400), resolved.get("com.player"));
+
+        // префикс имени без ':' - другой пакет
+        assertTrue(processes.containsPackage("com.player"));
+        assertFalse(processes.containsPackage("com.play"));
+        assertFalse(processes.containsPackage("com.gam"));
+    }
+}
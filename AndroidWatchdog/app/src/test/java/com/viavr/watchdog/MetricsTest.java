@@ -0,0 +1,32 @@
+package com.viavr.watchdog;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void registryReturnsSameInstancesAndSerializes() {
+        Metrics metrics = Metrics.get();
+
+        assertSame(metrics.counter("test_counter"), metrics.counter("test_counter"));
+        assertSame(metrics.histogram("test_ms"), metrics.histogram("test_ms"));
+
+        metrics.counter("test_counter").add(3);
+        metrics.histogram("test_ms").record(15);
+        metrics.gauge("test_gauge", () -> 42);
+
+        String json = metrics.toJson();
+
+        assertTrue(json, json.contains("\"test_counter\":3"));
+        assertTrue(json, json.contains("\"test_gauge\":42"));
+        assertTrue(json, json.contains("\"test_ms\":{\"count\":1,"));
+    }
+
+    @Test
+    public void endpointMetricsUsePathOnly() {
+        assertEquals("/api/v1/device/apps", OutboundQueue.path("https://api.vrcinema.pro/api/v1/device/apps"));
+        assertEquals("/", OutboundQueue.path("https://api.vrcinema.pro"));
+    }
+}
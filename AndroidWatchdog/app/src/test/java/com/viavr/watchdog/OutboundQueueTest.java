@@ -0,0 +1,39 @@
+package com.viavr.watchdog;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OutboundQueueTest {
+
+    @Test
+    public void retryAfterAcceptsSecondsAndHttpDate() {
+        assertEquals(120000, OutboundQueue.parseRetryAfter("120", 0));
+        assertEquals(30000, OutboundQueue.parseRetryAfter("Thu, 01 Jan 1970 00:01:00 GMT", 30000));
+        assertEquals(0, OutboundQueue.parseRetryAfter("soon", 0));
+        assertEquals(0, OutboundQueue.parseRetryAfter(null, 0));
+    }
+
+    @Test
+    public void onlyTransientFailuresAreRetried() {
+        assertTrue(OutboundQueue.isRetryable(0));
+        assertTrue(OutboundQueue.isRetryable(429));
+        assertTrue(OutboundQueue.isRetryable(503));
+        assertFalse(OutboundQueue.isRetryable(400));
+        assertFalse(OutboundQueue.isRetryable(401));
+    }
+
+    @Test
+    public void backoffIsJitteredAndCapped() {
+        Random random = new Random(7);
+
+        for (int attempt = 0; attempt < 40; attempt++) {
+            long cap = Math.min(OutboundQueue.BACKOFF_BASE_MS << Math.min(attempt, 20), OutboundQueue.BACKOFF_MAX_MS);
+            long delay = Backoff.delayMs(attempt, OutboundQueue.BACKOFF_BASE_MS, OutboundQueue.BACKOFF_MAX_MS, random);
+
+            assertTrue(delay >= cap / 2 && delay <= cap);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.viavr.watchdog;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+// push канал против локального SSE сервера
+public class PushChannelTest {
+
+    private HttpServer server;
+    private final List<String> lastEventIds = new CopyOnWriteArrayList<>();
+    private final List<String> tokens = new CopyOnWriteArrayList<>();
+    private final CountDownLatch silentReleased = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+        // отдаем пару эвентов и рвем соединение, канал должен переподключиться
+        server.createContext("/device/events", exchange -> {
+            lastEventIds.add(String.valueOf(exchange.getRequestHeaders().getFirst("Last-Event-ID")));
+            tokens.add(String.valueOf(exchange.getRequestHeaders().getFirst("token")));
+
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write((": ping\n\n" +
+                        "id: 1\nevent: policy\ndata: [{\"name\":\"com.app.a\",\"is_active\":false}]\n\n" +
+                        "id: 2\nevent: command\ndata: {\"add_whitelist\":\n" +
+                        "data: \"com.app.b:60000\"}\n\n").getBytes(StandardCharsets.UTF_8));
+            }
+        });
+
+        // держим поток открытым и молчим, чтение в канале висит в сокете
+        server.createContext("/device/silent", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(": ping\n\n".getBytes(StandardCharsets.UTF_8));
+                body.flush();
+
+                silentReleased.await(30, TimeUnit.SECONDS);
+            } catch (Exception ignored) {}
+        });
+
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        silentReleased.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    public void deliversEventsAndResumesAfterDisconnect() throws Exception {
+        List<String> events = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(4);
+
+        PushChannel channel = new PushChannel("http://127.0.0.1:" + server.getAddress().getPort() + "/device/events", new PushChannel.Listener() {
+            @Override
+            public void onConnectionChanged(boolean connected) {}
+
+            @Override
+            public void onEvent(String event, String data) {
+                events.add(event + " " + data);
+                received.countDown();
+            }
+        });
+
+        channel.start("secret");
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+
+        channel.stop();
+
+        assertFalse(channel.isConnected());
+        assertEquals("policy [{\"name\":\"com.app.a\",\"is_active\":false}]", events.get(0));
+        assertEquals("command {\"add_whitelist\":\n\"com.app.b:60000\"}", events.get(1));
+        assertEquals("null", lastEventIds.get(0));
+        assertEquals("2", lastEventIds.get(1));
+        assertEquals("secret", tokens.get(0));
+    }
+
+    @Test
+    public void stopDoesNotWaitForBlockedRead() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        List<Boolean> changes = new CopyOnWriteArrayList<>();
+
+        PushChannel channel = new PushChannel("http://127.0.0.1:" + server.getAddress().getPort() + "/device/silent", new PushChannel.Listener() {
+            @Override
+            public void onConnectionChanged(boolean value) {
+                changes.add(value);
+                if(value) connected.countDown();
+            }
+
+            @Override
+            public void onEvent(String event, String data) {}
+        });
+
+        channel.start("secret");
+
+        assertTrue(connected.await(10, TimeUnit.SECONDS));
+
+        long startedAt = System.nanoTime();
+        channel.stop();
+        long stopMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertTrue("stop took " + stopMs + "ms", stopMs < 200);
+        assertFalse(channel.isConnected());
+
+        // старый поток после разрыва соединения уже ничего не сообщает
+        Thread.sleep(500);
+
+        assertEquals(2, changes.size());
+        assertFalse(changes.get(1));
+    }
+
+    @Test
+    public void backoffGrowsAndIsCapped() {
+        Random random = new Random(1);
+
+        for (int attempt = 0; attempt < 40; attempt++) {
+            long expected = Math.min(PushChannel.MIN_BACKOFF_MS << Math.min(attempt, 20), PushChannel.MAX_BACKOFF_MS);
+            long backoff = PushChannel.backoffMs(attempt, random);
+
+            assertTrue(backoff >= expected / 2);
+            assertTrue(backoff <= expected);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.viavr.watchdog;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.os.Environment;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.shadows.ShadowLog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+// долгий прогон жизненного цикла сервиса: шлемы без allow_reboot работают неделями между перезагрузками
+// циклы create/startCommand/destroy и сутки тиков на виртуальных часах Robolectric,
+// после каждого шага снимаем кучу, живые потоки, ресиверы и задачи планировщика; монотонный рост - падение
+// ./gradlew :app:testDebugUnitTest --tests com.viavr.watchdog.WatchdogServiceSoakTest -Dsoak.cycles=200 -Dsoak.days=7
+@RunWith(RobolectricTestRunner.class)
+public class WatchdogServiceSoakTest {
+
+    static final String TARGET = "com.viavr.launcher";
+    static final String FOREIGN = "com.oculus.browser";
+    static final String GAME = "com.vr.game.arena";
+
+    static final int CYCLES = Integer.getInteger("soak.cycles", 40);
+    static final int DAYS = Integer.getInteger("soak.days", 2);
+
+    // шаг виртуальных часов: повторяющиеся задачи отрабатывают не чаще раза за шаг
+    static final long STEP_MS = 5000;
+    static final long CYCLE_MS = 10 * 60 * 1000;
+
+    // первые шаги прогревают классы, кеши и пулы
+    static final int WARMUP_SAMPLES = 4;
+    static final long HEAP_SLACK_BYTES = 2 * 1024 * 1024;
+
+    static final String CONFIG = "{" +
+            "\"target_package\": \"" + TARGET + "\"," +
+            "\"target_package_activity\": \"" + TARGET + ".MainActivity\"," +
+            "\"check_every_milliseconds\": 3000," +
+            "\"allow_start_vrlauncher\": true," +
+            "\"allow_reboot\": false," +
+            "\"allow_wakeup\": true," +
+            "\"allow_runtime\": false," +
+            "\"allow_kill_apps\": true," +
+            "\"launcher_kill_whitelist\": [\"com.android.settings\"]" +
+            "}";
+
+    private Application application;
+    private ActivityManager activityManager;
+
+    @Before
+    public void setUp() throws IOException {
+        application = RuntimeEnvironment.getApplication();
+        activityManager = (ActivityManager)application.getSystemService(Context.ACTIVITY_SERVICE);
+
+        File storage = Environment.getExternalStorageDirectory();
+        assertTrue(storage.isDirectory() || storage.mkdirs());
+
+        try (FileOutputStream outputStream = new FileOutputStream(new File(storage, "watchdog_config.json"))) {
+            outputStream.write(CONFIG.getBytes(StandardCharsets.UTF_8));
+        }
+
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = TARGET;
+        packageInfo.applicationInfo = new ApplicationInfo();
+        packageInfo.applicationInfo.packageName = TARGET;
+        shadowOf(application.getPackageManager()).installPackage(packageInfo);
+
+        setTopActivity(TARGET);
+    }
+
+    @After
+    public void tearDown() {
+        WatchdogScheduler.get().cancelAll();
+    }
+
+    // один тест на обе фазы: WatchdogScheduler один на процесс, а Robolectric гасит фоновые лууперы между тестами
+    @Test
+    public void serviceLifecycleDoesNotLeak() {
+        createStartDestroyCycles();
+        daysOfTicks();
+    }
+
+    private void createStartDestroyCycles() {
+        Series heap = new Series("heap bytes", HEAP_SLACK_BYTES);
+        Series threads = new Series("live threads", 0);
+        Series receivers = new Series("registered receivers", 0);
+        Series jobs = new Series("scheduler jobs", 0);
+
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            ServiceController<WatchdogService> controller = Robolectric.buildService(WatchdogService.class, new Intent("android.intent.action.MAIN"));
+
+            controller.create().startCommand(0, 1);
+
+            // лаунчер перезапускает вачдог и шлет команды через интент
+            controller.withIntent(new Intent("com.viavr.intent.LAUNCHER_RUNNING")).startCommand(0, 2);
+            controller.withIntent(new Intent("com.viavr.intent.WATCHDOG_COMMAND").putExtra(WatchdogCommand.ADD_WHITELIST, GAME + ":60000")).startCommand(0, 3);
+
+            runVenue(CYCLE_MS);
+
+            controller.destroy();
+            idle(STEP_MS);
+
+            heap.add(usedHeap());
+            threads.add(liveThreads());
+            receivers.add(shadowOf(application).getRegisteredReceivers().size());
+            jobs.add(WatchdogScheduler.get().getJobCount());
+        }
+
+        // после destroy не остается ни одного ресивера и ни одной задачи
+        assertEquals(0, receivers.last());
+        assertEquals(0, jobs.last());
+
+        heap.assertNoGrowth();
+        threads.assertNoGrowth();
+        receivers.assertNoGrowth();
+        jobs.assertNoGrowth();
+    }
+
+    private void daysOfTicks() {
+        Series heap = new Series("heap bytes", HEAP_SLACK_BYTES);
+        Series threads = new Series("live threads", 0);
+        Series jobs = new Series("scheduler jobs", 0);
+        Series mailbox = new Series("mailbox depth", 0);
+        Series metrics = new Series("metrics", 0);
+
+        ServiceController<WatchdogService> controller = Robolectric.buildService(WatchdogService.class, new Intent("android.intent.action.MAIN"));
+        controller.create().startCommand(0, 1);
+
+        // сэмпл раз в час симуляции, чтобы было из чего строить тренд даже на двух сутках
+        for (int hour = 0; hour < DAYS * 24; hour++) {
+            runVenue(60 * 60 * 1000);
+
+            heap.add(usedHeap());
+            threads.add(liveThreads());
+            jobs.add(WatchdogScheduler.get().getJobCount());
+            mailbox.add(WatchdogScheduler.get().getMailboxDepth());
+            metrics.add(Metrics.get().getCounters().size() + Metrics.get().getGauges().size() + Metrics.get().getHistograms().size());
+        }
+
+        assertTrue(Metrics.get().getCounters().get("ticks") > DAYS * 24 * 60);
+
+        controller.destroy();
+
+        heap.assertNoGrowth();
+        threads.assertNoGrowth();
+        jobs.assertNoGrowth();
+        mailbox.assertNoGrowth();
+        metrics.assertNoGrowth();
+    }
+
+    // площадка: каждые 10 минут посетитель уходит в браузер, потом в игру и возвращается в лаунчер
+    private void runVenue(long durationMs){
+        for (long elapsed = 0; elapsed < durationMs; elapsed += STEP_MS) {
+            long minute = elapsed / 60000 % 10;
+
+            if(elapsed % 60000 == 0) {
+                if(minute == 2) setTopActivity(FOREIGN);
+                else if(minute == 5) setTopActivity(GAME);
+                else if(minute == 8) setTopActivity(TARGET);
+            }
+
+            idle(STEP_MS);
+
+            // вачдог перезапускает лаунчер - на шлеме это сделала бы система
+            boolean launched = false;
+
+            while (shadowOf(application).getNextStartedActivity() != null)
+                launched = true;
+
+            if(launched) setTopActivity(TARGET);
+        }
+
+        // Robolectric копит логи в памяти, это не утечка сервиса
+        ShadowLog.clear();
+    }
+
+    private void idle(long durationMs){
+        shadowOf(WatchdogScheduler.get().getLooper()).idleFor(Duration.ofMillis(durationMs));
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private void setTopActivity(String packageName){
+        ActivityManager.RunningTaskInfo task = new ActivityManager.RunningTaskInfo();
+        task.topActivity = new ComponentName(packageName, packageName + ".MainActivity");
+
+        shadowOf(activityManager).setTasks(Collections.singletonList(task));
+    }
+
+    private static long usedHeap(){
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) System.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // пулы закрываются асинхронно, даем потокам досчитать до конца
+    private static int liveThreads(){
+        int count = Thread.activeCount();
+
+        for (int i = 0; i < 20 && count > 0; i++) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            int current = Thread.activeCount();
+            if(current >= count) break;
+            count = current;
+        }
+
+        return count;
+    }
+
+    // ряд замеров после прогрева; монотонный рост - минимум каждой четверти выше минимума предыдущей
+    // минимумы, а не средние: GC и пулы дают шум вверх, утечка поднимает и нижнюю границу
+    static final class Series {
+        final String name;
+        final long slack;
+        final ArrayList<Long> samples = new ArrayList<>();
+
+        Series(String name, long slack){
+            this.name = name;
+            this.slack = slack;
+        }
+
+        void add(long value){
+            samples.add(value);
+        }
+
+        long last(){
+            return samples.get(samples.size() - 1);
+        }
+
+        void assertNoGrowth(){
+            int size = samples.size() - WARMUP_SAMPLES;
+
+            assertTrue(name + ": not enough samples", size >= 4);
+
+            long[] minimums = new long[4];
+
+            for (int quarter = 0; quarter < 4; quarter++) {
+                long minimum = Long.MAX_VALUE;
+
+                for (int i = WARMUP_SAMPLES + quarter * size / 4; i < WARMUP_SAMPLES + (quarter + 1) * size / 4; i++)
+                    minimum = Math.min(minimum, samples.get(i));
+
+                minimums[quarter] = minimum;
+            }
+
+            boolean growing = true;
+
+            for (int quarter = 1; quarter < 4; quarter++)
+                growing &= minimums[quarter] > minimums[quarter - 1];
+
+            boolean grown = minimums[3] - minimums[0] > slack;
+
+            assertFalse(String.format(Locale.US, "%s grows monotonically: %d -> %d -> %d -> %d", name,
+                    minimums[0], minimums[1], minimums[2], minimums[3]), growing && grown);
+        }
+    }
+}
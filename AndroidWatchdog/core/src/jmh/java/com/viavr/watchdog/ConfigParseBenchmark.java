@@ -0,0 +1,69 @@
+package com.viavr.watchdog;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+// разбор watchdog_config.json на холодном старте и при каждом изменении файла
+// parseConfigJsonObject - прежний JSONObject + 17 try/catch (LegacyConfigParser) как база для сравнения
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigParseBenchmark {
+
+    static final String CONFIG = "{" +
+            "\"launcher_version\": \"2.4.0\"," +
+            "\"watchdog_version\": \"0.1.1\"," +
+            "\"target_package\": \"com.viavr.launcher\"," +
+            "\"target_package_activity\": \"com.viavr.launcher.MainActivity\"," +
+            "\"runtime_api_url\": \"https://api.vrcinema.pro/api/v1/device/runtime\"," +
+            "\"check_every_milliseconds\": 3000," +
+            "\"allow_start_vrlauncher\": true," +
+            "\"allow_reboot\": false," +
+            "\"reboot_at_hour\": 5," +
+            "\"allow_wakeup\": true," +
+            "\"wakeup_every_seconds\": 1200," +
+            "\"wakeup_random_seconds\": 300," +
+            "\"allow_runtime\": true," +
+            "\"runtime_every_seconds\": 900," +
+            "\"runtime_random_seconds\": 60," +
+            "\"allow_kill_apps\": true," +
+            "\"launcher_kill_whitelist\": [\"com.android.settings\", \"com.pvr.filemanager\"]," +
+            "\"unknown_key\": {\"nested\": [1, 2, 3]}" +
+            "}";
+
+    static final String APPS = "[" +
+            "{\"name\": \"com.game.a\", \"is_active\": false, \"title\": \"A\"}," +
+            "{\"name\": \"com.game.b\", \"is_active\": true, \"title\": \"B\"}," +
+            "{\"name\": \"com.game.c\", \"is_active\": true, \"title\": null}" +
+            "]";
+
+    // оба парсера должны давать одно и то же, иначе сравнение бессмысленно
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        WatchdogConfig legacy = LegacyConfigParser.create(new JSONObject(CONFIG));
+        WatchdogConfig streaming = WatchdogConfig.parse(new StringReader(CONFIG));
+
+        if(!WatchdogConfig.diff(legacy, streaming).isEmpty())
+            throw new IllegalStateException("parsers disagree: " + WatchdogConfig.diff(legacy, streaming));
+    }
+
+    @Benchmark
+    public WatchdogConfig parseConfig() throws IOException {
+        return WatchdogConfig.parse(new StringReader(CONFIG));
+    }
+
+    @Benchmark
+    public WatchdogConfig parseConfigJsonObject() throws JSONException {
+        return LegacyConfigParser.create(new JSONObject(CONFIG));
+    }
+
+    @Benchmark
+    public AppsPolicy parseAppsPolicy() throws IOException {
+        return AppsPolicy.parse(new StringReader(APPS));
+    }
+}
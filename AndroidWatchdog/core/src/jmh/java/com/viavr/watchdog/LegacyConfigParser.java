@@ -0,0 +1,148 @@
+package com.viavr.watchdog;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// прежний разбор конфига через JSONObject, остался как база для ConfigParseBenchmark
+final class LegacyConfigParser {
+
+    private LegacyConfigParser(){}
+
+    static WatchdogConfig create(JSONObject jsonObject){
+
+        WatchdogConfig watchdogConfig = WatchdogConfig.createDefault();
+
+        if(jsonObject == null) return watchdogConfig;
+
+        String errorStart = "WatchdogConfig.create(): json error: ";
+
+        try {
+            watchdogConfig.launcherVersion = jsonObject.getString("launcher_version");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.watchdogTargetVersion = jsonObject.getString("watchdog_version");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.targetPackage = jsonObject.getString("target_package");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.targetPackageActivity = jsonObject.getString("target_package_activity");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.runtimeApiUrl = jsonObject.getString("runtime_api_url");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.checkProcessEveryMs = jsonObject.getInt("check_every_milliseconds");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.allowStartLauncher = jsonObject.getBoolean("allow_start_vrlauncher");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.allowReboot = jsonObject.getBoolean("allow_reboot");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.rebootAtHour = jsonObject.getInt("reboot_at_hour");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.allowWakeup = jsonObject.getBoolean("allow_wakeup");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.wakeupEverySeconds = jsonObject.getInt("wakeup_every_seconds");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        if(watchdogConfig.wakeupEverySeconds <= 0) watchdogConfig.allowWakeup = false;
+
+        try {
+            watchdogConfig.wakeupRandomSeconds = jsonObject.getInt("wakeup_random_seconds");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.allowSendRuntime = jsonObject.getBoolean("allow_runtime");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.sendRuntimeEverySeconds = jsonObject.getInt("runtime_every_seconds");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        if(watchdogConfig.sendRuntimeEverySeconds <= 0) watchdogConfig.allowSendRuntime = false;
+
+        try {
+            watchdogConfig.sendRuntimeRandomSeconds = jsonObject.getInt("runtime_random_seconds");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            watchdogConfig.allowKillApps = jsonObject.getBoolean("allow_kill_apps");
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        try {
+            JSONArray whitelist = jsonObject.getJSONArray("launcher_kill_whitelist");
+
+            watchdogConfig.launcherKillWhitelist.clear();
+
+            for(int i = 0; i < whitelist.length(); i++)
+                watchdogConfig.launcherKillWhitelist.add(whitelist.getString(i));
+        } catch (JSONException e) {
+            watchdogConfig.addError(null, errorStart + e.getMessage());
+        }
+
+        // необязательные поля, в старых конфигах их нет
+        if(jsonObject.has("process_table_backend")) {
+            try {
+                watchdogConfig.processTableBackend = jsonObject.getString("process_table_backend");
+            } catch (JSONException e) {
+                watchdogConfig.addError(null, errorStart + e.getMessage());
+            }
+        }
+
+        // если таргет приложение кривое
+        if(watchdogConfig.targetPackage == null || watchdogConfig.targetPackageActivity == null){
+            watchdogConfig.allowStartLauncher = false;
+            watchdogConfig.addError(null, "WatchdogConfig.create(): watchdogConfig.allowStartLauncher set to FALSE, please check 'target_package' and 'target_package_activity'");
+        }
+
+        return watchdogConfig;
+    }
+}
@@ -0,0 +1,66 @@
+package com.viavr.watchdog;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// запись журнала состояния на каждом тике (включая сжатия) и его чтение на старте сервиса
+// худший случай на старте - журнал заполнен почти до половины, дальше replay сжимает
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StateJournalBenchmark {
+
+    static final int CAPACITY = 64 * 1024;
+
+    File writeFile;
+    File replayFile;
+    StateJournal journal;
+
+    int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        writeFile = File.createTempFile("state", ".journal");
+        replayFile = File.createTempFile("state", ".journal");
+
+        journal = new StateJournal(writeFile, CAPACITY, 1);
+        journal.replay(0);
+
+        try (StateJournal filled = new StateJournal(replayFile, CAPACITY, 1)) {
+            filled.replay(0);
+
+            for (int i = 0; filled.getUsedBytes() < CAPACITY / 2 - 64; i++)
+                filled.recordLastForegroundApp(i % 2 == 0 ? "com.viavr.launcher" : "com.some.game" + (i % 7));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        journal.close();
+
+        for (File file : new File[] { writeFile, replayFile }) {
+            file.delete();
+            new File(file.getPath() + ".tmp").delete();
+        }
+    }
+
+    // типичная смесь: смена foreground приложения на каждом тике, изредка гранты
+    @Benchmark
+    public void recordTick(){
+        next++;
+
+        journal.recordLastForegroundApp(next % 2 == 0 ? "com.viavr.launcher" : "com.some.game" + (next % 7));
+
+        if(next % 50 == 0) journal.recordGrant("com.some.game" + (next % 7), 1_000_000L + next);
+    }
+
+    @Benchmark
+    public StateJournal.State replayHalfFull() throws IOException {
+        try (StateJournal reopened = new StateJournal(replayFile, CAPACITY, 1)) {
+            return reopened.replay(0);
+        }
+    }
+}
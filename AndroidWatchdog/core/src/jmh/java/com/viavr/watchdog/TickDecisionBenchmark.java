@@ -0,0 +1,70 @@
+package com.viavr.watchdog;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// цена решения одного тика без Android: снимок процессов как на шлеме (~250 процессов), вайтлист на 20 грантов
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TickDecisionBenchmark {
+
+    static final String TARGET = "com.viavr.launcher";
+
+    WatchdogConfig config;
+    ProcessTable processes;
+    WatchdogPolicy.Packages packages = packageName -> true;
+
+    long now = 1000;
+
+    @Setup
+    public void setUp(){
+        config = WatchdogConfig.createDefault();
+        config.targetPackage = TARGET;
+        config.targetPackageActivity = TARGET + ".MainActivity";
+        config.allowStartLauncher = true;
+        config.launcherKillWhitelist.add("com.android.settings");
+
+        for (int i = 0; i < 20; i++)
+            config.addToWhitelist("com.whitelisted.app" + i, 60000L, 0);
+
+        ProcessTable.Builder builder = new ProcessTable.Builder(256);
+
+        for (int i = 0; i < 240; i++)
+            builder.add(i % 3 == 0 ? "com.vendor.service" + i + ":remote" : "com.vendor.service" + i, 1000 + i);
+
+        builder.add(TARGET, 5000);
+        builder.add("com.game.running", 5001);
+        builder.add("com.game.running:unity", 5002);
+
+        processes = builder.build();
+    }
+
+    @Benchmark
+    public int foreignForeground(){
+        return WatchdogPolicy.decide(config, "com.game.running", processes, packages, now);
+    }
+
+    @Benchmark
+    public int whitelistedForeground(){
+        return WatchdogPolicy.decide(config, "com.whitelisted.app7", processes, packages, now);
+    }
+
+    @Benchmark
+    public String backgroundToKill(){
+        return WatchdogPolicy.backgroundToKill(config, "com.game.running", processes);
+    }
+
+    // полный тик с чужим приложением: решение, живость таргета, кого добить
+    @Benchmark
+    public String foreignTick(){
+        if(WatchdogPolicy.isTargetForeground(config, "com.game.running")) return null;
+
+        boolean targetAlive = WatchdogPolicy.isProcessAlive(processes, config.targetPackage);
+        int decision = WatchdogPolicy.decide(config, "com.game.running", processes, packages, now);
+
+        return decision == WatchdogPolicy.LAUNCH && targetAlive ?
+                WatchdogPolicy.backgroundToKill(config, "com.game.running", processes) : null;
+    }
+}
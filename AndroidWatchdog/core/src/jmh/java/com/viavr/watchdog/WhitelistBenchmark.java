@@ -0,0 +1,56 @@
+package com.viavr.watchdog;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// поиск в вайтлисте на каждом тике и цикл grant/expire при командах с сервера
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WhitelistBenchmark {
+
+    @Param({"1", "20", "200"})
+    int grants;
+
+    TimedWhitelist whitelist;
+    String[] packages;
+
+    int next;
+
+    @Setup
+    public void setUp(){
+        whitelist = new TimedWhitelist();
+        packages = new String[grants];
+
+        for (int i = 0; i < grants; i++) {
+            packages[i] = "com.whitelisted.app" + i;
+            whitelist.grant(packages[i], 60000 + i, 0);
+        }
+    }
+
+    @Benchmark
+    public boolean lookupHit(){
+        next = (next + 1) % packages.length;
+
+        return whitelist.isWhitelisted(packages[next], 1000);
+    }
+
+    @Benchmark
+    public boolean lookupMiss(){
+        return whitelist.isWhitelisted("com.game.not.whitelisted", 1000);
+    }
+
+    @Benchmark
+    public long nextExpiry(){
+        return whitelist.getNextExpiry();
+    }
+
+    // грант с коротким сроком и его истечение, остальные гранты остаются
+    @Benchmark
+    public int grantAndExpire(){
+        whitelist.grant("com.short.grant", 10, 0);
+
+        return whitelist.expire(10).size();
+    }
+}
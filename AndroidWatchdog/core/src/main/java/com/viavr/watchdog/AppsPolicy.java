@@ -0,0 +1,120 @@
+package com.viavr.watchdog;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// политика приложений с /device/apps: пакет -> is_active
+public final class AppsPolicy {
+
+    public static final AppsPolicy EMPTY = new AppsPolicy(Collections.<String, Boolean>emptyMap());
+
+    private final Map<String, Boolean> activeByPackage;
+
+    private AppsPolicy(Map<String, Boolean> activeByPackage){
+        this.activeByPackage = activeByPackage;
+    }
+
+    public int size(){
+        return activeByPackage.size();
+    }
+
+    // приложение явно выключено на сервере, неизвестные приложения не трогаем
+    public boolean isDisabled(String packageName){
+        Boolean isActive = activeByPackage.get(packageName);
+
+        return isActive != null && !isActive;
+    }
+
+    public Map<String, Boolean> asMap(){
+        return Collections.unmodifiableMap(activeByPackage);
+    }
+
+    // дельта с push канала поверх текущей политики, пакеты из дельты перетирают старые значения
+    public AppsPolicy merge(AppsPolicy delta){
+        if(delta.size() == 0) return this;
+
+        HashMap<String, Boolean> merged = new HashMap<>(activeByPackage);
+        merged.putAll(delta.activeByPackage);
+
+        return new AppsPolicy(merged);
+    }
+
+    // в формате /device/apps, читается обратно через parse
+    public String toJson(){
+        StringWriter json = new StringWriter(activeByPackage.size() * 48 + 2);
+
+        try (JsonWriter jsonWriter = new JsonWriter(json)) {
+            jsonWriter.beginArray();
+
+            for (Map.Entry<String, Boolean> app : activeByPackage.entrySet())
+                jsonWriter.beginObject().name("name").value(app.getKey()).name("is_active").value(app.getValue()).endObject();
+
+            jsonWriter.endArray();
+        } catch (IOException e) {
+            // StringWriter не бросает
+            throw new IllegalStateException(e);
+        }
+
+        return json.toString();
+    }
+
+    // потоковый разбор массива [{"name": "...", "is_active": true, ...}, ...], лишние поля пропускаются
+    public static AppsPolicy parse(Reader reader) throws IOException {
+        HashMap<String, Boolean> activeByPackage = new HashMap<>();
+
+        JsonReader jsonReader = new JsonReader(reader);
+
+        try {
+            jsonReader.beginArray();
+
+            while (jsonReader.hasNext()) {
+                String name = null;
+                Boolean isActive = null;
+
+                jsonReader.beginObject();
+
+                while (jsonReader.hasNext()) {
+                    String key = jsonReader.nextName();
+
+                    if(jsonReader.peek() == JsonToken.NULL){
+                        jsonReader.skipValue();
+                        continue;
+                    }
+
+                    switch (key){
+                        case "name":
+                            name = jsonReader.nextString();
+                            break;
+
+                        case "is_active":
+                            isActive = jsonReader.nextBoolean();
+                            break;
+
+                        default:
+                            jsonReader.skipValue();
+                            break;
+                    }
+                }
+
+                jsonReader.endObject();
+
+                if(name != null && isActive != null)
+                    activeByPackage.put(name, isActive);
+            }
+
+            jsonReader.endArray();
+        } finally {
+            jsonReader.close();
+        }
+
+        return new AppsPolicy(activeByPackage);
+    }
+}
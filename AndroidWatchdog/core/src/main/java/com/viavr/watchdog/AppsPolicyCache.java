@@ -0,0 +1,119 @@
+package com.viavr.watchdog;
+
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// последняя валидная политика приложений + ETag/Last-Modified для условных запросов
+// лежит во внутренней памяти приложения, чтобы после ребута без сети политика уже действовала
+public class AppsPolicyCache {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    private static final String BODY_FILE = "apps_policy.json";
+    private static final String META_FILE = "apps_policy.meta";
+
+    private final File bodyFile;
+    private final File metaFile;
+
+    private volatile AppsPolicy policy = AppsPolicy.EMPTY;
+    private volatile String etag;
+    private volatile String lastModified;
+
+    public AppsPolicyCache(File directory){
+        bodyFile = new File(directory, BODY_FILE);
+        metaFile = new File(directory, META_FILE);
+    }
+
+    public AppsPolicy getPolicy(){
+        return policy;
+    }
+
+    public String getEtag(){
+        return etag;
+    }
+
+    public String getLastModified(){
+        return lastModified;
+    }
+
+    // поднимаем политику с диска при старте
+    public void load(){
+        if(!bodyFile.exists()) return;
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(bodyFile), StandardCharsets.UTF_8)) {
+            policy = AppsPolicy.parse(reader);
+        } catch (IOException e) {
+            WatchdogLog.e(LOG_TAG, "Apps policy cache is broken: " + e.getMessage());
+            return;
+        }
+
+        // без валидного тела заголовки не нужны, иначе сервер ответит 304 на пустой кеш
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(metaFile))) {
+            etag = emptyToNull(inputStream.readUTF());
+            lastModified = emptyToNull(inputStream.readUTF());
+        } catch (IOException e) {
+            etag = null;
+            lastModified = null;
+        }
+
+        WatchdogLog.i(LOG_TAG, "Apps policy loaded from cache: " + policy.size() + " apps");
+    }
+
+    // новая политика с сервера (200), тело уже распарсено
+    public void update(AppsPolicy newPolicy, byte[] body, String newEtag, String newLastModified){
+        policy = newPolicy;
+        etag = newEtag;
+        lastModified = newLastModified;
+
+        try {
+            writeAtomically(bodyFile, body);
+
+            ByteArrayOutputStream meta = new ByteArrayOutputStream();
+            DataOutputStream outputStream = new DataOutputStream(meta);
+            outputStream.writeUTF(newEtag != null ? newEtag : "");
+            outputStream.writeUTF(newLastModified != null ? newLastModified : "");
+            outputStream.flush();
+
+            writeAtomically(metaFile, meta.toByteArray());
+        } catch (IOException e) {
+            WatchdogLog.e(LOG_TAG, "Apps policy cache write failed: " + e.getMessage());
+        }
+    }
+
+    // дельта с push канала: слитая политика ложится на диск, чтобы пережить ребут без сети
+    // тело уже не соответствует валидаторам, поэтому их сбрасываем и следующий опрос заберет полную политику
+    // meta удаляется до записи тела: иначе после падения между ними сервер ответил бы 304 на чужое тело
+    public void applyDelta(AppsPolicy delta){
+        policy = policy.merge(delta);
+        etag = null;
+        lastModified = null;
+
+        if(metaFile.exists() && !metaFile.delete()) {
+            WatchdogLog.e(LOG_TAG, "Apps policy meta delete failed");
+            return;
+        }
+
+        try {
+            writeAtomically(bodyFile, policy.toJson().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            WatchdogLog.e(LOG_TAG, "Apps policy cache write failed: " + e.getMessage());
+        }
+    }
+
+    private static void writeAtomically(File file, byte[] data) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+            outputStream.write(data);
+            outputStream.getFD().sync();
+        }
+
+        if(!tempFile.renameTo(file))
+            throw new IOException("rename " + tempFile + " failed");
+    }
+
+    private static String emptyToNull(String value){
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,18 @@
+package com.viavr.watchdog;
+
+import java.util.Random;
+
+// экспоненциальная задержка с джиттером, чтобы парк шлемов не ломился на сервер разом
+public final class Backoff {
+
+    private Backoff(){}
+
+    // задержка для попытки attempt (с нуля): случайно в [base*2^attempt / 2, base*2^attempt], но не больше max
+    public static long delayMs(int attempt, long baseMs, long maxMs, Random random){
+        long backoff = baseMs << Math.min(attempt, 20);
+
+        if(backoff <= 0 || backoff > maxMs) backoff = maxMs;
+
+        return backoff / 2 + (long)(random.nextDouble() * (backoff / 2));
+    }
+}
@@ -0,0 +1,137 @@
+package com.viavr.watchdog;
+
+
+import java.io.*;
+
+// бинарный снимок последнего примененного конфига во внутренней памяти приложения
+// на холодном старте поднимается за микросекунды и не зависит от того, смонтирована ли уже external storage
+// вместе с конфигом хранится CRC32 исходного json, чтобы не парсить его повторно если он не менялся
+// ошибки валидации тоже в снимке, иначе конфиг со снимка показывает 0 ошибок в дампе и в config_loaded
+public final class ConfigSnapshot {
+
+    static final String LOG_TAG = "WATCHDOG";
+
+    static final int MAGIC = 0x57444353; // WDCS
+    static final int VERSION = 3;
+
+    public final WatchdogConfig config;
+    public final long sourceChecksum;
+
+    ConfigSnapshot(WatchdogConfig config, long sourceChecksum){
+        this.config = config;
+        this.sourceChecksum = sourceChecksum;
+    }
+
+    public static void write(File file, WatchdogConfig config, long sourceChecksum){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+
+        try {
+            DataOutputStream outputStream = new DataOutputStream(bytes);
+
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeLong(sourceChecksum);
+
+            writeString(outputStream, config.launcherVersion);
+            writeString(outputStream, config.watchdogTargetVersion);
+            writeString(outputStream, config.targetPackage);
+            writeString(outputStream, config.targetPackageActivity);
+            writeString(outputStream, config.runtimeApiUrl);
+            outputStream.writeInt(config.checkProcessEveryMs);
+            outputStream.writeBoolean(config.allowStartLauncher);
+            outputStream.writeBoolean(config.allowReboot);
+            outputStream.writeInt(config.rebootAtHour);
+            outputStream.writeBoolean(config.allowWakeup);
+            outputStream.writeInt(config.wakeupEverySeconds);
+            outputStream.writeInt(config.wakeupRandomSeconds);
+            outputStream.writeBoolean(config.allowSendRuntime);
+            outputStream.writeInt(config.sendRuntimeEverySeconds);
+            outputStream.writeInt(config.sendRuntimeRandomSeconds);
+            outputStream.writeBoolean(config.allowKillApps);
+
+            outputStream.writeInt(config.launcherKillWhitelist.size());
+            for (String packageName : config.launcherKillWhitelist)
+                outputStream.writeUTF(packageName);
+
+            writeString(outputStream, config.processTableBackend);
+            outputStream.writeInt(config.launcherHeartbeatDeadlineMs);
+            writeString(outputStream, config.errors);
+
+            outputStream.writeInt(config.validationErrors.size());
+            for (WatchdogConfig.ConfigError error : config.validationErrors) {
+                writeString(outputStream, error.key);
+                outputStream.writeUTF(error.message);
+            }
+
+            outputStream.flush();
+
+            File tempFile = new File(file.getPath() + ".tmp");
+
+            try (FileOutputStream fileOutputStream = new FileOutputStream(tempFile)) {
+                fileOutputStream.write(bytes.toByteArray());
+                fileOutputStream.getFD().sync();
+            }
+
+            if(!tempFile.renameTo(file))
+                throw new IOException("rename " + tempFile + " failed");
+        } catch (IOException e) {
+            WatchdogLog.e(LOG_TAG, "Config snapshot write failed: " + e.getMessage());
+        }
+    }
+
+    // null если снимка нет, он битый или от другой версии формата
+    public static ConfigSnapshot read(File file){
+        if(!file.exists()) return null;
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024))) {
+            if(inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) return null;
+
+            long sourceChecksum = inputStream.readLong();
+
+            WatchdogConfig config = WatchdogConfig.createDefault();
+
+            config.launcherVersion = readString(inputStream);
+            config.watchdogTargetVersion = readString(inputStream);
+            config.targetPackage = readString(inputStream);
+            config.targetPackageActivity = readString(inputStream);
+            config.runtimeApiUrl = readString(inputStream);
+            config.checkProcessEveryMs = inputStream.readInt();
+            config.allowStartLauncher = inputStream.readBoolean();
+            config.allowReboot = inputStream.readBoolean();
+            config.rebootAtHour = inputStream.readInt();
+            config.allowWakeup = inputStream.readBoolean();
+            config.wakeupEverySeconds = inputStream.readInt();
+            config.wakeupRandomSeconds = inputStream.readInt();
+            config.allowSendRuntime = inputStream.readBoolean();
+            config.sendRuntimeEverySeconds = inputStream.readInt();
+            config.sendRuntimeRandomSeconds = inputStream.readInt();
+            config.allowKillApps = inputStream.readBoolean();
+
+            int whitelistSize = inputStream.readInt();
+            for (int i = 0; i < whitelistSize; i++)
+                config.launcherKillWhitelist.add(inputStream.readUTF());
+
+            config.processTableBackend = readString(inputStream);
+            config.launcherHeartbeatDeadlineMs = inputStream.readInt();
+            config.errors = readString(inputStream);
+
+            int errorCount = inputStream.readInt();
+            for (int i = 0; i < errorCount; i++)
+                config.validationErrors.add(new WatchdogConfig.ConfigError(readString(inputStream), inputStream.readUTF()));
+
+            return new ConfigSnapshot(config, sourceChecksum);
+        } catch (IOException e) {
+            WatchdogLog.e(LOG_TAG, "Config snapshot is broken: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream outputStream, String value) throws IOException {
+        outputStream.writeBoolean(value != null);
+        if(value != null) outputStream.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream inputStream) throws IOException {
+        return inputStream.readBoolean() ? inputStream.readUTF() : null;
+    }
+}
@@ -0,0 +1,386 @@
+package com.viavr.watchdog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// журнал событий вачдога вместо info строк в logcat: событие - номер, два long и одна строка (обычно пакет)
+// на горячем пути ни конкатенации, ни блокировок: запись в кольцо предвыделенных слотов через CAS,
+// в файлы (EventLogFiles, gzip с ротацией в files/events) пишет отдельный поток раз в FLUSH_MS
+// у частых событий лимит в минуту, пропущенные считаются и пишутся событием SUPPRESSED
+// кольцо переполнено (писатель не запущен или отстал) - событие теряется и считается в метрике events_dropped
+// ошибки по-прежнему идут в logcat через Log/WatchdogLog
+// читается через dumpsys: adb shell dumpsys activity service com.viavr.watchdog/.WatchdogService events [N]
+public final class EventLog {
+
+    static final int CAPACITY = 4096;
+    static final long FLUSH_MS = 1000;
+    static final long WINDOW_MS = 60 * 1000;
+
+    // номера событий пишутся в файлы: только дописывать в конец, не переиспользовать
+    public static final int SUPPRESSED = 0;
+    public static final int SERVICE_CREATED = 1;
+    public static final int FIRST_TICK = 2;
+    public static final int FOREGROUND = 3;
+    public static final int WHITELISTED = 4;
+    public static final int TARGET_NOT_RUNNING = 5;
+    public static final int LAUNCH = 6;
+    public static final int KILL = 7;
+    public static final int KILL_PID = 8;
+    public static final int KILL_ESCALATED = 9;
+    public static final int HEARTBEAT_STALLED = 10;
+    public static final int APP_DISABLED = 11;
+    public static final int RELAUNCH_DONE = 12;
+    public static final int RELAUNCH_FAILED = 13;
+    public static final int WHITELIST_GRANT = 14;
+    public static final int WHITELIST_REVOKE = 15;
+    public static final int WHITELIST_CLEAR = 16;
+    public static final int WHITELIST_EXPIRED = 17;
+    public static final int CONFIG_LOADED = 18;
+    public static final int CONFIG_CHANGED = 19;
+    public static final int COMMAND = 20;
+    public static final int PUSH_EVENT = 21;
+    public static final int TELEMETRY_SENT = 22;
+    public static final int SCHEDULED = 23;
+    public static final int WAKEUP = 24;
+
+    // имя, имена аргументов a и b (null - не печатается), лимит в минуту (0 - без лимита)
+    static final Type[] TYPES = {
+            new Type("suppressed", "event", "count", 0),
+            new Type("service_created", null, null, 0),
+            new Type("first_tick", "after_create_ms", "after_boot_ms", 0),
+            new Type("foreground", null, null, 6),
+            new Type("whitelisted", "left_ms", null, 2),
+            new Type("target_not_running", null, null, 6),
+            new Type("launch", null, null, 20),
+            new Type("kill", null, null, 30),
+            new Type("kill_pid", "pid", null, 30),
+            new Type("kill_escalated", "after_ms", null, 30),
+            new Type("heartbeat_stalled", "stalled_ms", null, 0),
+            new Type("app_disabled", null, null, 30),
+            new Type("relaunch_done", "ms", "launches", 0),
+            new Type("relaunch_failed", "ms", "launches", 0),
+            new Type("whitelist_grant", "duration_ms", null, 0),
+            new Type("whitelist_revoke", null, null, 0),
+            new Type("whitelist_clear", null, null, 0),
+            new Type("whitelist_expired", null, null, 0),
+            new Type("config_loaded", "errors", null, 0),
+            new Type("config_changed", null, null, 0),
+            new Type("command", null, null, 30),
+            new Type("push_event", null, null, 30),
+            new Type("telemetry_sent", "bytes", null, 6),
+            new Type("scheduled", "deadline", "at", 0),
+            new Type("wakeup", null, null, 0),
+    };
+
+    static final class Type {
+        final String name;
+        final String aName;
+        final String bName;
+        final int perMinute;
+
+        Type(String name, String aName, String bName, int perMinute){
+            this.name = name;
+            this.aName = aName;
+            this.bName = bName;
+            this.perMinute = perMinute;
+        }
+    }
+
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    private static final EventLog instance = new EventLog(CAPACITY, System::currentTimeMillis);
+
+    private final Clock clock;
+    private final int mask;
+
+    // слоты кольца: published[i] = номер записи + 1, когда слот заполнен
+    private final long[] times;
+    private final int[] events;
+    private final long[] as;
+    private final long[] bs;
+    private final String[] strings;
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+
+    // читатель один: writeLoop, stop или dump; порядок мониторов files -> drainLock
+    private final Object drainLock = new Object();
+
+    // лимиты: окно (номер минуты), принято в окне и пропущено по каждому событию
+    private final AtomicLongArray windows = new AtomicLongArray(TYPES.length);
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(TYPES.length);
+    private final AtomicIntegerArray suppressed = new AtomicIntegerArray(TYPES.length);
+
+    private final LongAdder droppedMetric = Metrics.get().counter("events_dropped");
+    private final LongAdder suppressedMetric = Metrics.get().counter("events_suppressed");
+
+    private volatile EventLogFiles files;
+    private Thread writer;
+
+    EventLog(int capacity, Clock clock){
+        if(Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+
+        this.clock = clock;
+        this.mask = capacity - 1;
+
+        times = new long[capacity];
+        events = new int[capacity];
+        as = new long[capacity];
+        bs = new long[capacity];
+        strings = new String[capacity];
+        published = new AtomicLongArray(capacity);
+    }
+
+    public static EventLog get(){
+        return instance;
+    }
+
+    public static void log(int event, String s){
+        instance.append(event, 0, 0, s);
+    }
+
+    public static void log(int event, long a, String s){
+        instance.append(event, a, 0, s);
+    }
+
+    public static void log(int event, long a, long b, String s){
+        instance.append(event, a, b, s);
+    }
+
+    // с любого потока; false если событие отброшено лимитом или переполнением
+    public boolean append(int event, long a, long b, String s){
+        long now = clock.currentTimeMillis();
+
+        if(!allow(event, now)) return false;
+
+        return put(now, event, a, b, s);
+    }
+
+    // ---- писатель
+
+    // поток писателя, файлы в directory; повторный вызов при живом писателе ничего не делает
+    public synchronized void start(File directory, long maxFileBytes, int maxFiles) throws IOException {
+        if(writer != null) return;
+
+        files = new EventLogFiles(directory, maxFileBytes, maxFiles);
+
+        writer = new Thread(this::writeLoop, "watchdog-events");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // дописывает хвост кольца и закрывает файл
+    public synchronized void stop(){
+        if(writer == null) return;
+
+        writer.interrupt();
+
+        try {
+            writer.join(FLUSH_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        writer = null;
+
+        synchronized (files) {
+            try {
+                drainToFiles(files);
+                files.close();
+            } catch (IOException e) {
+                WatchdogLog.e("WATCHDOG", "Event log close failed: " + e.getMessage());
+            }
+        }
+
+        files = null;
+    }
+
+    // последние max событий из файлов и кольца, старые сверху
+    public void dump(PrintWriter writer, int max){
+        EventLogFiles files;
+
+        synchronized (this) {
+            files = this.files;
+        }
+
+        ArrayDeque<String> lines = new ArrayDeque<>(Math.min(max, 4096));
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+
+        EventLogFiles.Reader reader = (time, event, a, b, s) -> {
+            if(lines.size() == max) lines.removeFirst();
+            lines.addLast(format(format, time, event, a, b, s));
+        };
+
+        try {
+            if(files != null) {
+                synchronized (files) {
+                    drainToFiles(files);
+                    files.flush();
+                    files.readAll(reader);
+                }
+            } else {
+                drain(reader);
+            }
+        } catch (IOException e) {
+            writer.println("event log read failed: " + e.getMessage());
+        }
+
+        for (String line : lines) writer.println(line);
+    }
+
+    @Override
+    public String toString() {
+        return "EventLog{pending=" + (claimed.get() - consumed) + ", capacity=" + (mask + 1) + ", dropped=" + droppedMetric.sum() +
+                ", suppressed=" + suppressedMetric.sum() + ", " + (files != null ? files : "no writer") + "}";
+    }
+
+    private void writeLoop(){
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(FLUSH_MS);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            EventLogFiles files = this.files;
+            if(files == null) break;
+
+            synchronized (files) {
+                try {
+                    if(drainToFiles(files) > 0) files.flush();
+                } catch (IOException e) {
+                    WatchdogLog.e("WATCHDOG", "Event log write failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private int drainToFiles(EventLogFiles files) throws IOException {
+        flushSuppressed(clock.currentTimeMillis());
+
+        return drain(files::write);
+    }
+
+    // ---- кольцо
+
+    private boolean put(long now, int event, long a, long b, String s){
+        long seq;
+
+        do {
+            seq = claimed.get();
+
+            if(seq - consumed > mask) {
+                droppedMetric.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+
+        int i = (int)(seq & mask);
+
+        times[i] = now;
+        events[i] = event;
+        as[i] = a;
+        bs[i] = b;
+        strings[i] = s;
+
+        published.set(i, seq + 1);
+
+        return true;
+    }
+
+    private int drain(EventLogFiles.Reader reader) throws IOException {
+        synchronized (drainLock) {
+            int count = 0;
+            long seq = consumed;
+
+            while (true) {
+                int i = (int)(seq & mask);
+
+                if(published.get(i) != seq + 1) break;
+
+                String s = strings[i];
+                strings[i] = null;
+
+                reader.read(times[i], events[i], as[i], bs[i], s);
+
+                consumed = ++seq;
+                count++;
+            }
+
+            return count;
+        }
+    }
+
+    // ---- лимиты
+
+    // приблизительный: на границе окна гонка может пропустить лишнее событие, это допустимо
+    private boolean allow(int event, long now){
+        int limit = TYPES[event].perMinute;
+
+        if(limit == 0) return true;
+
+        long window = now / WINDOW_MS;
+        long current = windows.get(event);
+
+        if(window != current && windows.compareAndSet(event, current, window)) {
+            counts.set(event, 0);
+
+            int skipped = suppressed.getAndSet(event, 0);
+            if(skipped > 0) put(now, SUPPRESSED, event, skipped, null);
+        }
+
+        if(counts.incrementAndGet(event) <= limit) return true;
+
+        suppressed.incrementAndGet(event);
+        suppressedMetric.increment();
+
+        return false;
+    }
+
+    // событие могло больше не повториться: пропуски прошедших окон дописывает писатель
+    private void flushSuppressed(long now){
+        long window = now / WINDOW_MS;
+
+        for (int event = 0; event < TYPES.length; event++) {
+            if(windows.get(event) >= window) continue;
+
+            int skipped = suppressed.getAndSet(event, 0);
+            if(skipped > 0) put(now, SUPPRESSED, event, skipped, null);
+        }
+    }
+
+    static String format(SimpleDateFormat format, long time, int event, long a, long b, String s){
+        StringBuilder line = new StringBuilder(96);
+
+        line.append(format.format(new Date(time))).append(' ');
+
+        Type type = event >= 0 && event < TYPES.length ? TYPES[event] : null;
+
+        if(type == null) {
+            return line.append("event#").append(event).append(' ').append(a).append(' ').append(b).append(' ').append(s).toString();
+        }
+
+        line.append(type.name);
+
+        if(s != null && !s.isEmpty()) line.append(' ').append(s);
+
+        if(event == SUPPRESSED && a >= 0 && a < TYPES.length) line.append(' ').append(type.aName).append('=').append(TYPES[(int)a].name);
+        else if(type.aName != null) line.append(' ').append(type.aName).append('=').append(a);
+
+        if(type.bName != null) line.append(' ').append(type.bName).append('=').append(b);
+
+        return line.toString();
+    }
+}
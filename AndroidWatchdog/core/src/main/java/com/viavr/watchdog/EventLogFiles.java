@@ -0,0 +1,157 @@
+package com.viavr.watchdog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// файлы журнала событий: events-<номер>.gz, каждый запуск процесса начинает новый файл
+// после каждой пачки sync flush gzip: записанное переживает убийство процесса и ребут,
+// оборванный хвост при чтении просто отбрасывается
+// файл закрывается по maxFileBytes несжатых данных, хранятся последние maxFiles файлов
+//
+// заголовок: int MAGIC, int VERSION
+// запись: byte событие, long время (System.currentTimeMillis), long a, long b, UTF строка ("" - нет)
+public class EventLogFiles implements Closeable {
+
+    static final int MAGIC = 0x5744454C; // WDEL
+    static final int VERSION = 1;
+
+    static final String PREFIX = "events-";
+    static final String SUFFIX = ".gz";
+
+    public interface Reader {
+        void read(long time, int event, long a, long b, String s) throws IOException;
+    }
+
+    private final File directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    private int index;
+    private DataOutputStream output;
+
+    public EventLogFiles(File directory, long maxFileBytes, int maxFiles) throws IOException {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+
+        if(!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("can't create " + directory);
+
+        List<File> existing = files();
+        index = existing.isEmpty() ? 0 : indexOf(existing.get(existing.size() - 1));
+
+        open();
+    }
+
+    public synchronized void write(long time, int event, long a, long b, String s) throws IOException {
+        output.writeByte(event);
+        output.writeLong(time);
+        output.writeLong(a);
+        output.writeLong(b);
+        output.writeUTF(s != null ? s : "");
+
+        if(output.size() >= maxFileBytes) {
+            output.close();
+            open();
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        output.flush();
+    }
+
+    // все записи от старых файлов к новым
+    public synchronized void readAll(Reader reader) throws IOException {
+        for (File file : files()) read(file, reader);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        output.close();
+    }
+
+    // файлы журнала от старых к новым
+    public List<File> files(){
+        File[] list = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX) && indexOf(name) > 0);
+
+        if(list == null) return Collections.emptyList();
+
+        ArrayList<File> files = new ArrayList<>(Arrays.asList(list));
+        files.sort((left, right) -> Integer.compare(indexOf(left), indexOf(right)));
+
+        return files;
+    }
+
+    // битый заголовок - файл пропускается, оборванный хвост - читается до обрыва
+    public static void read(File file, Reader reader) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if(input.readInt() != MAGIC || input.readInt() != VERSION) return;
+
+            while (true) {
+                int event;
+
+                try {
+                    event = input.readUnsignedByte();
+                } catch (IOException e) {
+                    return;
+                }
+
+                long time = input.readLong();
+                long a = input.readLong();
+                long b = input.readLong();
+                String s = input.readUTF();
+
+                reader.read(time, event, a, b, s.isEmpty() ? null : s);
+            }
+        } catch (IOException e) {
+            // файл еще пишется или процесс убили посреди записи
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EventLogFiles{" + directory + ", file #" + index + ", " + output.size() + " bytes, max " + maxFiles + " x " + maxFileBytes + "}";
+    }
+
+    private void open() throws IOException {
+        index++;
+
+        File file = new File(directory, String.format("%s%06d%s", PREFIX, index, SUFFIX));
+
+        output = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file)), true));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+
+        List<File> files = files();
+
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            if(!files.get(i).delete()) WatchdogLog.e("WATCHDOG", "Event log delete failed: " + files.get(i));
+        }
+    }
+
+    private static int indexOf(File file){
+        return indexOf(file.getName());
+    }
+
+    // 0 если имя не наше
+    private static int indexOf(String name){
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.viavr.watchdog;
+
+// зависание лаунчера по heartbeat из StatusPage: процесс жив и наверху, а счетчик не двигается
+// окно отсчитывается с момента последнего изменения значения (со времени записи лаунчером, если оно известно,
+// иначе с момента, когда изменение увидели); пока лаунчер не наверху, экран выключен
+// или значение 0 (не подключен) - окно не идет
+// значение, на котором лаунчер уже убивали за зависание, считается "не подключен": новый процесс
+// без поддержки страницы не должен попадать в цикл убийств
+// время SystemClock.elapsedRealtime(), вызовы на потоке WatchdogScheduler
+public final class HeartbeatMonitor {
+
+    private long lastValue;
+    private long changedAt;
+    private long staleValue;
+
+    // true если значение не менялось дольше deadlineMs
+    public boolean isStalled(long heartbeat, long now, long deadlineMs){
+        return isStalled(heartbeat, 0, now, deadlineMs);
+    }
+
+    // heartbeatAt - когда лаунчер записал значение (elapsedRealtime), 0 - неизвестно
+    public boolean isStalled(long heartbeat, long heartbeatAt, long now, long deadlineMs){
+        if(heartbeat == 0 || heartbeat == staleValue) {
+            suspend();
+            return false;
+        }
+
+        // окно начинается заново - с момента наблюдения: старое время записи не должно сразу дать зависание
+        if(changedAt == 0) {
+            lastValue = heartbeat;
+            changedAt = now;
+            return false;
+        }
+
+        if(heartbeat != lastValue) {
+            lastValue = heartbeat;
+            changedAt = heartbeatAt > changedAt && heartbeatAt <= now ? heartbeatAt : now;
+            return false;
+        }
+
+        return now - changedAt > deadlineMs;
+    }
+
+    // лаунчер ушел из foreground или перезапускается: окно начнется заново со следующего значения
+    public void suspend(){
+        changedAt = 0;
+    }
+
+    // лаунчер убит за зависание, его последнее значение больше не считается
+    public void markStale(){
+        staleValue = lastValue;
+        suspend();
+    }
+
+    // первый момент, когда isStalled может вернуть true; 0 - окно не идет
+    public long getDeadline(long deadlineMs){
+        return changedAt != 0 ? changedAt + deadlineMs + 1 : 0;
+    }
+
+    public long getStalledMs(long now){
+        return changedAt != 0 ? now - changedAt : 0;
+    }
+}
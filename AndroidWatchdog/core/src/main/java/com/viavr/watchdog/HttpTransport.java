@@ -0,0 +1,63 @@
+package com.viavr.watchdog;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+// транспорт HTTP запросов вачдога: боевой UrlConnectionTransport и MockTransport для тестов и бенчмарков на JVM
+public interface HttpTransport {
+
+    final class Request {
+        public final String method;
+        public final String url;
+        public final Map<String, String> headers;
+        public final byte[] body;
+
+        public Request(String method, String url, Map<String, String> headers, byte[] body){
+            this.method = method;
+            this.url = url;
+            this.headers = headers != null ? headers : Collections.<String, String>emptyMap();
+            this.body = body;
+        }
+    }
+
+    final class Response {
+        public final int statusCode;
+        public final Map<String, String> headers;
+        public final byte[] body;
+        public final long latencyMs;
+
+        public Response(int statusCode, Map<String, String> headers, byte[] body, long latencyMs){
+            this.statusCode = statusCode;
+            this.headers = headers != null ? headers : Collections.<String, String>emptyMap();
+            this.body = body != null ? body : new byte[0];
+            this.latencyMs = latencyMs;
+        }
+
+        public boolean isSuccessful(){
+            return statusCode >= 200 && statusCode < 300;
+        }
+
+        // заголовки сравниваем без учета регистра
+        public String getHeader(String name){
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                if(entry.getKey() != null && entry.getKey().equalsIgnoreCase(name)) return entry.getValue();
+            }
+
+            return null;
+        }
+    }
+
+    interface Callback {
+        // любой HTTP ответ, в том числе 4xx/5xx
+        void onResponse(Response response);
+
+        // ответа нет: сеть, DNS, таймаут
+        void onError(IOException error);
+    }
+
+    // асинхронно, колбэк приходит на потоке транспорта
+    void execute(Request request, Callback callback);
+
+    void shutdown();
+}
@@ -0,0 +1,122 @@
+package com.viavr.watchdog;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// гистограмма задержек на фиксированных бакетах 1-2-5 от 1мс до 2 минут
+// запись без локов и без аллокаций, можно писать с любого потока
+// перцентили считаются по бакетам с линейной интерполяцией внутри бакета, точность - ширина бакета
+// единица - по суффиксу имени: _us - микросекунды (бакеты от 1мкс до 120мс), иначе миллисекунды
+public final class LatencyHistogram {
+
+    // верхние границы бакетов, включительно; последний бакет - все что больше
+    static final long[] BOUNDS_MS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500,
+            1000, 2000, 5000, 10000, 20000, 50000, 120000
+    };
+
+    private final String name;
+    private final String unit;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name){
+        this.name = name;
+        this.unit = name.endsWith("_us") ? "us" : "ms";
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public void record(long valueMs){
+        if(valueMs < 0) valueMs = 0;
+
+        counts.incrementAndGet(bucketOf(valueMs));
+        count.incrementAndGet();
+        sum.addAndGet(valueMs);
+
+        long currentMax = max.get();
+
+        while (valueMs > currentMax && !max.compareAndSet(currentMax, valueMs))
+            currentMax = max.get();
+    }
+
+    public long getCount(){
+        return count.get();
+    }
+
+    public long getMax(){
+        return max.get();
+    }
+
+    public long getMean(){
+        long n = count.get();
+
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    // p от 0 до 1, 0 если замеров нет
+    public long getPercentile(double p){
+        long total = count.get();
+
+        if(total == 0) return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(p * total));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length(); i++) {
+            long inBucket = counts.get(i);
+
+            if(inBucket == 0) continue;
+
+            if(seen + inBucket >= rank) {
+                // переполнение и верхний край не выше фактического максимума
+                long lower = i == 0 ? 0 : BOUNDS_MS[i - 1];
+                long upper = Math.min(i < BOUNDS_MS.length ? BOUNDS_MS[i] : Long.MAX_VALUE, max.get());
+
+                if(upper <= lower) return upper;
+
+                return lower + (upper - lower) * (rank - seen) / inBucket;
+            }
+
+            seen += inBucket;
+        }
+
+        return max.get();
+    }
+
+    public void reset(){
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    // {"count":12,"p50":820,"p95":1900,"p99":2400,"max":2410,"mean":900}
+    public String toJson(){
+        return String.format(Locale.US, "{\"count\":%d,\"p50\":%d,\"p95\":%d,\"p99\":%d,\"max\":%d,\"mean\":%d}",
+                getCount(), getPercentile(0.5), getPercentile(0.95), getPercentile(0.99), getMax(), getMean());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: n=%d p50=%d%s p95=%d%s p99=%d%s max=%d%s",
+                name, getCount(), getPercentile(0.5), unit, getPercentile(0.95), unit, getPercentile(0.99), unit, getMax(), unit);
+    }
+
+    static int bucketOf(long valueMs){
+        // бакетов мало, линейный поиск быстрее бинарного
+        for (int i = 0; i < BOUNDS_MS.length; i++) {
+            if(valueMs <= BOUNDS_MS[i]) return i;
+        }
+
+        return BOUNDS_MS.length;
+    }
+}
@@ -0,0 +1,131 @@
+package com.viavr.watchdog;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// реестр метрик процесса: счетчики (LongAdder), гейджи и гистограммы задержек
+// метрика регистрируется один раз и хранится в поле, на горячем пути только increment/record без аллокаций
+// читается через dumpsys (WatchdogService.dump), MetricsProvider и секцию "metrics" телеметрии
+public final class Metrics {
+
+    private static final Metrics instance = new Metrics();
+
+    // значение гейджа считается в момент чтения
+    public interface Gauge {
+        long get();
+    }
+
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics(){}
+
+    public static Metrics get(){
+        return instance;
+    }
+
+    public LongAdder counter(String name){
+        LongAdder counter = counters.get(name);
+
+        if(counter == null) {
+            counters.putIfAbsent(name, new LongAdder());
+            counter = counters.get(name);
+        }
+
+        return counter;
+    }
+
+    // повторная регистрация заменяет гейдж (сервис пересоздан)
+    public void gauge(String name, Gauge gauge){
+        gauges.put(name, gauge);
+    }
+
+    public LatencyHistogram histogram(String name){
+        LatencyHistogram histogram = histograms.get(name);
+
+        if(histogram == null) {
+            histograms.putIfAbsent(name, new LatencyHistogram(name));
+            histogram = histograms.get(name);
+        }
+
+        return histogram;
+    }
+
+    // гистограмма, которой владеет другой объект (например RelaunchTracker)
+    public void register(LatencyHistogram histogram){
+        histograms.put(histogram.getName(), histogram);
+    }
+
+    public TreeMap<String, Long> getCounters(){
+        TreeMap<String, Long> values = new TreeMap<>();
+
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet())
+            values.put(counter.getKey(), counter.getValue().sum());
+
+        return values;
+    }
+
+    public TreeMap<String, Long> getGauges(){
+        TreeMap<String, Long> values = new TreeMap<>();
+
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            try {
+                values.put(gauge.getKey(), gauge.getValue().get());
+            } catch (RuntimeException e) {
+                values.put(gauge.getKey(), -1L);
+            }
+        }
+
+        return values;
+    }
+
+    public TreeMap<String, LatencyHistogram> getHistograms(){
+        return new TreeMap<>(histograms);
+    }
+
+    // {"counters":{"kills":3},"gauges":{"outbox_depth":0},"histograms":{"tick_us":{...}}}
+    public String toJson(){
+        StringBuilder json = new StringBuilder(512);
+
+        json.append("{\"counters\":{");
+        appendValues(json, getCounters());
+
+        json.append("},\"gauges\":{");
+        appendValues(json, getGauges());
+
+        json.append("},\"histograms\":{");
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> histogram : getHistograms().entrySet()) {
+            if(!first) json.append(',');
+            json.append('"').append(histogram.getKey()).append("\":").append(histogram.getValue().toJson());
+            first = false;
+        }
+
+        return json.append("}}").toString();
+    }
+
+    public void dump(PrintWriter writer, String prefix){
+        for (Map.Entry<String, Long> counter : getCounters().entrySet())
+            writer.println(prefix + counter.getKey() + " = " + counter.getValue());
+
+        for (Map.Entry<String, Long> gauge : getGauges().entrySet())
+            writer.println(prefix + gauge.getKey() + " = " + gauge.getValue());
+
+        for (LatencyHistogram histogram : getHistograms().values())
+            writer.println(prefix + histogram);
+    }
+
+    private static void appendValues(StringBuilder json, TreeMap<String, Long> values){
+        boolean first = true;
+
+        for (Map.Entry<String, Long> value : values.entrySet()) {
+            if(!first) json.append(',');
+            json.append('"').append(value.getKey()).append("\":").append(value.getValue());
+            first = false;
+        }
+    }
+}
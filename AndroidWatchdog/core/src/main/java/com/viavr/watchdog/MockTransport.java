@@ -0,0 +1,114 @@
+package com.viavr.watchdog;
+
+import java.io.IOException;
+import java.util.*;
+
+// детерминированный транспорт в памяти процесса: маршруты по самому длинному префиксу url, заскриптованные сбои,
+// задержка виртуальная (не спим, а только отчитываемся), колбэк приходит синхронно на потоке вызова
+public class MockTransport implements HttpTransport {
+
+    public interface Responder {
+        Response respond(Request request) throws IOException;
+    }
+
+    private final LinkedHashMap<String, Responder> routes = new LinkedHashMap<>();
+    private final ArrayDeque<Object> scripted = new ArrayDeque<>();
+    private final ArrayList<Request> requests = new ArrayList<>();
+
+    private long latencyMs;
+    private long totalLatencyMs;
+    private long bytesSent;
+    private int errorCount;
+
+    public synchronized MockTransport route(String urlPrefix, Responder responder){
+        routes.put(urlPrefix, responder);
+        return this;
+    }
+
+    // следующие ответы вне зависимости от маршрута, по очереди
+    public synchronized MockTransport enqueue(Response response){
+        scripted.add(response);
+        return this;
+    }
+
+    public synchronized MockTransport enqueueError(IOException error){
+        scripted.add(error);
+        return this;
+    }
+
+    public synchronized MockTransport setLatencyMs(long latencyMs){
+        this.latencyMs = latencyMs;
+        return this;
+    }
+
+    public synchronized int getRequestCount(){
+        return requests.size();
+    }
+
+    public synchronized List<Request> getRequests(){
+        return new ArrayList<>(requests);
+    }
+
+    public synchronized long getTotalLatencyMs(){
+        return totalLatencyMs;
+    }
+
+    public synchronized long getBytesSent(){
+        return bytesSent;
+    }
+
+    public synchronized int getErrorCount(){
+        return errorCount;
+    }
+
+    public static Response response(int statusCode, String body){
+        return new Response(statusCode, null, body != null ? body.getBytes(java.nio.charset.StandardCharsets.UTF_8) : null, 0);
+    }
+
+    @Override
+    public void execute(Request request, Callback callback) {
+        Response response;
+
+        try {
+            response = respond(request);
+        } catch (IOException e) {
+            synchronized (this) { errorCount++; }
+            callback.onError(e);
+            return;
+        }
+
+        callback.onResponse(response);
+    }
+
+    @Override
+    public void shutdown() {}
+
+    private synchronized Response respond(Request request) throws IOException {
+        requests.add(request);
+        totalLatencyMs += latencyMs;
+        bytesSent += request.body != null ? request.body.length : 0;
+
+        Object next = scripted.poll();
+
+        if(next instanceof IOException) throw (IOException)next;
+
+        Response response = (Response)next;
+
+        if(response == null) {
+            // самый длинный подходящий префикс
+            Responder responder = null;
+            int matchedLength = -1;
+
+            for (Map.Entry<String, Responder> route : routes.entrySet()) {
+                if(request.url.startsWith(route.getKey()) && route.getKey().length() > matchedLength) {
+                    responder = route.getValue();
+                    matchedLength = route.getKey().length();
+                }
+            }
+
+            response = responder != null ? responder.respond(request) : response(404, null);
+        }
+
+        return new Response(response.statusCode, response.headers, response.body, latencyMs);
+    }
+}
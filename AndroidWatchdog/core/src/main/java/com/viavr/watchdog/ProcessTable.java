@@ -0,0 +1,109 @@
+package com.viavr.watchdog;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+// неизменяемый снимок списка процессов, снимается один раз за тик
+public final class ProcessTable {
+
+    // бэкенд, который снимает список процессов
+    public interface Source {
+        String getName();
+
+        ProcessTable snapshot();
+    }
+
+    public static final ProcessTable EMPTY = new Builder(0).build();
+
+    private final String[] names;
+    private final int[] pids;
+    private final int size;
+
+    private final HashMap<String, Integer> pidByName;
+    private final int[] sortedPids;
+
+    private ProcessTable(String[] names, int[] pids, int size){
+        this.names = names;
+        this.pids = pids;
+        this.size = size;
+
+        pidByName = new HashMap<>(size * 2);
+
+        for (int i = 0; i < size; i++)
+            pidByName.put(names[i], pids[i]);
+
+        sortedPids = Arrays.copyOf(pids, size);
+        Arrays.sort(sortedPids);
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public String getName(int index){
+        return names[index];
+    }
+
+    public int getPid(int index){
+        return pids[index];
+    }
+
+    public boolean contains(String processName){
+        return processName != null && pidByName.containsKey(processName);
+    }
+
+    // есть ли хоть один процесс пакета, включая pkg:suffix
+    public boolean containsPackage(String packageName){
+        if(packageName == null) return false;
+        if(pidByName.containsKey(packageName)) return true;
+
+        for (int i = 0; i < size; i++) {
+            String name = names[i];
+
+            if(name.length() > packageName.length() && name.charAt(packageName.length()) == ':' && name.startsWith(packageName))
+                return true;
+        }
+
+        return false;
+    }
+
+    // -1 если процесса нет
+    public int findPid(String processName){
+        Integer pid = processName != null ? pidByName.get(processName) : null;
+
+        return pid != null ? pid : -1;
+    }
+
+    public boolean isAlive(int pid){
+        return Arrays.binarySearch(sortedPids, pid) >= 0;
+    }
+
+    public static final class Builder {
+
+        private String[] names;
+        private int[] pids;
+        private int size;
+
+        public Builder(int capacity){
+            names = new String[Math.max(capacity, 4)];
+            pids = new int[names.length];
+        }
+
+        public Builder add(String name, int pid){
+            if(size == names.length){
+                names = Arrays.copyOf(names, size * 2);
+                pids = Arrays.copyOf(pids, size * 2);
+            }
+
+            names[size] = name;
+            pids[size] = pid;
+            size++;
+
+            return this;
+        }
+
+        public ProcessTable build(){
+            return new ProcessTable(names, pids, size);
+        }
+    }
+}
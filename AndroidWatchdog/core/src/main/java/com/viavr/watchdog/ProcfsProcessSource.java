@@ -0,0 +1,77 @@
+package com.viavr.watchdog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+// список процессов сканированием /proc/<pid>/cmdline, без binder вызовов
+// видит все процессы только под android.uid.system (на обычном uid /proc смонтирован с hidepid)
+public class ProcfsProcessSource implements ProcessTable.Source {
+
+    private final File procDir;
+
+    private final byte[] buffer = new byte[256];
+
+    public ProcfsProcessSource(){
+        this(new File("/proc"));
+    }
+
+    ProcfsProcessSource(File procDir){
+        this.procDir = procDir;
+    }
+
+    @Override
+    public String getName() {
+        return "procfs";
+    }
+
+    @Override
+    public synchronized ProcessTable snapshot() {
+        String[] entries = procDir.list();
+
+        if(entries == null) return ProcessTable.EMPTY;
+
+        ProcessTable.Builder builder = new ProcessTable.Builder(entries.length / 2);
+
+        for (String entry : entries) {
+            int pid = parsePid(entry);
+
+            if(pid <= 0) continue;
+
+            String name = readCmdline(entry);
+
+            // у ядерных потоков cmdline пустой
+            if(name != null) builder.add(name, pid);
+        }
+
+        return builder.build();
+    }
+
+    private static int parsePid(String entry){
+        int pid = 0;
+
+        for (int i = 0; i < entry.length(); i++) {
+            char c = entry.charAt(i);
+
+            if(c < '0' || c > '9') return -1;
+
+            pid = pid * 10 + (c - '0');
+        }
+
+        return pid;
+    }
+
+    private String readCmdline(String pidEntry){
+        try (FileInputStream inputStream = new FileInputStream(procDir.getPath() + "/" + pidEntry + "/cmdline")) {
+            int length = inputStream.read(buffer);
+            int end = 0;
+
+            while (end < length && buffer[end] != 0) end++;
+
+            return end > 0 ? new String(buffer, 0, end) : null;
+        } catch (IOException e) {
+            // процесс успел умереть
+            return null;
+        }
+    }
+}
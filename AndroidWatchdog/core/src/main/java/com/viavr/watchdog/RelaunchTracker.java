@@ -0,0 +1,123 @@
+package com.viavr.watchdog;
+
+// сколько хедсет показывает не то приложение: спаны одного перезапуска лаунчера
+// detected - тик увидел чужое приложение в foreground, launched - ушел startActivity,
+// process - в снимке появился процесс таргета, foreground - таргет наверху
+// все времена SystemClock.elapsedRealtime(), вызовы на потоке WatchdogScheduler
+public class RelaunchTracker {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    // лаунчер так и не поднялся, спан закрывается как проваленный
+    static final long GIVE_UP_MS = 60 * 1000;
+
+    public final LatencyHistogram detectToLaunch = new LatencyHistogram("detect_to_launch");
+    public final LatencyHistogram launchToProcess = new LatencyHistogram("launch_to_process");
+    public final LatencyHistogram launchToForeground = new LatencyHistogram("launch_to_foreground");
+    // основной SLO: от обнаружения до лаунчера наверху
+    public final LatencyHistogram detectToForeground = new LatencyHistogram("detect_to_foreground");
+
+    private long detectedAt;
+    private long launchedAt;
+    private long processAt;
+    private int launchAttempts;
+
+    private long completedCount;
+    private long abandonedCount;
+
+    public void onForegroundLost(long now){
+        expire(now);
+
+        if(detectedAt == 0) detectedAt = now;
+    }
+
+    public void onLaunchIssued(long now){
+        expire(now);
+
+        if(detectedAt == 0) detectedAt = now;
+
+        // повторные запуски в том же спане не сдвигают отсчет
+        if(launchedAt == 0) {
+            launchedAt = now;
+            detectToLaunch.record(launchedAt - detectedAt);
+        }
+
+        launchAttempts++;
+    }
+
+    public void onTargetProcessAlive(long now){
+        if(launchedAt == 0 || processAt != 0) return;
+
+        processAt = now;
+        launchToProcess.record(processAt - launchedAt);
+    }
+
+    public void onTargetForeground(long now){
+        if(detectedAt == 0) return;
+
+        onTargetProcessAlive(now);
+
+        if(launchedAt != 0)
+            launchToForeground.record(now - launchedAt);
+
+        detectToForeground.record(now - detectedAt);
+        completedCount++;
+
+        EventLog.log(EventLog.RELAUNCH_DONE, now - detectedAt, launchAttempts, null);
+
+        reset();
+    }
+
+    // в foreground законное приложение (вайтлист), спан не считаем
+    public void cancel(){
+        reset();
+    }
+
+    public boolean isOpen(){
+        return detectedAt != 0;
+    }
+
+    public long getCompletedCount(){
+        return completedCount;
+    }
+
+    public long getAbandonedCount(){
+        return abandonedCount;
+    }
+
+    // {"completed":5,"abandoned":0,"detect_to_foreground":{...},...}
+    public String toJson(){
+        return "{\"completed\":" + completedCount +
+                ",\"abandoned\":" + abandonedCount +
+                ",\"" + detectToForeground.getName() + "\":" + detectToForeground.toJson() +
+                ",\"" + detectToLaunch.getName() + "\":" + detectToLaunch.toJson() +
+                ",\"" + launchToProcess.getName() + "\":" + launchToProcess.toJson() +
+                ",\"" + launchToForeground.getName() + "\":" + launchToForeground.toJson() + "}";
+    }
+
+    @Override
+    public String toString() {
+        return "Relaunch latency (completed " + completedCount + ", abandoned " + abandonedCount + ")\n" +
+                "    " + detectToForeground + "\n" +
+                "    " + detectToLaunch + "\n" +
+                "    " + launchToProcess + "\n" +
+                "    " + launchToForeground;
+    }
+
+    private void expire(long now){
+        if(detectedAt != 0 && now - detectedAt > GIVE_UP_MS) {
+            WatchdogLog.e(LOG_TAG, "Relaunch: target not in foreground after " + (now - detectedAt) + "ms, " + launchAttempts + " launches");
+            EventLog.log(EventLog.RELAUNCH_FAILED, now - detectedAt, launchAttempts, null);
+
+            abandonedCount++;
+            reset();
+        }
+    }
+
+    private void reset(){
+        detectedAt = 0;
+        launchedAt = 0;
+        processAt = 0;
+        launchAttempts = 0;
+    }
+}
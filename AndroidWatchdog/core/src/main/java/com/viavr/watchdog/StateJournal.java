@@ -0,0 +1,401 @@
+package com.viavr.watchdog;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// журнал состояния сервиса, переживающий рестарт процесса (START_STICKY после OOM kill и т.п.)
+// файл отображен в память, записи только дописываются в конец: запись - это put в страницу,
+// при смерти процесса ядро само сбросит ее на диск. Когда место кончается журнал сжимается:
+// текущее состояние пишется в новый файл, который атомарно подменяет старый
+//
+// формат: заголовок 16 байт (MAGIC, VERSION, bootCount, 0), дальше записи
+// [int длина типа и тела][byte тип][тело][int CRC32 типа и тела], длина 0 - конец журнала
+// недописанная или битая запись (CRC не сошелся) обрывает чтение, все что до нее применяется
+//
+// гранты вайтлиста хранятся в шкале elapsedRealtime + номер загрузки (Settings.Global.BOOT_COUNT):
+// после ребута elapsedRealtime начинается с нуля, поэтому гранты прошлой загрузки при чтении отбрасываются
+public class StateJournal implements Closeable {
+
+    static final String LOG_TAG = "WATCHDOG";
+
+    static final int MAGIC = 0x5744534A; // WDSJ
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    // тело + тип + длина + CRC
+    static final int RECORD_OVERHEAD = 4 + 1 + 4;
+
+    static final byte GRANT = 1;
+    static final byte REVOKE = 2;
+    static final byte CLEAR = 3;
+    static final byte LAST_FOREGROUND = 4;
+    static final byte NEXT_WAKEUP = 5;
+    static final byte NEXT_SEND_RUNTIME = 6;
+
+    // состояние, которое восстанавливает журнал
+    public static final class State {
+        // пакет -> дедлайн гранта в шкале elapsedRealtime текущей загрузки
+        public final HashMap<String, Long> grants = new HashMap<>();
+        public String lastForegroundApp;
+        // wall clock, 0 - не задано
+        public long nextWakeupMillis;
+        public long nextSendRuntimeMillis;
+
+        State copy(){
+            State state = new State();
+            state.grants.putAll(grants);
+            state.lastForegroundApp = lastForegroundApp;
+            state.nextWakeupMillis = nextWakeupMillis;
+            state.nextSendRuntimeMillis = nextSendRuntimeMillis;
+
+            return state;
+        }
+    }
+
+    private final File file;
+    private final int capacity;
+    private final int bootCount;
+
+    private final State state = new State();
+
+    private MappedByteBuffer buffer;
+    private boolean closed = false;
+
+    // для оценки write amplification: сколько байт записей просили записать и сколько реально ушло в файл
+    private long logicalBytes = 0;
+    private long physicalBytes = 0;
+    private int compactions = 0;
+    private int replayedRecords = 0;
+
+    public StateJournal(File file, int capacity, int bootCount) throws IOException {
+        if(capacity < HEADER_SIZE + 256) throw new IllegalArgumentException("capacity " + capacity);
+
+        this.file = file;
+        this.capacity = capacity;
+        this.bootCount = bootCount;
+
+        buffer = map(file, capacity);
+
+        if(buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION) {
+            scan();
+        } else {
+            // новый или чужой файл, начинаем с пустого журнала
+            writeSnapshot();
+        }
+    }
+
+    // отбрасывает истекшие гранты и возвращает копию состояния, прочитанного из журнала при открытии
+    public synchronized State replay(long nowElapsed){
+        state.grants.values().removeIf(deadline -> deadline <= nowElapsed);
+
+        // журнал наполовину заполнен историей, сжимаем заранее а не посреди тика
+        if(buffer.position() > capacity / 2) compact();
+
+        return state.copy();
+    }
+
+    public synchronized void recordGrant(String packageName, long deadlineElapsed){
+        state.grants.put(packageName, deadlineElapsed);
+
+        append(GRANT, grantBytes(packageName, deadlineElapsed));
+    }
+
+    public synchronized void recordRevoke(String packageName){
+        if(state.grants.remove(packageName) == null) return;
+
+        append(REVOKE, packageName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public synchronized void recordClear(){
+        if(state.grants.isEmpty()) return;
+
+        state.grants.clear();
+
+        append(CLEAR, new byte[0]);
+    }
+
+    public synchronized void recordLastForegroundApp(String packageName){
+        if(packageName == null ? state.lastForegroundApp == null : packageName.equals(state.lastForegroundApp)) return;
+
+        state.lastForegroundApp = packageName;
+
+        // пустое тело - null
+        append(LAST_FOREGROUND, packageName != null ? packageName.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+    }
+
+    public synchronized void recordNextWakeup(long wallMillis){
+        if(state.nextWakeupMillis == wallMillis) return;
+
+        state.nextWakeupMillis = wallMillis;
+
+        append(NEXT_WAKEUP, longBytes(wallMillis));
+    }
+
+    public synchronized void recordNextSendRuntime(long wallMillis){
+        if(state.nextSendRuntimeMillis == wallMillis) return;
+
+        state.nextSendRuntimeMillis = wallMillis;
+
+        append(NEXT_SEND_RUNTIME, longBytes(wallMillis));
+    }
+
+    // переписывает журнал одним снимком текущего состояния
+    public synchronized void compact(){
+        if(closed) return;
+
+        try {
+            File tempFile = new File(file.getPath() + ".tmp");
+
+            if(tempFile.exists() && !tempFile.delete())
+                throw new IOException("delete " + tempFile + " failed");
+
+            MappedByteBuffer tempBuffer = map(tempFile, capacity);
+            MappedByteBuffer previousBuffer = buffer;
+
+            buffer = tempBuffer;
+
+            try {
+                writeSnapshot();
+            } catch (RuntimeException e) {
+                buffer = previousBuffer;
+                throw e;
+            }
+
+            // подмена файла атомарна, при падении посередине остается старый журнал
+            tempBuffer.force();
+
+            if(!tempFile.renameTo(file)) {
+                buffer = previousBuffer;
+                throw new IOException("rename " + tempFile + " failed");
+            }
+
+            compactions++;
+        } catch (IOException | RuntimeException e) {
+            WatchdogLog.e(LOG_TAG, "State journal compaction failed: " + e);
+        }
+    }
+
+    public synchronized long getLogicalBytes(){
+        return logicalBytes;
+    }
+
+    public synchronized long getPhysicalBytes(){
+        return physicalBytes;
+    }
+
+    // сколько байт ушло в файл на каждый байт записей
+    public synchronized double getWriteAmplification(){
+        return logicalBytes == 0 ? 0 : (double)physicalBytes / logicalBytes;
+    }
+
+    public synchronized int getCompactions(){
+        return compactions;
+    }
+
+    public synchronized int getReplayedRecords(){
+        return replayedRecords;
+    }
+
+    // занятый объем, включая заголовок
+    public synchronized int getUsedBytes(){
+        return buffer.position();
+    }
+
+    public synchronized int getCapacity(){
+        return capacity;
+    }
+
+    @Override
+    public synchronized void close(){
+        if(closed) return;
+
+        closed = true;
+
+        // отображение снимет GC, страницы ядро сбросит на диск само
+        buffer.force();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StateJournal{used=" + buffer.position() + "/" + capacity +
+                ", grants=" + state.grants.size() +
+                ", compactions=" + compactions +
+                ", writeAmplification=" + String.format(java.util.Locale.US, "%.2f", getWriteAmplification()) + "}";
+    }
+
+    // читает записи до первой битой, позиция записи встает за последней валидной
+    private void scan(){
+        int position = HEADER_SIZE;
+
+        while (position + RECORD_OVERHEAD <= capacity) {
+            int length = buffer.getInt(position);
+
+            // 0 - конец журнала
+            if(length <= 0 || position + 4 + length + 4 > capacity) break;
+
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + 4);
+            record.limit(position + 4 + length);
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(record);
+
+            if((int)crc32.getValue() != buffer.getInt(position + 4 + length)) {
+                WatchdogLog.e(LOG_TAG, "State journal: broken record at " + position + ", truncating");
+                break;
+            }
+
+            // тип уже прочитан отдельно
+            ByteBuffer body = buffer.duplicate();
+            body.position(position + 5);
+            body.limit(position + 4 + length);
+
+            try {
+                applyRecord(buffer.get(position + 4), body);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                WatchdogLog.e(LOG_TAG, "State journal: bad record at " + position + ": " + e);
+                break;
+            }
+
+            replayedRecords++;
+            position += 4 + length + 4;
+        }
+
+        buffer.position(position);
+
+        // хвост после оборванной записи затираем, иначе новая короткая запись склеится со старым мусором
+        if(position + 4 <= capacity) buffer.putInt(position, 0);
+    }
+
+    private void applyRecord(byte type, ByteBuffer body){
+        switch (type) {
+            case GRANT:
+                int grantBoot = body.getInt();
+                long deadline = body.getLong();
+                String packageName = readRemaining(body);
+
+                // elapsedRealtime прошлой загрузки к текущей не относится
+                if(grantBoot == bootCount) state.grants.put(packageName, deadline);
+                else state.grants.remove(packageName);
+                break;
+
+            case REVOKE:
+                state.grants.remove(readRemaining(body));
+                break;
+
+            case CLEAR:
+                state.grants.clear();
+                break;
+
+            case LAST_FOREGROUND:
+                String lastForegroundApp = readRemaining(body);
+                state.lastForegroundApp = lastForegroundApp.isEmpty() ? null : lastForegroundApp;
+                break;
+
+            case NEXT_WAKEUP:
+                state.nextWakeupMillis = body.getLong();
+                break;
+
+            case NEXT_SEND_RUNTIME:
+                state.nextSendRuntimeMillis = body.getLong();
+                break;
+
+            default:
+                throw new IllegalArgumentException("unknown record type " + type);
+        }
+    }
+
+    private void append(byte type, byte[] body){
+        if(closed) return;
+
+        int size = RECORD_OVERHEAD + body.length;
+
+        logicalBytes += size;
+
+        // 4 байта под терминатор за последней записью
+        if(buffer.position() + size + 4 > capacity) {
+            // снимок уже содержит эту запись (state обновлен до append)
+            compact();
+            return;
+        }
+
+        writeRecord(type, body);
+    }
+
+    // пишет тело и только потом длину: до последнего putInt запись для чтения не существует
+    private void writeRecord(byte type, byte[] body){
+        int position = buffer.position();
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(type);
+        crc32.update(body);
+
+        buffer.position(position + 4);
+        buffer.put(type);
+        buffer.put(body);
+        buffer.putInt((int)crc32.getValue());
+
+        int end = buffer.position();
+
+        if(end + 4 <= capacity) buffer.putInt(end, 0);
+
+        buffer.putInt(position, 1 + body.length);
+
+        physicalBytes += RECORD_OVERHEAD + body.length;
+    }
+
+    // заголовок и текущее состояние в пустой буфер
+    private void writeSnapshot(){
+        buffer.putInt(0, 0);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, bootCount);
+        buffer.putInt(12, 0);
+        buffer.position(HEADER_SIZE);
+        buffer.putInt(HEADER_SIZE, 0);
+
+        for (Map.Entry<String, Long> grant : state.grants.entrySet())
+            writeRecord(GRANT, grantBytes(grant.getKey(), grant.getValue()));
+
+        if(state.lastForegroundApp != null) writeRecord(LAST_FOREGROUND, state.lastForegroundApp.getBytes(StandardCharsets.UTF_8));
+        if(state.nextWakeupMillis != 0) writeRecord(NEXT_WAKEUP, longBytes(state.nextWakeupMillis));
+        if(state.nextSendRuntimeMillis != 0) writeRecord(NEXT_SEND_RUNTIME, longBytes(state.nextSendRuntimeMillis));
+
+        // MAGIC последним, недописанный снимок не примется за журнал
+        buffer.putInt(0, MAGIC);
+
+        physicalBytes += HEADER_SIZE;
+    }
+
+    private static MappedByteBuffer map(File file, int capacity) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            if(randomAccessFile.length() != capacity) randomAccessFile.setLength(capacity);
+
+            // отображение остается валидным и после закрытия канала
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+
+    private byte[] grantBytes(String packageName, long deadlineElapsed){
+        byte[] name = packageName.getBytes(StandardCharsets.UTF_8);
+
+        return ByteBuffer.allocate(4 + 8 + name.length).putInt(bootCount).putLong(deadlineElapsed).put(name).array();
+    }
+
+    private static byte[] longBytes(long value){
+        return ByteBuffer.allocate(8).putLong(value).array();
+    }
+
+    private static String readRemaining(ByteBuffer body){
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,234 @@
+package com.viavr.watchdog;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// страница статуса в общей памяти между лаунчером и вачдогом (SharedMemory, IWatchdog.getStatusPage)
+// каждая сторона пишет только свой раздел и читает чужой без IPC
+// little-endian, смещения ниже - контракт с лаунчером, менять только вместе с VERSION
+//
+//   0  int   MAGIC
+//   4  int   VERSION
+//   раздел лаунчера:
+//   8  int   seq (seqlock: нечетный - идет запись)
+//  16  long  heartbeat - монотонный счетчик, 0 - лаунчер не подключен (пишется 0 на паузе Unity)
+//  24  long  frames - счетчик кадров
+//  32  long  когда записано, SystemClock.elapsedRealtime()
+//   раздел вачдога:
+//  64  int   seq
+//  68  int   число записей вайтлиста
+//  72  long  последний тик вачдога, elapsedRealtime
+//  80  long  следующий ребут, System.currentTimeMillis(), 0 - выключен
+//  88  long  следующий wakeup
+//  96  long  следующая отправка рантайма
+// 104  long  последний перезапуск лаунчера, elapsedRealtime
+// 112  int   причина перезапуска RELAUNCH_*
+// 120  64b   пакет, из-за которого перезапускали (UTF-8, добит нулями)
+// 192  WHITELIST_MAX записей по 72 байта: 64b пакет + long дедлайн гранта в elapsedRealtime
+public final class StatusPage {
+
+    public static final int SIZE = 4096;
+
+    static final int MAGIC = 0x56575350; // VWSP
+    static final int VERSION = 1;
+
+    public static final int RELAUNCH_NONE = 0;
+    public static final int RELAUNCH_FOREGROUND = 1;   // наверху чужое приложение
+    public static final int RELAUNCH_APPS_POLICY = 2;  // приложение выключено политикой с сервера
+    public static final int RELAUNCH_HEARTBEAT = 3;    // лаунчер наверху, но heartbeat стоит
+
+    static final int WHITELIST_MAX = 32;
+
+    static final int OFFSET_MAGIC = 0;
+    static final int OFFSET_VERSION = 4;
+
+    static final int OFFSET_LAUNCHER_SEQ = 8;
+    static final int OFFSET_HEARTBEAT = 16;
+    static final int OFFSET_FRAMES = 24;
+    static final int OFFSET_LAUNCHER_WRITTEN_AT = 32;
+
+    static final int OFFSET_WATCHDOG_SEQ = 64;
+    static final int OFFSET_WHITELIST_COUNT = 68;
+    static final int OFFSET_WATCHDOG_TICK_AT = 72;
+    static final int OFFSET_NEXT_REBOOT = 80;
+    static final int OFFSET_NEXT_WAKEUP = 88;
+    static final int OFFSET_NEXT_RUNTIME = 96;
+    static final int OFFSET_RELAUNCH_AT = 104;
+    static final int OFFSET_RELAUNCH_REASON = 112;
+    static final int OFFSET_RELAUNCH_PACKAGE = 120;
+    static final int OFFSET_WHITELIST = 192;
+
+    static final int PACKAGE_BYTES = 64;
+    static final int WHITELIST_ENTRY_BYTES = PACKAGE_BYTES + 8;
+
+    // сколько раз перечитывать раздел, если попали на запись другой стороны
+    static final int READ_ATTEMPTS = 16;
+
+    private final ByteBuffer buffer;
+
+    // буфер от SharedMemory.mapReadWrite() или обычный в тестах
+    public StatusPage(ByteBuffer buffer){
+        if(buffer.capacity() < SIZE)
+            throw new IllegalArgumentException("status page needs " + SIZE + " bytes, got " + buffer.capacity());
+
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // новая страница: заголовок и нули, вызывает создатель (вачдог)
+    public void init(){
+        for (int i = 0; i < SIZE; i += 8)
+            buffer.putLong(i, 0);
+
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        buffer.putInt(OFFSET_VERSION, VERSION);
+    }
+
+    public boolean isValid(){
+        return buffer.getInt(OFFSET_MAGIC) == MAGIC && buffer.getInt(OFFSET_VERSION) == VERSION;
+    }
+
+    // ---- раздел лаунчера
+
+    // на шлеме пишет лаунчер, здесь - для тестов и симуляции
+    public void writeHeartbeat(long heartbeat, long frames, long now){
+        beginWrite(OFFSET_LAUNCHER_SEQ);
+
+        buffer.putLong(OFFSET_HEARTBEAT, heartbeat);
+        buffer.putLong(OFFSET_FRAMES, frames);
+        buffer.putLong(OFFSET_LAUNCHER_WRITTEN_AT, now);
+
+        endWrite(OFFSET_LAUNCHER_SEQ);
+    }
+
+    // одно выровненное long поле, seqlock не нужен
+    public long readHeartbeat(){
+        return buffer.getLong(OFFSET_HEARTBEAT);
+    }
+
+    public long readFrames(){
+        return buffer.getLong(OFFSET_FRAMES);
+    }
+
+    public long readLauncherWrittenAt(){
+        return buffer.getLong(OFFSET_LAUNCHER_WRITTEN_AT);
+    }
+
+    // ---- раздел вачдога
+
+    // на каждом тике, лаунчер по нему видит что вачдог жив
+    public void writeWatchdogTick(long now){
+        buffer.putLong(OFFSET_WATCHDOG_TICK_AT, now);
+    }
+
+    // дедлайны и вайтлист, при их изменении; гранты сверх WHITELIST_MAX не попадают
+    public void writeStatus(long nextReboot, long nextWakeup, long nextRuntime, Map<String, Long> whitelistDeadlines){
+        beginWrite(OFFSET_WATCHDOG_SEQ);
+
+        buffer.putLong(OFFSET_NEXT_REBOOT, nextReboot);
+        buffer.putLong(OFFSET_NEXT_WAKEUP, nextWakeup);
+        buffer.putLong(OFFSET_NEXT_RUNTIME, nextRuntime);
+
+        int count = 0;
+
+        for (Map.Entry<String, Long> grant : whitelistDeadlines.entrySet()) {
+            if(count == WHITELIST_MAX) break;
+
+            int offset = OFFSET_WHITELIST + count * WHITELIST_ENTRY_BYTES;
+
+            putString(offset, grant.getKey());
+            buffer.putLong(offset + PACKAGE_BYTES, grant.getValue());
+
+            count++;
+        }
+
+        buffer.putInt(OFFSET_WHITELIST_COUNT, count);
+
+        endWrite(OFFSET_WATCHDOG_SEQ);
+    }
+
+    public void writeRelaunch(long at, int reason, String packageName){
+        beginWrite(OFFSET_WATCHDOG_SEQ);
+
+        buffer.putLong(OFFSET_RELAUNCH_AT, at);
+        buffer.putInt(OFFSET_RELAUNCH_REASON, reason);
+        putString(OFFSET_RELAUNCH_PACKAGE, packageName);
+
+        endWrite(OFFSET_WATCHDOG_SEQ);
+    }
+
+    public long readWatchdogTickAt(){
+        return buffer.getLong(OFFSET_WATCHDOG_TICK_AT);
+    }
+
+    public long readNextReboot(){
+        return buffer.getLong(OFFSET_NEXT_REBOOT);
+    }
+
+    public long readRelaunchAt(){
+        return buffer.getLong(OFFSET_RELAUNCH_AT);
+    }
+
+    public int readRelaunchReason(){
+        return buffer.getInt(OFFSET_RELAUNCH_REASON);
+    }
+
+    public String readRelaunchPackage(){
+        return getString(OFFSET_RELAUNCH_PACKAGE);
+    }
+
+    // согласованный снимок вайтлиста, пакет -> дедлайн; null если вачдог все время писал
+    public LinkedHashMap<String, Long> readWhitelist(){
+        for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++) {
+            int seq = buffer.getInt(OFFSET_WATCHDOG_SEQ);
+
+            if((seq & 1) != 0) continue;
+
+            LinkedHashMap<String, Long> whitelist = new LinkedHashMap<>();
+            int count = Math.min(buffer.getInt(OFFSET_WHITELIST_COUNT), WHITELIST_MAX);
+
+            for (int i = 0; i < count; i++) {
+                int offset = OFFSET_WHITELIST + i * WHITELIST_ENTRY_BYTES;
+                whitelist.put(getString(offset), buffer.getLong(offset + PACKAGE_BYTES));
+            }
+
+            if(buffer.getInt(OFFSET_WATCHDOG_SEQ) == seq) return whitelist;
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "StatusPage{heartbeat=" + readHeartbeat() + ", frames=" + readFrames() + ", launcherWrittenAt=" + readLauncherWrittenAt() +
+                ", watchdogTickAt=" + readWatchdogTickAt() + ", relaunch=" + readRelaunchReason() + " " + readRelaunchPackage() + " at " + readRelaunchAt() + "}";
+    }
+
+    private void beginWrite(int seqOffset){
+        buffer.putInt(seqOffset, buffer.getInt(seqOffset) + 1);
+    }
+
+    private void endWrite(int seqOffset){
+        buffer.putInt(seqOffset, buffer.getInt(seqOffset) + 1);
+    }
+
+    // обрезается до PACKAGE_BYTES - 1, остаток нули
+    private void putString(int offset, String value){
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int length = Math.min(bytes.length, PACKAGE_BYTES - 1);
+
+        for (int i = 0; i < PACKAGE_BYTES; i++)
+            buffer.put(offset + i, i < length ? bytes[i] : 0);
+    }
+
+    private String getString(int offset){
+        byte[] bytes = new byte[PACKAGE_BYTES];
+        int length = 0;
+
+        while (length < PACKAGE_BYTES && (bytes[length] = buffer.get(offset + length)) != 0) length++;
+
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
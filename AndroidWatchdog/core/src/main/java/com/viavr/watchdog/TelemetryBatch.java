@@ -0,0 +1,118 @@
+package com.viavr.watchdog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+// пачка замеров для runtime API, сжимается gzip
+// плоские battery/firmware/charging - последний замер, как раньше, история идет дельтами в samples:
+// {"battery":80,"firmware":"1.0","charging":false,
+//  "samples":{"count":3,"t0":1690000000000,"dt":[0,300000,300000],"battery":[81,0,-1],"charging":[0,0,0],
+//             "firmware":[{"i":0,"v":"1.0"}]}}
+// дополнительные секции (например "relaunch") идут на верхнем уровне уже готовым JSON
+public final class TelemetryBatch {
+
+    private TelemetryBatch(){}
+
+    public static String toJson(List<TelemetrySample> samples){
+        return toJson(samples, null);
+    }
+
+    public static String toJson(List<TelemetrySample> samples, Map<String, String> sections){
+        TelemetrySample last = samples.get(samples.size() - 1);
+
+        StringBuilder json = new StringBuilder(64 + samples.size() * 16);
+
+        json.append("{\"battery\":").append(last.battery)
+            .append(",\"firmware\":").append(quote(last.firmware))
+            .append(",\"charging\":").append(last.charging)
+            .append(",\"samples\":{\"count\":").append(samples.size())
+            .append(",\"t0\":").append(samples.get(0).timestamp);
+
+        // время - разница с предыдущим замером
+        json.append(",\"dt\":[");
+        long previousTimestamp = samples.get(0).timestamp;
+        for (int i = 0; i < samples.size(); i++) {
+            if(i > 0) json.append(',');
+            json.append(samples.get(i).timestamp - previousTimestamp);
+            previousTimestamp = samples.get(i).timestamp;
+        }
+
+        // заряд - первый абсолютный, дальше разница
+        json.append("],\"battery\":[");
+        int previousBattery = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            if(i > 0) json.append(',');
+            json.append(samples.get(i).battery - previousBattery);
+            previousBattery = samples.get(i).battery;
+        }
+
+        // зарядка - первый абсолютный, дальше 1 если переключилась
+        json.append("],\"charging\":[");
+        boolean previousCharging = false;
+        for (int i = 0; i < samples.size(); i++) {
+            if(i > 0) json.append(',');
+            json.append(samples.get(i).charging != previousCharging ? 1 : 0);
+            previousCharging = samples.get(i).charging;
+        }
+
+        // прошивка - только точки смены
+        json.append("],\"firmware\":[");
+        String previousFirmware = null;
+        boolean first = true;
+        for (int i = 0; i < samples.size(); i++) {
+            String firmware = samples.get(i).firmware;
+            if(firmware.equals(previousFirmware)) continue;
+
+            if(!first) json.append(',');
+            json.append("{\"i\":").append(i).append(",\"v\":").append(quote(firmware)).append('}');
+
+            previousFirmware = firmware;
+            first = false;
+        }
+
+        json.append("]}");
+
+        if(sections != null) {
+            for (Map.Entry<String, String> section : sections.entrySet())
+                json.append(',').append(quote(section.getKey())).append(':').append(section.getValue());
+        }
+
+        json.append('}');
+
+        return json.toString();
+    }
+
+    public static byte[] encode(List<TelemetrySample> samples) throws IOException {
+        return encode(samples, null);
+    }
+
+    public static byte[] encode(List<TelemetrySample> samples, Map<String, String> sections) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(body), StandardCharsets.UTF_8)) {
+            writer.write(toJson(samples, sections));
+        }
+
+        return body.toByteArray();
+    }
+
+    private static String quote(String value){
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if(c == '"' || c == '\\') quoted.append('\\').append(c);
+            else if(c < 0x20) quoted.append(String.format("\\u%04x", (int)c));
+            else quoted.append(c);
+        }
+
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,188 @@
+package com.viavr.watchdog;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// кольцевой файл замеров телеметрии: записи фиксированного размера, новые дописываются в хвост,
+// при переполнении затирается самая старая запись. Отправленные замеры снимаются с головы
+// пока пачка в отправке, кольцо может провернуться: remove снимает только те записи пачки, что еще не затерты
+public class TelemetryBuffer implements Closeable {
+
+    // пачка замеров и сквозной номер первого из них
+    public static final class Batch {
+        public final long sequence;
+        public final List<TelemetrySample> samples;
+
+        Batch(long sequence, List<TelemetrySample> samples){
+            this.sequence = sequence;
+            this.samples = samples;
+        }
+    }
+
+    static final int MAGIC = 0x57445442; // WDTB
+
+    // magic, capacity, head, count
+    static final int HEADER_SIZE = 16;
+
+    // timestamp 8 + battery 1 + charging 1 + длина прошивки 2 + прошивка
+    static final int RECORD_SIZE = 64;
+    static final int MAX_FIRMWARE_BYTES = RECORD_SIZE - 12;
+
+    private final RandomAccessFile file;
+    private final int capacity;
+    private final byte[] record = new byte[RECORD_SIZE];
+
+    private int head;
+    private int count;
+
+    // сквозной номер записи в голове, растет при каждом снятии или затирании, на диск не пишется
+    private long headSequence;
+
+    public TelemetryBuffer(File path, int capacity) throws IOException {
+        this.capacity = capacity;
+
+        file = new RandomAccessFile(path, "rw");
+
+        if(!readHeader()){
+            // новый или битый файл, начинаем с пустого кольца
+            head = 0;
+            count = 0;
+
+            file.setLength(HEADER_SIZE + (long)capacity * RECORD_SIZE);
+            writeHeader();
+        }
+    }
+
+    public synchronized int size(){
+        return count;
+    }
+
+    public int getCapacity(){
+        return capacity;
+    }
+
+    public synchronized long getOldestTimestamp() throws IOException {
+        if(count == 0) return 0;
+
+        file.seek(offset(head));
+
+        return file.readLong();
+    }
+
+    public synchronized void append(TelemetrySample sample) throws IOException {
+        byte[] firmware = sample.firmware.getBytes(StandardCharsets.UTF_8);
+        int firmwareLength = utf8Prefix(firmware, MAX_FIRMWARE_BYTES);
+
+        long timestamp = sample.timestamp;
+
+        for (int i = 0; i < 8; i++)
+            record[i] = (byte)(timestamp >>> (56 - i * 8));
+
+        record[8] = (byte)sample.battery;
+        record[9] = (byte)(sample.charging ? 1 : 0);
+        record[10] = (byte)(firmwareLength >>> 8);
+        record[11] = (byte)firmwareLength;
+
+        System.arraycopy(firmware, 0, record, 12, firmwareLength);
+
+        file.seek(offset((head + count) % capacity));
+        file.write(record, 0, 12 + firmwareLength);
+
+        if(count == capacity) {
+            head = (head + 1) % capacity;
+            headSequence++;
+        } else {
+            count++;
+        }
+
+        writeHeader();
+    }
+
+    // самые старые замеры, из буфера не удаляются до подтверждения отправки
+    public synchronized List<TelemetrySample> peek(int max) throws IOException {
+        int n = Math.min(max, count);
+
+        ArrayList<TelemetrySample> samples = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            file.seek(offset((head + i) % capacity));
+
+            long timestamp = file.readLong();
+            int battery = file.readUnsignedByte();
+            boolean charging = file.readByte() != 0;
+            int firmwareLength = Math.min(file.readUnsignedShort(), MAX_FIRMWARE_BYTES);
+
+            byte[] firmware = new byte[firmwareLength];
+            file.readFully(firmware);
+
+            samples.add(new TelemetrySample(timestamp, battery, charging, new String(firmware, StandardCharsets.UTF_8)));
+        }
+
+        return samples;
+    }
+
+    public synchronized Batch peekBatch(int max) throws IOException {
+        return new Batch(headSequence, peek(max));
+    }
+
+    // снимаем отправленную пачку, записи затертые после peekBatch уже сняты кольцом
+    public synchronized void remove(Batch batch) throws IOException {
+        long end = batch.sequence + batch.samples.size();
+        int n = (int)Math.min(Math.max(end - headSequence, 0), count);
+
+        if(n == 0) return;
+
+        head = (head + n) % capacity;
+        count -= n;
+        headSequence += n;
+
+        writeHeader();
+    }
+
+    // длина префикса не длиннее max байт, не разрезающего многобайтный символ
+    static int utf8Prefix(byte[] bytes, int max){
+        if(bytes.length <= max) return bytes.length;
+
+        int length = max;
+
+        // байт за границей - продолжение символа (10xxxxxx), отступаем к его началу
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) length--;
+
+        return length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    private long offset(int index){
+        return HEADER_SIZE + (long)index * RECORD_SIZE;
+    }
+
+    private boolean readHeader() throws IOException {
+        if(file.length() != HEADER_SIZE + (long)capacity * RECORD_SIZE) return false;
+
+        file.seek(0);
+
+        if(file.readInt() != MAGIC || file.readInt() != capacity) return false;
+
+        head = file.readInt();
+        count = file.readInt();
+
+        return head >= 0 && head < capacity && count >= 0 && count <= capacity;
+    }
+
+    private void writeHeader() throws IOException {
+        file.seek(0);
+        file.writeInt(MAGIC);
+        file.writeInt(capacity);
+        file.writeInt(head);
+        file.writeInt(count);
+    }
+}
@@ -0,0 +1,39 @@
+package com.viavr.watchdog;
+
+// один замер рантайма шлема
+public final class TelemetrySample {
+
+    public final long timestamp;
+    public final int battery;
+    public final boolean charging;
+    public final String firmware;
+
+    public TelemetrySample(long timestamp, int battery, boolean charging, String firmware){
+        this.timestamp = timestamp;
+        this.battery = battery;
+        this.charging = charging;
+        this.firmware = firmware != null ? firmware : "";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof TelemetrySample)) return false;
+
+        TelemetrySample sample = (TelemetrySample)o;
+
+        return timestamp == sample.timestamp &&
+                battery == sample.battery &&
+                charging == sample.charging &&
+                firmware.equals(sample.firmware);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int)(timestamp ^ (timestamp >>> 32)) * 31 + battery;
+    }
+
+    @Override
+    public String toString() {
+        return "TelemetrySample{" + timestamp + ", battery=" + battery + ", charging=" + charging + ", firmware=" + firmware + "}";
+    }
+}
@@ -0,0 +1,143 @@
+package com.viavr.watchdog;
+
+import java.util.Locale;
+
+// период тиков вачдога, без таймеров: когда тикать следующий раз решает этот класс, взводит таймер владелец
+// (AdaptiveTickScheduler на WatchdogScheduler или симуляция на виртуальных часах)
+// FAST - сразу после смены foreground приложения, истечения вайтлиста или перезапуска лаунчера
+// IDLE - экран выключен и foreground приложение не менялось IDLE_AFTER_STABLE_TICKS тиков
+// NORMAL - всё остальное время, период из конфига
+public final class TickCadence {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    public enum Mode { FAST, NORMAL, IDLE }
+
+    static final long FAST_PERIOD_MS = 1000;
+    static final int FAST_TICKS = 5;
+    static final int IDLE_AFTER_STABLE_TICKS = 12;
+    static final int IDLE_PERIOD_MULTIPLIER = 6;
+
+    // сглаживание для расчета фактической частоты тиков
+    private static final double RATE_SMOOTHING = 0.2;
+
+    private long basePeriodMs;
+
+    private Mode mode = Mode.NORMAL;
+    private int fastTicksLeft;
+    private boolean pendingEvent;
+
+    private String lastState;
+    private int stableTicks;
+    private boolean interactive = true;
+
+    private long lastTickElapsed;
+    private double averageIntervalMs;
+    private long tickCount;
+
+    public TickCadence(long basePeriodMs){
+        this.basePeriodMs = basePeriodMs;
+        this.averageIntervalMs = basePeriodMs;
+    }
+
+    public long getBasePeriodMs(){
+        return basePeriodMs;
+    }
+
+    public void setBasePeriod(long basePeriodMs){
+        this.basePeriodMs = basePeriodMs;
+    }
+
+    // следующие несколько тиков идут с коротким периодом
+    // true если до этого FAST не было и владелец должен перевзвести таймер на getFastPeriodMs()
+    public boolean tighten(){
+        boolean wasFast = fastTicksLeft > 0;
+
+        fastTicksLeft = FAST_TICKS;
+
+        return !wasFast;
+    }
+
+    // внеочередной тик прямо сейчас, дальше FAST режим
+    public void tickNow(){
+        fastTicksLeft = FAST_TICKS;
+        pendingEvent = true;
+    }
+
+    public long getFastPeriodMs(){
+        return Math.min(FAST_PERIOD_MS, basePeriodMs);
+    }
+
+    // состояние на текущем тике, по нему решаем про IDLE и FAST
+    public void report(String foregroundApp, boolean interactive){
+        this.interactive = interactive;
+
+        if(foregroundApp == null ? lastState == null : foregroundApp.equals(lastState)){
+            stableTicks++;
+            return;
+        }
+
+        if(lastState != null || stableTicks > 0)
+            fastTicksLeft = FAST_TICKS;
+
+        lastState = foregroundApp;
+        stableTicks = 0;
+    }
+
+    // начало тика; true если тик вызван эвентом или идет в FAST режиме, foreground можно брать из трекера
+    public boolean onTick(long now){
+        if(lastTickElapsed > 0)
+            averageIntervalMs += RATE_SMOOTHING * ((now - lastTickElapsed) - averageIntervalMs);
+
+        lastTickElapsed = now;
+        tickCount++;
+
+        boolean eventDriven = pendingEvent || mode == Mode.FAST;
+        pendingEvent = false;
+
+        return eventDriven;
+    }
+
+    // задержка до следующего тика после завершения текущего, tickNow мог прилететь пока тик работал
+    public long nextDelay(){
+        return pendingEvent ? 0 : nextPeriod();
+    }
+
+    public Mode getMode(){
+        return mode;
+    }
+
+    public long getTickCount(){
+        return tickCount;
+    }
+
+    // фактическая частота тиков, включая внеочередные
+    public double getEffectiveTicksPerMinute(){
+        return averageIntervalMs > 0 ? 60000.0 / averageIntervalMs : 0;
+    }
+
+    private long nextPeriod(){
+        Mode newMode;
+        long period;
+
+        if(fastTicksLeft > 0){
+            fastTicksLeft--;
+            newMode = Mode.FAST;
+            period = getFastPeriodMs();
+        }else if(!interactive && stableTicks >= IDLE_AFTER_STABLE_TICKS){
+            newMode = Mode.IDLE;
+            period = basePeriodMs * IDLE_PERIOD_MULTIPLIER;
+        }else{
+            newMode = Mode.NORMAL;
+            period = basePeriodMs;
+        }
+
+        if(newMode != mode){
+            WatchdogLog.i(LOG_TAG, "Tick mode " + mode + " -> " + newMode + ", period " + period + "ms, " +
+                    String.format(Locale.US, "%.1f", getEffectiveTicksPerMinute()) + " ticks/min");
+            mode = newMode;
+        }
+
+        return period;
+    }
+}
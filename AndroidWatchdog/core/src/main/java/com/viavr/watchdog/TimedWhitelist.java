@@ -0,0 +1,150 @@
+package com.viavr.watchdog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// вайтлист приложений с грантами по времени
+// индекс истечений - min-heap по дедлайну, устаревшие записи (отозванные и перевыданные гранты) выкидываются при чтении
+// все времена в шкале SystemClock.elapsedRealtime(), перевод часов на гранты не влияет
+public class TimedWhitelist {
+
+    public interface ExpiryListener {
+        void onWhitelistExpired(String packageName);
+    }
+
+    private final HashMap<String, Long> deadlines = new HashMap<>();
+    private final PriorityQueue<Grant> expiryQueue = new PriorityQueue<>();
+
+    // явные изменения вайтлиста (не истечения), для журнала состояния
+    public interface ChangeListener {
+        void onGranted(String packageName, long deadline);
+        void onRevoked(String packageName);
+        void onCleared();
+    }
+
+    private ExpiryListener expiryListener;
+    private ChangeListener changeListener;
+
+    public synchronized void setExpiryListener(ExpiryListener expiryListener){
+        this.expiryListener = expiryListener;
+    }
+
+    public synchronized void setChangeListener(ChangeListener changeListener){
+        this.changeListener = changeListener;
+    }
+
+    public synchronized void grant(String packageName, long durationMs, long now){
+        grantUntil(packageName, now + durationMs);
+    }
+
+    // грант до заданного дедлайна, например восстановленного из журнала
+    public synchronized void grantUntil(String packageName, long deadline){
+        deadlines.put(packageName, deadline);
+        expiryQueue.add(new Grant(packageName, deadline));
+
+        if(changeListener != null) changeListener.onGranted(packageName, deadline);
+    }
+
+    public synchronized void revoke(String packageName){
+        deadlines.remove(packageName);
+
+        if(changeListener != null) changeListener.onRevoked(packageName);
+    }
+
+    public synchronized void clear(){
+        deadlines.clear();
+        expiryQueue.clear();
+
+        if(changeListener != null) changeListener.onCleared();
+    }
+
+    public synchronized boolean isWhitelisted(String packageName, long now){
+        Long deadline = deadlines.get(packageName);
+
+        return deadline != null && now < deadline;
+    }
+
+    // дедлайн гранта, 0 если гранта нет
+    public synchronized long getDeadline(String packageName){
+        Long deadline = deadlines.get(packageName);
+
+        return deadline != null ? deadline : 0;
+    }
+
+    public synchronized long getRemaining(String packageName, long now){
+        Long deadline = deadlines.get(packageName);
+
+        return deadline != null ? Math.max(0, deadline - now) : 0;
+    }
+
+    // ближайший дедлайн, 0 если грантов нет
+    public synchronized long getNextExpiry(){
+        Grant head;
+
+        while ((head = expiryQueue.peek()) != null && !isCurrent(head))
+            expiryQueue.poll();
+
+        return head != null ? head.deadline : 0;
+    }
+
+    public synchronized int size(){
+        return deadlines.size();
+    }
+
+    public synchronized HashMap<String, Long> snapshot(){
+        return new HashMap<>(deadlines);
+    }
+
+    // снимает все истекшие гранты и оповещает слушателя
+    public List<String> expire(long now){
+        List<String> expired = new ArrayList<>();
+        ExpiryListener listener;
+
+        synchronized (this){
+            Grant head;
+
+            while ((head = expiryQueue.peek()) != null && head.deadline <= now){
+                expiryQueue.poll();
+
+                if(!isCurrent(head)) continue;
+
+                deadlines.remove(head.packageName);
+                expired.add(head.packageName);
+            }
+
+            listener = expiryListener;
+        }
+
+        // слушателя зовем вне лока
+        if(listener != null){
+            for (String packageName : expired)
+                listener.onWhitelistExpired(packageName);
+        }
+
+        return expired;
+    }
+
+    private boolean isCurrent(Grant grant){
+        Long deadline = deadlines.get(grant.packageName);
+
+        return deadline != null && deadline == grant.deadline;
+    }
+
+    private static final class Grant implements Comparable<Grant> {
+
+        final String packageName;
+        final long deadline;
+
+        Grant(String packageName, long deadline){
+            this.packageName = packageName;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Grant other) {
+            return Long.compare(deadline, other.deadline);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.viavr.watchdog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+// транспорт поверх HttpURLConnection
+// соединения переиспользуются пулом keep-alive платформы, для этого тело ответа всегда дочитывается до конца
+// ответы просим в gzip и распаковываем сами, DNS кешируется InetAddress, прогрев - warmUp()
+public class UrlConnectionTransport implements HttpTransport {
+
+    static final int CONNECT_TIMEOUT_MS = 15 * 1000;
+    static final int READ_TIMEOUT_MS = 15 * 1000;
+
+    private final ExecutorService executor;
+
+    public UrlConnectionTransport(int threads){
+        // keep-alive у платформы включен по умолчанию, но его могут выключить системным свойством
+        System.setProperty("http.keepAlive", "true");
+
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "watchdog-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void execute(Request request, Callback callback) {
+        executor.execute(() -> {
+            Response response;
+
+            try {
+                response = executeSync(request);
+            } catch (IOException e) {
+                callback.onError(e);
+                return;
+            }
+
+            callback.onResponse(response);
+        });
+    }
+
+    // резолвим хост заранее, чтобы первый запрос после старта не ждал DNS
+    public void warmUp(String url){
+        executor.execute(() -> {
+            try {
+                InetAddress.getAllByName(new URL(url).getHost());
+            } catch (IOException ignored) {}
+        });
+    }
+
+    public Response executeSync(Request request) throws IOException {
+        long startNanos = System.nanoTime();
+
+        HttpURLConnection connection = (HttpURLConnection)new URL(request.url).openConnection();
+
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setUseCaches(false);
+            connection.setRequestMethod(request.method);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+
+            for (Map.Entry<String, String> header : request.headers.entrySet())
+                connection.setRequestProperty(header.getKey(), header.getValue());
+
+            if(request.body != null) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(request.body.length);
+
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    outputStream.write(request.body);
+                }
+            }
+
+            int statusCode = connection.getResponseCode();
+
+            HashMap<String, String> headers = new HashMap<>();
+
+            for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                if(header.getKey() != null && !header.getValue().isEmpty())
+                    headers.put(header.getKey(), header.getValue().get(0));
+            }
+
+            InputStream inputStream = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+
+            byte[] body = new byte[0];
+
+            if(inputStream != null) {
+                try (InputStream stream = "gzip".equalsIgnoreCase(connection.getContentEncoding()) ? new GZIPInputStream(inputStream) : inputStream) {
+                    body = readFully(stream);
+                }
+            }
+
+            return new Response(statusCode, headers, body, (System.nanoTime() - startNanos) / 1000000);
+        } catch (IOException e) {
+            // соединение битое, в пул его не возвращаем
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = inputStream.read(buffer)) != -1)
+            outputStream.write(buffer, 0, read);
+
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,56 @@
+package com.viavr.watchdog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// разбор значений команд вачдога, общих для интента com.viavr.intent.WATCHDOG_COMMAND и push канала
+public final class WatchdogCommand {
+
+    public static final String ADD_WHITELIST = "add_whitelist";
+    public static final String REMOVE_WHITELIST = "remove_whitelist";
+    public static final String CLEAR_WHITELIST = "clear_whitelist";
+    public static final String TRACE = "trace";
+    public static final String SET_TOKEN = "set_token";
+
+    public static final class Grant {
+        public final String packageName;
+        public final long durationMs;
+
+        Grant(String packageName, long durationMs){
+            this.packageName = packageName;
+            this.durationMs = durationMs;
+        }
+
+        @Override
+        public String toString() {
+            return packageName + ":" + durationMs;
+        }
+    }
+
+    private WatchdogCommand(){}
+
+    // формат строки: com.random.package:60000 или массив: com.random.package:60000&com.another.package:30000
+    // кривые элементы пропускаются
+    public static List<Grant> parseWhitelistGrants(String value){
+        ArrayList<Grant> grants = new ArrayList<>(1);
+
+        if(value == null) return grants;
+
+        for (String app : value.split("&")) {
+            String[] splitted = app.split(":", 2);
+            if(splitted.length != 2) continue;
+
+            long timerValue;
+
+            try {
+                timerValue = Long.parseLong(splitted[1]);
+            }catch (NumberFormatException e){
+                continue;
+            }
+
+            grants.add(new Grant(splitted[0], timerValue));
+        }
+
+        return grants;
+    }
+}
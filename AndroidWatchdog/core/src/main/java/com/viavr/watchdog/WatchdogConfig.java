@@ -0,0 +1,376 @@
+package com.viavr.watchdog;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+public class WatchdogConfig {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    public String launcherVersion;                                      // launcher_version
+    public String watchdogTargetVersion;                                // watchdog_version
+    public String targetPackage;                                        // target_package
+    public String targetPackageActivity;                                // target_package_activity
+    public String runtimeApiUrl;                                        // runtime_api_url
+    public int checkProcessEveryMs = 5000;                              // check_every_milliseconds
+    public boolean allowStartLauncher = false;                          // allow_start_vrlauncher
+    public boolean allowReboot = false;                                 // allow_reboot
+    public int rebootAtHour = 6;                                        // reboot_at_hour
+    public boolean allowWakeup = false;                                 // allow_wakeup
+    public int wakeupEverySeconds = 1800;                               // wakeup_every_seconds
+    public int wakeupRandomSeconds = 600;                               // wakeup_random_seconds
+    public boolean allowSendRuntime = false;                            // allow_runtime
+    public int sendRuntimeEverySeconds = 1800;                          // runtime_every_seconds
+    public int sendRuntimeRandomSeconds = 600;                          // runtime_random_seconds
+    public boolean allowKillApps = true;                                // allow_kill_apps
+    public ArrayList<String> launcherKillWhitelist = new ArrayList<>(); // launcher_kill_whitelist
+    public String processTableBackend = "activity_manager";             // process_table_backend (необязательный)
+    public int launcherHeartbeatDeadlineMs = 0;                         // launcher_heartbeat_deadline_ms (необязательный, 0 - не следим)
+
+    public TimedWhitelist packagesForegroundTimedWhitelist;
+    public String errors;
+    public final List<ConfigError> validationErrors = new ArrayList<>();
+
+    @Override
+    public String toString() {
+        return "WatchdogConfig{" +
+                "launcherVersion='" + launcherVersion + '\'' +
+                ", watchdogTargetVersion='" + watchdogTargetVersion + '\'' +
+                ", targetPackage='" + targetPackage + '\'' +
+                ", targetPackageActivity='" + targetPackageActivity + '\'' +
+                ", runtimeApiUrl='" + runtimeApiUrl + '\'' +
+                ", checkProcessEveryMs=" + checkProcessEveryMs +
+                ", allowStartLauncher=" + allowStartLauncher +
+                ", allowReboot='" + allowReboot + '\'' +
+                ", rebootAtHour='" + rebootAtHour + '\'' +
+                ", allowWakeup='" + allowWakeup + '\'' +
+                ", wakeup_every_seconds='" + wakeupEverySeconds + '\'' +
+                ", wakeup_random_seconds='" + wakeupRandomSeconds + '\'' +
+                ", allowSendRuntime='" + allowSendRuntime + '\'' +
+                ", sendRuntimeEverySeconds='" + sendRuntimeEverySeconds + '\'' +
+                ", sendRuntimeRandomSeconds='" + sendRuntimeRandomSeconds + '\'' +
+                ", allow_kill_apps='" + allowKillApps + '\'' +
+                ", launcher_kill_whitelist=" + (launcherKillWhitelist == null ? "null" : "[" + String.join(",", launcherKillWhitelist) + "]") +
+                ", processTableBackend='" + processTableBackend + '\'' +
+                ", launcherHeartbeatDeadlineMs=" + launcherHeartbeatDeadlineMs +
+                '}';
+    }
+
+    // ошибка валидации конкретного ключа
+    public static final class ConfigError {
+        public final String key;
+        public final String message;
+
+        ConfigError(String key, String message){
+            this.key = key;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return key != null ? key + ": " + message : message;
+        }
+    }
+
+    interface Setter {
+        void set(WatchdogConfig config, Object value);
+    }
+
+    // описание ключа конфига: тип, обязательность, допустимый диапазон и куда писать
+    static final class Field {
+        static final int STRING = 0;
+        static final int INT = 1;
+        static final int BOOLEAN = 2;
+        static final int STRING_LIST = 3;
+
+        final String key;
+        final int type;
+        final boolean required;
+        final long min;
+        final long max;
+        final Setter setter;
+
+        Field(String key, int type, boolean required, long min, long max, Setter setter){
+            this.key = key;
+            this.type = type;
+            this.required = required;
+            this.min = min;
+            this.max = max;
+            this.setter = setter;
+        }
+
+        static Field string(String key, boolean required, Setter setter){
+            return new Field(key, STRING, required, 0, 0, setter);
+        }
+
+        static Field integer(String key, long min, long max, Setter setter){
+            return new Field(key, INT, true, min, max, setter);
+        }
+
+        static Field bool(String key, Setter setter){
+            return new Field(key, BOOLEAN, true, 0, 0, setter);
+        }
+    }
+
+    // схема конфига, дефолты - инициализаторы полей выше
+    static final Field[] SCHEMA = {
+            Field.string("launcher_version", true, (c, v) -> c.launcherVersion = (String)v),
+            Field.string("watchdog_version", true, (c, v) -> c.watchdogTargetVersion = (String)v),
+            Field.string("target_package", true, (c, v) -> c.targetPackage = (String)v),
+            Field.string("target_package_activity", true, (c, v) -> c.targetPackageActivity = (String)v),
+            Field.string("runtime_api_url", true, (c, v) -> c.runtimeApiUrl = (String)v),
+            Field.integer("check_every_milliseconds", 100, 60 * 60 * 1000, (c, v) -> c.checkProcessEveryMs = (Integer)v),
+            Field.bool("allow_start_vrlauncher", (c, v) -> c.allowStartLauncher = (Boolean)v),
+            Field.bool("allow_reboot", (c, v) -> c.allowReboot = (Boolean)v),
+            Field.integer("reboot_at_hour", 0, 23, (c, v) -> c.rebootAtHour = (Integer)v),
+            Field.bool("allow_wakeup", (c, v) -> c.allowWakeup = (Boolean)v),
+            Field.integer("wakeup_every_seconds", Integer.MIN_VALUE, Integer.MAX_VALUE / 1000, (c, v) -> c.wakeupEverySeconds = (Integer)v),
+            // уходит в Random.nextInt, 0 там недопустим
+            Field.integer("wakeup_random_seconds", 1, Integer.MAX_VALUE / 1000, (c, v) -> c.wakeupRandomSeconds = (Integer)v),
+            Field.bool("allow_runtime", (c, v) -> c.allowSendRuntime = (Boolean)v),
+            Field.integer("runtime_every_seconds", Integer.MIN_VALUE, Integer.MAX_VALUE / 1000, (c, v) -> c.sendRuntimeEverySeconds = (Integer)v),
+            Field.integer("runtime_random_seconds", 1, Integer.MAX_VALUE / 1000, (c, v) -> c.sendRuntimeRandomSeconds = (Integer)v),
+            Field.bool("allow_kill_apps", (c, v) -> c.allowKillApps = (Boolean)v),
+            new Field("launcher_kill_whitelist", Field.STRING_LIST, true, 0, 0, (c, v) -> {
+                c.launcherKillWhitelist.clear();
+                for (Object item : (List<?>)v) c.launcherKillWhitelist.add((String)item);
+            }),
+            // необязательные поля, в старых конфигах их нет
+            Field.string("process_table_backend", false, (c, v) -> c.processTableBackend = (String)v),
+            new Field("launcher_heartbeat_deadline_ms", Field.INT, false, 0, 60 * 60 * 1000, (c, v) -> c.launcherHeartbeatDeadlineMs = (Integer)v),
+    };
+
+    // ключ -> индекс в SCHEMA, считается один раз
+    private static final HashMap<String, Integer> SCHEMA_INDEX = new HashMap<>();
+
+    static {
+        for (int i = 0; i < SCHEMA.length; i++)
+            SCHEMA_INDEX.put(SCHEMA[i].key, i);
+    }
+
+    // конфиг по умолчанию, запуск лаунчера выключен
+    public static WatchdogConfig createDefault(){
+        WatchdogConfig watchdogConfig = new WatchdogConfig();
+
+        watchdogConfig.packagesForegroundTimedWhitelist = new TimedWhitelist();
+
+        return watchdogConfig;
+    }
+
+    // потоковый разбор конфига за один проход по схеме SCHEMA
+    // кривое значение не ломает разбор: пишется ошибка, поле остается по умолчанию
+    // IOException только если битый сам JSON
+    public static WatchdogConfig parse(Reader reader) throws IOException {
+        WatchdogConfig watchdogConfig = createDefault();
+
+        boolean[] seen = new boolean[SCHEMA.length];
+
+        JsonReader jsonReader = new JsonReader(reader);
+
+        try {
+            jsonReader.beginObject();
+
+            while (jsonReader.hasNext()) {
+                Integer index = SCHEMA_INDEX.get(jsonReader.nextName());
+
+                // лишние ключи пропускаем
+                if(index == null) {
+                    jsonReader.skipValue();
+                    continue;
+                }
+
+                Field field = SCHEMA[index];
+                seen[index] = true;
+
+                Object value = readValue(jsonReader, field, watchdogConfig);
+
+                if(value != null) field.setter.set(watchdogConfig, value);
+            }
+
+            jsonReader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            jsonReader.close();
+        }
+
+        for (int i = 0; i < SCHEMA.length; i++) {
+            if(!seen[i] && SCHEMA[i].required) watchdogConfig.addError(SCHEMA[i].key, "missing");
+        }
+
+        watchdogConfig.applyRules();
+
+        return watchdogConfig;
+    }
+
+    // значение поля по схеме, null если тип или диапазон не подошли (ошибка уже записана)
+    private static Object readValue(JsonReader jsonReader, Field field, WatchdogConfig watchdogConfig) throws IOException {
+        JsonToken token = jsonReader.peek();
+
+        if(token == JsonToken.NULL) {
+            jsonReader.skipValue();
+            watchdogConfig.addError(field.key, "null");
+            return null;
+        }
+
+        switch (field.type) {
+            case Field.STRING:
+                if(token == JsonToken.BOOLEAN) return String.valueOf(jsonReader.nextBoolean());
+                if(token == JsonToken.STRING || token == JsonToken.NUMBER) return jsonReader.nextString();
+                break;
+
+            case Field.INT:
+                if(token == JsonToken.STRING || token == JsonToken.NUMBER) {
+                    String text = jsonReader.nextString();
+                    long value;
+
+                    try {
+                        value = Long.parseLong(text.trim());
+                    } catch (NumberFormatException e) {
+                        watchdogConfig.addError(field.key, "not an integer: " + text);
+                        return null;
+                    }
+
+                    if(value < field.min || value > field.max) {
+                        watchdogConfig.addError(field.key, value + " out of range [" + field.min + ", " + field.max + "]");
+                        return null;
+                    }
+
+                    return (int)value;
+                }
+                break;
+
+            case Field.BOOLEAN:
+                if(token == JsonToken.BOOLEAN) return jsonReader.nextBoolean();
+
+                if(token == JsonToken.STRING) {
+                    String text = jsonReader.nextString();
+
+                    if(text.equalsIgnoreCase("true")) return true;
+                    if(text.equalsIgnoreCase("false")) return false;
+
+                    watchdogConfig.addError(field.key, "not a boolean: " + text);
+                    return null;
+                }
+                break;
+
+            case Field.STRING_LIST:
+                if(token == JsonToken.BEGIN_ARRAY) {
+                    ArrayList<String> list = new ArrayList<>();
+
+                    jsonReader.beginArray();
+
+                    while (jsonReader.hasNext()) {
+                        JsonToken itemToken = jsonReader.peek();
+
+                        if(itemToken == JsonToken.STRING || itemToken == JsonToken.NUMBER) {
+                            list.add(jsonReader.nextString());
+                        } else {
+                            jsonReader.skipValue();
+                            watchdogConfig.addError(field.key, "unexpected item " + itemToken);
+                        }
+                    }
+
+                    jsonReader.endArray();
+
+                    return list;
+                }
+                break;
+        }
+
+        jsonReader.skipValue();
+        watchdogConfig.addError(field.key, "unexpected " + token);
+
+        return null;
+    }
+
+    // правила поверх отдельных полей
+    void applyRules(){
+        if(wakeupEverySeconds <= 0) allowWakeup = false;
+
+        if(sendRuntimeEverySeconds <= 0) allowSendRuntime = false;
+
+        // если таргет приложение кривое
+        if(targetPackage == null || targetPackageActivity == null){
+            allowStartLauncher = false;
+            addError(null, "allowStartLauncher set to FALSE, please check 'target_package' and 'target_package_activity'");
+        }
+    }
+
+    void addError(String key, String message){
+        ConfigError error = new ConfigError(key, message);
+
+        validationErrors.add(error);
+
+        if(errors == null) errors = "[" + error + "]";
+        else errors += "[" + error + "]";
+
+        WatchdogLog.e(LOG_TAG, "WatchdogConfig: " + error);
+    }
+
+    // ключи конфига, значения которых отличаются
+    public static Set<String> diff(WatchdogConfig a, WatchdogConfig b){
+        LinkedHashSet<String> changed = new LinkedHashSet<>();
+
+        if(!Objects.equals(a.launcherVersion, b.launcherVersion)) changed.add("launcher_version");
+        if(!Objects.equals(a.watchdogTargetVersion, b.watchdogTargetVersion)) changed.add("watchdog_version");
+        if(!Objects.equals(a.targetPackage, b.targetPackage)) changed.add("target_package");
+        if(!Objects.equals(a.targetPackageActivity, b.targetPackageActivity)) changed.add("target_package_activity");
+        if(!Objects.equals(a.runtimeApiUrl, b.runtimeApiUrl)) changed.add("runtime_api_url");
+        if(a.checkProcessEveryMs != b.checkProcessEveryMs) changed.add("check_every_milliseconds");
+        if(a.allowStartLauncher != b.allowStartLauncher) changed.add("allow_start_vrlauncher");
+        if(a.allowReboot != b.allowReboot) changed.add("allow_reboot");
+        if(a.rebootAtHour != b.rebootAtHour) changed.add("reboot_at_hour");
+        if(a.allowWakeup != b.allowWakeup) changed.add("allow_wakeup");
+        if(a.wakeupEverySeconds != b.wakeupEverySeconds) changed.add("wakeup_every_seconds");
+        if(a.wakeupRandomSeconds != b.wakeupRandomSeconds) changed.add("wakeup_random_seconds");
+        if(a.allowSendRuntime != b.allowSendRuntime) changed.add("allow_runtime");
+        if(a.sendRuntimeEverySeconds != b.sendRuntimeEverySeconds) changed.add("runtime_every_seconds");
+        if(a.sendRuntimeRandomSeconds != b.sendRuntimeRandomSeconds) changed.add("runtime_random_seconds");
+        if(a.allowKillApps != b.allowKillApps) changed.add("allow_kill_apps");
+        if(!Objects.equals(a.launcherKillWhitelist, b.launcherKillWhitelist)) changed.add("launcher_kill_whitelist");
+        if(!Objects.equals(a.processTableBackend, b.processTableBackend)) changed.add("process_table_backend");
+        if(a.launcherHeartbeatDeadlineMs != b.launcherHeartbeatDeadlineMs) changed.add("launcher_heartbeat_deadline_ms");
+
+        return changed;
+    }
+
+    // дедлайн гранта в шкале SystemClock.elapsedRealtime(), 0 если гранта нет
+    public long getWhitelistEndTimestamp(String packageName){
+        return packagesForegroundTimedWhitelist.getDeadline(packageName);
+    }
+
+    public long getWhitelistMillisLeft(String packageName, long now){
+        return packagesForegroundTimedWhitelist.getRemaining(packageName, now);
+    }
+
+    public boolean checkIfWhitelisted(String packageName, long now){
+        return packagesForegroundTimedWhitelist.isWhitelisted(packageName, now);
+    }
+
+    // ближайшее истечение гранта в шкале SystemClock.elapsedRealtime(), 0 если вайтлист пуст
+    public long getNextWhitelistExpiry(){
+        return packagesForegroundTimedWhitelist.getNextExpiry();
+    }
+
+    // снимает истекшие гранты, слушатель TimedWhitelist получает по эвенту на каждый
+    public void expireWhitelist(long now){
+        packagesForegroundTimedWhitelist.expire(now);
+    }
+
+    public void addToWhitelist(String packageName, Long accessTimeMilliseconds, long now){
+        packagesForegroundTimedWhitelist.grant(packageName, accessTimeMilliseconds, now);
+    }
+
+    public void removeFromWhitelist(String packageName){
+        packagesForegroundTimedWhitelist.revoke(packageName);
+    }
+
+    public void clearWhitelist(){
+        packagesForegroundTimedWhitelist.clear();
+    }
+}
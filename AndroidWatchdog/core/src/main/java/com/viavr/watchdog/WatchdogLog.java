@@ -0,0 +1,44 @@
+package com.viavr.watchdog;
+
+// лог для кода ядра, которое не знает про android.util.Log
+// в приложении WatchdogService ставит sink в logcat, на JVM (тесты, JMH, симуляция) пишется в stderr
+public final class WatchdogLog {
+
+    // приоритеты совпадают с android.util.Log
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    public interface Sink {
+        void log(int priority, String tag, String message);
+    }
+
+    static final Sink STDERR = (priority, tag, message) -> {
+        if(priority >= INFO) System.err.println(tag + " " + "???DIWE".charAt(priority) + " " + message);
+    };
+
+    private static volatile Sink sink = STDERR;
+
+    private WatchdogLog(){}
+
+    public static void setSink(Sink newSink){
+        sink = newSink != null ? newSink : STDERR;
+    }
+
+    public static void d(String tag, String message){
+        sink.log(DEBUG, tag, message);
+    }
+
+    public static void i(String tag, String message){
+        sink.log(INFO, tag, message);
+    }
+
+    public static void w(String tag, String message){
+        sink.log(WARN, tag, message);
+    }
+
+    public static void e(String tag, String message){
+        sink.log(ERROR, tag, message);
+    }
+}
@@ -0,0 +1,97 @@
+package com.viavr.watchdog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+// решения вачдога без побочных эффектов: что делать на тике и кого убивать
+// PackageManager спрятан за Packages, ActivityManager - за ProcessTable.Source, время передается параметром
+// сами запуск/убийство/логи делает WatchdogService по результату
+public final class WatchdogPolicy {
+
+    public interface Packages {
+        boolean isInstalled(String packageName);
+    }
+
+    // исход тика, когда в foreground не таргет
+    public static final int LAUNCH = 0;
+    public static final int LAUNCH_DISABLED = 1;
+    public static final int NOT_INSTALLED = 2;
+    public static final int WHITELISTED = 3;
+    // приложение в вайтлисте и лаунчер висит в фоне - лаунчер убиваем
+    public static final int WHITELISTED_KILL_TARGET = 4;
+
+    private WatchdogPolicy(){}
+
+    // таргет в foreground, всё ок
+    public static boolean isTargetForeground(WatchdogConfig config, String foregroundApp){
+        return config.targetPackage != null && config.targetPackage.equals(foregroundApp);
+    }
+
+    // в foreground чужое приложение, processes - снимок этого тика
+    public static int decide(WatchdogConfig config, String foregroundApp, ProcessTable processes, Packages packages, long now){
+        if(!packages.isInstalled(config.targetPackage)) return NOT_INSTALLED;
+
+        if(config.checkIfWhitelisted(foregroundApp, now)) {
+            return isProcessAlive(processes, config.targetPackage) && !config.launcherKillWhitelist.contains(foregroundApp) ?
+                    WHITELISTED_KILL_TARGET : WHITELISTED;
+        }
+
+        return config.allowStartLauncher ? LAUNCH : LAUNCH_DISABLED;
+    }
+
+    // запущен ли процесс (у свёрнутого приложения процесс остается висеть)
+    public static boolean isProcessAlive(ProcessTable processes, String packageName){
+        if(packageName == null || !packageName.contains(".")) return false;
+
+        return processes.contains(packageName);
+    }
+
+    // предыдущее приложение, которое надо добить после возврата лаунчера, null если некого
+    // у приложения может остаться только вторичный процесс (pkg:remote, pkg:unity)
+    public static String backgroundToKill(WatchdogConfig config, String backgroundApp, ProcessTable processes){
+        if(backgroundApp == null || config.targetPackage == null) return null;
+
+        if(!backgroundApp.contains(config.targetPackage) && backgroundApp.contains(".") && processes.containsPackage(backgroundApp))
+            return backgroundApp;
+
+        return null;
+    }
+
+    // запущенные пакеты, выключенные политикой с сервера; политика применяется ко всем процессам, а не только к foreground
+    public static HashSet<String> disabledPackages(WatchdogConfig config, AppsPolicy policy, ProcessTable processes, String foregroundApp){
+        HashSet<String> disabledPackages = new HashSet<>();
+
+        if(policy.size() == 0 || config.targetPackage == null) return disabledPackages;
+
+        for (int i = 0; i < processes.size(); i++) {
+            String processName = processes.getName(i);
+            int separator = processName.indexOf(':');
+            String appPackage = separator > 0 ? processName.substring(0, separator) : processName;
+
+            if(appPackage.equals(config.targetPackage) || !policy.isDisabled(appPackage)) continue;
+
+            disabledPackages.add(appPackage);
+        }
+
+        // лаунчер политикой не выключается, даже если сервер прислал is_active=false
+        if(foregroundApp != null && !foregroundApp.equals(config.targetPackage) && policy.isDisabled(foregroundApp))
+            disabledPackages.add(foregroundApp);
+
+        return disabledPackages;
+    }
+
+    // пакеты, которые реально можно убивать: allow_kill_apps и launcher_kill_whitelist
+    public static List<String> killable(WatchdogConfig config, Collection<String> packages){
+        if(!config.allowKillApps || packages.isEmpty()) return new ArrayList<>(0);
+
+        ArrayList<String> killable = new ArrayList<>(packages.size());
+
+        for (String packageName : packages) {
+            if(!config.launcherKillWhitelist.contains(packageName)) killable.add(packageName);
+        }
+
+        return killable;
+    }
+}
@@ -0,0 +1,57 @@
+package com.viavr.watchdog;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+// расчет сроков вачдога: ребут по часам, пробуждения и отправка рантайма с джиттером, период тика
+// все времена System.currentTimeMillis(), кроме периода тика
+public final class WatchdogSchedule {
+
+    // при живых эвентах ForegroundTracker тик остается только страховкой
+    public static final int SAFETY_NET_TICK_MULTIPLIER = 3;
+
+    // если конфига нет
+    static final long DEFAULT_DELAY_MS = 600 * 1000;
+
+    private WatchdogSchedule(){}
+
+    // ближайшие hourOfDay:00:00 строго после now, если время уже прошло - на следующий день
+    public static long nextDailyAt(long now, int hourOfDay, TimeZone timeZone){
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(now);
+
+        calendar.set(Calendar.HOUR_OF_DAY, hourOfDay);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+
+        if(now > calendar.getTimeInMillis())
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+
+        return calendar.getTimeInMillis();
+    }
+
+    // now + every + случайно [0, random), чтобы парк шлемов не просыпался разом
+    public static long nextJittered(long now, int everySeconds, int randomSeconds, Random random){
+        return now + everySeconds * 1000L + random.nextInt(randomSeconds * 1000);
+    }
+
+    public static long nextWakeup(WatchdogConfig config, long now, Random random){
+        if(config == null) return now + DEFAULT_DELAY_MS;
+
+        return nextJittered(now, config.wakeupEverySeconds, config.wakeupRandomSeconds, random);
+    }
+
+    public static long nextSendRuntime(WatchdogConfig config, long now, Random random){
+        if(config == null) return now + DEFAULT_DELAY_MS;
+
+        return nextJittered(now, config.sendRuntimeEverySeconds, config.sendRuntimeRandomSeconds, random);
+    }
+
+    public static long tickPeriodMs(WatchdogConfig config, boolean hasForegroundEvents){
+        return hasForegroundEvents ?
+                (long)config.checkProcessEveryMs * SAFETY_NET_TICK_MULTIPLIER :
+                config.checkProcessEveryMs;
+    }
+}
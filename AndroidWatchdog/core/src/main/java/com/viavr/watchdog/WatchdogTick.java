@@ -0,0 +1,332 @@
+package com.viavr.watchdog;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+// тик вачдога и применение политики приложений поверх решений WatchdogPolicy
+// всё, что трогает систему, идет через Device: в приложении это WatchdogService, в симуляции фейковый шлем
+// время передается параметром, вызовы на потоке WatchdogScheduler
+public class WatchdogTick {
+
+    final String LOG_TAG = "WATCHDOG";
+
+    public interface Device extends WatchdogPolicy.Packages {
+        // прямой опрос ActivityManager
+        String pollForegroundApp();
+
+        // по последнему эвенту трекера, если эвентов нет - прямой опрос
+        String getForegroundApp();
+
+        boolean hasForegroundEvents();
+
+        ProcessTable snapshotProcesses();
+
+        void launch(String packageName, String activityName);
+
+        // список уже отфильтрован по allow_kill_apps и launcher_kill_whitelist, кроме перезапуска зависшего лаунчера
+        void kill(List<String> packages, ProcessTable processes);
+
+        // heartbeat лаунчера из StatusPage, 0 если страницы нет, лаунчер не подключен или экран выключен
+        long getLauncherHeartbeat();
+
+        // когда лаунчер записал heartbeat, elapsedRealtime; 0 - неизвестно
+        long getLauncherHeartbeatAt();
+    }
+
+    public interface Listener {
+        void onLastForegroundChanged(String packageName);
+
+        // лаунчер убит за зависание, владелец учащает тики чтобы не ждать страховочного
+        void onTargetKilled();
+
+        // политика приложений выключила пакеты на смене foreground, их гранты вайтлиста сняты
+        void onAppsDisabled();
+    }
+
+    private final Device device;
+    private final RelaunchTracker relaunchTracker;
+
+    private Listener listener;
+
+    private String lastForegroundApp; // приложуха запущенная из лаунчера
+
+    // действующая политика приложений (кэш с диска, ответ сервера или дельта пушем)
+    // и foreground, на котором она проверялась последний раз
+    private AppsPolicy appsPolicy = AppsPolicy.EMPTY;
+    private String policyForegroundApp;
+
+    private final HeartbeatMonitor heartbeatMonitor = new HeartbeatMonitor();
+
+    // когда проверить heartbeat без тика, 0 - не нужно; таймер взводит владелец
+    private long nextHeartbeatCheck;
+
+    // последний перезапуск лаунчера, публикуется в StatusPage
+    private long relaunchCount;
+    private long lastRelaunchAt;
+    private int lastRelaunchReason = StatusPage.RELAUNCH_NONE;
+    private String lastRelaunchPackage;
+
+    // лаунчер убит за зависание, перезапуск пойдет на следующем тике с этой причиной
+    private int pendingRelaunchReason = StatusPage.RELAUNCH_NONE;
+
+    public WatchdogTick(Device device, RelaunchTracker relaunchTracker){
+        this.device = device;
+        this.relaunchTracker = relaunchTracker;
+    }
+
+    public void setListener(Listener listener){
+        this.listener = listener;
+    }
+
+    public String getLastForegroundApp(){
+        return lastForegroundApp;
+    }
+
+    // восстановление после рестарта процесса, слушатель не зовется
+    public void restoreLastForegroundApp(String packageName){
+        lastForegroundApp = packageName;
+    }
+
+    // проверяется на каждой смене foreground, без ожидания новой дельты с сервера
+    public void setAppsPolicy(AppsPolicy policy){
+        appsPolicy = policy != null ? policy : AppsPolicy.EMPTY;
+    }
+
+    // дедлайн heartbeat не ждет тика: в IDLE тик идет раз в несколько периодов
+    // владелец после каждого тика и проверки взводит по нему отдельный таймер
+    public long getNextHeartbeatCheck(){
+        return nextHeartbeatCheck;
+    }
+
+    // проверка по таймеру getNextHeartbeatCheck, foreground из трекера
+    public void checkHeartbeat(WatchdogConfig config, long now){
+        if(config.targetPackage != null && WatchdogPolicy.isTargetForeground(config, device.getForegroundApp())) {
+            checkTargetHeartbeat(config, now);
+        } else {
+            heartbeatMonitor.suspend();
+            nextHeartbeatCheck = 0;
+        }
+    }
+
+    public long getRelaunchCount(){
+        return relaunchCount;
+    }
+
+    public long getLastRelaunchAt(){
+        return lastRelaunchAt;
+    }
+
+    public int getLastRelaunchReason(){
+        return lastRelaunchReason;
+    }
+
+    public String getLastRelaunchPackage(){
+        return lastRelaunchPackage;
+    }
+
+    // один тик, возвращает foreground приложение для TickCadence (null - проверять нечего)
+    // страховочные тики и тики без живых эвентов опрашивают ActivityManager напрямую
+    public String run(WatchdogConfig config, boolean eventDriven, long now){
+
+        // проверять нечего
+        if(config.targetPackage == null) return null;
+
+        boolean pollForeground = !eventDriven || !device.hasForegroundEvents();
+
+        String foregroundApp = pollForeground ? device.pollForegroundApp() : device.getForegroundApp();
+
+        // смена foreground: политика применяется сразу, пуш канал может молчать сколько угодно
+        if(foregroundApp != null && !foregroundApp.equals(policyForegroundApp)) {
+            policyForegroundApp = foregroundApp;
+
+            if(applyAppsPolicy(config, appsPolicy, foregroundApp, now)) {
+                if(listener != null) listener.onAppsDisabled();
+
+                // выключенное приложение наверху: лаунчер уже запускается, приложение добьется после его возврата
+                if(!foregroundApp.equals(config.targetPackage) && appsPolicy.isDisabled(foregroundApp)) {
+                    heartbeatMonitor.suspend();
+                    setLastForegroundApp(foregroundApp);
+
+                    return foregroundApp;
+                }
+            }
+        }
+
+        // если активен targetPackage то всё ок
+        if(WatchdogPolicy.isTargetForeground(config, foregroundApp)) {
+            if(relaunchTracker.isOpen())
+                relaunchTracker.onTargetForeground(now);
+
+            // чистим предыдущее приложение
+            if(lastForegroundApp != null)
+                setLastForegroundApp(killBackgroundApp(config, lastForegroundApp, device.snapshotProcesses()));
+
+            checkTargetHeartbeat(config, now);
+
+            return foregroundApp;
+        }
+
+        heartbeatMonitor.suspend();
+        nextHeartbeatCheck = 0;
+
+        setLastForegroundApp(foregroundApp);
+
+        // один снимок процессов на весь тик
+        ProcessTable processes = device.snapshotProcesses();
+
+        boolean targetAlive = WatchdogPolicy.isProcessAlive(processes, config.targetPackage);
+
+        if(relaunchTracker.isOpen() && targetAlive)
+            relaunchTracker.onTargetProcessAlive(now);
+
+        int decision = WatchdogPolicy.decide(config, foregroundApp, processes, device, now);
+
+        switch (decision){
+            case WatchdogPolicy.NOT_INSTALLED:
+                // если лаунчер не установлен
+                WatchdogLog.e(LOG_TAG, "Target package " + config.targetPackage + " is not installed!");
+                break;
+
+            case WatchdogPolicy.WHITELISTED_KILL_TARGET:
+            case WatchdogPolicy.WHITELISTED:
+                // если приложение в вайтлисте
+                relaunchTracker.cancel();
+
+                if(decision == WatchdogPolicy.WHITELISTED_KILL_TARGET)
+                    kill(config, Collections.singleton(config.targetPackage), processes);
+
+                EventLog.log(EventLog.WHITELISTED, config.getWhitelistMillisLeft(foregroundApp, now), foregroundApp);
+                break;
+
+            case WatchdogPolicy.LAUNCH:
+                // если процесс лаунчера не запущен
+                if(!targetAlive)
+                    EventLog.log(EventLog.TARGET_NOT_RUNNING, config.targetPackage);
+
+                EventLog.log(EventLog.FOREGROUND, foregroundApp);
+
+                // повторные запуски того же перезапуска причину не меняют
+                if(!relaunchTracker.isOpen()) {
+                    if(pendingRelaunchReason != StatusPage.RELAUNCH_NONE) recordRelaunch(pendingRelaunchReason, config.targetPackage, now);
+                    else recordRelaunch(StatusPage.RELAUNCH_FOREGROUND, foregroundApp, now);
+                }
+
+                pendingRelaunchReason = StatusPage.RELAUNCH_NONE;
+
+                relaunchTracker.onForegroundLost(now);
+
+                // запускаем наш лаунчер
+                launchTarget(config, now);
+
+                // чистим предыдущее приложение
+                setLastForegroundApp(killBackgroundApp(config, lastForegroundApp, processes));
+                break;
+
+            case WatchdogPolicy.LAUNCH_DISABLED:
+                // старт лаунчера НЕ разрешен
+                break;
+        }
+
+        return foregroundApp;
+    }
+
+    // политика применяется ко всем запущенным приложениям, а не только к foreground
+    // true если что-то выключено: гранты вайтлиста этих пакетов сняты
+    public boolean applyAppsPolicy(WatchdogConfig config, AppsPolicy policy, long now){
+        return applyAppsPolicy(config, policy, device.getForegroundApp(), now);
+    }
+
+    private boolean applyAppsPolicy(WatchdogConfig config, AppsPolicy policy, String foregroundApp, long now){
+        if(policy.size() == 0 || config.targetPackage == null) return false;
+
+        ProcessTable processes = device.snapshotProcesses();
+
+        HashSet<String> disabledPackages = WatchdogPolicy.disabledPackages(config, policy, processes, foregroundApp);
+
+        HashSet<String> backgroundPackages = new HashSet<>();
+
+        for (String appPackage : disabledPackages) {
+            EventLog.log(EventLog.APP_DISABLED, appPackage);
+
+            config.removeFromWhitelist(appPackage);
+
+            if(appPackage.equals(foregroundApp)) {
+                recordRelaunch(StatusPage.RELAUNCH_APPS_POLICY, appPackage, now);
+
+                // запускаем наш лаунчер
+                launchTarget(config, now);
+                // чистим предыдущее приложение
+                setLastForegroundApp(killBackgroundApp(config, lastForegroundApp, processes));
+            }else{
+                backgroundPackages.add(appPackage);
+            }
+        }
+
+        // фоновые пакеты одной пачкой
+        kill(config, backgroundPackages, processes);
+
+        return !disabledPackages.isEmpty();
+    }
+
+    // процесс жив и наверху, но Unity висит
+    private void checkTargetHeartbeat(WatchdogConfig config, long now){
+        nextHeartbeatCheck = 0;
+
+        if(config.launcherHeartbeatDeadlineMs <= 0) return;
+
+        if(!heartbeatMonitor.isStalled(device.getLauncherHeartbeat(), device.getLauncherHeartbeatAt(), now, config.launcherHeartbeatDeadlineMs)) {
+            nextHeartbeatCheck = heartbeatMonitor.getDeadline(config.launcherHeartbeatDeadlineMs);
+            return;
+        }
+
+        WatchdogLog.e(LOG_TAG, config.targetPackage + " heartbeat stalled for " + heartbeatMonitor.getStalledMs(now) + "ms, restarting");
+        EventLog.log(EventLog.HEARTBEAT_STALLED, heartbeatMonitor.getStalledMs(now), config.targetPackage);
+
+        heartbeatMonitor.markStale();
+        pendingRelaunchReason = StatusPage.RELAUNCH_HEARTBEAT;
+
+        // мимо killable(): allow_kill_apps и launcher_kill_whitelist про чужие приложения, висящий лаунчер убиваем всегда
+        // после смерти процесса наверху окажется оболочка, следующий тик запустит лаунчер
+        device.kill(Collections.singletonList(config.targetPackage), device.snapshotProcesses());
+
+        if(listener != null) listener.onTargetKilled();
+    }
+
+    private void recordRelaunch(int reason, String packageName, long now){
+        relaunchCount++;
+        lastRelaunchAt = now;
+        lastRelaunchReason = reason;
+        lastRelaunchPackage = packageName;
+    }
+
+    private void launchTarget(WatchdogConfig config, long now){
+        device.launch(config.targetPackage, config.targetPackageActivity);
+
+        relaunchTracker.onLaunchIssued(now);
+    }
+
+    // добивает предыдущее приложение если оно еще живо, возвращает его или null
+    private String killBackgroundApp(WatchdogConfig config, String backgroundApp, ProcessTable processes){
+        String packageToKill = WatchdogPolicy.backgroundToKill(config, backgroundApp, processes);
+
+        if(packageToKill != null) kill(config, Collections.singleton(packageToKill), processes);
+
+        return packageToKill;
+    }
+
+    private void kill(WatchdogConfig config, Collection<String> packages, ProcessTable processes){
+        List<String> killable = WatchdogPolicy.killable(config, packages);
+
+        if(!killable.isEmpty()) device.kill(killable, processes);
+    }
+
+    private void setLastForegroundApp(String packageName){
+        if(packageName == null ? lastForegroundApp == null : packageName.equals(lastForegroundApp)) return;
+
+        lastForegroundApp = packageName;
+
+        if(listener != null) listener.onLastForegroundChanged(packageName);
+    }
+}
@@ -0,0 +1,76 @@
+package com.viavr.watchdog;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class ConfigSnapshotTest {
+
+    @Test
+    public void roundTripKeepsEveryField() throws Exception {
+        File file = File.createTempFile("config", ".snapshot");
+
+        WatchdogConfig config = WatchdogConfig.createDefault();
+        config.targetPackage = "com.viavr.launcher";
+        config.targetPackageActivity = "com.viavr.launcher.MainActivity";
+        config.runtimeApiUrl = "https://api.vrcinema.pro/api/v1/device/runtime";
+        config.checkProcessEveryMs = 3000;
+        config.allowStartLauncher = true;
+        config.rebootAtHour = 4;
+        config.wakeupRandomSeconds = 30;
+        config.launcherKillWhitelist.add("com.android.settings");
+        config.processTableBackend = "procfs";
+        config.launcherHeartbeatDeadlineMs = 15000;
+
+        ConfigSnapshot.write(file, config, 0xCAFEL);
+
+        ConfigSnapshot snapshot = ConfigSnapshot.read(file);
+
+        assertNotNull(snapshot);
+        assertEquals(0xCAFEL, snapshot.sourceChecksum);
+        assertTrue(WatchdogConfig.diff(config, snapshot.config).isEmpty());
+        assertNotNull(snapshot.config.packagesForegroundTimedWhitelist);
+
+        file.delete();
+    }
+
+    @Test
+    public void validationErrorsSurviveRoundTrip() throws Exception {
+        File file = File.createTempFile("config", ".snapshot");
+
+        WatchdogConfig config = WatchdogConfig.createDefault();
+        config.addError("reboot_at_hour", "out of range");
+        config.addError(null, "allowStartLauncher set to FALSE");
+
+        ConfigSnapshot.write(file, config, 1);
+
+        WatchdogConfig loaded = ConfigSnapshot.read(file).config;
+
+        assertEquals(2, loaded.validationErrors.size());
+        assertEquals("reboot_at_hour", loaded.validationErrors.get(0).key);
+        assertEquals("out of range", loaded.validationErrors.get(0).message);
+        assertNull(loaded.validationErrors.get(1).key);
+        assertEquals(config.errors, loaded.errors);
+
+        file.delete();
+    }
+
+    @Test
+    public void foreignVersionIsIgnored() throws Exception {
+        File file = File.createTempFile("config", ".snapshot");
+
+        ConfigSnapshot.write(file, WatchdogConfig.createDefault(), 1);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(4);
+            randomAccessFile.writeInt(ConfigSnapshot.VERSION + 1);
+        }
+
+        assertNull(ConfigSnapshot.read(file));
+
+        file.delete();
+    }
+}
@@ -0,0 +1,71 @@
+package com.viavr.watchdog;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventLogTest {
+
+    @Test
+    public void rateLimitCountsSuppressedEvents() throws Exception {
+        long[] now = { 1000 };
+        EventLog log = new EventLog(64, () -> now[0]);
+
+        // whitelisted - 2 в минуту
+        for (int i = 0; i < 10; i++)
+            log.append(EventLog.WHITELISTED, 60000 - i, 0, "com.vr.game.arena");
+
+        now[0] += EventLog.WINDOW_MS;
+        log.append(EventLog.WHITELISTED, 1000, 0, "com.vr.game.arena");
+
+        String dump = dump(log, 100);
+
+        assertEquals(dump, 4, dump.split("\n").length);
+        assertTrue(dump, dump.contains("suppressed event=whitelisted count=8"));
+    }
+
+    @Test
+    public void filesSurviveRestartAndRotate() throws Exception {
+        File directory = Files.createTempDirectory("events").toFile();
+
+        EventLog log = new EventLog(256, System::currentTimeMillis);
+        log.start(directory, 1024, 3);
+
+        for (int i = 0; i < 100; i++)
+            log.append(EventLog.WHITELIST_GRANT, i, 0, "com.vr.game.arena");
+
+        log.stop();
+
+        // новый процесс: записи предыдущего читаются, старые файлы удалены
+        EventLogFiles files = new EventLogFiles(directory, 1024, 3);
+        List<Long> grants = new ArrayList<>();
+
+        files.readAll((time, event, a, b, s) -> {
+            assertEquals(EventLog.WHITELIST_GRANT, event);
+            grants.add(a);
+        });
+        files.close();
+
+        assertTrue(files.files().size() <= 3);
+        assertFalse(grants.isEmpty());
+        assertTrue(grants.size() < 100);
+        assertEquals(99L, (long)grants.get(grants.size() - 1));
+    }
+
+    private static String dump(EventLog log, int max){
+        StringWriter out = new StringWriter();
+
+        try (PrintWriter writer = new PrintWriter(out)) {
+            log.dump(writer, max);
+        }
+
+        return out.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package com.viavr.watchdog;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class HttpTransportTest {
+
+    private HttpServer server;
+    private final Set<Integer> clientPorts = new HashSet<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+        // отвечает gzip'ом если клиент умеет, запоминает порты клиента чтобы проверить переиспользование соединения
+        server.createContext("/device/apps", exchange -> {
+            synchronized (clientPorts) {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+            }
+
+            byte[] body = "[{\"name\":\"com.app.a\",\"is_active\":false}]".getBytes(StandardCharsets.UTF_8);
+
+            if("gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+                ByteArrayOutputStream packed = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(packed)) {
+                    gzip.write(body);
+                }
+                body = packed.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void urlConnectionTransportUnpacksGzipAndReusesConnection() throws Exception {
+        UrlConnectionTransport transport = new UrlConnectionTransport(1);
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/device/apps";
+
+        for (int i = 0; i < 5; i++) {
+            HttpTransport.Response response = transport.executeSync(new HttpTransport.Request("GET", url, null, null));
+
+            assertEquals(200, response.statusCode);
+            assertEquals("\"v1\"", response.getHeader("etag"));
+            assertEquals("[{\"name\":\"com.app.a\",\"is_active\":false}]", new String(response.body, StandardCharsets.UTF_8));
+        }
+
+        transport.shutdown();
+
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void mockTransportRoutesAndReplaysScriptedFailures() {
+        MockTransport transport = new MockTransport()
+                .route("https://api/", request -> MockTransport.response(404, null))
+                .route("https://api/device/apps", request -> MockTransport.response(200, "[]"))
+                .setLatencyMs(40);
+
+        transport.enqueueError(new IOException("offline"));
+        transport.enqueue(MockTransport.response(503, null));
+
+        int[] statusCodes = new int[3];
+        int[] errors = new int[1];
+
+        for (int i = 0; i < 3; i++) {
+            final int index = i;
+
+            transport.execute(new HttpTransport.Request("GET", "https://api/device/apps", null, null), new HttpTransport.Callback() {
+                @Override
+                public void onResponse(HttpTransport.Response response) {
+                    statusCodes[index] = response.statusCode;
+                }
+
+                @Override
+                public void onError(IOException error) {
+                    errors[0]++;
+                }
+            });
+        }
+
+        assertEquals(1, errors[0]);
+        assertEquals(503, statusCodes[1]);
+        assertEquals(200, statusCodes[2]);
+        assertEquals(3, transport.getRequestCount());
+        assertEquals(120, transport.getTotalLatencyMs());
+    }
+}
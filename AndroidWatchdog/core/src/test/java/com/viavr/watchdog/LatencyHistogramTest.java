@@ -0,0 +1,42 @@
+package com.viavr.watchdog;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesFollowBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+
+        assertEquals(0, histogram.getPercentile(0.5));
+
+        // 90 быстрых перезапусков и 10 медленных
+        for (int i = 0; i < 90; i++) histogram.record(800);
+        for (int i = 0; i < 10; i++) histogram.record(4000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(4000, histogram.getMax());
+
+        long p50 = histogram.getPercentile(0.5);
+        long p95 = histogram.getPercentile(0.95);
+        long p99 = histogram.getPercentile(0.99);
+
+        // точность - ширина бакета
+        assertTrue(p50 > 500 && p50 <= 1000);
+        assertTrue(p95 > 2000 && p95 <= 4000);
+        assertTrue(p99 > 2000 && p99 <= 4000);
+        assertTrue(p50 <= p95 && p95 <= p99);
+    }
+
+    @Test
+    public void overflowBucketIsCappedByMax() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+
+        histogram.record(300_000);
+
+        assertEquals(LatencyHistogram.BOUNDS_MS.length, LatencyHistogram.bucketOf(300_000));
+        assertEquals(300_000, histogram.getPercentile(0.99));
+    }
+}
@@ -0,0 +1,184 @@
+package com.viavr.watchdog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// таймлайн шлема для WatchdogSimulation, время от начала прогона (00:00:00 - полночь первых суток)
+// текстовый формат, одно событие в строке, # - комментарий:
+//   08:01:10 foreground com.game.a          пользователь открыл приложение, процесс поднимается
+//   08:01:10 start com.game.a:unity         отдельный процесс
+//   08:20:00 exit com.viavr.launcher        пакет умер (краш) вместе с pkg:suffix
+//   08:25:00 hang com.viavr.launcher        лаунчер завис: процесс жив, heartbeat стоит до перезапуска
+//   08:05:00 whitelist com.game.a:600000    команда add_whitelist, формат как у интента
+//   08:06:00 unwhitelist com.game.a         remove_whitelist
+//   09:00:00 apps [{"name":"com.game.a","is_active":false}]   новая политика на сервере
+//   09:10:00 apps_status 503                сервер отвечает этим кодом, 0 - сети нет, 200 - снова норм
+//   09:20:00 push on                        push канал подключился (полная выборка, опрос стоит), push off - отвалился
+//   22:00:00 screen off                     screen on / screen off
+//   00:00:00 config {...}                   watchdog_config.json целиком
+//   24:00:00 end                            конец прогона, иначе последнее событие
+public final class SimulationTrace {
+
+    public static final class Event implements Comparable<Event> {
+        public final long at;
+        public final String type;
+        public final String argument;
+
+        Event(long at, String type, String argument){
+            this.at = at;
+            this.type = type;
+            this.argument = argument;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return Long.compare(at, other.at);
+        }
+
+        @Override
+        public String toString() {
+            return formatTime(at) + " " + type + (argument != null ? " " + argument : "");
+        }
+    }
+
+    static final String TARGET = "com.viavr.launcher";
+    static final String HOME = "com.pvr.home";
+
+    private final ArrayList<Event> events = new ArrayList<>();
+    private long durationMs;
+
+    public List<Event> getEvents(){
+        return Collections.unmodifiableList(events);
+    }
+
+    public long getDurationMs(){
+        return durationMs;
+    }
+
+    public SimulationTrace add(long at, String type, String argument){
+        if(type.equals("end")) {
+            durationMs = at;
+            return this;
+        }
+
+        Event event = new Event(at, type, argument);
+
+        // вставка с сохранением порядка событий с одинаковым временем
+        int index = events.size();
+        while (index > 0 && events.get(index - 1).at > at) index--;
+        events.add(index, event);
+
+        durationMs = Math.max(durationMs, at);
+
+        return this;
+    }
+
+    public static SimulationTrace parse(Reader reader) throws IOException {
+        SimulationTrace trace = new SimulationTrace();
+        BufferedReader lines = new BufferedReader(reader);
+
+        String line;
+        int number = 0;
+
+        while ((line = lines.readLine()) != null) {
+            number++;
+            line = line.trim();
+
+            if(line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] parts = line.split("\\s+", 3);
+
+            if(parts.length < 2)
+                throw new IOException("line " + number + ": expected '<time> <event> [argument]'");
+
+            try {
+                trace.add(parseTime(parts[0]), parts[1], parts.length > 2 ? parts[2] : null);
+            } catch (NumberFormatException e) {
+                throw new IOException("line " + number + ": bad time " + parts[0]);
+            }
+        }
+
+        return trace;
+    }
+
+    // HH:MM:SS или HH:MM:SS.mmm, часы могут быть больше 23
+    static long parseTime(String text){
+        String[] parts = text.split(":");
+
+        if(parts.length != 3) throw new NumberFormatException(text);
+
+        return Long.parseLong(parts[0]) * 3600000L + Long.parseLong(parts[1]) * 60000L + Math.round(Double.parseDouble(parts[2]) * 1000);
+    }
+
+    static String formatTime(long ms){
+        return String.format(Locale.US, "%02d:%02d:%02d.%03d", ms / 3600000, ms / 60000 % 60, ms / 1000 % 60, ms % 1000);
+    }
+
+    // синтетический день площадки: шлем выдают посетителям с 9 до 21, оператор открывает игры через вайтлист,
+    // часть посетителей сама уходит в настройки/браузер, иногда падает лаунчер, днем сервер выключает одну игру
+    public static SimulationTrace syntheticDay(long seed){
+        Random random = new Random(seed);
+        SimulationTrace trace = new SimulationTrace();
+
+        String[] games = { "com.vr.game.arena", "com.vr.game.racing", "com.vr.game.zombies", "com.vr.game.space" };
+        String[] foreign = { "com.android.settings", "com.pvr.filemanager", "com.oculus.browser", HOME };
+
+        trace.add(0, "screen", "off");
+        trace.add(parseTime("09:00:00"), "screen", "on");
+        trace.add(parseTime("09:00:05"), "foreground", TARGET);
+
+        long at = parseTime("09:05:00");
+        long closeAt = parseTime("21:00:00");
+
+        while (at < closeAt) {
+            double kind = random.nextDouble();
+
+            if(kind < 0.55) {
+                // сеанс в игре, которую открыл оператор
+                String game = games[random.nextInt(games.length)];
+                long sessionMs = (5 + random.nextInt(11)) * 60000L;
+
+                trace.add(at, "whitelist", game + ":" + sessionMs);
+                trace.add(at + 2000, "foreground", game);
+                trace.add(at + 2000, "start", game + ":unity");
+
+                // часть посетителей выходит сама раньше срока
+                if(random.nextDouble() < 0.3)
+                    trace.add(at + sessionMs / 2, "foreground", TARGET);
+
+                at += sessionMs + (1 + random.nextInt(4)) * 60000L;
+            } else if(kind < 0.85) {
+                // посетитель ушел куда не надо
+                trace.add(at, "foreground", foreign[random.nextInt(foreign.length)]);
+                at += (2 + random.nextInt(5)) * 60000L;
+            } else if(kind < 0.9) {
+                // лаунчер упал, наверху системная оболочка
+                trace.add(at, "exit", TARGET);
+                trace.add(at, "foreground", HOME);
+                at += (3 + random.nextInt(5)) * 60000L;
+            } else {
+                // шлем лежит на зарядке с выключенным экраном
+                long pauseMs = (10 + random.nextInt(20)) * 60000L;
+
+                trace.add(at, "screen", "off");
+                trace.add(at + pauseMs, "screen", "on");
+                at += pauseMs + 60000L;
+            }
+        }
+
+        trace.add(parseTime("13:00:00"), "apps", "[{\"name\":\"" + games[2] + "\",\"is_active\":false},{\"name\":\"" + games[0] + "\",\"is_active\":true}]");
+        trace.add(parseTime("15:00:00"), "apps_status", "503");
+        trace.add(parseTime("15:20:00"), "apps_status", "200");
+        trace.add(closeAt, "foreground", TARGET);
+        trace.add(closeAt + 60000, "screen", "off");
+        trace.add(parseTime("24:00:00"), "end", null);
+
+        return trace;
+    }
+}
@@ -0,0 +1,146 @@
+package com.viavr.watchdog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class StateJournalTest {
+
+    static final int CAPACITY = 4096;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("state", ".journal");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void stateSurvivesReopen() throws Exception {
+        try (StateJournal journal = new StateJournal(file, CAPACITY, 7)) {
+            journal.replay(1000);
+
+            journal.recordGrant("com.a", 60_000);
+            journal.recordGrant("com.b", 90_000);
+            journal.recordGrant("com.c", 5_000);
+            journal.recordRevoke("com.b");
+            journal.recordLastForegroundApp("com.a");
+            journal.recordNextWakeup(1_700_000_000_000L);
+            journal.recordNextSendRuntime(1_700_000_100_000L);
+        }
+
+        // процесс убит через 10 секунд, грант com.c уже истек
+        try (StateJournal journal = new StateJournal(file, CAPACITY, 7)) {
+            StateJournal.State state = journal.replay(10_000);
+
+            assertEquals(1, state.grants.size());
+            assertEquals(60_000L, (long)state.grants.get("com.a"));
+            assertEquals("com.a", state.lastForegroundApp);
+            assertEquals(1_700_000_000_000L, state.nextWakeupMillis);
+            assertEquals(1_700_000_100_000L, state.nextSendRuntimeMillis);
+        }
+    }
+
+    @Test
+    public void grantsOfPreviousBootAreDropped() throws Exception {
+        try (StateJournal journal = new StateJournal(file, CAPACITY, 7)) {
+            journal.replay(0);
+            journal.recordGrant("com.a", 60_000);
+            journal.recordNextWakeup(1_700_000_000_000L);
+        }
+
+        // после ребута elapsedRealtime снова маленький, но грант уже не наш
+        try (StateJournal journal = new StateJournal(file, CAPACITY, 8)) {
+            StateJournal.State state = journal.replay(1000);
+
+            assertTrue(state.grants.isEmpty());
+            assertEquals(1_700_000_000_000L, state.nextWakeupMillis);
+        }
+    }
+
+    @Test
+    public void tornRecordIsIgnored() throws Exception {
+        int end;
+
+        try (StateJournal journal = new StateJournal(file, CAPACITY, 1)) {
+            journal.replay(0);
+            journal.recordGrant("com.a", 60_000);
+            journal.recordLastForegroundApp("com.a");
+            end = journal.getUsedBytes();
+        }
+
+        // портим CRC последней записи, как будто процесс умер посреди записи
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(end - 1);
+            int crcByte = randomAccessFile.read();
+            randomAccessFile.seek(end - 1);
+            randomAccessFile.write(crcByte ^ 0xFF);
+        }
+
+        try (StateJournal journal = new StateJournal(file, CAPACITY, 1)) {
+            StateJournal.State state = journal.replay(0);
+
+            assertEquals(1, state.grants.size());
+            assertNull(state.lastForegroundApp);
+
+            // дописываем поверх битого хвоста
+            journal.recordLastForegroundApp("com.b");
+        }
+
+        try (StateJournal journal = new StateJournal(file, CAPACITY, 1)) {
+            assertEquals("com.b", journal.replay(0).lastForegroundApp);
+        }
+    }
+
+    @Test
+    public void compactionKeepsState() throws Exception {
+        try (StateJournal journal = new StateJournal(file, CAPACITY, 1)) {
+            journal.replay(0);
+
+            for (int i = 0; i < 2000; i++) {
+                journal.recordGrant("com.app" + (i % 5), 100_000 + i);
+                journal.recordLastForegroundApp("com.app" + (i % 3));
+            }
+
+            assertTrue(journal.getCompactions() > 0);
+            assertTrue(journal.getUsedBytes() <= CAPACITY);
+        }
+
+        try (StateJournal journal = new StateJournal(file, CAPACITY, 1)) {
+            StateJournal.State state = journal.replay(0);
+
+            assertEquals(5, state.grants.size());
+            assertEquals(100_000L + 1999, (long)state.grants.get("com.app4"));
+            assertEquals("com.app" + (1999 % 3), state.lastForegroundApp);
+        }
+    }
+
+    // между сжатиями каждая запись пишется ровно раз, снимок добавляет немного сверху
+    @Test
+    public void writeAmplificationStaysLow() throws Exception {
+        try (StateJournal journal = new StateJournal(file, 64 * 1024, 1)) {
+            journal.replay(0);
+
+            for (int i = 0; i < 20_000; i++) {
+                journal.recordLastForegroundApp(i % 2 == 0 ? "com.viavr.launcher" : "com.some.game" + (i % 7));
+
+                if(i % 50 == 0) journal.recordGrant("com.some.game" + (i % 7), 1_000_000L + i);
+            }
+
+            assertTrue(journal.getCompactions() > 0);
+            assertTrue(String.valueOf(journal.getWriteAmplification()), journal.getWriteAmplification() < 1.5);
+        }
+    }
+}
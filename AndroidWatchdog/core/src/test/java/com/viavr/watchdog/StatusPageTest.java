@@ -0,0 +1,58 @@
+package com.viavr.watchdog;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StatusPageTest {
+
+    @Test
+    public void pageRoundTrip() {
+        StatusPage page = new StatusPage(ByteBuffer.allocateDirect(StatusPage.SIZE));
+        page.init();
+
+        assertTrue(page.isValid());
+        assertEquals(0, page.readHeartbeat());
+
+        page.writeHeartbeat(42, 1000, 5000);
+
+        Map<String, Long> whitelist = new LinkedHashMap<>();
+        whitelist.put("com.vr.game.arena", 60000L);
+        whitelist.put("com.oculus.browser", 120000L);
+
+        page.writeStatus(1700000000000L, 0, 0, whitelist);
+        page.writeRelaunch(7000, StatusPage.RELAUNCH_FOREGROUND, "com.oculus.browser");
+
+        assertEquals(42, page.readHeartbeat());
+        assertEquals(1000, page.readFrames());
+        assertEquals(1700000000000L, page.readNextReboot());
+        assertEquals(whitelist, page.readWhitelist());
+        assertEquals(StatusPage.RELAUNCH_FOREGROUND, page.readRelaunchReason());
+        assertEquals("com.oculus.browser", page.readRelaunchPackage());
+    }
+
+    @Test
+    public void heartbeatStallsOnlyAfterDeadline() {
+        HeartbeatMonitor monitor = new HeartbeatMonitor();
+
+        // 0 - лаунчер не подключен, окно не идет
+        assertFalse(monitor.isStalled(0, 0, 1000));
+        assertFalse(monitor.isStalled(0, 5000, 1000));
+
+        assertFalse(monitor.isStalled(1, 5000, 1000));
+        assertFalse(monitor.isStalled(2, 5500, 1000));
+        assertFalse(monitor.isStalled(2, 6500, 1000));
+        assertTrue(monitor.isStalled(2, 6600, 1000));
+
+        // после перезапуска тот же счетчик не повод убивать снова
+        monitor.markStale();
+
+        assertFalse(monitor.isStalled(2, 20000, 1000));
+        assertFalse(monitor.isStalled(3, 21000, 1000));
+        assertTrue(monitor.isStalled(3, 22500, 1000));
+    }
+}
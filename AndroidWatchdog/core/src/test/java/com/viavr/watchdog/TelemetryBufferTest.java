@@ -0,0 +1,126 @@
+package com.viavr.watchdog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class TelemetryBufferTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("telemetry", ".ring");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void ringOverwritesOldestAndSurvivesReopen() throws Exception {
+        try (TelemetryBuffer buffer = new TelemetryBuffer(file, 3)) {
+            for (int i = 1; i <= 5; i++)
+                buffer.append(new TelemetrySample(i * 1000L, 90 - i, i % 2 == 0, "1.0." + i));
+
+            assertEquals(3, buffer.size());
+            assertEquals(3000, buffer.getOldestTimestamp());
+        }
+
+        try (TelemetryBuffer buffer = new TelemetryBuffer(file, 3)) {
+            List<TelemetrySample> samples = buffer.peek(10);
+
+            assertEquals(Arrays.asList(
+                    new TelemetrySample(3000, 87, false, "1.0.3"),
+                    new TelemetrySample(4000, 86, true, "1.0.4"),
+                    new TelemetrySample(5000, 85, false, "1.0.5")), samples);
+
+            buffer.remove(buffer.peekBatch(2));
+
+            assertEquals(1, buffer.size());
+            assertEquals(5000, buffer.getOldestTimestamp());
+        }
+    }
+
+    @Test
+    public void wrapDuringUploadKeepsUnsentSamples() throws Exception {
+        try (TelemetryBuffer buffer = new TelemetryBuffer(file, 4)) {
+            for (int i = 1; i <= 4; i++)
+                buffer.append(new TelemetrySample(i * 1000L, 80, false, "1.0"));
+
+            TelemetryBuffer.Batch batch = buffer.peekBatch(2);
+
+            // пока пачка в отправке, кольцо затирает первую запись пачки
+            buffer.append(new TelemetrySample(5000, 80, false, "1.0"));
+
+            buffer.remove(batch);
+
+            assertEquals(3, buffer.size());
+            assertEquals(3000, buffer.getOldestTimestamp());
+
+            // кольцо целиком провернулось - снимать уже нечего
+            batch = buffer.peekBatch(2);
+
+            for (int i = 6; i <= 9; i++)
+                buffer.append(new TelemetrySample(i * 1000L, 80, false, "1.0"));
+
+            buffer.remove(batch);
+
+            assertEquals(4, buffer.size());
+            assertEquals(6000, buffer.getOldestTimestamp());
+        }
+    }
+
+    @Test
+    public void firmwareIsTruncatedOnCharacterBoundary() throws Exception {
+        // 'v' и двухбайтные 'ж': граница в MAX_FIRMWARE_BYTES = 52 байта режет 26-й символ пополам
+        StringBuilder firmware = new StringBuilder("v");
+        for (int i = 0; i < 30; i++) firmware.append('ж');
+
+        try (TelemetryBuffer buffer = new TelemetryBuffer(file, 2)) {
+            buffer.append(new TelemetrySample(1000, 80, false, firmware.toString()));
+
+            String stored = buffer.peek(1).get(0).firmware;
+
+            assertEquals(firmware.substring(0, 26), stored);
+            assertTrue(stored.getBytes(StandardCharsets.UTF_8).length <= TelemetryBuffer.MAX_FIRMWARE_BYTES);
+        }
+    }
+
+    @Test
+    public void batchIsDeltaEncodedAndGzipped() throws Exception {
+        List<TelemetrySample> samples = Arrays.asList(
+                new TelemetrySample(1000, 80, false, "1.0"),
+                new TelemetrySample(301000, 79, false, "1.0"),
+                new TelemetrySample(601000, 81, true, "1.1"));
+
+        String json = "{\"battery\":81,\"firmware\":\"1.1\",\"charging\":true," +
+                "\"samples\":{\"count\":3,\"t0\":1000,\"dt\":[0,300000,300000],\"battery\":[80,-1,2],\"charging\":[0,0,1]," +
+                "\"firmware\":[{\"i\":0,\"v\":\"1.0\"},{\"i\":2,\"v\":\"1.1\"}]}}";
+
+        assertEquals(json, TelemetryBatch.toJson(samples));
+
+        ByteArrayOutputStream unpacked = new ByteArrayOutputStream();
+
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(TelemetryBatch.encode(samples)))) {
+            byte[] chunk = new byte[256];
+            int read;
+            while ((read = inputStream.read(chunk)) > 0) unpacked.write(chunk, 0, read);
+        }
+
+        assertEquals(json, new String(unpacked.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
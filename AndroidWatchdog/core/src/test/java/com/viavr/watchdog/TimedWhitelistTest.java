@@ -0,0 +1,58 @@
+package com.viavr.watchdog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimedWhitelistTest {
+
+    @Test
+    public void grantExpiresExactlyAtDeadline() {
+        TimedWhitelist whitelist = new TimedWhitelist();
+
+        whitelist.grant("com.app.a", 1000, 5000);
+
+        assertTrue(whitelist.isWhitelisted("com.app.a", 5999));
+        assertFalse(whitelist.isWhitelisted("com.app.a", 6000));
+        assertEquals(6000, whitelist.getNextExpiry());
+        assertEquals(250, whitelist.getRemaining("com.app.a", 5750));
+    }
+
+    @Test
+    public void expireFiresInDeadlineOrder() {
+        TimedWhitelist whitelist = new TimedWhitelist();
+        List<String> fired = new ArrayList<>();
+
+        whitelist.setExpiryListener(fired::add);
+        whitelist.grant("com.app.b", 2000, 0);
+        whitelist.grant("com.app.a", 1000, 0);
+        whitelist.grant("com.app.c", 9000, 0);
+
+        assertEquals(Arrays.asList("com.app.a", "com.app.b"), whitelist.expire(2000));
+        assertEquals(fired, Arrays.asList("com.app.a", "com.app.b"));
+        assertEquals(9000, whitelist.getNextExpiry());
+        assertEquals(1, whitelist.size());
+    }
+
+    @Test
+    public void regrantAndRevokeLeaveNoStaleExpiry() {
+        TimedWhitelist whitelist = new TimedWhitelist();
+
+        whitelist.grant("com.app.a", 1000, 0);
+        whitelist.grant("com.app.a", 5000, 0);
+        whitelist.grant("com.app.b", 2000, 0);
+        whitelist.revoke("com.app.b");
+
+        assertEquals(5000, whitelist.getNextExpiry());
+        assertTrue(whitelist.expire(4999).isEmpty());
+        assertTrue(whitelist.isWhitelisted("com.app.a", 4999));
+
+        whitelist.clear();
+
+        assertEquals(0, whitelist.getNextExpiry());
+    }
+}
@@ -0,0 +1,72 @@
+package com.viavr.watchdog;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class WatchdogConfigParserTest {
+
+    static final String CONFIG = "{" +
+            "\"launcher_version\": \"2.4.0\"," +
+            "\"watchdog_version\": \"0.1.1\"," +
+            "\"target_package\": \"com.viavr.launcher\"," +
+            "\"target_package_activity\": \"com.viavr.launcher.MainActivity\"," +
+            "\"runtime_api_url\": \"https://api.vrcinema.pro/api/v1/device/runtime\"," +
+            "\"check_every_milliseconds\": 3000," +
+            "\"allow_start_vrlauncher\": true," +
+            "\"allow_reboot\": false," +
+            "\"reboot_at_hour\": 5," +
+            "\"allow_wakeup\": true," +
+            "\"wakeup_every_seconds\": 1200," +
+            "\"wakeup_random_seconds\": 300," +
+            "\"allow_runtime\": true," +
+            "\"runtime_every_seconds\": 900," +
+            "\"runtime_random_seconds\": 60," +
+            "\"allow_kill_apps\": true," +
+            "\"launcher_kill_whitelist\": [\"com.android.settings\", \"com.pvr.filemanager\"]," +
+            "\"unknown_key\": {\"nested\": [1, 2, 3]}" +
+            "}";
+
+    @Test
+    public void parsesValidConfigInOnePass() throws IOException {
+        WatchdogConfig config = WatchdogConfig.parse(new StringReader(CONFIG));
+
+        assertNull(config.errors);
+        assertEquals("com.viavr.launcher", config.targetPackage);
+        assertEquals(3000, config.checkProcessEveryMs);
+        assertEquals(5, config.rebootAtHour);
+        assertTrue(config.allowStartLauncher);
+        assertEquals(Arrays.asList("com.android.settings", "com.pvr.filemanager"), config.launcherKillWhitelist);
+        assertEquals("activity_manager", config.processTableBackend);
+        assertNotNull(config.packagesForegroundTimedWhitelist);
+    }
+
+    @Test
+    public void collectsStructuredErrorsAndKeepsDefaults() throws IOException {
+        String broken = CONFIG
+                .replace("\"wakeup_random_seconds\": 300", "\"wakeup_random_seconds\": 0")
+                .replace("\"reboot_at_hour\": 5", "\"reboot_at_hour\": \"five\"")
+                .replace("\"allow_reboot\": false,", "");
+
+        WatchdogConfig config = WatchdogConfig.parse(new StringReader(broken));
+
+        assertEquals(3, config.validationErrors.size());
+        assertEquals("reboot_at_hour", config.validationErrors.get(0).key);
+        assertEquals("wakeup_random_seconds", config.validationErrors.get(1).key);
+        assertEquals("allow_reboot", config.validationErrors.get(2).key);
+        assertEquals("missing", config.validationErrors.get(2).message);
+
+        assertEquals(6, config.rebootAtHour);
+        assertEquals(600, config.wakeupRandomSeconds);
+        assertEquals(3000, config.checkProcessEveryMs);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedJson() throws IOException {
+        WatchdogConfig.parse(new StringReader("{\"target_package\": "));
+    }
+}
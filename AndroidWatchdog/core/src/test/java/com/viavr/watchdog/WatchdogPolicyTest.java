@@ -0,0 +1,145 @@
+package com.viavr.watchdog;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class WatchdogPolicyTest {
+
+    static final String TARGET = "com.viavr.launcher";
+
+    static WatchdogConfig config(){
+        WatchdogConfig config = WatchdogConfig.createDefault();
+
+        config.targetPackage = TARGET;
+        config.targetPackageActivity = TARGET + ".MainActivity";
+        config.allowStartLauncher = true;
+        config.launcherKillWhitelist.add("com.android.settings");
+
+        return config;
+    }
+
+    static ProcessTable processes(String... names){
+        ProcessTable.Builder builder = new ProcessTable.Builder(names.length);
+
+        for (int i = 0; i < names.length; i++)
+            builder.add(names[i], 100 + i);
+
+        return builder.build();
+    }
+
+    @Test
+    public void foreignAppLaunchesTargetUnlessWhitelisted() {
+        WatchdogConfig config = config();
+        ProcessTable processes = processes(TARGET, "com.game.a");
+
+        assertTrue(WatchdogPolicy.isTargetForeground(config, TARGET));
+        assertEquals(WatchdogPolicy.LAUNCH, WatchdogPolicy.decide(config, "com.game.a", processes, p -> true, 0));
+        assertEquals(WatchdogPolicy.NOT_INSTALLED, WatchdogPolicy.decide(config, "com.game.a", processes, p -> false, 0));
+
+        config.addToWhitelist("com.game.a", 1000L, 0);
+        assertEquals(WatchdogPolicy.WHITELISTED_KILL_TARGET, WatchdogPolicy.decide(config, "com.game.a", processes, p -> true, 999));
+        assertEquals(WatchdogPolicy.WHITELISTED, WatchdogPolicy.decide(config, "com.game.a", processes("com.game.a"), p -> true, 999));
+        assertEquals(WatchdogPolicy.LAUNCH, WatchdogPolicy.decide(config, "com.game.a", processes, p -> true, 1000));
+
+        config.allowStartLauncher = false;
+        assertEquals(WatchdogPolicy.LAUNCH_DISABLED, WatchdogPolicy.decide(config, "com.game.a", processes, p -> true, 1000));
+    }
+
+    @Test
+    public void backgroundAppIsKilledBySecondaryProcess() {
+        WatchdogConfig config = config();
+
+        assertEquals("com.game.a", WatchdogPolicy.backgroundToKill(config, "com.game.a", processes("com.game.a:unity")));
+        assertNull(WatchdogPolicy.backgroundToKill(config, "com.game.a", processes("com.game.b")));
+        assertNull(WatchdogPolicy.backgroundToKill(config, TARGET, processes(TARGET)));
+        assertNull(WatchdogPolicy.backgroundToKill(config, null, processes()));
+    }
+
+    @Test
+    public void appsPolicyAndKillWhitelist() throws Exception {
+        WatchdogConfig config = config();
+        AppsPolicy policy = AppsPolicy.parse(new StringReader(
+                "[{\"name\":\"com.game.a\",\"is_active\":false},{\"name\":\"com.android.settings\",\"is_active\":false},{\"name\":\"com.game.b\",\"is_active\":true}]"));
+
+        HashSet<String> disabled = WatchdogPolicy.disabledPackages(config, policy, processes(TARGET, "com.game.a:remote", "com.game.b"), "com.android.settings");
+
+        assertEquals(new HashSet<>(Arrays.asList("com.game.a", "com.android.settings")), disabled);
+        assertEquals(Collections.singletonList("com.game.a"), WatchdogPolicy.killable(config, Arrays.asList("com.game.a", "com.android.settings")));
+
+        config.allowKillApps = false;
+        assertTrue(WatchdogPolicy.killable(config, disabled).isEmpty());
+    }
+
+    @Test
+    public void appsPolicyNeverDisablesTarget() throws Exception {
+        WatchdogConfig config = config();
+        AppsPolicy policy = AppsPolicy.parse(new StringReader(
+                "[{\"name\":\"" + TARGET + "\",\"is_active\":false},{\"name\":\"com.game.a\",\"is_active\":false}]"));
+
+        assertEquals(Collections.singleton("com.game.a"), WatchdogPolicy.disabledPackages(config, policy, processes(TARGET, "com.game.a"), TARGET));
+        assertEquals(Collections.singleton("com.game.a"), WatchdogPolicy.disabledPackages(config, policy, processes(TARGET, "com.game.a"), null));
+    }
+
+    @Test
+    public void appsPolicyDeltaSurvivesRestart() throws Exception {
+        File directory = Files.createTempDirectory("apps").toFile();
+
+        AppsPolicyCache cache = new AppsPolicyCache(directory);
+        byte[] body = "[{\"name\":\"com.game.a\",\"is_active\":true}]".getBytes(StandardCharsets.UTF_8);
+        cache.update(AppsPolicy.parse(new StringReader(new String(body, StandardCharsets.UTF_8))), body, "\"v1\"", null);
+
+        cache.applyDelta(AppsPolicy.parse(new StringReader("[{\"name\":\"com.game.a\",\"is_active\":false}]")));
+
+        // ребут без сети: выключенное пушем приложение остается выключенным, валидаторов нет
+        AppsPolicyCache restored = new AppsPolicyCache(directory);
+        restored.load();
+
+        assertTrue(restored.getPolicy().isDisabled("com.game.a"));
+        assertNull(restored.getEtag());
+    }
+
+    @Test
+    public void whitelistCommandSkipsBrokenItems() {
+        List<WatchdogCommand.Grant> grants = WatchdogCommand.parseWhitelistGrants("com.a:60000&broken&com.b:x&com.c:30000");
+
+        assertEquals(2, grants.size());
+        assertEquals("com.a", grants.get(0).packageName);
+        assertEquals(60000, grants.get(0).durationMs);
+        assertEquals("com.c:30000", grants.get(1).toString());
+    }
+
+    @Test
+    public void scheduleMaths() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        Calendar calendar = Calendar.getInstance(utc);
+        calendar.clear();
+        calendar.set(2022, Calendar.MARCH, 1, 7, 30);
+
+        long reboot = WatchdogSchedule.nextDailyAt(calendar.getTimeInMillis(), 6, utc);
+        calendar.setTimeInMillis(reboot);
+
+        assertEquals(2, calendar.get(Calendar.DAY_OF_MONTH));
+        assertEquals(6, calendar.get(Calendar.HOUR_OF_DAY));
+        assertEquals(0, calendar.get(Calendar.MINUTE));
+
+        WatchdogConfig config = config();
+        long wakeup = WatchdogSchedule.nextWakeup(config, 1000, new Random(1));
+
+        assertTrue(wakeup >= 1000 + config.wakeupEverySeconds * 1000L);
+        assertTrue(wakeup < 1000 + (config.wakeupEverySeconds + config.wakeupRandomSeconds) * 1000L);
+        assertEquals(config.checkProcessEveryMs * 3L, WatchdogSchedule.tickPeriodMs(config, true));
+    }
+}
@@ -0,0 +1,701 @@
+package com.viavr.watchdog;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// ускоренный детерминированный прогон логики вачдога по таймлайну шлема (SimulationTrace)
+// на виртуальных часах: сутки площадки проходят за секунды
+// работает тот же код, что и в WatchdogService: WatchdogTick, WatchdogPolicy, TickCadence, TimedWhitelist,
+// AppsPolicy, WatchdogSchedule; Android заменен фейковым шлемом (FakeDevice), сервер - MockTransport
+// обвязка сервиса (таймеры тика, вайтлиста, опрос /device/apps, отправка рантайма) повторена здесь
+//
+// запуск: ./gradlew :core:simulate --args="venue-trace.txt"   без трейса - синтетический день
+//         --no-events - без эвентов ForegroundTracker, только опрос по тикам
+public class WatchdogSimulation {
+
+    static final String APPS_URL = "https://api.vrcinema.pro/api/v1/device/apps";
+    static final String RUNTIME_URL = "https://api.vrcinema.pro/api/v1/device/runtime";
+
+    // как в WatchdogService
+    static final long APPS_POLL_EVERY_MS = 10 * 1000;
+    static final long RUNTIME_RETRY_MS = 60 * 1000;
+
+    static final long HOUR_MS = 3600 * 1000;
+
+    // задержки фейкового шлема
+    long launchProcessMs = 600;
+    long launchForegroundMs = 1500;
+    long killLatencyMs = 50;
+
+    // живые эвенты foreground (IProcessObserver/accessibility), иначе только опрос
+    boolean foregroundEvents = true;
+
+    // политика из AppsPolicyCache на момент старта сервиса
+    AppsPolicy cachedAppsPolicy = AppsPolicy.EMPTY;
+
+    private final SimulationTrace trace;
+
+    private final Clock clock = new Clock();
+    private final FakeDevice device = new FakeDevice();
+    private final MockTransport transport = new MockTransport();
+    private final Random random;
+
+    private final RelaunchTracker relaunchTracker = new RelaunchTracker();
+    private final WatchdogTick watchdogTick = new WatchdogTick(device, relaunchTracker);
+
+    private WatchdogConfig config;
+    private TickCadence cadence;
+    private boolean interactive = true;
+
+    // состояние сервера
+    private String serverApps = "[]";
+    private int serverStatus = 200;
+
+    private String appsEtag;
+    private AppsPolicy appsPolicy = AppsPolicy.EMPTY;
+
+    // push канал подключен: опроса /device/apps нет, дельт в трейсе нет
+    private boolean pushConnected;
+
+    private final Report report = new Report();
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    public WatchdogSimulation(SimulationTrace trace, long seed){
+        this.trace = trace;
+        this.random = new Random(seed);
+
+        transport.route(APPS_URL, request -> {
+            if(serverStatus == 0) throw new IOException("network unreachable");
+            if(serverStatus != 200) return MockTransport.response(serverStatus, null);
+
+            String etag = "\"" + Integer.toHexString(serverApps.hashCode()) + "\"";
+
+            if(etag.equals(request.headers.get("If-None-Match")))
+                return new HttpTransport.Response(304, Collections.singletonMap("ETag", etag), null, 0);
+
+            return new HttpTransport.Response(200, Collections.singletonMap("ETag", etag), serverApps.getBytes(StandardCharsets.UTF_8), 0);
+        });
+        transport.route(RUNTIME_URL, request -> MockTransport.response(200, "{}"));
+    }
+
+    public Report run(){
+        long wallStart = System.nanoTime();
+
+        for (SimulationTrace.Event event : trace.getEvents())
+            clock.schedule(null, event.at, () -> onTraceEvent(event));
+
+        // до события config из трейса работает дефолтный конфиг площадки
+        config = defaultConfig();
+        config.packagesForegroundTimedWhitelist.setExpiryListener(packageName -> tickNow());
+
+        watchdogTick.setListener(new WatchdogTick.Listener() {
+            @Override
+            public void onLastForegroundChanged(String packageName) {}
+
+            @Override
+            public void onTargetKilled() {
+                tighten();
+            }
+
+            @Override
+            public void onAppsDisabled() {
+                scheduleWhitelistExpiry();
+                device.updateExposure();
+            }
+        });
+
+        cadence = new TickCadence(WatchdogSchedule.tickPeriodMs(config, foregroundEvents));
+
+        device.installed.add(config.targetPackage);
+        device.startProcess(config.targetPackage);
+        device.foreground = config.targetPackage;
+
+        // как onCreate: кэш применяется до первого тика, не дожидаясь сети
+        appsPolicy = cachedAppsPolicy;
+        clock.schedule(null, 0, () -> watchdog(this::applyAppsPolicy));
+
+        clock.schedule("tick", 0, this::runTick);
+        clock.scheduleRepeating("apps", 0, APPS_POLL_EVERY_MS, this::pollApps);
+        clock.schedule("runtime", WatchdogSchedule.nextSendRuntime(config, 0, random), this::onSendRuntimeTime);
+
+        clock.runUntil(trace.getDurationMs());
+
+        report.durationMs = trace.getDurationMs();
+        report.wallMs = (System.nanoTime() - wallStart) / 1000000;
+
+        return report;
+    }
+
+    static WatchdogConfig defaultConfig(){
+        WatchdogConfig config = WatchdogConfig.createDefault();
+
+        config.targetPackage = SimulationTrace.TARGET;
+        config.targetPackageActivity = SimulationTrace.TARGET + ".MainActivity";
+        config.allowStartLauncher = true;
+        config.allowSendRuntime = true;
+        config.launcherKillWhitelist.add("com.android.settings");
+
+        return config;
+    }
+
+    // события таймлайна - это шлем, пользователь и сервер, в цену вачдога не входят
+    private void onTraceEvent(SimulationTrace.Event event){
+        switch (event.type){
+            case "foreground":
+                device.startProcess(event.argument);
+                device.setForeground(event.argument);
+                break;
+
+            case "start":
+                device.startProcess(event.argument);
+                break;
+
+            case "exit":
+                device.killPackage(event.argument);
+                break;
+
+            case "hang":
+                device.hang(event.argument);
+                break;
+
+            case "screen":
+                interactive = "on".equals(event.argument);
+
+                // после включения экрана выходим из IDLE не дожидаясь длинного тика
+                if(interactive) watchdog(() -> tighten());
+                break;
+
+            case "whitelist":
+                watchdog(() -> {
+                    for (WatchdogCommand.Grant grant : WatchdogCommand.parseWhitelistGrants(event.argument))
+                        config.addToWhitelist(grant.packageName, grant.durationMs, clock.now);
+
+                    scheduleWhitelistExpiry();
+                });
+                break;
+
+            case "unwhitelist":
+                watchdog(() -> {
+                    config.removeFromWhitelist(event.argument);
+                    scheduleWhitelistExpiry();
+                    applyAppsPolicy();
+                });
+
+                device.updateExposure();
+                break;
+
+            case "apps":
+                serverApps = event.argument;
+                break;
+
+            case "apps_status":
+                serverStatus = Integer.parseInt(event.argument.trim());
+                break;
+
+            case "push":
+                pushConnected = "on".equals(event.argument);
+
+                // после подключения одна полная выборка (как onConnectionChanged)
+                if(pushConnected) requestApps(true);
+                break;
+
+            case "config":
+                watchdog(() -> applyConfig(event.argument));
+                break;
+
+            default:
+                throw new IllegalArgumentException("unknown trace event: " + event);
+        }
+    }
+
+    private void applyConfig(String json){
+        WatchdogConfig newConfig;
+
+        try {
+            newConfig = WatchdogConfig.parse(new StringReader(json));
+        } catch (IOException e) {
+            report.note("config rejected: " + e.getMessage());
+            return;
+        }
+
+        // гранты вайтлиста живут дольше конфига
+        newConfig.packagesForegroundTimedWhitelist = config.packagesForegroundTimedWhitelist;
+        config = newConfig;
+
+        device.installed.add(config.targetPackage);
+
+        cadence.setBasePeriod(WatchdogSchedule.tickPeriodMs(config, foregroundEvents));
+        tickNow();
+    }
+
+    // тик как в AdaptiveTickScheduler.runTick + WatchdogService.checkForeground
+    private void runTick(){
+        boolean eventDriven = cadence.onTick(clock.now);
+
+        watchdog(() -> {
+            String foregroundApp = watchdogTick.run(config, eventDriven, clock.now);
+            cadence.report(foregroundApp, interactive);
+            scheduleHeartbeatCheck();
+        });
+
+        report.hour(clock.now).ticks++;
+
+        clock.schedule("tick", clock.now + cadence.nextDelay(), this::runTick);
+    }
+
+    // как WatchdogService.scheduleHeartbeatCheck
+    private void scheduleHeartbeatCheck(){
+        long nextCheck = watchdogTick.getNextHeartbeatCheck();
+
+        if(nextCheck == 0) clock.cancel("heartbeat");
+        else clock.schedule("heartbeat", nextCheck, () -> watchdog(() -> {
+            watchdogTick.checkHeartbeat(config, clock.now);
+            scheduleHeartbeatCheck();
+        }));
+    }
+
+    private void tickNow(){
+        cadence.tickNow();
+        clock.schedule("tick", clock.now, this::runTick);
+    }
+
+    private void tighten(){
+        if(cadence.tighten())
+            clock.schedule("tick", clock.now + cadence.getFastPeriodMs(), this::runTick);
+    }
+
+    private void scheduleWhitelistExpiry(){
+        long nextExpiry = config.getNextWhitelistExpiry();
+
+        if(nextExpiry == 0) clock.cancel("whitelist_expiry");
+        else clock.schedule("whitelist_expiry", nextExpiry, () -> {
+            watchdog(() -> {
+                config.expireWhitelist(clock.now);
+                scheduleWhitelistExpiry();
+                applyAppsPolicy();
+            });
+
+            device.updateExposure();
+        });
+    }
+
+    // опрос политики, пока push канал не подключен и наверху не лаунчер (как pollApps)
+    private void pollApps(){
+        if(pushConnected || WatchdogPolicy.isTargetForeground(config, device.getForegroundApp())) return;
+
+        requestApps(false);
+    }
+
+    // условный запрос политики (как requestApps), full - без валидаторов
+    private void requestApps(boolean full){
+        watchdog(() -> {
+            Map<String, String> headers = new HashMap<>();
+            if(!full && appsEtag != null) headers.put("If-None-Match", appsEtag);
+
+            execute(new HttpTransport.Request("GET", APPS_URL, headers, null), response -> {
+                if(response.statusCode == 200) {
+                    appsPolicy = AppsPolicy.parse(new InputStreamReader(new ByteArrayInputStream(response.body), StandardCharsets.UTF_8));
+                    appsEtag = response.getHeader("ETag");
+                } else if(response.statusCode != 304) {
+                    return;
+                }
+
+                applyAppsPolicy();
+            });
+        });
+    }
+
+    // как WatchdogService.applyAppsPolicy: тик дальше проверяет ту же политику на каждой смене foreground
+    private void applyAppsPolicy(){
+        watchdogTick.setAppsPolicy(appsPolicy);
+
+        if(watchdogTick.applyAppsPolicy(config, appsPolicy, clock.now)) {
+            scheduleWhitelistExpiry();
+            device.updateExposure();
+        }
+    }
+
+    // рантайм уходит только при выключенном экране (как onSendRuntimeTime)
+    private void onSendRuntimeTime(){
+        if(!config.allowSendRuntime) {
+            clock.schedule("runtime", WatchdogSchedule.nextSendRuntime(config, clock.now, random), this::onSendRuntimeTime);
+            return;
+        }
+
+        if(interactive) {
+            clock.schedule("runtime", clock.now + RUNTIME_RETRY_MS, this::onSendRuntimeTime);
+            return;
+        }
+
+        clock.schedule("runtime", WatchdogSchedule.nextSendRuntime(config, clock.now, random), this::onSendRuntimeTime);
+
+        execute(new HttpTransport.Request("POST", RUNTIME_URL, null, "{}".getBytes(StandardCharsets.UTF_8)), response -> {});
+    }
+
+    interface ResponseHandler {
+        void onResponse(HttpTransport.Response response) throws IOException;
+    }
+
+    private void execute(HttpTransport.Request request, ResponseHandler handler){
+        report.hour(clock.now).httpRequests++;
+        report.httpByPath.merge(request.method + " " + request.url.replaceFirst("^https?://[^/]+", ""), 1, Integer::sum);
+
+        transport.execute(request, new HttpTransport.Callback() {
+            @Override
+            public void onResponse(HttpTransport.Response response) {
+                if(!response.isSuccessful() && response.statusCode != 304) report.httpErrors++;
+
+                try {
+                    handler.onResponse(response);
+                } catch (IOException e) {
+                    report.note("bad response for " + request.url + ": " + e.getMessage());
+                }
+            }
+
+            @Override
+            public void onError(IOException error) {
+                report.httpErrors++;
+            }
+        });
+    }
+
+    // всё, что исполняет вачдог, меряется CPU временем потока и раскладывается по часам симуляции
+    private void watchdog(Runnable task){
+        long start = cpuNanos();
+
+        try {
+            task.run();
+        } finally {
+            report.hour(clock.now).cpuNanos += cpuNanos() - start;
+        }
+    }
+
+    private long cpuNanos(){
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    // виртуальные часы и очередь задач, именованная задача заменяет предыдущую с тем же именем (как WatchdogScheduler)
+    static final class Clock {
+        long now;
+
+        private long sequence;
+        private final PriorityQueue<Job> queue = new PriorityQueue<>();
+        private final HashMap<String, Job> named = new HashMap<>();
+
+        void schedule(String name, long at, Runnable task){
+            cancel(name);
+
+            Job job = new Job(Math.max(at, now), sequence++, name, task);
+            queue.add(job);
+
+            if(name != null) named.put(name, job);
+        }
+
+        void scheduleRepeating(String name, long at, long periodMs, Runnable task){
+            schedule(name, at, () -> {
+                scheduleRepeating(name, now + periodMs, periodMs, task);
+                task.run();
+            });
+        }
+
+        void cancel(String name){
+            Job job = name != null ? named.remove(name) : null;
+
+            if(job != null) job.cancelled = true;
+        }
+
+        void runUntil(long end){
+            while (!queue.isEmpty() && queue.peek().at < end) {
+                Job job = queue.poll();
+
+                if(job.cancelled) continue;
+                if(job.name != null) named.remove(job.name);
+
+                now = job.at;
+                job.task.run();
+            }
+
+            now = end;
+        }
+    }
+
+    static final class Job implements Comparable<Job> {
+        final long at;
+        final long sequence;
+        final String name;
+        final Runnable task;
+        boolean cancelled;
+
+        Job(long at, long sequence, String name, Runnable task){
+            this.at = at;
+            this.sequence = sequence;
+            this.name = name;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            return at != other.at ? Long.compare(at, other.at) : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // шлем: foreground приложение, процессы и установленные пакеты; запуск и убийство с задержками
+    final class FakeDevice implements WatchdogTick.Device {
+
+        String foreground = SimulationTrace.HOME;
+
+        final LinkedHashMap<String, Integer> processes = new LinkedHashMap<>();
+        final HashSet<String> installed = new HashSet<>();
+
+        private int nextPid = 1000;
+
+        // лаунчер пишет heartbeat каждый кадр, зависший стоит на hungHeartbeat до смерти процесса
+        private boolean launcherHung;
+        private long hungHeartbeat;
+        private long hungAt;
+
+        // когда шлем ушел с лаунчера на чужое приложение, 0 если наверху лаунчер или законное приложение
+        private long exposedSince;
+
+        void startProcess(String processName){
+            if(!processes.containsKey(processName)) processes.put(processName, nextPid++);
+        }
+
+        // все процессы пакета, включая pkg:suffix
+        void killPackage(String packageName){
+            processes.keySet().removeIf(name -> name.equals(packageName) || name.startsWith(packageName + ":"));
+
+            if(packageName.equals(config.targetPackage)) launcherHung = false;
+
+            if(packageName.equals(foreground)) setForeground(SimulationTrace.HOME);
+        }
+
+        void hang(String packageName){
+            if(!packageName.equals(config.targetPackage) || launcherHung) return;
+
+            hungHeartbeat = getLauncherHeartbeat();
+            hungAt = clock.now;
+            launcherHung = true;
+        }
+
+        void setForeground(String packageName){
+            if(packageName.equals(foreground)) return;
+
+            foreground = packageName;
+
+            updateExposure();
+
+            // эвент ForegroundTracker, сразу прогоняем тик
+            if(foregroundEvents) tickNow();
+        }
+
+        // грант мог истечь или быть снят, пока приложение наверху
+        void updateExposure(){
+            boolean legal = foreground.equals(config.targetPackage) || config.checkIfWhitelisted(foreground, clock.now);
+
+            if(legal && exposedSince != 0) {
+                report.exposure.record(clock.now - exposedSince);
+                exposedSince = 0;
+            } else if(!legal && exposedSince == 0) {
+                exposedSince = clock.now;
+            }
+        }
+
+        @Override
+        public String pollForegroundApp() {
+            return foreground;
+        }
+
+        @Override
+        public String getForegroundApp() {
+            return foreground;
+        }
+
+        @Override
+        public boolean hasForegroundEvents() {
+            return foregroundEvents;
+        }
+
+        @Override
+        public ProcessTable snapshotProcesses() {
+            ProcessTable.Builder builder = new ProcessTable.Builder(processes.size());
+
+            for (Map.Entry<String, Integer> process : processes.entrySet())
+                builder.add(process.getKey(), process.getValue());
+
+            return builder.build();
+        }
+
+        @Override
+        public boolean isInstalled(String packageName) {
+            return installed.contains(packageName);
+        }
+
+        @Override
+        public void launch(String packageName, String activityName) {
+            report.hour(clock.now).launches++;
+
+            // повторный startActivity не отменяет уже идущий запуск
+            clock.schedule(null, clock.now + launchProcessMs, () -> startProcess(packageName));
+            clock.schedule(null, clock.now + launchForegroundMs, () -> {
+                startProcess(packageName);
+                setForeground(packageName);
+            });
+
+            // проверяем что лаунчер поднялся
+            tighten();
+        }
+
+        // время как счетчик: пока процесс жив и не завис, значение меняется на каждом тике
+        @Override
+        public long getLauncherHeartbeat() {
+            if(!processes.containsKey(config.targetPackage)) return 0;
+
+            return launcherHung ? hungHeartbeat : clock.now + 1;
+        }
+
+        @Override
+        public long getLauncherHeartbeatAt() {
+            if(!processes.containsKey(config.targetPackage)) return 0;
+
+            return launcherHung ? hungAt : clock.now;
+        }
+
+        @Override
+        public void kill(List<String> packages, ProcessTable processes) {
+            for (String packageName : packages) {
+                report.hour(clock.now).kills++;
+
+                String reason = null;
+
+                // ушедшее в фон приложение добивается даже с активным грантом, как в WatchdogService
+                // зависший лаунчер убивается в обход allow_kill_apps и launcher_kill_whitelist
+                if(packageName.equals(config.targetPackage) && launcherHung) {
+                    reason = null;
+                    report.stallDetection.record(clock.now - hungAt);
+                }
+                else if(packageName.equals(foreground) && config.checkIfWhitelisted(packageName, clock.now)) reason = "whitelisted in foreground";
+                else if(config.launcherKillWhitelist.contains(packageName)) reason = "launcher_kill_whitelist";
+                else if(packageName.equals(config.targetPackage) && packageName.equals(foreground)) reason = "target in foreground";
+
+                if(reason != null)
+                    report.wrongKills.add(SimulationTrace.formatTime(clock.now) + " " + packageName + " (" + reason + ")");
+
+                clock.schedule("device:kill " + packageName, clock.now + killLatencyMs, () -> killPackage(packageName));
+            }
+        }
+    }
+
+    public final class Report {
+        long durationMs;
+        long wallMs;
+
+        // от ухода шлема на чужое приложение до возврата лаунчера или легального приложения
+        final LatencyHistogram exposure = new LatencyHistogram("exposure");
+
+        // от зависания лаунчера до его убийства
+        final LatencyHistogram stallDetection = new LatencyHistogram("stall_detection");
+
+        final ArrayList<String> wrongKills = new ArrayList<>();
+        final TreeMap<String, Integer> httpByPath = new TreeMap<>();
+        int httpErrors;
+
+        final ArrayList<Hour> hours = new ArrayList<>();
+        final ArrayList<String> notes = new ArrayList<>();
+
+        Hour hour(long at){
+            int index = (int)(at / HOUR_MS);
+
+            while (hours.size() <= index) hours.add(new Hour());
+
+            return hours.get(index);
+        }
+
+        void note(String message){
+            notes.add(SimulationTrace.formatTime(clock.now) + " " + message);
+        }
+
+        public RelaunchTracker getRelaunches(){
+            return relaunchTracker;
+        }
+
+        public int getHttpRequests(){
+            int total = 0;
+            for (Hour hour : hours) total += hour.httpRequests;
+            return total;
+        }
+
+        public long getTicks(){
+            long total = 0;
+            for (Hour hour : hours) total += hour.ticks;
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(4096);
+
+            text.append(String.format(Locale.US, "Simulated %.1f h in %d ms (x%.0f), foreground events %s%n",
+                    durationMs / (double)HOUR_MS, wallMs, durationMs / (double)Math.max(1, wallMs), foregroundEvents ? "on" : "off"));
+
+            text.append(relaunchTracker).append('\n');
+            text.append("    ").append(exposure).append('\n');
+            if(stallDetection.getCount() > 0) text.append("    ").append(stallDetection).append('\n');
+
+            text.append("Wrong kills: ").append(wrongKills.size()).append('\n');
+            for (String kill : wrongKills) text.append("    ").append(kill).append('\n');
+
+            text.append("HTTP: ").append(getHttpRequests()).append(" requests, ").append(httpErrors).append(" errors\n");
+            for (Map.Entry<String, Integer> path : httpByPath.entrySet())
+                text.append("    ").append(path.getKey()).append(": ").append(path.getValue()).append('\n');
+
+            text.append("hour   ticks  cpu_us  http  launches  kills\n");
+            for (int i = 0; i < hours.size(); i++) {
+                Hour hour = hours.get(i);
+                text.append(String.format(Locale.US, "%4d %7d %7d %5d %9d %6d%n", i, hour.ticks, hour.cpuNanos / 1000, hour.httpRequests, hour.launches, hour.kills));
+            }
+
+            for (String note : notes) text.append("note: ").append(note).append('\n');
+
+            return text.toString();
+        }
+    }
+
+    static final class Hour {
+        long ticks;
+        long cpuNanos;
+        int httpRequests;
+        int launches;
+        int kills;
+    }
+
+    public static void main(String[] args) throws IOException {
+        SimulationTrace trace = null;
+        boolean foregroundEvents = true;
+        long seed = 1;
+
+        for (String arg : args) {
+            if(arg.equals("--no-events")) foregroundEvents = false;
+            else if(arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring(7));
+            else try (Reader reader = new InputStreamReader(new FileInputStream(arg), StandardCharsets.UTF_8)) {
+                trace = SimulationTrace.parse(reader);
+            }
+        }
+
+        if(trace == null) trace = SimulationTrace.syntheticDay(seed);
+
+        // логи каждого тика на сутки - это сотни тысяч строк, оставляем только ошибки
+        WatchdogLog.setSink((priority, tag, message) -> {
+            if(priority >= WatchdogLog.ERROR) System.err.println(tag + " E " + message);
+        });
+
+        WatchdogSimulation simulation = new WatchdogSimulation(trace, seed);
+        simulation.foregroundEvents = foregroundEvents;
+
+        System.out.print(simulation.run());
+    }
+}
@@ -0,0 +1,158 @@
+package com.viavr.watchdog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class WatchdogSimulationTest {
+
+    @Before
+    public void setUp() {
+        WatchdogLog.setSink((priority, tag, message) -> {});
+    }
+
+    @After
+    public void tearDown() {
+        WatchdogLog.setSink(null);
+    }
+
+    @Test
+    public void foreignAppIsReplacedAndWhitelistIsRespected() throws IOException {
+        SimulationTrace trace = SimulationTrace.parse(new StringReader(
+                "# посетитель ушел в браузер, потом оператор открыл игру на 5 минут\n" +
+                "00:01:00 foreground com.oculus.browser\n" +
+                "00:10:00 whitelist com.vr.game.arena:300000\n" +
+                "00:10:02 foreground com.vr.game.arena\n" +
+                "00:10:02 start com.vr.game.arena:unity\n" +
+                "00:30:00 end\n"));
+
+        WatchdogSimulation.Report report = new WatchdogSimulation(trace, 1).run();
+
+        // эвент, запуск 1.5с на фейковом шлеме; истечение гранта ловится таймером вайтлиста
+        assertEquals(2, report.getRelaunches().getCompletedCount());
+        assertEquals(1500, report.getRelaunches().detectToForeground.getMax());
+        assertEquals(2, report.exposure.getCount());
+        assertTrue(report.wrongKills.isEmpty());
+
+        // пока лаунчер поднимается, FAST тики повторяют startActivity
+        assertEquals(6, report.hours.get(0).launches);
+    }
+
+    @Test
+    public void hungLauncherIsRestartedWithKillAppsDisabled() throws IOException {
+        SimulationTrace trace = SimulationTrace.parse(new StringReader(
+                "# allow_kill_apps и launcher_kill_whitelist не отключают перезапуск зависшего лаунчера\n" +
+                "00:00:00 config {\"target_package\": \"com.viavr.launcher\", \"target_package_activity\": \"com.viavr.launcher.MainActivity\", " +
+                        "\"allow_start_vrlauncher\": true, \"allow_kill_apps\": false, \"launcher_kill_whitelist\": [\"com.viavr.launcher\"], " +
+                        "\"launcher_heartbeat_deadline_ms\": 10000}\n" +
+                "00:05:00 hang com.viavr.launcher\n" +
+                "00:10:00 end\n"));
+
+        WatchdogSimulation simulation = new WatchdogSimulation(trace, 1);
+        simulation.foregroundEvents = false;
+
+        WatchdogSimulation.Report report = simulation.run();
+
+        assertTrue(report.wrongKills.toString(), report.wrongKills.isEmpty());
+        assertEquals(1, report.hours.get(0).kills);
+        assertEquals(1, report.getRelaunches().getCompletedCount());
+
+        // после убийства тики учащаются: оболочку замечают на FAST тике, а не через обычный период
+        assertEquals(1, report.exposure.getCount());
+        assertTrue(String.valueOf(report.exposure.getMax()), report.exposure.getMax() < 3000);
+    }
+
+    @Test
+    public void stalledLauncherIsCaughtByDeadlineInIdle() throws IOException {
+        SimulationTrace trace = SimulationTrace.parse(new StringReader(
+                "# экран выключен, тики в IDLE раз в 6 периодов (90с) - дедлайн 10с не должен их ждать\n" +
+                "00:00:00 config {\"target_package\": \"com.viavr.launcher\", \"target_package_activity\": \"com.viavr.launcher.MainActivity\", " +
+                        "\"allow_start_vrlauncher\": true, \"check_every_milliseconds\": 15000, \"launcher_heartbeat_deadline_ms\": 10000}\n" +
+                "00:01:00 screen off\n" +
+                "00:30:17 hang com.viavr.launcher\n" +
+                "00:40:00 end\n"));
+
+        WatchdogSimulation simulation = new WatchdogSimulation(trace, 1);
+        simulation.foregroundEvents = false;
+
+        WatchdogSimulation.Report report = simulation.run();
+
+        assertTrue(report.wrongKills.toString(), report.wrongKills.isEmpty());
+        assertEquals(1, report.stallDetection.getCount());
+
+        // на первой миллисекунде после дедлайна от последнего heartbeat
+        assertTrue(String.valueOf(report.stallDetection.getMax()), report.stallDetection.getMax() <= 10000 + 1);
+    }
+
+    @Test
+    public void disabledAppIsStoppedWhilePushIsSilent() throws IOException {
+        SimulationTrace trace = SimulationTrace.parse(new StringReader(
+                "# игра выключена на сервере до подключения push, дальше ни дельт, ни опроса\n" +
+                "00:00:00 apps [{\"name\":\"com.vr.game.arena\",\"is_active\":false}]\n" +
+                "00:00:30 push on\n" +
+                "00:01:00 whitelist com.vr.game.arena:600000\n" +
+                "00:01:02 foreground com.vr.game.arena\n" +
+                "00:05:00 end\n"));
+
+        WatchdogSimulation.Report report = new WatchdogSimulation(trace, 1).run();
+
+        // пока наверху лаунчер, опроса нет: только полная выборка при подключении
+        assertEquals(1, report.getHttpRequests());
+
+        // грант не спасает выключенную игру: политика из кэша проверяется на смене foreground
+        assertTrue(report.wrongKills.toString(), report.wrongKills.isEmpty());
+        assertEquals(1, report.getRelaunches().getCompletedCount());
+        assertEquals(1, report.exposure.getCount());
+        assertTrue(String.valueOf(report.exposure.getMax()), report.exposure.getMax() < 3000);
+        assertEquals(1, report.hours.get(0).kills);
+    }
+
+    @Test
+    public void cachedPolicyIsEnforcedOnOfflineBoot() throws IOException {
+        SimulationTrace trace = SimulationTrace.parse(new StringReader(
+                "# загрузка без сети: выключенная игра поднялась в фоне вместе со шлемом\n" +
+                "00:00:00 apps_status 0\n" +
+                "00:00:00 start com.vr.game.arena\n" +
+                "00:10:00 end\n"));
+
+        WatchdogSimulation simulation = new WatchdogSimulation(trace, 1);
+        simulation.cachedAppsPolicy = AppsPolicy.parse(new StringReader("[{\"name\":\"com.vr.game.arena\",\"is_active\":false}]"));
+
+        WatchdogSimulation.Report report = simulation.run();
+
+        // ни один запрос не прошел, игру убила политика с диска
+        // (первый тик идет, пока процесс еще умирает, и может попросить убить его повторно)
+        assertEquals(report.getHttpRequests(), report.httpErrors);
+        assertTrue(report.wrongKills.toString(), report.wrongKills.isEmpty());
+        assertTrue(report.hours.get(0).kills > 0);
+    }
+
+    @Test
+    public void pollingOnlyIsSlowerThanEvents() {
+        SimulationTrace trace = SimulationTrace.syntheticDay(7);
+
+        WatchdogSimulation withEvents = new WatchdogSimulation(trace, 7);
+        WatchdogSimulation.Report events = withEvents.run();
+
+        WatchdogSimulation pollingOnly = new WatchdogSimulation(trace, 7);
+        pollingOnly.foregroundEvents = false;
+        WatchdogSimulation.Report polling = pollingOnly.run();
+
+        assertEquals(24, events.hours.size());
+        assertTrue(events.wrongKills.toString(), events.wrongKills.isEmpty());
+        assertTrue(events.getRelaunches().getCompletedCount() > 10);
+        assertTrue(polling.exposure.getPercentile(0.5) > events.exposure.getPercentile(0.5));
+
+        // повторный прогон того же трейса дает те же решения
+        WatchdogSimulation.Report again = new WatchdogSimulation(trace, 7).run();
+
+        assertEquals(events.getTicks(), again.getTicks());
+        assertEquals(events.getHttpRequests(), again.getHttpRequests());
+        assertEquals(events.getRelaunches().getCompletedCount(), again.getRelaunches().getCompletedCount());
+    }
+}